@@ -1,115 +1,166 @@
 package AI;
 
-import Pieces.*;
 import Utilities.*;
 import GameManager.Game;
 
-import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays one engine move in a game. The search runs on the
+ * {@link EngineService}, limited by a {@link CancellationToken} whose deadline
+ * is the move's share of the engine's clock, and the move is made on the event
+ * dispatch thread when the search completes.
+ */
+public class AIPlayer {
+    /** Depth the engine searches its moves to. */
+    private static final int SEARCH_DEPTH = 3;
+
+    /** Interval at which search progress is shown, about 30 times a second. */
+    private static final int PROGRESS_INTERVAL_MS = 33;
+
+    /** Whether the engine keeps searching while the opponent thinks. */
+    private static volatile boolean pondering = true;
 
-public class AIPlayer extends SwingWorker<Move, Void> {
     private final ArrayList<Move> moves;
+    private final long[] history;
+    private final int halfMoveClock;
     private final boolean isMaximizingPlayer;
     private final Game game;
-    private static volatile boolean isProcessing = false;
     private final String aiColor; // Store the AI's color when move calculation started
 
+    /** Stops this move's search when cancelled or out of time. */
+    private final CancellationToken token;
+    private CompletableFuture<Move> result;
+
+    /**
+     * Latest progress of the search. The search replaces it without waiting and
+     * {@link #progressTimer} takes it on the event dispatch thread, so the UI
+     * sees at most one update per frame however fast the search publishes.
+     */
+    private final LatestValue<SearchProgress> progress = new LatestValue<>();
+    private final Timer progressTimer;
+
     public AIPlayer(boolean isMaximizingPlayer, Game game, String aiColor) {
         this.moves = new ArrayList<>(game.gameLogic.moves);
+        this.history = game.gameLogic.getRepetitionHistory();
+        this.halfMoveClock = game.gameLogic.halfMoveClock;
+        this.token = CancellationToken.withDeadline(AI_Minimax.moveBudget(game.board.clock.remainingNanos(aiColor),
+                TimeUnit.SECONDS.toNanos(game.gameLogic.incrementSeconds + game.gameLogic.delaySeconds)));
         this.isMaximizingPlayer = isMaximizingPlayer;
         this.game = game;
         this.aiColor = aiColor;
+        progressTimer = new Timer(PROGRESS_INTERVAL_MS, e -> {
+            SearchProgress latest = progress.take();
+            if (latest != null) {
+                game.board.showEngineStatus(latest.toString());
+            }
+        });
+    }
+
+    /**
+     * Starts searching. The move is played when the search completes, unless the
+     * search was cancelled or the game moved on in the meantime.
+     */
+    public void execute() {
         game.board.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        Ponderer.stop();
+        Move pondered = Ponderer.take(history[history.length - 1], SEARCH_DEPTH);
+        if (pondered != null) {
+            result = CompletableFuture.completedFuture(pondered); // Ponder hit
+        } else {
+            progressTimer.start();
+            result = EngineService.shared().bestMove(moves, history, halfMoveClock, SEARCH_DEPTH, isMaximizingPlayer,
+                    token, progress);
+        }
+        result.whenComplete((move, error) -> EventQueue.invokeLater(() -> done(move, error)));
     }
 
-    public static boolean isThinking() {
-        return isProcessing;
+    /**
+     * Checks whether the search is still running.
+     *
+     * @return true until the search has completed or been cancelled
+     */
+    public boolean isThinking() {
+        return result != null && !result.isDone();
     }
 
-    @Override
-    protected Move doInBackground() {
-        if (isProcessing) {
-            return null;
+    /** Stops the search and discards its result. */
+    public void cancel() {
+        token.cancel();
+    }
+
+    /**
+     * Turns searching on the opponent's time on or off.
+     *
+     * @param enabled true to ponder after each engine move
+     */
+    public static void setPondering(boolean enabled) {
+        pondering = enabled;
+        if (!enabled) {
+            Ponderer.discard();
         }
-        isProcessing = true;
-        if (isCancelled())
-            AI_Minimax.isTimeRemaining = false;
-        return AI_Minimax.getBestMove(moves, 3, isMaximizingPlayer);
     }
 
-    @Override
-    protected void done() {
-        try {
-            if (isCancelled()) {
-                // Task was cancelled, handle accordingly
-                game.board.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-                return;
+    /**
+     * Stops pondering. Only raises a flag, so it is safe to call on the event
+     * dispatch thread as soon as the opponent moves.
+     */
+    public static void stopPondering() {
+        Ponderer.stop();
+    }
+
+    /**
+     * Stops pondering and forgets what was pondered, for when the game is
+     * undone or reset and the answers no longer apply.
+     */
+    public static void discardPondering() {
+        Ponderer.discard();
+    }
+
+    /**
+     * Plays the move found. Runs on the event dispatch thread.
+     *
+     * @param move  The move, or null if there is none
+     * @param error Why the search failed, or null
+     */
+    private void done(Move move, Throwable error) {
+        progressTimer.stop();
+        game.board.showEngineStatus(null);
+        game.board.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+        if (error instanceof CompletionException) {
+            error = error.getCause();
+        }
+        if (error != null) {
+            if (!(error instanceof CancellationException)) {
+                error.printStackTrace();
             }
-            Move move = get();
-            // Only proceed if it's still AI's turn and the colors match
-            if (move != null &&
-                    game.gameLogic.currentPlayer instanceof AI_Minimax &&
-                    game.gameLogic.currentPlayer.getColor().equals(aiColor)) {
-
-                EventQueue.invokeLater(() -> {
-                    game.board.clearHighlights();
-                    for (int i = 0; i < 8; i++) {
-                        for (int j = 0; j < 8; j++) {
-                            game.board.removeDot(i, j, game.gameLogic.boardState[i][j]);
-                        }
-                    }
-                    Piece[][] boardState = game.gameLogic.boardState;
-                    move.piece = boardState[move.fromRow][move.fromCol];
-                    move.capturedPiece = boardState[move.toRow][move.toCol];
-                    move.timers[0] = game.board.whiteTimeRemaining;
-                    move.timers[1] = game.board.blackTimeRemaining;
-                    move.haveMoved = true;
-
-                    // Make the move
-                    game.movePiece(move.fromRow, move.fromCol, move.toRow, move.toCol);
-                    if (move.piece.name.equals("King")) {
-                        game.gameLogic.movesToStalemate++;
-                    } else if (move.piece.name.equals("Pawn")) {
-                        if ((move.toRow == 0 && move.piece.color.equals("White"))
-                                || (move.toRow == 7 && move.piece.color.equals("Black"))) {
-                            game.gameLogic.boardState[move.toRow][move.toCol] = new Queen(move.piece.color);
-                            game.gameLogic.moves.getLast().promoteTo = "Queen";
-                            game.board.removeSquare(move.toRow, move.toCol);
-                            game.board.addSquare(move.toRow, move.toCol,
-                                    game.gameLogic.boardState[move.toRow][move.toCol].getIcon());
-                            game.gameLogic.movesToStalemate = 0;
-                        } else {
-                            game.gameLogic.movesToStalemate++;
-                        }
-                    } else {
-                        game.gameLogic.movesToStalemate = 0;
-                    }
-                    game.board.switchTimers(game.gameLogic.currentPlayer.getColor());
-                    game.gameLogic.currentPlayer = aiColor.equals(game.gameLogic.player1.getColor())
-                            ? game.gameLogic.player2
-                            : game.gameLogic.player1;
-
-                    // Log the move is now handled in Game.movePiece
-                    // System.out.print(game.gameLogic.moves.size() % 2 == 1
-                    // ? (game.gameLogic.moves.size() + 1) / 2 + ") " +
-                    // game.gameLogic.moves.getLast()
-                    // : "\t | " + game.gameLogic.moves.getLast() + "\n");
-
-                    // Apply standard last move highlight
-                    game.board.clearHighlights();
-
-                    // Update the board display
-                    game.highlightCheck();
-                    game.board.repaint();
-                    game.board.revalidate();
-                    game.board.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-                });
+            return;
+        }
+        // Only proceed if it's still AI's turn and the colors match
+        if (move != null && !token.isCancelled() &&
+                game.gameLogic.currentPlayer instanceof AI_Minimax &&
+                game.gameLogic.currentPlayer.getColor().equals(aiColor)) {
+            game.board.clearHighlights();
+            game.clearDots();
+            // Make the move; the AI always promotes to a queen
+            game.movePiece(move.fromRow, move.fromCol, move.toRow, move.toCol, "Queen");
+
+            // Apply standard last move highlight
+            game.board.clearHighlights();
+
+            // Update the board display
+            game.highlightCheck();
+            if (pondering && game.gameLogic.getResult() == null
+                    && !(game.gameLogic.currentPlayer instanceof AI_Minimax)) {
+                Ponderer.start(new ArrayList<>(game.gameLogic.moves), game.gameLogic.getRepetitionHistory(),
+                        game.gameLogic.halfMoveClock, aiColor.equals("White"), SEARCH_DEPTH);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            isProcessing = false;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,92 +1,128 @@
 package AI;
 
+import Diagnostics.SearchEvent;
+import Diagnostics.SearchIterationEvent;
 import Pieces.*;
+import Utilities.LatestValue;
 import Utilities.Move;
+import Utilities.MoveCodec;
 import Utilities.Player;
+import Utilities.Zobrist;
 
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
 
 public class AI_Minimax extends Player {
+    /** Evaluation weights, read once at startup. */
+    static final EvalParams PARAMS = EvalParams.load();
+
+    /** Move-ordering weights searches use unless told otherwise, read once at startup. */
+    static final SearchParams SEARCH_PARAMS = SearchParams.load();
+
+    /** Network evaluating positions instead of the weights, or null. */
+    private static volatile Nnue network = Nnue.loadDefault();
+
     // Evaluation constants for piece values
-    private static final int PAWN_VALUE = 10;
-    private static final int KNIGHT_BISHOP_VALUE = 30;
-    private static final int ROOK_VALUE = 50;
-    private static final int QUEEN_VALUE = 90;
+    private static final int PAWN_VALUE = PARAMS.get(EvalParams.PAWN);
+    private static final int KNIGHT_BISHOP_VALUE = PARAMS.get(EvalParams.KNIGHT_BISHOP);
+    private static final int ROOK_VALUE = PARAMS.get(EvalParams.ROOK);
+    private static final int QUEEN_VALUE = PARAMS.get(EvalParams.QUEEN);
     private static final int KING_VALUE = 1000;
 
     // New constants for checkmate and check evaluation
     private static final int CHECKMATE_VALUE = 100000;
-    private static final int CHECK_VALUE = 20;
-    private static final int WINNING_POSITION_BONUS = 200;
+
+    // Score of a drawn position
+    private static final int DRAW_VALUE = 0;
 
     // Depth constants
-    private static final int MAX_DEPTH = 5;
-    private static final Random random = new Random();
-
-    // Time remaining from Game class
-    public static boolean isTimeRemaining = true;
-
-    // Pieces.Piece-square tables for positional evaluation
-    private static final int[][] PAWN_TABLE = {
-            { 0, 0, 0, 0, 0, 0, 0, 0 },
-            { 0, 10, -5, 0, 0, -5, 10, 0 },
-            { 0, 10, 10, 20, 20, 10, 10, 0 },
-            { 5, 20, 20, 25, 25, 20, 20, 5 },
-            { 10, 20, 20, 25, 25, 20, 20, 10 },
-            { 20, 30, 30, 50, 50, 30, 30, 20 },
-            { 50, 50, 50, 50, 50, 50, 50, 50 },
-            { 0, 0, 0, 0, 0, 0, 0, 0 },
-    };
-
-    private static final int[][] KNIGHT_TABLE = {
-            { -50, -40, -30, -30, -30, -30, -40, -50 },
-            { -40, -20, 0, 5, 5, 0, -20, -40 },
-            { -30, 5, 10, 15, 15, 10, 5, -30 },
-            { -30, 0, 15, 20, 20, 15, 0, -30 },
-            { -30, 5, 15, 20, 20, 15, 5, -30 },
-            { -30, 0, 10, 15, 15, 10, 0, -30 },
-            { -40, -20, 0, 0, 0, 0, -20, -40 },
-            { -50, -40, -30, -30, -30, -30, -40, -50 },
-    };
-
-    private static final int[][] KING_ENDGAME_TABLE = {
-            { -50, -30, -10, 0, 0, -10, -30, -50 },
-            { -30, -10, 20, 30, 30, 20, -10, -30 },
-            { -10, 20, 40, 50, 50, 40, 20, -10 },
-            { 0, 30, 50, 60, 60, 50, 30, 0 },
-            { 0, 30, 50, 60, 60, 50, 30, 0 },
-            { -10, 20, 40, 50, 50, 40, 20, -10 },
-            { -30, -10, 20, 30, 30, 20, -10, -30 },
-            { -50, -30, -10, 0, 0, -10, -30, -50 },
-    };
+    static final int MAX_DEPTH = 5;
+
+    /** Search results shared by all searches, 2^20 entries (16 MB). */
+    static final TranspositionTable TABLE = new TranspositionTable(20);
+
+    /** Smallest share of the clock a move is given, in nanoseconds. */
+    private static final long MIN_MOVE_BUDGET = 50_000_000L;
+
+    /**
+     * Splits the remaining clock time into a budget for one move: a fortieth of
+     * the remaining time plus most of the increment, never so much that the flag
+     * could fall.
+     *
+     * @param remainingNanos Remaining time of the engine's clock
+     * @param incrementNanos Time added after each move, including any delay
+     * @return Time the next search may take
+     */
+    public static long moveBudget(long remainingNanos, long incrementNanos) {
+        long budget = remainingNanos / 40 + incrementNanos * 3 / 4;
+        return Math.max(Math.min(MIN_MOVE_BUDGET, remainingNanos / 2), Math.min(budget, remainingNanos / 2));
+    }
 
     /**
      * Improved minimax algorithm with better checkmate detection
      */
-    private static Move minimax(ArrayList<Move> moves, int depth, int alpha, int beta, boolean isMaximizingPlayer) {
+    private static Move minimax(SearchContext context, ArrayList<Move> moves, int depth, int alpha, int beta,
+            boolean isMaximizingPlayer) {
         Move bestMove = new Move(-1, -1, -1, -1, null, null, 0, 0);
+        context.countNode();
 
         // Check for immediate checkmate first
         String currentColor = isMaximizingPlayer ? "White" : "Black";
         String opponentColor = isMaximizingPlayer ? "Black" : "White";
 
         if (isCheckmate(moves, opponentColor)) {
-            bestMove.eval = isMaximizingPlayer ? CHECKMATE_VALUE : -CHECKMATE_VALUE;
+            bestMove.eval = isMaximizingPlayer ? mateScore(context, 0) : -mateScore(context, 0);
             return bestMove;
         }
 
         // Base case: reached maximum depth or game-ending condition
-        if (depth == 0 || isGameOver(moves, isMaximizingPlayer) || !isTimeRemaining) {
-            bestMove.eval = quiescenceSearch(moves, alpha, beta, isMaximizingPlayer);
+        if (depth == 0 || isGameOver(moves, isMaximizingPlayer) || context.shouldStop()) {
+            bestMove.eval = quiescenceSearch(context, moves, alpha, beta, isMaximizingPlayer);
             return bestMove;
         }
 
-        // Get valid moves and sort them
+        // Reuse a stored result for this position if it was searched deep enough
+        long key = context.key();
+        long entry = context.table().probe(key);
+        context.countProbe(entry != TranspositionTable.MISS);
+        short hashMove = MoveCodec.NONE;
+        if (entry != TranspositionTable.MISS) {
+            hashMove = TranspositionTable.move(entry);
+            if (!context.isRoot() && TranspositionTable.depth(entry) >= depth) {
+                int eval = fromTable(TranspositionTable.eval(entry), context);
+                int flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT || (flag == TranspositionTable.LOWER && eval >= beta)
+                        || (flag == TranspositionTable.UPPER && eval <= alpha)) {
+                    bestMove.eval = eval;
+                    return bestMove;
+                }
+            }
+        }
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        if (context.isRoot()) {
+            context.rootBest(depth, null);
+        }
+
+        // Get valid moves and sort them, trying the stored best move first
         ArrayList<Move> validMoves = validMoves(getBoard(moves), currentColor,
                 moves.isEmpty() ? null : moves.getLast());
-        validMoves.sort((m1, m2) -> Integer.compare(calculateMoveImportance(m2, moves, currentColor),
-                calculateMoveImportance(m1, moves, currentColor)));
+        SearchParams params = context.params();
+        validMoves.sort((m1, m2) -> Integer.compare(calculateMoveImportance(m2, moves, currentColor, params),
+                calculateMoveImportance(m1, moves, currentColor, params)));
+        if (hashMove != MoveCodec.NONE) {
+            for (int i = 0; i < validMoves.size(); i++) {
+                if (MoveCodec.encode(validMoves.get(i)) == hashMove) {
+                    validMoves.addFirst(validMoves.remove(i));
+                    break;
+                }
+            }
+        }
+
+        // Number of moves searched so far, for the cutoff and branching metrics
+        int searched = 0;
 
         // Maximizing player (White)
         if (isMaximizingPlayer) {
@@ -96,22 +132,29 @@ public class AI_Minimax extends Player {
                 tmpMoves.add(move);
 
                 // Check if this move leads to checkmate
-                if (isCheckmate(tmpMoves, "Black")) {
+                Piece[][] childBoard = getBoard(tmpMoves);
+                if (isCheckmate(childBoard, "Black", move)) {
                     bestMove = move;
-                    bestMove.eval = CHECKMATE_VALUE;
+                    bestMove.eval = mateScore(context, 1);
                     return bestMove;
                 }
 
-                Move result = minimax(tmpMoves, depth - 1, alpha, beta, false);
+                searched++;
+                Move result = searchChild(context, tmpMoves, childBoard, "Black", depth - 1, alpha, beta, false);
                 if (result.eval > maxEval) {
                     maxEval = result.eval;
                     bestMove = move;
                     bestMove.eval = maxEval;
+                    if (context.isRoot()) {
+                        context.rootBest(depth, bestMove);
+                    }
                 }
 
                 alpha = Math.max(alpha, maxEval);
-                if (beta <= alpha)
+                if (beta <= alpha) {
+                    context.countCutoff(searched);
                     break;
+                }
             }
         }
         // Minimizing player (Black)
@@ -122,34 +165,98 @@ public class AI_Minimax extends Player {
                 tmpMoves.add(move);
 
                 // Check if this move leads to checkmate
-                if (isCheckmate(tmpMoves, "White")) {
+                Piece[][] childBoard = getBoard(tmpMoves);
+                if (isCheckmate(childBoard, "White", move)) {
                     bestMove = move;
-                    bestMove.eval = -CHECKMATE_VALUE;
+                    bestMove.eval = -mateScore(context, 1);
                     return bestMove;
                 }
 
-                Move result = minimax(tmpMoves, depth - 1, alpha, beta, true);
+                searched++;
+                Move result = searchChild(context, tmpMoves, childBoard, "White", depth - 1, alpha, beta, true);
                 if (result.eval < minEval) {
                     minEval = result.eval;
                     bestMove = move;
                     bestMove.eval = minEval;
+                    if (context.isRoot()) {
+                        context.rootBest(depth, bestMove);
+                    }
                 }
 
                 beta = Math.min(beta, minEval);
-                if (beta <= alpha)
+                if (beta <= alpha) {
+                    context.countCutoff(searched);
                     break;
+                }
             }
         }
 
+        context.countExpanded(searched);
+
+        if (bestMove.fromRow != -1 && !context.shouldStop()) {
+            int flag = bestMove.eval <= alphaOrig ? TranspositionTable.UPPER
+                    : bestMove.eval >= betaOrig ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+            context.table().store(key, toTable(bestMove.eval, context), depth, flag, MoveCodec.encode(bestMove));
+        }
         return bestMove;
     }
 
+    /**
+     * Scores a mate a number of half-moves below the current position, so that
+     * nearer mates score higher and a won position is converted rather than
+     * kept.
+     */
+    private static int mateScore(SearchContext context, int plies) {
+        return CHECKMATE_VALUE - context.ply() - plies;
+    }
+
+    /**
+     * Converts a mate score to the distance from the position rather than from
+     * the root, for the transposition table, where other searches find it at
+     * other depths.
+     */
+    private static int toTable(int eval, SearchContext context) {
+        return isMateScore(eval) ? eval + Integer.signum(eval) * context.ply() : eval;
+    }
+
+    /** Converts a mate score from the transposition table back to the root's distance. */
+    private static int fromTable(int eval, SearchContext context) {
+        return isMateScore(eval) ? eval - Integer.signum(eval) * context.ply() : eval;
+    }
+
+    /**
+     * Enters the position after a move and searches it. A position that repeats
+     * one on the game or search path, that reached the fifty-move limit, or
+     * that {@link Endgames} knows to be drawn, is scored as a draw straight
+     * away instead of being expanded.
+     */
+    private static Move searchChild(SearchContext context, ArrayList<Move> moves, Piece[][] board,
+            String sideToMove, int depth, int alpha, int beta, boolean isMaximizingPlayer) {
+        Move move = moves.getLast();
+        boolean irreversible = move.piece.name.equals("Pawn") || move.capturedPiece != null;
+        context.push(Zobrist.hash(board, sideToMove, move), irreversible ? 0 : context.clock() + 1);
+        context.enter(move);
+        try {
+            if (context.isDraw() || Endgames.isDraw(board, isMaximizingPlayer)) {
+                Move draw = new Move(-1, -1, -1, -1, null, null, 0, 0);
+                draw.eval = DRAW_VALUE;
+                return draw;
+            }
+            return minimax(context, moves, depth, alpha, beta, isMaximizingPlayer);
+        } finally {
+            context.leave();
+            context.pop();
+        }
+    }
+
     /**
      * Quiescence search to extend evaluation for tactical moves like captures and
      * checks.
      */
-    private static int quiescenceSearch(ArrayList<Move> moves, int alpha, int beta, boolean isMaximizingPlayer) {
-        int standPat = evaluate(moves, isMaximizingPlayer);
+    private static int quiescenceSearch(SearchContext context, ArrayList<Move> moves, int alpha, int beta,
+            boolean isMaximizingPlayer) {
+        context.countQuiescenceNode();
+        int standPat = evaluate(context, moves, isMaximizingPlayer);
         if (isMaximizingPlayer) {
             if (standPat >= beta)
                 return beta;
@@ -169,7 +276,9 @@ public class AI_Minimax extends Player {
 
             ArrayList<Move> tmpMoves = new ArrayList<>(moves);
             tmpMoves.add(move);
-            int score = quiescenceSearch(tmpMoves, alpha, beta, !isMaximizingPlayer);
+            context.enter(move);
+            int score = quiescenceSearch(context, tmpMoves, alpha, beta, !isMaximizingPlayer);
+            context.leave();
 
             if (isMaximizingPlayer) {
                 alpha = Math.max(alpha, score);
@@ -188,79 +297,119 @@ public class AI_Minimax extends Player {
      * Improved evaluation function with stronger emphasis on checkmate and winning
      * positions
      */
-    private static int evaluate(ArrayList<Move> moves, Boolean isMaximizingPlayer) {
+    private static int evaluate(SearchContext context, ArrayList<Move> moves, Boolean isMaximizingPlayer) {
         Piece[][] board = getBoard(moves);
-        int score = 0;
 
         // Check for checkmate first
         if (isCheckmate(moves, isMaximizingPlayer ? "Black" : "White")) {
-            return CHECKMATE_VALUE;
+            return mateScore(context, 0);
         }
         if (isCheckmate(moves, isMaximizingPlayer ? "White" : "Black")) {
-            return -CHECKMATE_VALUE;
+            return -mateScore(context, 0);
         }
 
+        int score;
+        Nnue.Accumulators accumulators = context.accumulators();
+        if (accumulators != null) {
+            score = accumulators.evaluate(isMaximizingPlayer);
+        } else {
+            int[] features = new int[EvalParams.COUNT];
+            features(board, isMaximizingPlayer, moves.isEmpty() ? null : moves.getLast(), features);
+            score = PARAMS.score(features);
+        }
+
+        // Add a small random factor to avoid deterministic behavior in equal positions
+        if (context.noisy()) {
+            score += ThreadLocalRandom.current().nextInt(10) - 5;
+        }
+
+        // Endgames with rules of their own; a stalemate there is no win
+        Endgames.Known endgame = Endgames.probe(board, isMaximizingPlayer);
+        if (endgame != null) {
+            Move lastMove = moves.isEmpty() ? null : moves.getLast();
+            if (validMoves(board, isMaximizingPlayer ? "White" : "Black", lastMove).isEmpty()) {
+                return DRAW_VALUE;
+            }
+            score = endgame.evaluate(score);
+        }
+
+        return score;
+    }
+
+    /**
+     * Counts the features the evaluation weighs, from White's point of view:
+     * White's count minus Black's for material, piece-square entries, closeness
+     * to the enemy king, unmoved queens, pieces of a side that is winning and
+     * mobility. The evaluation of a position that is not mate is these counts
+     * times the {@link EvalParams} weights, give or take a little noise.
+     *
+     * @param board              The position
+     * @param isMaximizingPlayer true if White is to move
+     * @param lastMove           The move that led to the position, for en passant
+     * @param features           Filled with one count per weight index
+     * @return The number of legal moves of the side to move
+     */
+    static int features(Piece[][] board, boolean isMaximizingPlayer, Move lastMove, int[] features) {
+        Arrays.fill(features, 0);
+
         // Check for check position
         if (underCheck(board, isMaximizingPlayer ? "Black" : "White")) {
-            score += CHECK_VALUE;
+            features[EvalParams.CHECK]++;
         }
         if (underCheck(board, isMaximizingPlayer ? "White" : "Black")) {
-            score -= CHECK_VALUE;
+            features[EvalParams.CHECK]--;
         }
 
         // Material and position evaluation
+        int[] whiteKing = findKingPosition(board, "White");
+        int[] blackKing = findKingPosition(board, "Black");
+        boolean whiteWinning = isWinningPosition(board, "White");
+        boolean blackWinning = isWinningPosition(board, "Black");
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
                 Piece piece = board[i][j];
                 if (piece == null)
                     continue;
+                boolean white = piece.color.equals("White");
+                int sign = white ? 1 : -1;
 
-                int pieceValue = getPieceValue(piece);
-                int positionBonus = getPieceSquareValue(piece, i, j);
+                switch (piece.name) {
+                    case "Pawn" -> {
+                        features[EvalParams.PAWN] += sign;
+                        features[EvalParams.PAWN_TABLE + i * 8 + j] += sign;
+                    }
+                    case "Knight" -> {
+                        features[EvalParams.KNIGHT_BISHOP] += sign;
+                        features[EvalParams.KNIGHT_TABLE + i * 8 + j] += sign;
+                    }
+                    case "Bishop" -> features[EvalParams.KNIGHT_BISHOP] += sign;
+                    case "Rook" -> features[EvalParams.ROOK] += sign;
+                    case "Queen" -> features[EvalParams.QUEEN] += sign;
+                    case "King" -> features[EvalParams.KING_TABLE + i * 8 + j] += sign;
+                }
 
                 // Add extra bonus for pieces near enemy king
-                int[] enemyKingPos = findKingPosition(board, piece.color.equals("White") ? "Black" : "White");
+                int[] enemyKingPos = white ? blackKing : whiteKing;
                 if (enemyKingPos != null) {
                     int distanceToKing = Math.abs(i - enemyKingPos[0]) + Math.abs(j - enemyKingPos[1]);
-                    int kingProximityBonus = (7 - distanceToKing) * 5; // More bonus for pieces closer to enemy king
-                    positionBonus += kingProximityBonus;
+                    features[EvalParams.KING_PROXIMITY] += sign * (7 - distanceToKing);
                 }
 
-                if (piece.name.equals("Queen") && !piece.haveMove) {
-                    if ((piece.color.equals("White") && i == 7) ||
-                            (piece.color.equals("Black") && i == 0)) {
-                        pieceValue += 20;
-                    }
+                if (piece.name.equals("Queen") && !piece.haveMove && i == (white ? 7 : 0)) {
+                    features[EvalParams.UNMOVED_QUEEN] += sign;
                 }
 
                 // Add winning position bonus for advantageous positions
-                if (isWinningPosition(board, piece.color)) {
-                    positionBonus += WINNING_POSITION_BONUS;
+                if (white ? whiteWinning : blackWinning) {
+                    features[EvalParams.WINNING_POSITION] += sign;
                 }
-
-                score += piece.color.equals("White") ? (pieceValue + positionBonus) : -(pieceValue + positionBonus);
             }
         }
 
-        score += evaluateMobility(board, "White", moves.isEmpty() ? null : moves.getLast()) -
-                evaluateMobility(board, "Black", moves.isEmpty() ? null : moves.getLast());
-
-        // Add a small random factor to avoid deterministic behavior in equal positions
-        score += random.nextInt(10) - 5;
-
-        return score;
-    }
-
-    /**
-     * Get positional bonus from piece-square tables.
-     */
-    private static int getPieceSquareValue(Piece piece, int row, int col) {
-        return switch (piece.name) {
-            case "Pawn" -> PAWN_TABLE[row][col];
-            case "Knight" -> KNIGHT_TABLE[row][col];
-            case "King" -> KING_ENDGAME_TABLE[row][col];
-            default -> 0;
-        };
+        int whiteMobility = evaluateMobility(board, "White", lastMove);
+        int blackMobility = evaluateMobility(board, "Black", lastMove);
+        features[EvalParams.MOBILITY] = whiteMobility - blackMobility;
+        return isMaximizingPlayer ? whiteMobility : blackMobility;
     }
 
     /**
@@ -298,7 +447,8 @@ public class AI_Minimax extends Player {
      * Improved move importance calculation with stronger emphasis on checks and
      * captures
      */
-    private static int calculateMoveImportance(Move move, ArrayList<Move> previousMoves, String currentColor) {
+    private static int calculateMoveImportance(Move move, ArrayList<Move> previousMoves, String currentColor,
+            SearchParams params) {
         Piece[][] board = getBoard(previousMoves);
         int score = 0;
 
@@ -311,28 +461,29 @@ public class AI_Minimax extends Player {
 
         // Capturing moves
         if (move.capturedPiece != null) {
-            score += getPieceValue(move.capturedPiece) * 10;
+            score += getPieceValue(move.capturedPiece) * params.get(SearchParams.CAPTURE);
             // Bonus for capturing with less valuable piece
-            score += (getPieceValue(move.capturedPiece) - getPieceValue(move.piece)) * 5;
+            score += (getPieceValue(move.capturedPiece) - getPieceValue(move.piece))
+                    * params.get(SearchParams.EXCHANGE);
         }
 
         // Check moves
         Piece[][] newBoard = getBoard(tmpMoves);
         String opponentColor = currentColor.equals("White") ? "Black" : "White";
         if (underCheck(newBoard, opponentColor)) {
-            score += CHECK_VALUE;
+            score += params.get(SearchParams.CHECK);
         }
 
         // Moves that defend king from check
         if (underCheck(board, currentColor) && !underCheck(newBoard, currentColor)) {
-            score += CHECK_VALUE * 2;
+            score += params.get(SearchParams.EVASION);
         }
 
         // Bonus for moves towards enemy king
         int[] enemyKingPos = findKingPosition(board, opponentColor);
         if (enemyKingPos != null) {
             int distanceToKing = Math.abs(move.toRow - enemyKingPos[0]) + Math.abs(move.toCol - enemyKingPos[1]);
-            score += (7 - distanceToKing) * 10;
+            score += (7 - distanceToKing) * params.get(SearchParams.KING_APPROACH);
         }
 
         return score;
@@ -341,7 +492,7 @@ public class AI_Minimax extends Player {
     /**
      * Get piece value for evaluation.
      */
-    private static int getPieceValue(Piece piece) {
+    static int getPieceValue(Piece piece) {
         if (piece == null)
             return 0;
         return switch (piece.name) {
@@ -358,15 +509,236 @@ public class AI_Minimax extends Player {
      * Public method to get the best move with enhancements.
      */
     public static Move getBestMove(ArrayList<Move> moves, int baseDepth, boolean isMaximizingPlayer) {
-        int adaptiveDepth = Math.min(baseDepth, MAX_DEPTH);
-        Move move = minimax(moves, adaptiveDepth, Integer.MIN_VALUE, Integer.MAX_VALUE, isMaximizingPlayer);
+        long rootKey = Zobrist.hash(getBoard(moves), isMaximizingPlayer ? "White" : "Black",
+                moves.isEmpty() ? null : moves.getLast());
+        return getBestMove(moves, new long[] { rootKey }, 0, baseDepth, isMaximizingPlayer);
+    }
+
+    /**
+     * Gets the best move, treating repetitions of the given game positions as
+     * draws.
+     *
+     * @param moves              Moves of the game so far
+     * @param history            Keys of the positions since the last capture or pawn
+     *                           move, ending with the current one
+     * @param halfMoveClock      Half-moves since the last capture or pawn move
+     * @param baseDepth          Search depth
+     * @param isMaximizingPlayer true if White is to move
+     * @return The best move, or null if there is none
+     */
+    public static Move getBestMove(ArrayList<Move> moves, long[] history, int halfMoveClock, int baseDepth,
+            boolean isMaximizingPlayer) {
+        return getBestMove(moves, history, halfMoveClock, baseDepth, isMaximizingPlayer, 0);
+    }
+
+    /**
+     * Gets the best move within a time budget. The search deepens one
+     * half-move at a time and, once the budget is spent, plays the best move
+     * of the deepest search that finished.
+     *
+     * @param moves              Moves of the game so far
+     * @param history            Keys of the positions since the last capture or pawn
+     *                           move, ending with the current one
+     * @param halfMoveClock      Half-moves since the last capture or pawn move
+     * @param baseDepth          Search depth
+     * @param isMaximizingPlayer true if White is to move
+     * @param budgetNanos        Time the search may take, 0 for no limit
+     * @return The best move, or null if there is none
+     */
+    public static Move getBestMove(ArrayList<Move> moves, long[] history, int halfMoveClock, int baseDepth,
+            boolean isMaximizingPlayer, long budgetNanos) {
+        return search(moves, history, halfMoveClock, baseDepth, isMaximizingPlayer, budgetNanos, () -> false);
+    }
+
+    /**
+     * Searches for the best move until done, out of time or cancelled.
+     *
+     * @param cancelled Returns true once the search should be abandoned
+     * @see #getBestMove(ArrayList, long[], int, int, boolean, long)
+     */
+    static Move search(ArrayList<Move> moves, long[] history, int halfMoveClock, int baseDepth,
+            boolean isMaximizingPlayer, long budgetNanos, BooleanSupplier cancelled) {
+        return search(moves, history, halfMoveClock, baseDepth, isMaximizingPlayer, budgetNanos, cancelled, null);
+    }
+
+    /**
+     * Searches for the best move, publishing progress as it goes.
+     *
+     * @param progress Receives the search's progress, or null
+     * @see #search(ArrayList, long[], int, int, boolean, long, BooleanSupplier)
+     */
+    static Move search(ArrayList<Move> moves, long[] history, int halfMoveClock, int baseDepth,
+            boolean isMaximizingPlayer, long budgetNanos, BooleanSupplier cancelled,
+            LatestValue<SearchProgress> progress) {
+        SearchContext context = new SearchContext(history, halfMoveClock, budgetNanos, cancelled);
+        if (progress != null) {
+            context.reportTo(progress);
+        }
+        return search(context, moves, baseDepth, isMaximizingPlayer);
+    }
+
+    /**
+     * Searches for the best move with a prepared context, which sets the
+     * limits and weights of the search.
+     *
+     * The search deepens one half-move at a time up to the given depth, each
+     * depth ordering its moves by the table entries the last one left. When the
+     * context's time or node limit stops a depth part way, that depth's result
+     * is thrown away, since its unsearched moves were only scored statically,
+     * and the best move of the last finished depth is played. The first depth
+     * always finishes unless the search is cancelled, so there is a move to
+     * play however small the budget.
+     *
+     * @param context Search state rooted at the current position
+     * @see #search(ArrayList, long[], int, int, boolean, long, BooleanSupplier)
+     */
+    static Move search(SearchContext context, ArrayList<Move> moves, int baseDepth, boolean isMaximizingPlayer) {
         ArrayList<Move> validMoves = validMoves(getBoard(moves), isMaximizingPlayer ? "White" : "Black",
                 moves.isEmpty() ? null : moves.getLast());
         if (validMoves.isEmpty())
             return null;
-        if (move.fromRow == -1)
-            move = validMoves.get(new Random().nextInt(validMoves.size()));
-        return move;
+        int maxDepth = Math.min(baseDepth, MAX_DEPTH);
+        context.evaluateWith(network, getBoard(moves));
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long allocated = EngineMetrics.allocatedBytes();
+        Move best = null;
+        int reached = 0;
+        context.holdLimits(true);
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            SearchIterationEvent iteration = new SearchIterationEvent();
+            iteration.begin();
+            Move move = minimax(context, moves, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, isMaximizingPlayer);
+            boolean stopped = context.shouldStop();
+            context.holdLimits(false);
+            if (stopped || move.fromRow == -1) {
+                break;
+            }
+            best = move;
+            reached = depth;
+            iteration.source = "engine";
+            iteration.depth = depth;
+            iteration.score = move.eval;
+            iteration.nodes = context.nodes();
+            iteration.commit();
+            if (isMateScore(move.eval)) {
+                break; // Deeper searches find the same mate
+            }
+        }
+        EngineMetrics.recordSearch(context, System.nanoTime() - start, EngineMetrics.allocatedBytes() - allocated);
+        event.depth = reached;
+        event.nodes = context.nodes();
+        event.quiescenceNodes = context.quiescenceNodes();
+        event.bestMove = best == null ? null : best.toCoordinates();
+        event.stopped = reached < maxDepth && (best == null || !isMateScore(best.eval));
+        event.commit();
+        // Only a cancelled search ends without a finished depth, and its move is discarded
+        return best != null ? best : validMoves.getFirst();
+    }
+
+    /**
+     * Scores the position after a sequence of moves with a full-window search.
+     * Unlike {@link #search}, the depth is not capped and the score is returned
+     * rather than a move. A position the context already considers drawn
+     * scores as a draw.
+     *
+     * @param context     Search state whose current position is the one to score
+     * @param moves       Moves leading to the position
+     * @param depth       Search depth, 0 for a quiescence search only
+     * @param whiteToMove true if White is to move
+     * @return The score from White's point of view
+     */
+    static int score(SearchContext context, ArrayList<Move> moves, int depth, boolean whiteToMove) {
+        if (context.isDraw()) {
+            return DRAW_VALUE;
+        }
+        context.evaluateWith(network, getBoard(moves));
+        return minimax(context, moves, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, whiteToMove).eval;
+    }
+
+    /**
+     * Checks whether a score means a forced checkmate.
+     *
+     * @param score Score from {@link #score}
+     * @return true for a mate score
+     */
+    static boolean isMateScore(int score) {
+        return Math.abs(score) >= CHECKMATE_VALUE / 2;
+    }
+
+    /**
+     * Chooses how searches that start from now on evaluate positions. Entries
+     * the other evaluation left in the transposition table are cleared.
+     *
+     * @param network The network to evaluate with, or null for the hand-crafted
+     *                evaluation
+     */
+    public static void useNetwork(Nnue network) {
+        AI_Minimax.network = network;
+        TABLE.clear();
+    }
+
+    /**
+     * Returns the network searches evaluate with.
+     *
+     * @return The network, or null if the hand-crafted evaluation is used
+     */
+    public static Nnue network() {
+        return network;
+    }
+
+    /**
+     * Empties the transposition table, as when a new game starts, so entries
+     * from the old game do not crowd out the new one's.
+     */
+    public static void clearTable() {
+        TABLE.clear();
+    }
+
+    /**
+     * Returns the legal moves of a side after a sequence of moves.
+     *
+     * @param moves Moves of the game so far
+     * @param white true for White's moves
+     * @return The legal moves
+     */
+    static ArrayList<Move> legalMoves(ArrayList<Move> moves, boolean white) {
+        return validMoves(getBoard(moves), white ? "White" : "Black", moves.isEmpty() ? null : moves.getLast());
+    }
+
+    /**
+     * Returns the legal moves of a side in a position.
+     *
+     * @param board    The position
+     * @param white    true for White's moves
+     * @param lastMove The move that led to the position, or null
+     * @return The legal moves
+     */
+    static ArrayList<Move> legalMoves(Piece[][] board, boolean white, Move lastMove) {
+        return validMoves(board, white ? "White" : "Black", lastMove);
+    }
+
+    /**
+     * Checks whether a side is in check after a sequence of moves.
+     *
+     * @param moves Moves of the game so far
+     * @param white true for White
+     * @return true if the side's king is attacked
+     */
+    static boolean inCheck(ArrayList<Move> moves, boolean white) {
+        return underCheck(getBoard(moves), white ? "White" : "Black");
+    }
+
+    /**
+     * Returns the Zobrist key of the position after a sequence of moves.
+     *
+     * @param moves       Moves of the game so far
+     * @param whiteToMove true if White is to move
+     * @return The position key
+     */
+    static long positionKey(ArrayList<Move> moves, boolean whiteToMove) {
+        return Zobrist.hash(getBoard(moves), whiteToMove ? "White" : "Black", moves.isEmpty() ? null : moves.getLast());
     }
 
     /**
@@ -378,8 +750,11 @@ public class AI_Minimax extends Player {
     }
 
     private static boolean isCheckmate(ArrayList<Move> moves, String color) {
-        Piece[][] board = getBoard(moves);
-        return underCheck(board, color) && validMoves(board, color, moves.isEmpty() ? null : moves.getLast()).isEmpty();
+        return isCheckmate(getBoard(moves), color, moves.isEmpty() ? null : moves.getLast());
+    }
+
+    private static boolean isCheckmate(Piece[][] board, String color, Move lastMove) {
+        return underCheck(board, color) && validMoves(board, color, lastMove).isEmpty();
     }
 
     private static boolean isStalemate(ArrayList<Move> moves, String color) {
@@ -391,12 +766,13 @@ public class AI_Minimax extends Player {
     /**
      * Get the current board state after applying the moves.
      */
-    private static Piece[][] getBoard(ArrayList<Move> moves) {
+    static Piece[][] getBoard(ArrayList<Move> moves) {
         Piece[][] board = Piece.getInitialSetup();
         for (Move move : moves) {
             // Handle the basic move
             board[move.toRow][move.toCol] = board[move.fromRow][move.fromCol];
             board[move.fromRow][move.fromCol] = null;
+            board[move.toRow][move.toCol].haveMove = true;
 
             // Handle pawn promotion
             if (board[move.toRow][move.toCol].name.equals("Pawn")) {
@@ -415,9 +791,11 @@ public class AI_Minimax extends Player {
                 if (move.toCol - move.fromCol == 2) {
                     board[move.fromRow][5] = board[move.fromRow][7];
                     board[move.fromRow][7] = null;
+                    board[move.fromRow][5].haveMove = true;
                 } else if (move.toCol - move.fromCol == -2) {
                     board[move.fromRow][3] = board[move.fromRow][0];
                     board[move.fromRow][0] = null;
+                    board[move.fromRow][3].haveMove = true;
                 }
             }
         }
@@ -0,0 +1,86 @@
+package AI;
+
+import Utilities.Move;
+
+import java.util.List;
+
+/**
+ * One snapshot of the analysis of a position: the best lines found at a
+ * completed depth, best first for the side to move.
+ */
+public final class Analysis {
+    /** A principal variation and its score. */
+    public static final class Line {
+        /** Score from White's point of view. */
+        public final int score;
+
+        /** Moves of the variation, starting with the root move. */
+        public final List<Move> moves;
+
+        Line(int score, List<Move> moves) {
+            this.score = score;
+            this.moves = moves;
+        }
+
+        /**
+         * Formats the line as its score in pawns, or {@code #} for a forced mate,
+         * followed by the moves in coordinate notation, e.g.
+         * {@code +0.4  e2e4 e7e5 g1f3}.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(formatScore(score)).append(' ');
+            for (Move move : moves) {
+                text.append(' ').append(move.toCoordinates());
+            }
+            return text.toString();
+        }
+    }
+
+    /** Zobrist key of the analysed position. */
+    public final long key;
+
+    /** Depth the lines were searched to, in half-moves. */
+    public final int depth;
+
+    /** The best lines, best first for the side to move. */
+    public final List<Line> lines;
+
+    /** Nodes searched to reach this depth. */
+    public final long nodes;
+
+    /** Time spent searching to reach this depth, in nanoseconds. */
+    public final long nanos;
+
+    Analysis(long key, int depth, List<Line> lines, long nodes, long nanos) {
+        this.key = key;
+        this.depth = depth;
+        this.lines = lines;
+        this.nodes = nodes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the search speed.
+     *
+     * @return Nodes per second, 0 if no time was measured
+     */
+    public long nodesPerSecond() {
+        return nanos > 0 ? nodes * 1_000_000_000L / nanos : 0;
+    }
+
+    /**
+     * Formats a score from White's point of view in pawns, or as {@code +#} or
+     * {@code -#} for a forced mate.
+     *
+     * @param score The score
+     * @return The formatted score
+     */
+    static String formatScore(int score) {
+        if (AI_Minimax.isMateScore(score)) {
+            return score > 0 ? "+#" : "-#";
+        }
+        return String.format("%+.1f", score / 10.0);
+    }
+}
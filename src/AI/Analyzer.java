@@ -0,0 +1,214 @@
+package AI;
+
+import Diagnostics.SearchIterationEvent;
+import Utilities.Move;
+import Utilities.MoveCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyses a position in the background, reporting its best lines at each
+ * depth. Every root move is scored with a full-window search, so the top lines
+ * are exact rather than only the best one; the searches deepen one half-move
+ * at a time up to {@link AI_Minimax#MAX_DEPTH} and share the engine's
+ * {@link AI_Minimax#TABLE}, from which each line's continuation is read back.
+ *
+ * Sessions run on the {@link EngineService} pool. {@link #analyze} cancels the
+ * running session by raising a flag the search checks at every node, so a new
+ * position starts being analysed at once. The
+ * last result of each position is kept: returning to one reports it straight
+ * away and carries on from the next depth.
+ */
+public final class Analyzer {
+    /** Receives each completed depth. Called on an engine thread. */
+    public interface Listener {
+        void onAnalysis(Analysis analysis);
+    }
+
+    /** Number of positions whose results are kept. */
+    private static final int CACHE_SIZE = 256;
+
+    private final int lineCount;
+    private final Listener listener;
+    private final Map<Long, Analysis> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Analysis> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+    private volatile Session current;
+
+    /**
+     * Creates an idle analyzer.
+     *
+     * @param lineCount Number of lines to report
+     * @param listener  Receives the results
+     */
+    public Analyzer(int lineCount, Listener listener) {
+        this.lineCount = lineCount;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts analysing a position, replacing the running session if any.
+     *
+     * @param moves         Moves of the game so far
+     * @param history       Keys of the positions since the last capture or pawn
+     *                      move, ending with the position to analyse
+     * @param halfMoveClock Half-moves since the last capture or pawn move
+     * @param whiteToMove   true if White is to move
+     */
+    public void analyze(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean whiteToMove) {
+        stop();
+        Session session = new Session(new ArrayList<>(moves), history, halfMoveClock, whiteToMove);
+        current = session;
+        Analysis known = cache.get(history[history.length - 1]);
+        if (known != null) {
+            listener.onAnalysis(known);
+        }
+        EngineService.shared().execute(() -> session.run(known));
+    }
+
+    /** Cancels the running session, if any, without waiting for it to finish. */
+    public void stop() {
+        Session session = current;
+        if (session != null) {
+            session.cancelled = true;
+            current = null;
+        }
+    }
+
+    private final class Session {
+        private final ArrayList<Move> moves;
+        private final long[] history;
+        private final int halfMoveClock;
+        private final boolean whiteToMove;
+        private volatile boolean cancelled = false;
+
+        Session(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean whiteToMove) {
+            this.moves = moves;
+            this.history = history;
+            this.halfMoveClock = halfMoveClock;
+            this.whiteToMove = whiteToMove;
+        }
+
+        void run(Analysis known) {
+            long key = history[history.length - 1];
+            ArrayList<Move> roots = AI_Minimax.legalMoves(moves, whiteToMove);
+            if (roots.isEmpty()) {
+                publish(new Analysis(key, 0, List.of(), 0, 0));
+                return;
+            }
+            int firstDepth = known != null ? known.depth + 1 : 1;
+            int[] scores = new int[roots.size()];
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (int depth = firstDepth; depth <= AI_Minimax.MAX_DEPTH; depth++) {
+                for (int i = 0; i < roots.size(); i++) {
+                    SearchContext context = childContext(roots.get(i));
+                    ArrayList<Move> line = new ArrayList<>(moves);
+                    line.add(roots.get(i));
+                    scores[i] = AI_Minimax.score(context, line, depth - 1, !whiteToMove);
+                    nodes += context.nodes();
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                sortByScore(roots, scores);
+                ArrayList<Analysis.Line> lines = new ArrayList<>();
+                for (int i = 0; i < Math.min(lineCount, roots.size()); i++) {
+                    lines.add(new Analysis.Line(scores[i], variation(roots.get(i), depth)));
+                }
+                SearchIterationEvent iteration = new SearchIterationEvent();
+                iteration.source = "analysis";
+                iteration.depth = depth;
+                iteration.score = scores[0];
+                iteration.nodes = nodes;
+                iteration.commit();
+                Analysis analysis = new Analysis(key, depth, List.copyOf(lines), nodes, System.nanoTime() - start);
+                cache.put(key, analysis);
+                publish(analysis);
+            }
+        }
+
+        private void publish(Analysis analysis) {
+            if (!cancelled && current == this) {
+                listener.onAnalysis(analysis);
+            }
+        }
+
+        /** Creates the search state for the position after a root move. */
+        private SearchContext childContext(Move root) {
+            ArrayList<Move> line = new ArrayList<>(moves);
+            line.add(root);
+            long key = AI_Minimax.positionKey(line, !whiteToMove);
+            boolean irreversible = root.piece.name.equals("Pawn") || root.capturedPiece != null;
+            long[] lineHistory;
+            if (irreversible) {
+                lineHistory = new long[] { key };
+            } else {
+                lineHistory = Arrays.copyOf(history, history.length + 1);
+                lineHistory[history.length] = key;
+            }
+            return new SearchContext(lineHistory, irreversible ? 0 : halfMoveClock + 1, 0, () -> cancelled);
+        }
+
+        /** Sorts the root moves and their scores best first for the side to move. */
+        private void sortByScore(ArrayList<Move> roots, int[] scores) {
+            Integer[] order = new Integer[roots.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> whiteToMove ? Integer.compare(scores[b], scores[a])
+                    : Integer.compare(scores[a], scores[b]));
+            ArrayList<Move> sortedMoves = new ArrayList<>(roots.size());
+            int[] sortedScores = new int[scores.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedMoves.add(roots.get(order[i]));
+                sortedScores[i] = scores[order[i]];
+            }
+            roots.clear();
+            roots.addAll(sortedMoves);
+            System.arraycopy(sortedScores, 0, scores, 0, scores.length);
+        }
+
+        /**
+         * Reads a root move's continuation back from the table, following the
+         * stored best move of each position.
+         */
+        private List<Move> variation(Move root, int depth) {
+            ArrayList<Move> variation = new ArrayList<>();
+            variation.add(root);
+            ArrayList<Move> line = new ArrayList<>(moves);
+            line.add(root);
+            boolean white = !whiteToMove;
+            while (variation.size() < depth) {
+                long entry = AI_Minimax.TABLE.probe(AI_Minimax.positionKey(line, white));
+                if (entry == TranspositionTable.MISS || TranspositionTable.move(entry) == MoveCodec.NONE) {
+                    break;
+                }
+                short code = TranspositionTable.move(entry);
+                Move next = null;
+                for (Move move : AI_Minimax.legalMoves(line, white)) {
+                    if (MoveCodec.encode(move) == code) {
+                        next = move;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                variation.add(next);
+                line.add(next);
+                white = !white;
+            }
+            return List.copyOf(variation);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package AI;
+
+/**
+ * Tells one engine request when to stop: when its owner cancels it, or when its
+ * deadline passes. The search polls {@link #shouldStop()} at every node, so
+ * both take effect within microseconds. A cancelled request's result is
+ * discarded; an expired one still returns the best move of the deepest search
+ * it finished.
+ */
+public final class CancellationToken {
+    /** System.nanoTime() at which the request expires, if {@link #timed}. */
+    private final long deadline;
+    private final boolean timed;
+    private volatile boolean cancelled = false;
+
+    private CancellationToken(long budgetNanos) {
+        timed = budgetNanos > 0;
+        deadline = System.nanoTime() + budgetNanos;
+    }
+
+    /**
+     * Creates a token without a deadline.
+     *
+     * @return A token that only stops when cancelled
+     */
+    public static CancellationToken create() {
+        return new CancellationToken(0);
+    }
+
+    /**
+     * Creates a token that expires after a time budget.
+     *
+     * @param budgetNanos Time the request may take from now, 0 for no limit
+     * @return The token
+     */
+    public static CancellationToken withDeadline(long budgetNanos) {
+        return new CancellationToken(budgetNanos);
+    }
+
+    /** Cancels the request. Safe to call from any thread, any number of times. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the request was cancelled.
+     *
+     * @return true once {@link #cancel()} has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Checks whether the request's deadline has passed.
+     *
+     * @return true once the time budget is spent
+     */
+    public boolean isExpired() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Gets the time left before the deadline, for searches that handle their
+     * own time budget.
+     *
+     * @return The nanoseconds left, at least 1 once expired, or 0 without a
+     *         deadline
+     */
+    public long remainingNanos() {
+        return timed ? Math.max(1, deadline - System.nanoTime()) : 0;
+    }
+
+    /**
+     * Checks whether the search should stop.
+     *
+     * @return true if the request was cancelled or has expired
+     */
+    public boolean shouldStop() {
+        return cancelled || isExpired();
+    }
+}
@@ -0,0 +1,316 @@
+package AI;
+
+import Storage.ArchiveWriter;
+import Storage.SavedGame;
+import Storage.SavedMove;
+import Utilities.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Generates scored training positions by self-play, for the [NnueTrainer].
+///
+/// Every core plays games of the engine against itself from random openings,
+/// searching each move to a fixed number of nodes, without evaluation noise, so
+/// that the data does not depend on how busy the machine is. Each worker searches through a
+/// transposition table of its own, cleared before every game, so that workers
+/// do not contend for the shared one and a game's scores do not depend on what
+/// the other workers searched. Each position of a finished game is
+/// written as a [PackedPosition] record with the score of the search made in it
+/// and the game's result. A position is kept once per run, by its Zobrist key,
+/// and only if it is quiet: past the random opening moves, not in check, not
+/// where the best move captures or promotes, and not with a mate score, none of
+/// which says much about the evaluation.
+///
+/// Workers pack records into buffers of their own and queue the full ones for a
+/// writer thread, which drains the queue with gathering writes to the file
+/// channel, so searches only wait for the disk if it falls a whole queue
+/// behind. Records are appended, so several runs can add to the same file.
+///
+/// The games themselves can be kept too, in a game archive for the
+/// [PuzzleMiner] and the other tools that read archives. That file is replaced
+/// rather than appended to.
+///
+/// Usage: `generate <output file> [games] [nodes per move] [threads] [games archive]`
+public class DataGenerator {
+    /** Random half-moves each game starts with. */
+    private static final int OPENING_PLIES = 8;
+
+    /** Half-moves after which a game is called drawn. */
+    private static final int MAX_PLIES = 240;
+
+    /** Size of each worker's transposition table, as a power of two. */
+    private static final int TABLE_BITS = 18;
+
+    /** Records per worker buffer: a megabyte. */
+    private static final int BUFFER_POSITIONS = 1 << 15;
+
+    /** Full buffers that can wait for the writer. */
+    private static final int QUEUE_SIZE = 64;
+
+    /** Seconds between progress reports. */
+    private static final int REPORT_SECONDS = 10;
+
+    /** Queued after the last buffer to stop the writer. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final int games;
+    private final long nodes;
+    private final KeySet seen = new KeySet();
+    private final BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicLong kept = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private volatile long written;
+    private volatile IOException failure;
+
+    /** Where finished games are saved, or null. */
+    private ArchiveWriter archive;
+
+    private DataGenerator(int games, long nodes) {
+        this.games = games;
+        this.nodes = nodes;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: generate <output file> [games] [nodes per move] [threads] [games archive]");
+            return;
+        }
+        Path output = Paths.get(args[0]);
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        long nodes = args.length > 2 ? Long.parseLong(args[2]) : 5000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        DataGenerator generator = new DataGenerator(games, nodes);
+        if (args.length > 4) {
+            try (ArchiveWriter archive = new ArchiveWriter(Paths.get(args[4]))) {
+                generator.archive = archive;
+                generator.run(output, threads);
+            }
+            System.out.println("Saved the games to " + args[4]);
+        } else {
+            generator.run(output, threads);
+        }
+    }
+
+    private void run(Path output, int threads) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            Thread writer = new Thread(() -> write(channel), "data-writer");
+            writer.start();
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                pool.execute(this::play);
+            }
+            pool.shutdown();
+            long start = System.nanoTime();
+            while (!pool.awaitTermination(REPORT_SECONDS, TimeUnit.SECONDS)) {
+                report(start);
+            }
+            queue.put(END);
+            writer.join();
+            report(start);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        System.out.println("Wrote " + written + " positions to " + output);
+    }
+
+    /** Plays games until enough have been started, packing their positions. */
+    private void play() {
+        SplittableRandom random = new SplittableRandom();
+        TranspositionTable table = new TranspositionTable(TABLE_BITS);
+        SelfPlay.Engine engine = (moves, history, halfMoveClock, whiteToMove) -> {
+            SearchContext context = new SearchContext(history, halfMoveClock);
+            context.useTable(table);
+            context.limitNodes(nodes);
+            context.disableNoise();
+            return AI_Minimax.search(context, moves, AI_Minimax.MAX_DEPTH, whiteToMove);
+        };
+        ByteBuffer buffer = newBuffer();
+        while (failure == null && started.getAndIncrement() < games) {
+            ArrayList<Move> opening = SelfPlay.randomOpening(OPENING_PLIES, random);
+            table.clear();
+            SelfPlay game = SelfPlay.play(opening, engine, engine, MAX_PLIES);
+            ArrayList<Move> before = new ArrayList<>();
+            for (int ply = 0; ply < game.moves.size(); ply++) {
+                Move move = game.moves.get(ply);
+                boolean whiteToMove = ply % 2 == 0;
+                if (ply >= opening.size() && isQuiet(move) && !AI_Minimax.inCheck(before, whiteToMove)) {
+                    if (!seen.add(game.keys[ply])) {
+                        duplicates.incrementAndGet();
+                    } else {
+                        PackedPosition.pack(AI_Minimax.getBoard(before), whiteToMove, move.eval, game.result, ply,
+                                buffer);
+                        kept.incrementAndGet();
+                        if (!buffer.hasRemaining()) {
+                            hand(buffer);
+                            buffer = newBuffer();
+                        }
+                    }
+                }
+                before.add(move);
+            }
+            if (archive != null) {
+                save(game);
+            }
+            finished.incrementAndGet();
+        }
+        hand(buffer);
+    }
+
+    /**
+     * Tells whether the search's best move and score describe a quiet
+     * position.
+     */
+    private static boolean isQuiet(Move best) {
+        boolean promotes = best.piece.name.equals("Pawn") && (best.toRow == 0 || best.toRow == 7);
+        return best.capturedPiece == null && !promotes && !AI_Minimax.isMateScore(best.eval);
+    }
+
+    /** Adds a finished game to the games archive. */
+    private void save(SelfPlay game) {
+        SavedGame saved = new SavedGame();
+        saved.player1Name = "AI MiniMax";
+        saved.player2Name = "AI MiniMax";
+        for (Move move : game.moves) {
+            saved.moves.add(SavedMove.of(move));
+        }
+        synchronized (archive) {
+            try {
+                archive.write(saved);
+            } catch (IOException e) {
+                e.printStackTrace();
+                failure = e;
+            }
+        }
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocate(BUFFER_POSITIONS * PackedPosition.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Queues a worker's buffer for the writer, waiting if the queue is full. */
+    private void hand(ByteBuffer buffer) {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            queue.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes queued buffers until the end marker, as many at once as are
+     * waiting. After a failed write the rest are discarded, so workers never
+     * block on a full queue, and they stop starting games.
+     */
+    private void write(FileChannel channel) {
+        List<ByteBuffer> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                boolean end = batch.remove(END);
+                if (failure == null && !batch.isEmpty()) {
+                    try {
+                        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                        long remaining = 0;
+                        for (ByteBuffer buffer : buffers) {
+                            remaining += buffer.remaining();
+                        }
+                        long bytes = remaining;
+                        while (remaining > 0) {
+                            remaining -= channel.write(buffers);
+                        }
+                        written += bytes / PackedPosition.SIZE;
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        failure = e;
+                    }
+                }
+                batch.clear();
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report(long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d/%d games, %d positions kept, %d duplicates, %.1f positions/s%n", finished.get(),
+                games, kept.get(), duplicates.get(), kept.get() / seconds);
+    }
+
+    /**
+     * The keys of the positions kept so far: an insert-only open-addressing
+     * set of longs, eight bytes a key rather than the eighty of a boxed set.
+     */
+    private static final class KeySet {
+        private long[] keys = new long[1 << 20];
+        private int size;
+        private boolean hasZero;
+
+        /**
+         * Adds a key.
+         *
+         * @return true if the key was not in the set yet
+         */
+        synchronized boolean add(long key) {
+            if (key == 0) { // 0 marks a free slot
+                boolean added = !hasZero;
+                hasZero = true;
+                return added;
+            }
+            if (!insert(keys, key)) {
+                return false;
+            }
+            if (++size * 2 > keys.length) {
+                long[] grown = new long[keys.length * 2];
+                for (long old : keys) {
+                    if (old != 0) {
+                        insert(grown, old);
+                    }
+                }
+                keys = grown;
+            }
+            return true;
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int i = (int) (key ^ key >>> 32) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == key) {
+                    return false;
+                }
+                if (table[i] == 0) {
+                    table[i] = key;
+                    return true;
+                }
+            }
+        }
+    }
+}
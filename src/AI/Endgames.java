@@ -0,0 +1,459 @@
+package AI;
+
+import Pieces.Piece;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/// Knowledge of the endgames the generic evaluation gets wrong, found by the
+/// material of the position.
+///
+/// A signature such as `KRK` names the stronger side's pieces, then the weaker
+/// side's. Each is registered for both colors under its material key, the
+/// counts of every non-king piece packed four bits each into a long, so finding
+/// the knowledge for a position takes one pass over the board and one hash
+/// lookup. There are three kinds:
+///
+/// - Mate drivers for won endgames (KQK, KRK, KBNK, a won KPK, and a bare king
+///   against a queen or rook and anything else) score far above any material,
+///   plus terms for driving the bare king to the edge, or to a corner the
+///   bishop covers, and for bringing the kings together. The search then sees
+///   progress long before it sees the mate.
+/// - Known draws (too little material to force mate, and the KPK positions the
+///   [Kpk] table marks drawn) score as draws, and the search does not expand
+///   them.
+/// - Scale factors shrink the generic evaluation of endgames that are hard to
+///   win: a rook against a minor piece, a side without pawns at most a minor
+///   piece ahead, and bishops of opposite colors with only pawns besides.
+final class Endgames {
+    /** Score of a won endgame before its progress terms: far above any material, far below a mate. */
+    static final int KNOWN_WIN = 10000;
+
+    static final int WHITE = 0;
+    static final int BLACK = 1;
+
+    static final int PAWN = 0;
+    static final int KNIGHT = 1;
+    static final int BISHOP = 2;
+    static final int ROOK = 3;
+    static final int QUEEN = 4;
+    static final int KING = 5;
+
+    private static final String LETTERS = "PNBRQK";
+
+    /** Scale of a scale factor that leaves the evaluation as it is. */
+    private static final int FULL_SCALE = 64;
+
+    private static final Endgame DRAW = new Endgame() {
+        @Override
+        public int evaluate(Position position, int strong, int eval) {
+            return 0;
+        }
+
+        @Override
+        public boolean isDraw(Position position, int strong) {
+            return true;
+        }
+    };
+
+    private static final Map<Long, Entry> ENDGAMES = new HashMap<>();
+
+    static {
+        for (String signature : new String[] { "KK", "KNK", "KBK", "KNNK", "KNKN", "KBKB", "KBKN" }) {
+            register(signature, DRAW);
+        }
+        register("KQK", Endgames::mate);
+        register("KRK", Endgames::mate);
+        register("KBNK", Endgames::bishopKnightMate);
+        register("KPK", new PawnEndgame());
+        register("KRKN", scale(16));
+        register("KRKB", scale(16));
+    }
+
+    private Endgames() {
+    }
+
+    /** Evaluation rules of one endgame, seen from the side its signature names first. */
+    interface Endgame {
+        /**
+         * Scores a position of the endgame.
+         *
+         * @param position The position
+         * @param strong   Color of the side the signature names first
+         * @param eval     The generic evaluation, from that side's point of view
+         * @return The score from that side's point of view
+         */
+        int evaluate(Position position, int strong, int eval);
+
+        /**
+         * Tells whether a position of the endgame is a draw whatever is played.
+         *
+         * @param position The position
+         * @param strong   Color of the side the signature names first
+         * @return true for a draw
+         */
+        default boolean isDraw(Position position, int strong) {
+            return false;
+        }
+    }
+
+    private record Entry(Endgame endgame, int strong) {
+    }
+
+    /**
+     * The material of a position: how many of each piece either side has, and
+     * where the last one found stands.
+     */
+    static final class Position {
+        final int[][] counts = new int[2][6];
+        final int[][] squares = new int[2][6];
+        final boolean whiteToMove;
+        final long key;
+
+        Position(Piece[][] board, boolean whiteToMove) {
+            this.whiteToMove = whiteToMove;
+            for (int square = 0; square < 64; square++) {
+                Piece piece = board[square / 8][square % 8];
+                if (piece != null) {
+                    int color = piece.color.equals("White") ? WHITE : BLACK;
+                    int type = LETTERS.indexOf(piece.name.equals("Knight") ? 'N' : piece.name.charAt(0));
+                    counts[color][type]++;
+                    squares[color][type] = square;
+                }
+            }
+            key = key(counts[WHITE], counts[BLACK]);
+        }
+
+        /** Counts a side's pieces other than pawns and the king. */
+        int pieces(int color) {
+            return counts[color][KNIGHT] + counts[color][BISHOP] + counts[color][ROOK] + counts[color][QUEEN];
+        }
+
+        /** Sums the values of a side's pieces other than pawns and the king. */
+        int material(int color) {
+            int[] count = counts[color];
+            return (count[KNIGHT] + count[BISHOP]) * AI_Minimax.PARAMS.get(EvalParams.KNIGHT_BISHOP)
+                    + count[ROOK] * AI_Minimax.PARAMS.get(EvalParams.ROOK)
+                    + count[QUEEN] * AI_Minimax.PARAMS.get(EvalParams.QUEEN);
+        }
+    }
+
+    /** The knowledge found for a position. */
+    record Known(Endgame endgame, Position position, int strong) {
+        /**
+         * Scores the position.
+         *
+         * @param eval The generic evaluation, from White's point of view
+         * @return The score from White's point of view
+         */
+        int evaluate(int eval) {
+            int sign = strong == WHITE ? 1 : -1;
+            return sign * endgame.evaluate(position, strong, sign * eval);
+        }
+    }
+
+    /**
+     * Finds the knowledge that applies to a position: a registered signature,
+     * else a bare king against a queen or rook, else a scale factor for a side
+     * that cannot easily win.
+     *
+     * @param board       The position
+     * @param whiteToMove true if White is to move
+     * @return The knowledge, or null if the generic evaluation applies
+     */
+    static Known probe(Piece[][] board, boolean whiteToMove) {
+        Position position = new Position(board, whiteToMove);
+        Entry entry = ENDGAMES.get(position.key);
+        if (entry != null) {
+            return new Known(entry.endgame, position, entry.strong);
+        }
+        for (int strong = WHITE; strong <= BLACK; strong++) {
+            int weak = 1 - strong;
+            int[] count = position.counts[strong];
+            if (position.pieces(weak) == 0 && position.counts[weak][PAWN] == 0
+                    && count[QUEEN] + count[ROOK] > 0) {
+                return new Known(Endgames::mate, position, strong);
+            }
+        }
+        for (int strong = WHITE; strong <= BLACK; strong++) {
+            int weak = 1 - strong;
+            if (position.counts[strong][PAWN] == 0 && position.material(strong) > position.material(weak)
+                    && position.material(strong) - position.material(weak)
+                            <= AI_Minimax.PARAMS.get(EvalParams.KNIGHT_BISHOP)) {
+                return new Known(scale(8), position, strong);
+            }
+        }
+        if (position.pieces(WHITE) == 1 && position.pieces(BLACK) == 1 && position.counts[WHITE][BISHOP] == 1
+                && position.counts[BLACK][BISHOP] == 1
+                && color(position.squares[WHITE][BISHOP]) != color(position.squares[BLACK][BISHOP])) {
+            return new Known((bishops, strong, eval) -> eval / 2, position, WHITE); // Whoever is ahead
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a position is a known draw, so there is nothing to search.
+     *
+     * @param board       The position
+     * @param whiteToMove true if White is to move
+     * @return true if the position is drawn whatever is played
+     */
+    static boolean isDraw(Piece[][] board, boolean whiteToMove) {
+        int pieces = 0;
+        for (Piece[] row : board) {
+            for (Piece piece : row) {
+                if (piece != null && ++pieces > 4) {
+                    return false; // Every registered draw has four pieces at most
+                }
+            }
+        }
+        Position position = new Position(board, whiteToMove);
+        Entry entry = ENDGAMES.get(position.key);
+        return entry != null && entry.endgame.isDraw(position, entry.strong);
+    }
+
+    /**
+     * Registers an endgame for both colors.
+     *
+     * @param signature The stronger side's pieces then the weaker side's, each
+     *                  starting with its king, as in {@code KBNK}
+     */
+    private static void register(String signature, Endgame endgame) {
+        int split = signature.indexOf('K', 1);
+        int[] strong = counts(signature.substring(0, split));
+        int[] weak = counts(signature.substring(split));
+        ENDGAMES.put(key(strong, weak), new Entry(endgame, WHITE));
+        ENDGAMES.putIfAbsent(key(weak, strong), new Entry(endgame, BLACK));
+    }
+
+    private static int[] counts(String pieces) {
+        int[] counts = new int[6];
+        for (char letter : pieces.toCharArray()) {
+            counts[LETTERS.indexOf(letter)]++;
+        }
+        return counts;
+    }
+
+    /** Packs the counts of the non-king pieces of both sides into a key. */
+    private static long key(int[] white, int[] black) {
+        long key = 0;
+        for (int type = PAWN; type < KING; type++) {
+            key |= (long) white[type] << (4 * type) | (long) black[type] << (4 * (type + 5));
+        }
+        return key;
+    }
+
+    /** Drives a bare king to the edge and mates it with a queen or rook. */
+    private static int mate(Position position, int strong, int eval) {
+        int weakKing = position.squares[1 - strong][KING];
+        int strongKing = position.squares[strong][KING];
+        return KNOWN_WIN + position.material(strong) + 10 * position.counts[strong][PAWN]
+                + pushToEdge(weakKing) + pushClose(strongKing, weakKing);
+    }
+
+    /** Drives a bare king to a corner the bishop covers, where it can be mated. */
+    private static int bishopKnightMate(Position position, int strong, int eval) {
+        int weakKing = position.squares[1 - strong][KING];
+        int strongKing = position.squares[strong][KING];
+        int row = weakKing / 8;
+        int col = weakKing % 8;
+        // a8 and h1 share the light squares' color
+        int corner = color(position.squares[strong][BISHOP]) == 0
+                ? Math.min(row + col, 14 - row - col)
+                : Math.min(row + 7 - col, 7 - row + col);
+        return KNOWN_WIN + position.material(strong) + 20 * (14 - corner) + pushClose(strongKing, weakKing)
+                + 5 * (7 - distance(position.squares[strong][KNIGHT], weakKing));
+    }
+
+    /** Keeps a share of the generic evaluation of a side that is ahead. */
+    private static Endgame scale(int scale) {
+        return (position, strong, eval) -> eval > 0 ? eval * scale / FULL_SCALE : eval;
+    }
+
+    /** Grows from 20 in the centre to 140 in a corner. */
+    private static int pushToEdge(int square) {
+        return 10 * (Math.abs(2 * (square / 8) - 7) + Math.abs(2 * (square % 8) - 7));
+    }
+
+    /** Grows as the kings come together: 120 at two squares, 20 at seven. */
+    private static int pushClose(int a, int b) {
+        return 20 * (8 - distance(a, b));
+    }
+
+    private static int distance(int a, int b) {
+        return Math.max(Math.abs(a / 8 - b / 8), Math.abs(a % 8 - b % 8));
+    }
+
+    /** Returns 0 for a light square, 1 for a dark one. */
+    private static int color(int square) {
+        return (square / 8 + square % 8) % 2;
+    }
+
+    /** King and pawn against king: won or drawn as the [Kpk] table says. */
+    private static final class PawnEndgame implements Endgame {
+        @Override
+        public int evaluate(Position position, int strong, int eval) {
+            if (isDraw(position, strong)) {
+                return 0;
+            }
+            int pawn = position.squares[strong][PAWN];
+            int advanced = strong == WHITE ? 6 - pawn / 8 : pawn / 8 - 1;
+            return KNOWN_WIN + AI_Minimax.PARAMS.get(EvalParams.PAWN) + 10 * advanced;
+        }
+
+        @Override
+        public boolean isDraw(Position position, int strong) {
+            // Seen from the pawn's side, with the pawn going up the board
+            int flip = strong == WHITE ? 0 : 56;
+            int strongKing = position.squares[strong][KING] ^ flip;
+            int weakKing = position.squares[1 - strong][KING] ^ flip;
+            int pawn = position.squares[strong][PAWN] ^ flip;
+            if (pawn % 8 > 3) {
+                strongKing ^= 7;
+                weakKing ^= 7;
+                pawn ^= 7;
+            }
+            boolean strongToMove = position.whiteToMove == (strong == WHITE);
+            return !Kpk.isWin(strongToMove, strongKing, weakKing, pawn);
+        }
+    }
+
+    /**
+     * Whether each king and pawn against king position is won, worked out
+     * backwards from the positions where the pawn promotes safely or is lost,
+     * when first needed. The pawn is White's and on files a to d; other
+     * positions are mirrored onto these.
+     */
+    static final class Kpk {
+        private static final byte INVALID = 0;
+        private static final byte UNKNOWN = 1;
+        private static final byte DRAW = 2;
+        private static final byte WIN = 4;
+
+        private static final int SIZE = 2 * 24 * 64 * 64;
+        private static final int[][] KING_MOVES = new int[64][];
+        private static final byte[] RESULTS;
+
+        static {
+            for (int square = 0; square < 64; square++) {
+                int[] moves = new int[8];
+                int count = 0;
+                for (int dr = -1; dr <= 1; dr++) {
+                    for (int dc = -1; dc <= 1; dc++) {
+                        int row = square / 8 + dr;
+                        int col = square % 8 + dc;
+                        if ((dr != 0 || dc != 0) && row >= 0 && row < 8 && col >= 0 && col < 8) {
+                            moves[count++] = row * 8 + col;
+                        }
+                    }
+                }
+                KING_MOVES[square] = Arrays.copyOf(moves, count);
+            }
+            RESULTS = new byte[SIZE];
+            for (int index = 0; index < SIZE; index++) {
+                RESULTS[index] = initial(index);
+            }
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int index = 0; index < SIZE; index++) {
+                    if (RESULTS[index] == UNKNOWN) {
+                        byte result = classify(index);
+                        if (result != UNKNOWN) {
+                            RESULTS[index] = result;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        private Kpk() {
+        }
+
+        /**
+         * Looks a position up.
+         *
+         * @param whiteToMove true if the pawn's side is to move
+         * @param whiteKing   Square of the pawn's king
+         * @param blackKing   Square of the bare king
+         * @param pawn        Square of the pawn, on files a to d
+         * @return true if the pawn's side wins
+         */
+        static boolean isWin(boolean whiteToMove, int whiteKing, int blackKing, int pawn) {
+            return RESULTS[index(whiteToMove, whiteKing, blackKing, pawn)] == WIN;
+        }
+
+        private static int index(boolean whiteToMove, int whiteKing, int blackKing, int pawn) {
+            int pawnIndex = (pawn / 8 - 1) * 4 + pawn % 8;
+            return ((whiteToMove ? 0 : 24) + pawnIndex) * 4096 + whiteKing * 64 + blackKing;
+        }
+
+        /** Decides the positions that are illegal, won at once or drawn at once. */
+        private static byte initial(int index) {
+            boolean whiteToMove = index / 4096 < 24;
+            int pawnIndex = index / 4096 % 24;
+            int pawn = (pawnIndex / 4 + 1) * 8 + pawnIndex % 4;
+            int whiteKing = index / 64 % 64;
+            int blackKing = index % 64;
+            if (distance(whiteKing, blackKing) <= 1 || whiteKing == pawn || blackKing == pawn
+                    || (whiteToMove && attackedByPawn(pawn, blackKing))) {
+                return INVALID;
+            }
+            int queening = pawn - 8;
+            if (whiteToMove && pawn / 8 == 1 && whiteKing != queening
+                    && (distance(blackKing, queening) > 1 || distance(whiteKing, queening) == 1)) {
+                return WIN; // Promotes and the queen cannot be taken
+            }
+            if (!whiteToMove) {
+                boolean canMove = false;
+                for (int to : KING_MOVES[blackKing]) {
+                    if (distance(to, whiteKing) > 1 && !attackedByPawn(pawn, to)) {
+                        canMove = true;
+                    }
+                }
+                if (!canMove || (distance(blackKing, pawn) == 1 && distance(whiteKing, pawn) > 1)) {
+                    return DRAW; // Stalemate, or the pawn falls
+                }
+            }
+            return UNKNOWN;
+        }
+
+        /**
+         * Decides a position from those its moves lead to: the side to move
+         * gets its best result among them, or the other side's if none is
+         * still unknown.
+         */
+        private static byte classify(int index) {
+            boolean whiteToMove = index / 4096 < 24;
+            int pawnIndex = index / 4096 % 24;
+            int pawn = (pawnIndex / 4 + 1) * 8 + pawnIndex % 4;
+            int whiteKing = index / 64 % 64;
+            int blackKing = index % 64;
+            byte good = whiteToMove ? WIN : DRAW;
+            byte bad = whiteToMove ? DRAW : WIN;
+            int results = INVALID;
+            if (whiteToMove) {
+                for (int to : KING_MOVES[whiteKing]) {
+                    results |= RESULTS[index(false, to, blackKing, pawn)];
+                }
+                if (pawn / 8 > 1) {
+                    results |= RESULTS[index(false, whiteKing, blackKing, pawn - 8)];
+                }
+                if (pawn / 8 == 6 && pawn - 8 != whiteKing && pawn - 8 != blackKing) {
+                    results |= RESULTS[index(false, whiteKing, blackKing, pawn - 16)];
+                }
+            } else {
+                for (int to : KING_MOVES[blackKing]) {
+                    results |= RESULTS[index(true, whiteKing, to, pawn)];
+                }
+            }
+            return (results & good) != 0 ? good : (results & UNKNOWN) != 0 ? UNKNOWN : bad;
+        }
+
+        private static boolean attackedByPawn(int pawn, int square) {
+            return square / 8 == pawn / 8 - 1 && Math.abs(square % 8 - pawn % 8) == 1;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package AI;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing what the engine and the game logic spend their time on,
+ * registered as a JMX MBean so they can be watched with JConsole or scraped.
+ *
+ * A search counts its nodes, table probes and cutoffs in its own
+ * {@link SearchContext} and adds them here once it finishes, so the search loop
+ * never touches shared memory. Game operations, which are far rarer, add to the
+ * counters directly. All counters are {@link LongAdder}s, so threads recording
+ * at the same time do not contend.
+ */
+public final class EngineMetrics implements EngineMetricsMBean {
+    public static final String OBJECT_NAME = "ChessGame:type=EngineMetrics";
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder quiescenceNodes = new LongAdder();
+    private final LongAdder depthReached = new LongAdder();
+    private final LongAccumulator maxDepthReached = new LongAccumulator(Math::max, 0);
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder firstMoveCutoffs = new LongAdder();
+    private final LongAdder cutoffMoveNumbers = new LongAdder();
+    private final LongAdder expandedNodes = new LongAdder();
+    private final LongAdder childrenSearched = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder moveValidations = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder saveNanos = new LongAdder();
+    private final LongAdder gameOverChecks = new LongAdder();
+    private final LongAdder gameOverCheckNanos = new LongAdder();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private EngineMetrics() {
+    }
+
+    /**
+     * Returns the metrics of this process.
+     *
+     * @return The registered instance
+     */
+    public static EngineMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the calling thread, for measuring a
+     * search's allocations.
+     *
+     * @return Allocated bytes, or 0 if the JVM does not measure them
+     */
+    static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return 0;
+    }
+
+    /**
+     * Adds a finished search.
+     *
+     * @param context        The search's state, holding its counts
+     * @param nanos          Time the search took
+     * @param allocatedBytes Bytes the search allocated
+     */
+    static void recordSearch(SearchContext context, long nanos, long allocatedBytes) {
+        EngineMetrics m = INSTANCE;
+        m.searches.increment();
+        m.searchNanos.add(nanos);
+        m.nodes.add(context.nodes());
+        m.quiescenceNodes.add(context.quiescenceNodes());
+        m.depthReached.add(context.depthReached());
+        m.maxDepthReached.accumulate(context.depthReached());
+        m.tableProbes.add(context.tableProbes());
+        m.tableHits.add(context.tableHits());
+        m.cutoffs.add(context.cutoffs());
+        m.firstMoveCutoffs.add(context.firstMoveCutoffs());
+        m.cutoffMoveNumbers.add(context.cutoffMoveNumbers());
+        m.expandedNodes.add(context.expandedNodes());
+        m.childrenSearched.add(context.childrenSearched());
+        m.allocatedBytes.add(allocatedBytes);
+    }
+
+    /** Counts one move validation by the game logic. */
+    public static void countMoveValidation() {
+        INSTANCE.moveValidations.increment();
+    }
+
+    /**
+     * Adds one save of a game.
+     *
+     * @param nanos Time the save took
+     */
+    public static void recordSave(long nanos) {
+        INSTANCE.saves.increment();
+        INSTANCE.saveNanos.add(nanos);
+    }
+
+    /**
+     * Adds one check for the end of a game.
+     *
+     * @param nanos Time the check took
+     */
+    public static void recordGameOverCheck(long nanos) {
+        INSTANCE.gameOverChecks.increment();
+        INSTANCE.gameOverCheckNanos.add(nanos);
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getQuiescenceNodes() {
+        return quiescenceNodes.sum();
+    }
+
+    @Override
+    public long getNodesPerSecond() {
+        long nanos = searchNanos.sum();
+        return nanos > 0 ? (nodes.sum() + quiescenceNodes.sum()) * 1_000_000_000L / nanos : 0;
+    }
+
+    @Override
+    public double getAverageDepthReached() {
+        return ratio(depthReached.sum(), searches.sum());
+    }
+
+    @Override
+    public long getMaxDepthReached() {
+        return maxDepthReached.get();
+    }
+
+    @Override
+    public double getTableHitRate() {
+        return ratio(tableHits.sum(), tableProbes.sum());
+    }
+
+    @Override
+    public double getFirstMoveCutoffRate() {
+        return ratio(firstMoveCutoffs.sum(), cutoffs.sum());
+    }
+
+    @Override
+    public double getAverageCutoffMoveNumber() {
+        return ratio(cutoffMoveNumbers.sum(), cutoffs.sum());
+    }
+
+    @Override
+    public double getAverageBranchingFactor() {
+        return ratio(childrenSearched.sum(), expandedNodes.sum());
+    }
+
+    @Override
+    public long getAllocatedBytesPerSearch() {
+        long count = searches.sum();
+        return count > 0 ? allocatedBytes.sum() / count : 0;
+    }
+
+    @Override
+    public double getAverageMoveMillis() {
+        return ratio(searchNanos.sum(), searches.sum()) / 1e6;
+    }
+
+    @Override
+    public long getMoveValidations() {
+        return moveValidations.sum();
+    }
+
+    @Override
+    public long getSaves() {
+        return saves.sum();
+    }
+
+    @Override
+    public double getAverageSaveMicros() {
+        return ratio(saveNanos.sum(), saves.sum()) / 1e3;
+    }
+
+    @Override
+    public long getGameOverChecks() {
+        return gameOverChecks.sum();
+    }
+
+    @Override
+    public double getAverageGameOverCheckMicros() {
+        return ratio(gameOverCheckNanos.sum(), gameOverChecks.sum()) / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { searches, searchNanos, nodes, quiescenceNodes, depthReached,
+                tableProbes, tableHits, cutoffs, firstMoveCutoffs, cutoffMoveNumbers, expandedNodes, childrenSearched,
+                allocatedBytes, moveValidations, saves, saveNanos, gameOverChecks, gameOverCheckNanos }) {
+            adder.reset();
+        }
+        maxDepthReached.reset();
+    }
+
+    private static double ratio(long numerator, long denominator) {
+        return denominator > 0 ? (double) numerator / denominator : 0;
+    }
+}
@@ -0,0 +1,45 @@
+package AI;
+
+/**
+ * Management interface of {@link EngineMetrics}, read through JMX under
+ * {@value EngineMetrics#OBJECT_NAME}. Averages are over every search or
+ * operation since the last {@link #reset()}.
+ */
+public interface EngineMetricsMBean {
+    long getSearches();
+
+    long getNodes();
+
+    long getQuiescenceNodes();
+
+    long getNodesPerSecond();
+
+    double getAverageDepthReached();
+
+    long getMaxDepthReached();
+
+    double getTableHitRate();
+
+    double getFirstMoveCutoffRate();
+
+    double getAverageCutoffMoveNumber();
+
+    double getAverageBranchingFactor();
+
+    long getAllocatedBytesPerSearch();
+
+    double getAverageMoveMillis();
+
+    long getMoveValidations();
+
+    long getSaves();
+
+    double getAverageSaveMicros();
+
+    long getGameOverChecks();
+
+    double getAverageGameOverCheckMicros();
+
+    /** Sets every counter back to zero. */
+    void reset();
+}
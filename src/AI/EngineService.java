@@ -0,0 +1,138 @@
+package AI;
+
+import Utilities.LatestValue;
+import Utilities.Move;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs engine searches for any number of games and analysis boards at once.
+ *
+ * Each request gets a virtual thread that hands the search to a fixed pool,
+ * sized to the machine's cores, and waits for it. Waiting costs nothing on a
+ * virtual thread. The pool runs the CPU-bound work, so requests beyond its size
+ * queue instead of oversubscribing the processor. Every request carries its own
+ * {@link CancellationToken}, so stopping one search never affects another.
+ */
+public final class EngineService {
+    private static final EngineService SHARED = new EngineService(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final ExecutorService searchPool;
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Creates a service with its own search pool.
+     *
+     * @param threads Number of searches that run at the same time
+     */
+    public EngineService(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "Engine-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        searchPool = Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Returns the service shared by the application.
+     *
+     * @return The shared service
+     */
+    public static EngineService shared() {
+        return SHARED;
+    }
+
+    /**
+     * Searches for the best move in a position.
+     *
+     * The future completes with the best move found when the search finishes or
+     * its token expires, or with null if the side to move has no move. Cancelling
+     * the token, or the future itself, stops the search and cancels the future.
+     *
+     * @param moves              Moves of the game so far
+     * @param history            Keys of the positions since the last capture or pawn
+     *                           move, ending with the current one
+     * @param halfMoveClock      Half-moves since the last capture or pawn move
+     * @param depth              Search depth
+     * @param isMaximizingPlayer true if White is to move
+     * @param token              Cancels the search or limits its time
+     * @param progress           Receives the search's progress, or null
+     * @return The move, once found
+     */
+    public CompletableFuture<Move> bestMove(ArrayList<Move> moves, long[] history, int halfMoveClock, int depth,
+            boolean isMaximizingPlayer, CancellationToken token, LatestValue<SearchProgress> progress) {
+        ArrayList<Move> line = new ArrayList<>(moves);
+        CompletableFuture<Move> result = new CompletableFuture<>();
+        result.whenComplete((move, error) -> {
+            if (result.isCancelled()) {
+                token.cancel();
+            }
+        });
+        requests.execute(() -> {
+            // The deadline is the search's time budget, so that it keeps the deepest finished result
+            Future<Move> search = searchPool.submit(() -> AI_Minimax.search(line, history, halfMoveClock, depth,
+                    isMaximizingPlayer, token.remainingNanos(), token::isCancelled, progress));
+            try {
+                Move move = search.get();
+                if (token.isCancelled()) {
+                    result.completeExceptionally(new CancellationException());
+                } else {
+                    result.complete(move);
+                }
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                token.cancel();
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Looks for a forced mate by the side to move with the {@link MateSolver}.
+     * The future completes with the outcome, which is
+     * {@link MateSolver.Status#UNKNOWN} if the token stops the search first.
+     *
+     * @param moves       Moves of the game so far
+     * @param whiteToMove true if White is to move
+     * @param maxMoves    Longest mate to look for, in moves
+     * @param token       Cancels the search or limits its time
+     * @return The outcome, once known
+     */
+    public CompletableFuture<MateSolver.Result> findMate(ArrayList<Move> moves, boolean whiteToMove, int maxMoves,
+            CancellationToken token) {
+        ArrayList<Move> line = new ArrayList<>(moves);
+        return CompletableFuture.supplyAsync(() -> new MateSolver(MateSolver.DEFAULT_MEGABYTES).solve(
+                AI_Minimax.getBoard(line), whiteToMove, line.isEmpty() ? null : line.getLast(), maxMoves,
+                Long.MAX_VALUE, token), searchPool);
+    }
+
+    /**
+     * Runs background engine work, such as pondering or analysis, on the search
+     * pool. The task must stop promptly once its own cancellation flag is raised
+     * so it does not hold a thread other searches are waiting for.
+     *
+     * @param task The work
+     */
+    void execute(Runnable task) {
+        searchPool.execute(task);
+    }
+
+    /** Stops accepting requests. Searches already running finish normally. */
+    public void shutdown() {
+        requests.shutdown();
+        searchPool.shutdown();
+    }
+}
@@ -0,0 +1,244 @@
+package AI;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The weights of the engine's evaluation. The evaluation is a sum of features
+ * of a position, each multiplied by its weight: material counts, checks,
+ * closeness to the enemy king, mobility, and a piece-square entry per pawn,
+ * knight and king. Every weight has an index; the tables take 64 indices each,
+ * one per square in row-major order.
+ *
+ * The engine reads its weights once, at startup, from the file named by the
+ * {@code chess.evalParams} system property, or from {@code eval.params} in the
+ * working directory if it exists, and otherwise uses the built-in defaults.
+ * {@link TexelTuner} writes such files.
+ *
+ * The file format is text: each weight's name followed by its value, or by
+ * 64 values for a table. Lines starting with {@code #} are comments.
+ */
+public final class EvalParams {
+    public static final int PAWN = 0;
+    public static final int KNIGHT_BISHOP = 1;
+    public static final int ROOK = 2;
+    public static final int QUEEN = 3;
+    public static final int CHECK = 4;
+    public static final int WINNING_POSITION = 5;
+    public static final int KING_PROXIMITY = 6;
+    public static final int UNMOVED_QUEEN = 7;
+    public static final int MOBILITY = 8;
+    public static final int PAWN_TABLE = 9;
+    public static final int KNIGHT_TABLE = PAWN_TABLE + 64;
+    public static final int KING_TABLE = KNIGHT_TABLE + 64;
+
+    /** Number of weights. */
+    public static final int COUNT = KING_TABLE + 64;
+
+    /** File the weights are read from when no system property names one. */
+    public static final String DEFAULT_FILE = "eval.params";
+
+    private static final String[] NAMES = { "PAWN_VALUE", "KNIGHT_BISHOP_VALUE", "ROOK_VALUE", "QUEEN_VALUE",
+            "CHECK_VALUE", "WINNING_POSITION_BONUS", "KING_PROXIMITY_VALUE", "UNMOVED_QUEEN_VALUE", "MOBILITY_VALUE",
+            "PAWN_TABLE", "KNIGHT_TABLE", "KING_ENDGAME_TABLE" };
+    private static final int[] OFFSETS = { PAWN, KNIGHT_BISHOP, ROOK, QUEEN, CHECK, WINNING_POSITION,
+            KING_PROXIMITY, UNMOVED_QUEEN, MOBILITY, PAWN_TABLE, KNIGHT_TABLE, KING_TABLE, COUNT };
+
+    private static final int[] DEFAULTS = new int[COUNT];
+
+    static {
+        int[] scalars = { 10, 30, 50, 90, 20, 200, 5, 20, 1 };
+        System.arraycopy(scalars, 0, DEFAULTS, 0, scalars.length);
+        int[] pawn = {
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 10, -5, 0, 0, -5, 10, 0,
+                0, 10, 10, 20, 20, 10, 10, 0,
+                5, 20, 20, 25, 25, 20, 20, 5,
+                10, 20, 20, 25, 25, 20, 20, 10,
+                20, 30, 30, 50, 50, 30, 30, 20,
+                50, 50, 50, 50, 50, 50, 50, 50,
+                0, 0, 0, 0, 0, 0, 0, 0,
+        };
+        int[] knight = {
+                -50, -40, -30, -30, -30, -30, -40, -50,
+                -40, -20, 0, 5, 5, 0, -20, -40,
+                -30, 5, 10, 15, 15, 10, 5, -30,
+                -30, 0, 15, 20, 20, 15, 0, -30,
+                -30, 5, 15, 20, 20, 15, 5, -30,
+                -30, 0, 10, 15, 15, 10, 0, -30,
+                -40, -20, 0, 0, 0, 0, -20, -40,
+                -50, -40, -30, -30, -30, -30, -40, -50,
+        };
+        int[] king = {
+                -50, -30, -10, 0, 0, -10, -30, -50,
+                -30, -10, 20, 30, 30, 20, -10, -30,
+                -10, 20, 40, 50, 50, 40, 20, -10,
+                0, 30, 50, 60, 60, 50, 30, 0,
+                0, 30, 50, 60, 60, 50, 30, 0,
+                -10, 20, 40, 50, 50, 40, 20, -10,
+                -30, -10, 20, 30, 30, 20, -10, -30,
+                -50, -30, -10, 0, 0, -10, -30, -50,
+        };
+        System.arraycopy(pawn, 0, DEFAULTS, PAWN_TABLE, 64);
+        System.arraycopy(knight, 0, DEFAULTS, KNIGHT_TABLE, 64);
+        System.arraycopy(king, 0, DEFAULTS, KING_TABLE, 64);
+    }
+
+    private final int[] values;
+
+    /**
+     * Creates weights from their values.
+     *
+     * @param values One value per index, {@link #COUNT} in all
+     */
+    public EvalParams(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + values.length);
+        }
+        this.values = values.clone();
+    }
+
+    /**
+     * Returns the hand-picked weights the engine was written with.
+     *
+     * @return The default weights
+     */
+    public static EvalParams defaults() {
+        return new EvalParams(DEFAULTS);
+    }
+
+    /**
+     * Reads the weights the engine starts with: those of the file named by the
+     * {@code chess.evalParams} system property, else those of
+     * {@value #DEFAULT_FILE} if it exists, else the defaults. A file that cannot
+     * be read is reported and the defaults are used.
+     *
+     * @return The weights to play with
+     */
+    public static EvalParams load() {
+        String name = System.getProperty("chess.evalParams");
+        Path file = Paths.get(name != null ? name : DEFAULT_FILE);
+        if (name == null && !Files.exists(file)) {
+            return defaults();
+        }
+        try {
+            return read(file);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return defaults();
+        }
+    }
+
+    /**
+     * Reads weights from a file. Weights the file does not name keep their
+     * default values.
+     *
+     * @param file The file to read
+     * @return The weights
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file names an unknown weight or a
+     *                                  value is not a number
+     */
+    public static EvalParams read(Path file) throws IOException {
+        int[] values = DEFAULTS.clone();
+        StringBuilder text = new StringBuilder();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.trim().startsWith("#")) {
+                text.append(line).append(' ');
+            }
+        }
+        String[] tokens = text.toString().trim().split("\\s+");
+        int next = 0;
+        while (next < tokens.length && !tokens[next].isEmpty()) {
+            int name = Arrays.asList(NAMES).indexOf(tokens[next++]);
+            if (name < 0) {
+                throw new IllegalArgumentException("Unknown weight " + tokens[next - 1] + " in " + file);
+            }
+            for (int i = OFFSETS[name]; i < OFFSETS[name + 1]; i++) {
+                if (next == tokens.length) {
+                    throw new IllegalArgumentException("Missing values for " + NAMES[name] + " in " + file);
+                }
+                values[i] = Integer.parseInt(tokens[next++]);
+            }
+        }
+        return new EvalParams(values);
+    }
+
+    /**
+     * Writes the weights to a file that {@link #read} accepts, tables as eight
+     * rows of eight.
+     *
+     * @param file    The file to write
+     * @param comment A line written at the top of the file, or null
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file, String comment) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            if (comment != null) {
+                out.write("# " + comment);
+                out.newLine();
+            }
+            for (int name = 0; name < NAMES.length; name++) {
+                out.write(NAMES[name]);
+                int size = OFFSETS[name + 1] - OFFSETS[name];
+                for (int i = 0; i < size; i++) {
+                    out.write(size == 64 && i % 8 == 0 ? "\n   " : " ");
+                    out.write(Integer.toString(values[OFFSETS[name] + i]));
+                }
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns one weight.
+     *
+     * @param index The weight's index
+     * @return Its value
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a copy of all weights.
+     *
+     * @return One value per index
+     */
+    public int[] values() {
+        return values.clone();
+    }
+
+    /**
+     * Returns a piece-square table as rows and columns.
+     *
+     * @param offset Index of the table's first square
+     * @return The table, indexed by row and then column
+     */
+    public int[][] table(int offset) {
+        int[][] table = new int[8][8];
+        for (int row = 0; row < 8; row++) {
+            System.arraycopy(values, offset + row * 8, table[row], 0, 8);
+        }
+        return table;
+    }
+
+    /**
+     * Scores features with these weights.
+     *
+     * @param features One count per index, as {@link AI_Minimax#features} fills
+     *                 them
+     * @return The sum of every count times its weight
+     */
+    public int score(int[] features) {
+        int score = 0;
+        for (int i = 0; i < COUNT; i++) {
+            score += features[i] * values[i];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,522 @@
+package AI;
+
+import Pieces.*;
+import Utilities.Fen;
+import Utilities.Move;
+import Utilities.Zobrist;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/// Finds forced mates with depth-first proof-number search (df-pn), apart from
+/// the alpha-beta search.
+///
+/// The search does not evaluate positions. It counts, for each position, how
+/// many leaves would still have to be shown to be mates to prove that the side
+/// to move wins (its proof number) and how many to prove that it does not (its
+/// disproof number), and always expands the most promising position: the one
+/// that is cheapest to settle. Positions where the attacker has one forcing
+/// line are therefore proven after a handful of nodes however wide the tree
+/// is, where full-width search would have to look at every move to the same
+/// depth. Numbers are kept from the point of view of the side to move, so an
+/// attacker's proof number is its defender child's disproof number and one
+/// procedure serves both sides.
+///
+/// The depth-first form keeps only the current line on the stack and re-reads
+/// the numbers of its siblings from a table of its own, a fixed number of
+/// megabytes whatever the search's length. When the table is full the entry
+/// that took less work to compute is replaced. Entries are keyed by position
+/// and remaining half-moves, so a position is never proven with more moves
+/// than it has left. Mates are looked for in one move, then two, and so on up
+/// to the limit, so the first one found is the shortest. A position that
+/// repeats one on the current line counts as an escape for the defender: a
+/// mate through it would be longer than one without it. Like the engine, the
+/// solver only promotes to a queen.
+///
+/// Usage: `mate <FEN or EPD file> [moves] [nodes] [table megabytes]`
+public final class MateSolver {
+    /** How a search ended. */
+    public enum Status {
+        /** A forced mate was found. */
+        MATE,
+        /** There is no forced mate within the searched number of moves. */
+        NO_MATE,
+        /** The node limit was reached or the search was cancelled first. */
+        UNKNOWN
+    }
+
+    /** The outcome of a search. */
+    public static final class Result {
+        public final Status status;
+
+        /**
+         * The number of moves of the mate, or the largest number of moves
+         * within which there is known to be no mate.
+         */
+        public final int moves;
+
+        /** The mating line as far as the table still holds it; empty without a mate. */
+        public final List<Move> line;
+
+        /** Positions expanded. */
+        public final long nodes;
+
+        /** Time the search took in nanoseconds. */
+        public final long nanos;
+
+        Result(Status status, int moves, List<Move> line, long nodes, long nanos) {
+            this.status = status;
+            this.moves = moves;
+            this.line = line;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(switch (status) {
+                case MATE -> "Mate in " + moves + ":";
+                case NO_MATE -> "No mate in " + moves + (moves == 1 ? " move" : " moves");
+                case UNKNOWN -> "Unknown, no mate in " + moves + (moves == 1 ? " move" : " moves");
+            });
+            for (Move move : line) {
+                text.append(' ').append(move.toCoordinates());
+            }
+            return text.toString();
+        }
+    }
+
+    /** Table size used when none is given. */
+    public static final int DEFAULT_MEGABYTES = 64;
+
+    /** Longest mate looked for, in moves. */
+    public static final int MAX_MOVES = 64;
+
+    /** Proof or disproof number of a settled position. */
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    /** Mixed into a position's key for each number of half-moves left. */
+    private static final long[] PLIES_KEYS = new long[2 * MAX_MOVES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6d617465L);
+        for (int i = 0; i < PLIES_KEYS.length; i++) {
+            PLIES_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private final Table table;
+    private Piece[][] board;
+    private boolean attackerWhite;
+    private long nodes;
+    private long nodeLimit;
+    private CancellationToken token;
+
+    /** Keys of the positions on the current line, for repetitions. */
+    private final long[] path = new long[2 * MAX_MOVES + 1];
+    private int pathLength;
+
+    /**
+     * Creates a solver. A solver searches one position at a time; its table is
+     * kept from one search to the next.
+     *
+     * @param megabytes Size of the table
+     */
+    public MateSolver(int megabytes) {
+        table = new Table(megabytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: mate <FEN or EPD file> [moves] [nodes] [table megabytes]");
+            return;
+        }
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long nodes = args.length > 2 ? Long.parseLong(args[2]) : 10_000_000;
+        int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MEGABYTES;
+        Path file = Paths.get(args[0]);
+        List<String> positions = Files.isRegularFile(file) ? Files.readAllLines(file) : List.of(args[0]);
+        MateSolver solver = new MateSolver(megabytes);
+        for (String text : positions) {
+            if (text.isBlank() || text.startsWith("#")) {
+                continue;
+            }
+            Result result = solver.solve(Fen.parse(text), moves, nodes, null);
+            System.out.printf("%s%n  %s (%d nodes, %.2f s)%n", text.trim(), result, result.nodes,
+                    result.nanos / 1e9);
+        }
+    }
+
+    /**
+     * Looks for a forced mate by the side to move.
+     *
+     * @param position  The position
+     * @param maxMoves  Longest mate to look for, in moves
+     * @param nodeLimit Positions to expand at most
+     * @param token     Cancels the search, or null
+     * @return The outcome
+     */
+    public Result solve(Fen position, int maxMoves, long nodeLimit, CancellationToken token) {
+        return solve(position.board, position.whiteToMove, position.lastMove, maxMoves, nodeLimit, token);
+    }
+
+    /**
+     * Looks for a forced mate by the side to move. The board is not changed.
+     *
+     * @param board       The position
+     * @param whiteToMove true if White is to move and attacks
+     * @param lastMove    The move that led to the position, or null
+     * @param maxMoves    Longest mate to look for, in moves
+     * @param nodeLimit   Positions to expand at most
+     * @param token       Cancels the search, or null
+     * @return The outcome
+     */
+    public Result solve(Piece[][] board, boolean whiteToMove, Move lastMove, int maxMoves, long nodeLimit,
+            CancellationToken token) {
+        long start = System.nanoTime();
+        this.board = copy(board);
+        this.attackerWhite = whiteToMove;
+        this.nodeLimit = nodeLimit;
+        this.token = token;
+        nodes = 0;
+        long position = Zobrist.hash(this.board, color(whiteToMove), lastMove);
+        int mateless = 0;
+        for (int moves = 1; moves <= Math.min(maxMoves, MAX_MOVES); moves++) {
+            int plies = 2 * moves - 1;
+            path[0] = position;
+            pathLength = 1;
+            int phi = search(position ^ PLIES_KEYS[plies], lastMove, true, plies, INFINITE, INFINITE);
+            if (phi == 0) {
+                return new Result(Status.MATE, moves, line(lastMove, plies), nodes, System.nanoTime() - start);
+            }
+            if (phi != INFINITE) {
+                return new Result(Status.UNKNOWN, mateless, List.of(), nodes, System.nanoTime() - start);
+            }
+            mateless = moves;
+        }
+        return new Result(Status.NO_MATE, mateless, List.of(), nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * Searches the position on the board until its proof number reaches one
+     * limit or its disproof number the other, and stores both in the table.
+     *
+     * @param key            The position's key, with its half-moves left
+     * @param lastMove       The move that led to the position
+     * @param attackerToMove true if the attacker is to move
+     * @param plies          Half-moves left for the attacker to mate in
+     * @param phiLimit       Limit on the proof number of the side to move
+     * @param deltaLimit     Limit on its disproof number
+     * @return The position's proof number: 0 if the side to move wins, that
+     *         is mates or escapes, {@link #INFINITE} if it loses
+     */
+    private int search(long key, Move lastMove, boolean attackerToMove, int plies, int phiLimit, int deltaLimit) {
+        long start = nodes++;
+        boolean white = attackerToMove == attackerWhite;
+        if (plies == 0) {
+            // Only the defender is left without moves, and it escapes unless mated
+            boolean mated = !attackerToMove && AI_Minimax.underCheck(board, color(white))
+                    && AI_Minimax.legalMoves(board, white, lastMove).isEmpty();
+            return table.store(key, mated || attackerToMove ? INFINITE : 0, mated || attackerToMove ? 0 : INFINITE,
+                    1);
+        }
+        ArrayList<Move> moves = AI_Minimax.legalMoves(board, white, lastMove);
+        if (moves.isEmpty()) {
+            boolean stalemate = !attackerToMove && !AI_Minimax.underCheck(board, color(white));
+            return table.store(key, stalemate ? 0 : INFINITE, stalemate ? INFINITE : 0, 1);
+        }
+        Child[] children = expand(moves, white, attackerToMove, plies);
+        while (true) {
+            int phi = INFINITE;
+            int delta = 0;
+            int secondDelta = INFINITE;
+            int bestPhi = 0;
+            Child best = null;
+            for (Child child : children) {
+                int childPhi = child.phi();
+                int childDelta = child.delta();
+                if (childDelta < phi) {
+                    secondDelta = phi;
+                    phi = childDelta;
+                    bestPhi = childPhi;
+                    best = child;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+                delta = childPhi == INFINITE || delta == INFINITE ? INFINITE
+                        : Math.min(INFINITE - 1, delta + childPhi);
+            }
+            if (phi >= phiLimit || delta >= deltaLimit || stopped()) {
+                return table.store(key, phi, delta, nodes - start);
+            }
+            // Settle the best child until it stops being the best
+            int childPhiLimit = Math.min(INFINITE, deltaLimit - delta + bestPhi);
+            int childDeltaLimit = Math.min(phiLimit, secondDelta + 1);
+            Undo undo = play(best.move);
+            path[pathLength++] = best.position;
+            search(best.key, best.move, !attackerToMove, plies - 1, childPhiLimit, childDeltaLimit);
+            pathLength--;
+            undo(best.move, undo);
+        }
+    }
+
+    /**
+     * Creates the children of a position, checks first and then captures, so
+     * that ties between unexplored children are broken toward forcing moves.
+     */
+    private Child[] expand(ArrayList<Move> moves, boolean white, boolean attackerToMove, int plies) {
+        Child[] children = new Child[moves.size()];
+        String opponent = color(!white);
+        for (int i = 0; i < children.length; i++) {
+            Move move = moves.get(i);
+            Undo undo = play(move);
+            Child child = new Child(move, Zobrist.hash(board, opponent, move), plies - 1);
+            child.check = AI_Minimax.underCheck(board, opponent);
+            undo(move, undo);
+            if (plies == 1 && !child.check) {
+                child.settle(true); // The defender is not mated and the attacker has no moves left
+            } else if (repeats(child.position)) {
+                child.settle(attackerToMove);
+            }
+            children[i] = child;
+        }
+        Arrays.sort(children, Comparator.comparingInt(Child::rank));
+        return children;
+    }
+
+    private boolean repeats(long position) {
+        for (int i = 0; i < pathLength; i++) {
+            if (path[i] == position) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean stopped() {
+        return nodes >= nodeLimit || token != null && token.shouldStop();
+    }
+
+    /**
+     * Reads the mating line back from the table: the attacker's quickest mate
+     * and the defender's longest resistance, each judged by the fewest
+     * half-moves the position is proven in.
+     */
+    private List<Move> line(Move lastMove, int plies) {
+        ArrayList<Move> line = new ArrayList<>();
+        boolean attackerToMove = true;
+        for (; plies > 0; plies--) {
+            boolean white = attackerToMove == attackerWhite;
+            Move chosen = null;
+            int chosenPlies = 0;
+            for (Move move : AI_Minimax.legalMoves(board, white, lastMove)) {
+                Undo undo = play(move);
+                int proven = provenIn(Zobrist.hash(board, color(!white), move), !attackerToMove, plies - 1);
+                undo(move, undo);
+                if (proven >= 0 && (chosen == null || (attackerToMove ? proven < chosenPlies : proven > chosenPlies))) {
+                    chosen = move;
+                    chosenPlies = proven;
+                }
+            }
+            if (chosen == null) {
+                break;
+            }
+            play(chosen);
+            line.add(chosen);
+            lastMove = chosen;
+            attackerToMove = !attackerToMove;
+        }
+        return line;
+    }
+
+    /**
+     * Returns the fewest half-moves within which the table proves a position
+     * won for the attacker, at most a limit, or -1 if it does not.
+     */
+    private int provenIn(long position, boolean attackerToMove, int plies) {
+        for (int left = plies % 2; left <= plies; left += 2) {
+            int slot = table.find(position ^ PLIES_KEYS[left]);
+            if (slot >= 0 && (attackerToMove ? table.phi[slot] : table.delta[slot]) == 0) {
+                return left;
+            }
+        }
+        return -1;
+    }
+
+    /** Makes a move on the board. */
+    private Undo play(Move move) {
+        Undo undo = new Undo();
+        Piece piece = board[move.fromRow][move.fromCol];
+        undo.piece = piece;
+        undo.pieceMoved = piece.haveMove;
+        undo.captured = board[move.toRow][move.toCol];
+        board[move.toRow][move.toCol] = piece;
+        board[move.fromRow][move.fromCol] = null;
+        piece.haveMove = true;
+        if (piece.name.equals("Pawn")) {
+            if (move.toRow == 0 || move.toRow == 7) {
+                board[move.toRow][move.toCol] = new Queen(piece.color);
+            } else if (move.fromCol != move.toCol && undo.captured == null) {
+                undo.passed = board[move.fromRow][move.toCol];
+                board[move.fromRow][move.toCol] = null;
+            }
+        } else if (piece.name.equals("King") && Math.abs(move.toCol - move.fromCol) == 2) {
+            int rookCol = move.toCol > move.fromCol ? 7 : 0;
+            undo.rook = board[move.fromRow][rookCol];
+            undo.rookMoved = undo.rook.haveMove;
+            board[move.fromRow][(move.fromCol + move.toCol) / 2] = undo.rook;
+            board[move.fromRow][rookCol] = null;
+            undo.rook.haveMove = true;
+        }
+        return undo;
+    }
+
+    /** Takes back a move made by {@link #play}. */
+    private void undo(Move move, Undo undo) {
+        board[move.fromRow][move.fromCol] = undo.piece;
+        board[move.toRow][move.toCol] = undo.captured;
+        undo.piece.haveMove = undo.pieceMoved;
+        if (undo.passed != null) {
+            board[move.fromRow][move.toCol] = undo.passed;
+        }
+        if (undo.rook != null) {
+            board[move.fromRow][move.toCol > move.fromCol ? 7 : 0] = undo.rook;
+            board[move.fromRow][(move.fromCol + move.toCol) / 2] = null;
+            undo.rook.haveMove = undo.rookMoved;
+        }
+    }
+
+    /** Copies a board, pieces included, since making moves marks them as moved. */
+    private static Piece[][] copy(Piece[][] board) {
+        Piece[][] copy = new Piece[8][8];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board[row][col];
+                if (piece != null) {
+                    copy[row][col] = switch (piece.name) {
+                        case "Pawn" -> new Pawn(piece.color);
+                        case "Knight" -> new Knight(piece.color);
+                        case "Bishop" -> new Bishop(piece.color);
+                        case "Rook" -> new Rook(piece.color);
+                        case "Queen" -> new Queen(piece.color);
+                        default -> new King(piece.color);
+                    };
+                    copy[row][col].haveMove = piece.haveMove;
+                }
+            }
+        }
+        return copy;
+    }
+
+    private static String color(boolean white) {
+        return white ? "White" : "Black";
+    }
+
+    /** What {@link #undo} needs to take a move back. */
+    private static final class Undo {
+        Piece piece;
+        boolean pieceMoved;
+        Piece captured;
+        Piece passed;
+        Piece rook;
+        boolean rookMoved;
+    }
+
+    /** A move from the position being searched and the position it leads to. */
+    private final class Child {
+        final Move move;
+        final long position;
+        final long key;
+        boolean check;
+        boolean settled;
+        int phi;
+        int delta;
+
+        Child(Move move, long position, int plies) {
+            this.move = move;
+            this.position = position;
+            this.key = position ^ PLIES_KEYS[plies];
+        }
+
+        /** Fixes the outcome of a child that need not be searched. */
+        void settle(boolean wins) {
+            settled = true;
+            phi = wins ? 0 : INFINITE;
+            delta = wins ? INFINITE : 0;
+        }
+
+        int phi() {
+            if (settled) {
+                return phi;
+            }
+            int slot = table.find(key);
+            return slot < 0 ? 1 : table.phi[slot];
+        }
+
+        int delta() {
+            if (settled) {
+                return delta;
+            }
+            int slot = table.find(key);
+            return slot < 0 ? 1 : table.delta[slot];
+        }
+
+        int rank() {
+            return check ? 0 : move.capturedPiece != null ? 1 : 2;
+        }
+    }
+
+    /**
+     * The proof and disproof numbers of searched positions, in two-entry
+     * buckets of parallel arrays. A new position takes the entry of the two
+     * whose numbers took less work to compute.
+     */
+    private static final class Table {
+        /** Bytes per entry: key, two numbers and work. */
+        private static final int ENTRY_BYTES = 24;
+
+        final long[] keys;
+        final int[] phi;
+        final int[] delta;
+        final long[] work;
+        private final int mask;
+
+        Table(int megabytes) {
+            int entries = Integer.highestOneBit((int) Math.min(1 << 30, ((long) megabytes << 20) / ENTRY_BYTES));
+            keys = new long[entries];
+            phi = new int[entries];
+            delta = new int[entries];
+            work = new long[entries];
+            mask = entries - 1;
+        }
+
+        /** Returns the entry of a key, or -1. */
+        int find(long key) {
+            int slot = (int) (key ^ key >>> 32) & mask;
+            if (keys[slot] == key) {
+                return slot;
+            }
+            return keys[slot ^ 1] == key ? slot ^ 1 : -1;
+        }
+
+        /** Stores a position's numbers and returns its proof number. */
+        int store(long key, int phi, int delta, long work) {
+            int slot = (int) (key ^ key >>> 32) & mask;
+            if (keys[slot] != key && (keys[slot ^ 1] == key || this.work[slot ^ 1] < this.work[slot])) {
+                slot ^= 1;
+            }
+            keys[slot] = key;
+            this.phi[slot] = phi;
+            this.delta[slot] = delta;
+            this.work[slot] = work;
+            return phi;
+        }
+    }
+}
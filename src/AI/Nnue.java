@@ -0,0 +1,475 @@
+package AI;
+
+import Pieces.Piece;
+import Utilities.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/// An efficiently updatable neural network (NNUE) evaluation, an alternative to
+/// the hand-crafted one.
+///
+/// The input layer is HalfKP: from each side's point of view, one input for
+/// every combination of that side's king square with a non-king piece on a
+/// square, 40960 in all, of which only the thirty-odd matching the position are
+/// on. Their first-layer weights are summed into an accumulator of
+/// {@value #HIDDEN} int16 values per side. A move changes only a few inputs, so
+/// the accumulators are updated by adding and subtracting a few weight rows as
+/// moves are made, and restored by dropping back a ply as they are unmade; only
+/// a king move recomputes its own side's accumulator. See [Accumulators].
+///
+/// The side to move's accumulator and the other side's, clipped to 0..127, feed
+/// a dense layer of {@value #HIDDEN2} clipped units and then the output. The
+/// adds of the first layer and both dense layers run on `jdk.incubator.vector`
+/// SIMD when that module is present (`--add-modules jdk.incubator.vector`), and
+/// on plain loops otherwise.
+///
+/// Network files are little-endian: the magic `CNNU`, the version, the three
+/// layer sizes as int32, then the first-layer weights (int16, input-major) and
+/// biases (int16), the dense layer's weights (int16, input-major) and biases
+/// (int32), and the output weights (int16) and bias (int32). The file is
+/// memory-mapped and read into arrays once. [NnueTrainer] writes them from
+/// training positions. Activations are scaled so that 127
+/// stands for 1.0, and dense weights so that 64 does; the output is in units of
+/// {@value #EVAL_SCALE} evaluation points per 1.0, for the side to move.
+public final class Nnue {
+    /** Magic number starting a network file: "CNNU" in little-endian order. */
+    static final int MAGIC = 0x554E4E43;
+    static final int VERSION = 1;
+
+    /** Inputs per side: 64 king squares times 10 pieces times 64 squares. */
+    public static final int INPUTS = 64 * 10 * 64;
+
+    /** Accumulator size per side. */
+    public static final int HIDDEN = 128;
+
+    /** Size of the dense layer. */
+    public static final int HIDDEN2 = 32;
+
+    /** Activation value standing for 1.0. */
+    static final int ACTIVATION_ONE = 127;
+
+    /** Dense weight value standing for 1.0, a power of two. */
+    static final int WEIGHT_ONE = 64;
+    private static final int WEIGHT_SHIFT = 6;
+
+    /** Evaluation points per 1.0 of output, where a pawn is worth 10. */
+    public static final int EVAL_SCALE = 100;
+
+    /** Name the network is read from at startup, if set. */
+    public static final String PROPERTY = "chess.nnue";
+
+    // Piece codes of the accumulators' boards; 0 is an empty square
+    private static final int WHITE_KING = 6;
+    private static final int BLACK_KING = 12;
+
+    private static final Kernels KERNELS = kernels();
+
+    final short[] inputWeights;
+    final short[] inputBiases;
+    final int[] hiddenWeights;
+    final int[] hiddenBiases;
+    final int[] outputWeights;
+    final int outputBias;
+
+    Nnue(short[] inputWeights, short[] inputBiases, int[] hiddenWeights, int[] hiddenBiases, int[] outputWeights,
+            int outputBias) {
+        this.inputWeights = inputWeights;
+        this.inputBiases = inputBiases;
+        this.hiddenWeights = hiddenWeights;
+        this.hiddenBiases = hiddenBiases;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads a network file.
+     *
+     * @param file The file to read
+     * @return The network
+     * @throws IOException if the file cannot be read or is not a network of this
+     *                     shape
+     */
+    public static Nnue load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer in = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (in.remaining() < 20 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException(file + " is not a network file");
+            }
+            if (in.getInt() != INPUTS || in.getInt() != HIDDEN || in.getInt() != HIDDEN2) {
+                throw new IOException(file + " has layer sizes other than " + INPUTS + "x" + HIDDEN + "x" + HIDDEN2);
+            }
+            long expected = 20 + 2L * INPUTS * HIDDEN + 2L * HIDDEN + 2L * 2 * HIDDEN * HIDDEN2 + 4L * HIDDEN2
+                    + 2L * HIDDEN2 + 4;
+            if (channel.size() != expected) {
+                throw new IOException(file + " is " + channel.size() + " bytes, expected " + expected);
+            }
+            short[] inputWeights = new short[INPUTS * HIDDEN];
+            in.asShortBuffer().get(inputWeights);
+            in.position(in.position() + 2 * inputWeights.length);
+            short[] inputBiases = new short[HIDDEN];
+            in.asShortBuffer().get(inputBiases);
+            in.position(in.position() + 2 * HIDDEN);
+            int[] hiddenWeights = new int[2 * HIDDEN * HIDDEN2];
+            for (int i = 0; i < hiddenWeights.length; i++) {
+                hiddenWeights[i] = in.getShort();
+            }
+            int[] hiddenBiases = new int[HIDDEN2];
+            in.asIntBuffer().get(hiddenBiases);
+            in.position(in.position() + 4 * HIDDEN2);
+            int[] outputWeights = new int[HIDDEN2];
+            for (int i = 0; i < HIDDEN2; i++) {
+                outputWeights[i] = in.getShort();
+            }
+            return new Nnue(inputWeights, inputBiases, hiddenWeights, hiddenBiases, outputWeights, in.getInt());
+        }
+    }
+
+    /**
+     * Writes the network to a file in the format {@link #load} reads.
+     *
+     * @param file The file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(20 + 2 * inputWeights.length + 2 * HIDDEN + 2 * hiddenWeights.length
+                + 4 * HIDDEN2 + 2 * HIDDEN2 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(INPUTS).putInt(HIDDEN).putInt(HIDDEN2);
+        out.asShortBuffer().put(inputWeights).put(inputBiases);
+        out.position(out.position() + 2 * inputWeights.length + 2 * HIDDEN);
+        for (int weight : hiddenWeights) {
+            out.putShort((short) weight);
+        }
+        out.asIntBuffer().put(hiddenBiases);
+        out.position(out.position() + 4 * HIDDEN2);
+        for (int weight : outputWeights) {
+            out.putShort((short) weight);
+        }
+        out.putInt(outputBias);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Reads the network named by the {@value #PROPERTY} system property, if
+     * any. A file that cannot be read is reported.
+     *
+     * @return The network, or null to use the hand-crafted evaluation
+     */
+    static Nnue loadDefault() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null) {
+            return null;
+        }
+        try {
+            return load(Paths.get(name));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether the network runs on SIMD instructions.
+     *
+     * @return true if the Vector API module is present
+     */
+    public static boolean isVectorized() {
+        return !(KERNELS instanceof ScalarKernels);
+    }
+
+    /**
+     * Creates accumulators for a search from a position.
+     *
+     * @param board The root position
+     * @return Accumulators holding the root position
+     */
+    Accumulators accumulators(Piece[][] board) {
+        return new Accumulators(board);
+    }
+
+    /**
+     * The accumulators of the positions on a search path, one ply per
+     * position, each with its own board so a king move can recompute its
+     * side's accumulator. Making a move fills the next ply from the current
+     * one; unmaking it just drops back a ply.
+     */
+    final class Accumulators {
+        private byte[][] boards = new byte[64][64];
+        private short[][] white = new short[64][HIDDEN];
+        private short[][] black = new short[64][HIDDEN];
+        private int[] whiteKings = new int[64];
+        private int[] blackKings = new int[64];
+        private int ply;
+        private final int[] input = new int[2 * HIDDEN];
+        private final int[] hidden = new int[HIDDEN2];
+
+        private Accumulators(Piece[][] position) {
+            byte[] board = boards[0];
+            for (int square = 0; square < 64; square++) {
+                Piece piece = position[square / 8][square % 8];
+                board[square] = (byte) (piece == null ? 0 : code(piece));
+                if (board[square] == WHITE_KING) {
+                    whiteKings[0] = square;
+                } else if (board[square] == BLACK_KING) {
+                    blackKings[0] = square;
+                }
+            }
+            refresh(true);
+            refresh(false);
+        }
+
+        /**
+         * Makes a move, updating the accumulators with the inputs it turns off
+         * and on.
+         *
+         * @param move A legal move in the current position
+         */
+        void push(Move move) {
+            if (ply + 1 == boards.length) {
+                boards = Arrays.copyOf(boards, ply * 2);
+                white = Arrays.copyOf(white, ply * 2);
+                black = Arrays.copyOf(black, ply * 2);
+                whiteKings = Arrays.copyOf(whiteKings, ply * 2);
+                blackKings = Arrays.copyOf(blackKings, ply * 2);
+                for (int i = ply + 1; i < boards.length; i++) {
+                    boards[i] = new byte[64];
+                    white[i] = new short[HIDDEN];
+                    black[i] = new short[HIDDEN];
+                }
+            }
+            System.arraycopy(boards[ply], 0, boards[ply + 1], 0, 64);
+            System.arraycopy(white[ply], 0, white[ply + 1], 0, HIDDEN);
+            System.arraycopy(black[ply], 0, black[ply + 1], 0, HIDDEN);
+            whiteKings[ply + 1] = whiteKings[ply];
+            blackKings[ply + 1] = blackKings[ply];
+            ply++;
+
+            byte[] board = boards[ply];
+            int from = move.fromRow * 8 + move.fromCol;
+            int to = move.toRow * 8 + move.toCol;
+            int code = board[from];
+            boolean whiteMoves = code <= WHITE_KING;
+            boolean kingMoves = code == WHITE_KING || code == BLACK_KING;
+            boolean pawnMoves = code == 1 || code == 7;
+            // A king move recomputes its own side's accumulator after the move
+            boolean skipWhite = kingMoves && whiteMoves;
+            boolean skipBlack = kingMoves && !whiteMoves;
+
+            if (pawnMoves && move.fromCol != move.toCol && board[to] == 0) {
+                remove(move.fromRow * 8 + move.toCol, skipWhite, skipBlack); // En passant
+            }
+            if (board[to] != 0) {
+                remove(to, skipWhite, skipBlack);
+            }
+            remove(from, skipWhite, skipBlack);
+            boolean promotes = pawnMoves && (move.toRow == 0 || move.toRow == 7);
+            add(to, promotes ? code + 4 : code, skipWhite, skipBlack); // Always to a queen, as the search does
+            if (kingMoves && Math.abs(move.toCol - move.fromCol) == 2) {
+                int rookFrom = move.fromRow * 8 + (move.toCol > move.fromCol ? 7 : 0);
+                int rookTo = move.fromRow * 8 + (move.toCol > move.fromCol ? 5 : 3);
+                int rook = board[rookFrom];
+                remove(rookFrom, skipWhite, skipBlack);
+                add(rookTo, rook, skipWhite, skipBlack);
+            }
+            if (kingMoves) {
+                (whiteMoves ? whiteKings : blackKings)[ply] = to;
+                refresh(whiteMoves);
+            }
+        }
+
+        /** Unmakes the last move. */
+        void pop() {
+            ply--;
+        }
+
+        /**
+         * Evaluates the current position.
+         *
+         * @param whiteToMove true if White is to move
+         * @return The evaluation from White's point of view
+         */
+        int evaluate(boolean whiteToMove) {
+            short[] us = whiteToMove ? white[ply] : black[ply];
+            short[] them = whiteToMove ? black[ply] : white[ply];
+            KERNELS.activate(us, input, 0);
+            KERNELS.activate(them, input, HIDDEN);
+            KERNELS.dense(input, hiddenWeights, hiddenBiases, hidden);
+            long output = outputBias;
+            for (int i = 0; i < HIDDEN2; i++) {
+                int activation = Math.max(0, Math.min(ACTIVATION_ONE, hidden[i] >> WEIGHT_SHIFT));
+                output += (long) activation * outputWeights[i];
+            }
+            int score = (int) (output * EVAL_SCALE / (ACTIVATION_ONE * WEIGHT_ONE));
+            return whiteToMove ? score : -score;
+        }
+
+        /** Recomputes one side's accumulator from the board. */
+        void refresh(boolean forWhite) {
+            short[] accumulator = forWhite ? white[ply] : black[ply];
+            System.arraycopy(inputBiases, 0, accumulator, 0, HIDDEN);
+            byte[] board = boards[ply];
+            int king = forWhite ? whiteKings[ply] : blackKings[ply];
+            for (int square = 0; square < 64; square++) {
+                int code = board[square];
+                if (code != 0 && code != WHITE_KING && code != BLACK_KING) {
+                    KERNELS.add(accumulator, inputWeights, input(forWhite, king, code, square) * HIDDEN);
+                }
+            }
+        }
+
+        private void remove(int square, boolean skipWhite, boolean skipBlack) {
+            byte[] board = boards[ply];
+            int code = board[square];
+            board[square] = 0;
+            update(code, square, skipWhite, skipBlack, false);
+        }
+
+        private void add(int square, int code, boolean skipWhite, boolean skipBlack) {
+            boards[ply][square] = (byte) code;
+            update(code, square, skipWhite, skipBlack, true);
+        }
+
+        private void update(int code, int square, boolean skipWhite, boolean skipBlack, boolean add) {
+            if (code == WHITE_KING || code == BLACK_KING) {
+                return;
+            }
+            if (!skipWhite) {
+                int row = input(true, whiteKings[ply], code, square) * HIDDEN;
+                if (add) {
+                    KERNELS.add(white[ply], inputWeights, row);
+                } else {
+                    KERNELS.subtract(white[ply], inputWeights, row);
+                }
+            }
+            if (!skipBlack) {
+                int row = input(false, blackKings[ply], code, square) * HIDDEN;
+                if (add) {
+                    KERNELS.add(black[ply], inputWeights, row);
+                } else {
+                    KERNELS.subtract(black[ply], inputWeights, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a piece's code: 1 to 6 for White's pawn, knight, bishop, rook,
+     * queen and king, 7 to 12 for Black's.
+     */
+    static int code(Piece piece) {
+        int type = switch (piece.name) {
+            case "Pawn" -> 1;
+            case "Knight" -> 2;
+            case "Bishop" -> 3;
+            case "Rook" -> 4;
+            case "Queen" -> 5;
+            default -> 6;
+        };
+        return piece.color.equals("White") ? type : type + 6;
+    }
+
+    /**
+     * Returns the index of an input. Squares are mirrored top to bottom for
+     * Black, so both sides see their own pieces from the same side of the
+     * board.
+     *
+     * @param forWhite true for White's point of view
+     * @param king     Square of that side's king
+     * @param code     Code of the piece, not a king
+     * @param square   Square of the piece
+     * @return The input index
+     */
+    static int input(boolean forWhite, int king, int code, int square) {
+        boolean whitePiece = code <= WHITE_KING;
+        int piece = ((code - 1) % 6) * 2 + (whitePiece == forWhite ? 0 : 1);
+        int flip = forWhite ? 0 : 56;
+        return ((king ^ flip) * 10 + piece) * 64 + (square ^ flip);
+    }
+
+    /** The arithmetic of the network, on SIMD instructions or plain loops. */
+    interface Kernels {
+        /** Adds a weight row to an accumulator. */
+        void add(short[] accumulator, short[] weights, int offset);
+
+        /** Subtracts a weight row from an accumulator. */
+        void subtract(short[] accumulator, short[] weights, int offset);
+
+        /** Clips an accumulator to 0..127 into part of a dense layer's input. */
+        void activate(short[] accumulator, int[] input, int offset);
+
+        /**
+         * Computes a dense layer: the biases plus every input times its row of
+         * weights, with {@code output.length} weights per row.
+         */
+        void dense(int[] input, int[] weights, int[] biases, int[] output);
+    }
+
+    /** Plain loops, for when the Vector API is not available. */
+    static final class ScalarKernels implements Kernels {
+        @Override
+        public void add(short[] accumulator, short[] weights, int offset) {
+            for (int i = 0; i < accumulator.length; i++) {
+                accumulator[i] += weights[offset + i];
+            }
+        }
+
+        @Override
+        public void subtract(short[] accumulator, short[] weights, int offset) {
+            for (int i = 0; i < accumulator.length; i++) {
+                accumulator[i] -= weights[offset + i];
+            }
+        }
+
+        @Override
+        public void activate(short[] accumulator, int[] input, int offset) {
+            for (int i = 0; i < accumulator.length; i++) {
+                input[offset + i] = Math.max(0, Math.min(ACTIVATION_ONE, accumulator[i]));
+            }
+        }
+
+        @Override
+        public void dense(int[] input, int[] weights, int[] biases, int[] output) {
+            int outputs = output.length;
+            System.arraycopy(biases, 0, output, 0, outputs);
+            for (int i = 0; i < input.length; i++) {
+                int x = input[i];
+                if (x == 0) {
+                    continue;
+                }
+                for (int j = 0; j < outputs; j++) {
+                    output[j] += x * weights[i * outputs + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Uses the SIMD kernels if the Vector API module is present. They are
+     * loaded by name so that this class never links against the module when
+     * it is missing.
+     */
+    private static Kernels kernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Kernels) Class.forName("AI.NnueVectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                e.printStackTrace();
+            }
+        }
+        return new ScalarKernels();
+    }
+}
@@ -0,0 +1,522 @@
+package AI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/// Trains the [Nnue] network on the CPU from a file of [PackedPosition]
+/// records, with no GPU and nothing outside the JDK.
+///
+/// The network is trained in float, with the same layers and clipping as the
+/// engine's integer version, to predict a blend of the search score and the
+/// game result of each position: `1 / (1 + e^(-eval / 40))` against three
+/// quarters of the score's prediction plus a quarter of the result. Positions
+/// are read in large blocks by a background thread while the previous block is
+/// trained on, so the disk is read while the cores compute, and each block is
+/// shuffled. Each minibatch is split between one worker per core, each keeping
+/// its own gradients; only the first-layer rows of the pieces on the board get
+/// a gradient, so a position costs a few thousand multiply-adds rather than the
+/// five million of a dense first layer, and only the rows the batch touched are
+/// summed and stepped, with Adam, on all cores.
+///
+/// After every pass over the file the network is quantized and written in the
+/// format the engine loads. If the output file already exists, training
+/// continues from its weights, so a stopped run can be restarted.
+///
+/// Usage: `train <positions file> [output file] [epochs]`
+public class NnueTrainer {
+    /** Network written when no output file is named. */
+    static final String DEFAULT_FILE = "chess.nnue";
+
+    /** Positions read from disk at once. */
+    private static final int BLOCK = 1 << 20;
+
+    /** Positions per gradient step. */
+    private static final int BATCH = 1 << 14;
+
+    /** First-layer rows one update task steps. */
+    private static final int ROWS_PER_TASK = 512;
+
+    private static final double LEARNING_RATE = 1e-3;
+    private static final double FINAL_LEARNING_RATE = 1e-4;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    /** Evaluation points per unit of the sigmoid's argument: four pawns. */
+    private static final float SIGMOID_SCALE = 40;
+
+    /** Share of the search score in the target; the rest is the game result. */
+    private static final float SCORE_WEIGHT = 0.75f;
+
+    /** Non-king pieces on a board, at most. */
+    private static final int MAX_FEATURES = 30;
+
+    // Limits keeping the quantized weights in range: the first layer's so that
+    // an accumulator of a bias and 30 weights fits 16 bits
+    private static final float INPUT_LIMIT = (float) Short.MAX_VALUE / Nnue.ACTIVATION_ONE / (MAX_FEATURES + 1);
+    private static final float WEIGHT_LIMIT = (float) Short.MAX_VALUE / Nnue.WEIGHT_ONE;
+
+    private static final int INPUT_WEIGHTS = 0;
+    private static final int INPUT_BIASES = 1;
+    private static final int HIDDEN_WEIGHTS = 2;
+    private static final int HIDDEN_BIASES = 3;
+    private static final int OUTPUT_WEIGHTS = 4;
+    private static final int OUTPUT_BIAS = 5;
+
+    private static final int H = Nnue.HIDDEN;
+    private static final int H2 = Nnue.HIDDEN2;
+
+    private final Tensor[] tensors = {
+            new Tensor(Nnue.INPUTS * H, INPUT_LIMIT),
+            new Tensor(H, INPUT_LIMIT),
+            new Tensor(2 * H * H2, WEIGHT_LIMIT),
+            new Tensor(H2, Float.MAX_VALUE),
+            new Tensor(H2, WEIGHT_LIMIT),
+            new Tensor(1, Float.MAX_VALUE)
+    };
+    private final Worker[] workers;
+    private int step;
+
+    private NnueTrainer(int threads) {
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: train <positions file> [output file] [epochs]");
+            return;
+        }
+        Path positions = Paths.get(args[0]);
+        Path output = Paths.get(args.length > 1 ? args[1] : DEFAULT_FILE);
+        int epochs = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        if (Files.size(positions) < PackedPosition.SIZE) {
+            System.err.println(positions + " holds no positions");
+            return;
+        }
+
+        NnueTrainer trainer = new NnueTrainer(Runtime.getRuntime().availableProcessors());
+        if (Files.exists(output)) {
+            trainer.resume(Nnue.load(output));
+            System.out.println("Continuing from " + output);
+        } else {
+            trainer.initialize(new SplittableRandom());
+        }
+        trainer.train(positions, output, epochs);
+    }
+
+    private void train(Path positions, Path output, int epochs) throws IOException {
+        SplittableRandom random = new SplittableRandom();
+        int[] order = new int[BLOCK];
+        try (PositionReader reader = new PositionReader(positions)) {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                double progress = epochs == 1 ? 0 : (epoch - 1.0) / (epochs - 1);
+                float rate = (float) (LEARNING_RATE * Math.pow(FINAL_LEARNING_RATE / LEARNING_RATE, progress));
+                long start = System.nanoTime();
+                long count = 0;
+                double loss = 0;
+                PositionReader.Block block;
+                while ((block = reader.next()).count() > 0) {
+                    shuffle(order, block.count(), random);
+                    for (int from = 0; from < block.count(); from += BATCH) {
+                        loss += batch(block.data(), order, from, Math.min(block.count(), from + BATCH), rate);
+                    }
+                    count += block.count();
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Epoch %d: loss %.6f, %d positions in %.1f s (%.0f/s), learning rate %.2e%n", epoch,
+                        loss / count, count, seconds, count / seconds, rate);
+                quantize().write(output);
+            }
+        }
+        System.out.println("Wrote " + output);
+    }
+
+    /**
+     * Trains on one minibatch, split between the workers, then steps the
+     * weights.
+     *
+     * @return The summed loss of the batch's positions
+     */
+    private double batch(byte[] data, int[] order, int from, int to, float rate) {
+        int share = (to - from + workers.length - 1) / workers.length;
+        IntStream.range(0, workers.length).parallel().forEach(w -> {
+            Worker worker = workers[w];
+            int end = Math.min(to, from + (w + 1) * share);
+            for (int i = from + w * share; i < end; i++) {
+                worker.train(data, order[i] * PackedPosition.SIZE);
+            }
+        });
+
+        step++;
+        float scale = 1f / (to - from);
+        float correction1 = (float) (1 - Math.pow(BETA1, step));
+        float correction2 = (float) (1 - Math.pow(BETA2, step));
+        for (int t = INPUT_BIASES; t < tensors.length; t++) {
+            Tensor tensor = tensors[t];
+            for (int i = 0; i < tensor.values.length; i++) {
+                float gradient = 0;
+                for (Worker worker : workers) {
+                    gradient += worker.gradients[t][i];
+                    worker.gradients[t][i] = 0;
+                }
+                tensor.step(i, gradient * scale, rate, correction1, correction2);
+            }
+        }
+        // Only the first-layer rows some worker touched, a slice of rows per task
+        Tensor weights = tensors[INPUT_WEIGHTS];
+        IntStream.range(0, (Nnue.INPUTS + ROWS_PER_TASK - 1) / ROWS_PER_TASK).parallel().forEach(task -> {
+            float[] gradient = new float[H];
+            int end = Math.min(Nnue.INPUTS, (task + 1) * ROWS_PER_TASK);
+            for (int row = task * ROWS_PER_TASK; row < end; row++) {
+                boolean touched = false;
+                for (Worker worker : workers) {
+                    if (worker.touched[row]) {
+                        float[] source = worker.gradients[INPUT_WEIGHTS];
+                        for (int h = 0; h < H; h++) {
+                            gradient[h] += source[row * H + h];
+                            source[row * H + h] = 0;
+                        }
+                        worker.touched[row] = false;
+                        touched = true;
+                    }
+                }
+                if (touched) {
+                    for (int h = 0; h < H; h++) {
+                        weights.step(row * H + h, gradient[h] * scale, rate, correction1, correction2);
+                        gradient[h] = 0;
+                    }
+                }
+            }
+        });
+
+        double loss = 0;
+        for (Worker worker : workers) {
+            loss += worker.loss;
+            worker.loss = 0;
+        }
+        return loss;
+    }
+
+    /** Puts the first {@code count} indices in a random order. */
+    private static void shuffle(int[] order, int count, SplittableRandom random) {
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * Starts from random weights, scaled so that the layers' outputs start out
+     * within their clipping range.
+     */
+    private void initialize(SplittableRandom random) {
+        fill(tensors[INPUT_WEIGHTS].values, 1 / Math.sqrt(MAX_FEATURES), random);
+        fill(tensors[HIDDEN_WEIGHTS].values, 1 / Math.sqrt(2 * H), random);
+        fill(tensors[OUTPUT_WEIGHTS].values, 1 / Math.sqrt(H2), random);
+    }
+
+    private static void fill(float[] values, double bound, SplittableRandom random) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) random.nextDouble(-bound, bound);
+        }
+    }
+
+    /** Starts from the weights of a network, undoing its quantization. */
+    private void resume(Nnue network) {
+        float activation = Nnue.ACTIVATION_ONE;
+        float weight = Nnue.WEIGHT_ONE;
+        for (int i = 0; i < network.inputWeights.length; i++) {
+            tensors[INPUT_WEIGHTS].values[i] = network.inputWeights[i] / activation;
+        }
+        for (int i = 0; i < H; i++) {
+            tensors[INPUT_BIASES].values[i] = network.inputBiases[i] / activation;
+        }
+        for (int i = 0; i < network.hiddenWeights.length; i++) {
+            tensors[HIDDEN_WEIGHTS].values[i] = network.hiddenWeights[i] / weight;
+        }
+        for (int i = 0; i < H2; i++) {
+            tensors[HIDDEN_BIASES].values[i] = network.hiddenBiases[i] / (activation * weight);
+            tensors[OUTPUT_WEIGHTS].values[i] = network.outputWeights[i] / weight;
+        }
+        tensors[OUTPUT_BIAS].values[0] = network.outputBias / (activation * weight);
+    }
+
+    /** Rounds the weights to the integer scales of the engine's network. */
+    private Nnue quantize() {
+        float activation = Nnue.ACTIVATION_ONE;
+        float weight = Nnue.WEIGHT_ONE;
+        short[] inputWeights = new short[Nnue.INPUTS * H];
+        for (int i = 0; i < inputWeights.length; i++) {
+            inputWeights[i] = (short) Math.round(tensors[INPUT_WEIGHTS].values[i] * activation);
+        }
+        short[] inputBiases = new short[H];
+        for (int i = 0; i < H; i++) {
+            inputBiases[i] = (short) Math.round(tensors[INPUT_BIASES].values[i] * activation);
+        }
+        int[] hiddenWeights = new int[2 * H * H2];
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            hiddenWeights[i] = Math.round(tensors[HIDDEN_WEIGHTS].values[i] * weight);
+        }
+        int[] hiddenBiases = new int[H2];
+        int[] outputWeights = new int[H2];
+        for (int i = 0; i < H2; i++) {
+            hiddenBiases[i] = Math.round(tensors[HIDDEN_BIASES].values[i] * activation * weight);
+            outputWeights[i] = Math.round(tensors[OUTPUT_WEIGHTS].values[i] * weight);
+        }
+        int outputBias = Math.round(tensors[OUTPUT_BIAS].values[0] * activation * weight);
+        return new Nnue(inputWeights, inputBiases, hiddenWeights, hiddenBiases, outputWeights, outputBias);
+    }
+
+    /** A layer's weights or biases with their Adam moments. */
+    private static final class Tensor {
+        final float[] values;
+        final float[] momentum;
+        final float[] velocity;
+        final float limit;
+
+        Tensor(int size, float limit) {
+            values = new float[size];
+            momentum = new float[size];
+            velocity = new float[size];
+            this.limit = limit;
+        }
+
+        /** Takes an Adam step on one value, keeping it within the limit. */
+        void step(int i, float gradient, float rate, float correction1, float correction2) {
+            momentum[i] = (float) (BETA1 * momentum[i] + (1 - BETA1) * gradient);
+            velocity[i] = (float) (BETA2 * velocity[i] + (1 - BETA2) * gradient * gradient);
+            double update = rate * (momentum[i] / correction1) / (Math.sqrt(velocity[i] / correction2) + EPSILON);
+            values[i] = (float) Math.max(-limit, Math.min(limit, values[i] - update));
+        }
+    }
+
+    /**
+     * Computes the loss and gradients of positions on one thread, into
+     * gradients of its own. Marks the first-layer rows it touches so the
+     * update can skip the rest.
+     */
+    private final class Worker {
+        final float[][] gradients = new float[tensors.length][];
+        final boolean[] touched = new boolean[Nnue.INPUTS];
+        double loss;
+
+        private final byte[] board = new byte[64];
+        private final int[] whiteFeatures = new int[64];
+        private final int[] blackFeatures = new int[64];
+        private final float[] accumulators = new float[2 * H];
+        private final float[] input = new float[2 * H];
+        private final float[] inputGradient = new float[2 * H];
+        private final float[] hidden = new float[H2];
+        private final float[] activations = new float[H2];
+        private final float[] hiddenGradient = new float[H2];
+
+        Worker() {
+            for (int t = 0; t < tensors.length; t++) {
+                gradients[t] = new float[tensors[t].values.length];
+            }
+        }
+
+        /** Adds the loss and gradients of the record at an offset. */
+        void train(byte[] data, int offset) {
+            PackedPosition.unpack(data, offset, board);
+            int whiteKing = -1;
+            int blackKing = -1;
+            for (int square = 0; square < 64; square++) {
+                if (board[square] == 6) {
+                    whiteKing = square;
+                } else if (board[square] == 12) {
+                    blackKing = square;
+                }
+            }
+            if (whiteKing < 0 || blackKing < 0) {
+                return;
+            }
+            int count = 0;
+            for (int square = 0; square < 64; square++) {
+                int code = board[square];
+                if (code != 0 && code != 6 && code != 12) {
+                    whiteFeatures[count] = Nnue.input(true, whiteKing, code, square);
+                    blackFeatures[count++] = Nnue.input(false, blackKing, code, square);
+                }
+            }
+            boolean whiteToMove = PackedPosition.whiteToMove(data, offset);
+            int[] us = whiteToMove ? whiteFeatures : blackFeatures;
+            int[] them = whiteToMove ? blackFeatures : whiteFeatures;
+
+            // Forward: the side to move's accumulator first, as in the engine
+            accumulate(us, count, 0);
+            accumulate(them, count, H);
+            for (int i = 0; i < 2 * H; i++) {
+                input[i] = Math.max(0, Math.min(1, accumulators[i]));
+            }
+            float[] hiddenWeights = tensors[HIDDEN_WEIGHTS].values;
+            System.arraycopy(tensors[HIDDEN_BIASES].values, 0, hidden, 0, H2);
+            for (int i = 0; i < 2 * H; i++) {
+                float x = input[i];
+                if (x != 0) {
+                    for (int j = 0; j < H2; j++) {
+                        hidden[j] += x * hiddenWeights[i * H2 + j];
+                    }
+                }
+            }
+            float[] outputWeights = tensors[OUTPUT_WEIGHTS].values;
+            float output = tensors[OUTPUT_BIAS].values[0];
+            for (int j = 0; j < H2; j++) {
+                activations[j] = Math.max(0, Math.min(1, hidden[j]));
+                output += activations[j] * outputWeights[j];
+            }
+
+            float score = PackedPosition.score(data, offset) * (whiteToMove ? 1 : -1);
+            float result = PackedPosition.result(data, offset);
+            if (!whiteToMove) {
+                result = 1 - result;
+            }
+            float target = SCORE_WEIGHT * sigmoid(score / SIGMOID_SCALE) + (1 - SCORE_WEIGHT) * result;
+            float slope = Nnue.EVAL_SCALE / SIGMOID_SCALE;
+            float predicted = sigmoid(output * slope);
+            float error = predicted - target;
+            loss += error * error;
+
+            // Backward
+            float gradient = 2 * error * predicted * (1 - predicted) * slope;
+            gradients[OUTPUT_BIAS][0] += gradient;
+            float[] outputGradient = gradients[OUTPUT_WEIGHTS];
+            float[] hiddenBiasGradient = gradients[HIDDEN_BIASES];
+            for (int j = 0; j < H2; j++) {
+                outputGradient[j] += gradient * activations[j];
+                hiddenGradient[j] = hidden[j] > 0 && hidden[j] < 1 ? gradient * outputWeights[j] : 0;
+                hiddenBiasGradient[j] += hiddenGradient[j];
+            }
+            float[] hiddenWeightGradient = gradients[HIDDEN_WEIGHTS];
+            for (int i = 0; i < 2 * H; i++) {
+                float x = input[i];
+                float sum = 0;
+                if (x != 0) {
+                    for (int j = 0; j < H2; j++) {
+                        hiddenWeightGradient[i * H2 + j] += x * hiddenGradient[j];
+                        sum += hiddenWeights[i * H2 + j] * hiddenGradient[j];
+                    }
+                }
+                inputGradient[i] = accumulators[i] > 0 && accumulators[i] < 1 ? sum : 0;
+            }
+            float[] biasGradient = gradients[INPUT_BIASES];
+            for (int h = 0; h < H; h++) {
+                biasGradient[h] += inputGradient[h] + inputGradient[H + h];
+            }
+            spread(us, count, 0);
+            spread(them, count, H);
+        }
+
+        /** Sums the bias and the rows of the features into an accumulator. */
+        private void accumulate(int[] features, int count, int offset) {
+            float[] weights = tensors[INPUT_WEIGHTS].values;
+            System.arraycopy(tensors[INPUT_BIASES].values, 0, accumulators, offset, H);
+            for (int k = 0; k < count; k++) {
+                int row = features[k] * H;
+                for (int h = 0; h < H; h++) {
+                    accumulators[offset + h] += weights[row + h];
+                }
+            }
+        }
+
+        /** Adds an accumulator's gradient to the rows of its features. */
+        private void spread(int[] features, int count, int offset) {
+            float[] weightGradient = gradients[INPUT_WEIGHTS];
+            for (int k = 0; k < count; k++) {
+                int row = features[k] * H;
+                touched[features[k]] = true;
+                for (int h = 0; h < H; h++) {
+                    weightGradient[row + h] += inputGradient[offset + h];
+                }
+            }
+        }
+    }
+
+    private static float sigmoid(float x) {
+        return (float) (1 / (1 + Math.exp(-x)));
+    }
+
+    /**
+     * Reads a positions file in blocks, double-buffered: while one block is
+     * trained on, a background thread reads the next into the other buffer.
+     * Passes over the file follow one another; an empty block marks the end of
+     * each.
+     */
+    private static final class PositionReader implements AutoCloseable {
+        /** A block of records, valid until the next one is taken. */
+        record Block(byte[] data, int count) {
+        }
+
+        private final FileChannel channel;
+        private final ExecutorService io = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "nnue-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private byte[] inUse = new byte[BLOCK * PackedPosition.SIZE];
+        private Future<Block> pending;
+
+        PositionReader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            byte[] first = new byte[BLOCK * PackedPosition.SIZE];
+            pending = io.submit(() -> read(first));
+        }
+
+        /**
+         * Takes the block read in the background and starts reading the next
+         * into the buffer of the block taken before.
+         */
+        Block next() throws IOException {
+            Block block;
+            try {
+                block = pending.get();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            byte[] free = inUse;
+            inUse = block.data();
+            pending = io.submit(() -> read(free));
+            return block;
+        }
+
+        private Block read(byte[] data) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the block is full or the file ends
+            }
+            int count = buffer.position() / PackedPosition.SIZE;
+            if (count == 0) {
+                channel.position(0); // End of a pass; the next read starts over
+            }
+            return new Block(data, count);
+        }
+
+        @Override
+        public void close() throws IOException {
+            io.shutdownNow();
+            channel.close();
+        }
+    }
+}
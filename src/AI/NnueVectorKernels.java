@@ -0,0 +1,84 @@
+package AI;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The network's arithmetic on SIMD instructions through the Vector API, as
+ * wide as the processor allows. Loaded by {@link Nnue} only when the
+ * {@code jdk.incubator.vector} module is present.
+ */
+final class NnueVectorKernels implements Nnue.Kernels {
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int i = 0;
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public void activate(short[] accumulator, int[] input, int offset) {
+        int i = 0;
+        int parts = SHORTS.length() / INTS.length();
+        for (int bound = SHORTS.loopBound(accumulator.length); i < bound; i += SHORTS.length()) {
+            ShortVector clipped = ShortVector.fromArray(SHORTS, accumulator, i)
+                    .max((short) 0)
+                    .min((short) Nnue.ACTIVATION_ONE);
+            for (int part = 0; part < parts; part++) {
+                ((IntVector) clipped.convertShape(VectorOperators.S2I, INTS, part))
+                        .intoArray(input, offset + i + part * INTS.length());
+            }
+        }
+        for (; i < accumulator.length; i++) {
+            input[offset + i] = Math.max(0, Math.min(Nnue.ACTIVATION_ONE, accumulator[i]));
+        }
+    }
+
+    @Override
+    public void dense(int[] input, int[] weights, int[] biases, int[] output) {
+        int outputs = output.length;
+        int j = 0;
+        // One block of outputs at a time, so its sums stay in a register
+        for (int bound = INTS.loopBound(outputs); j < bound; j += INTS.length()) {
+            IntVector sums = IntVector.fromArray(INTS, biases, j);
+            for (int i = 0; i < input.length; i++) {
+                int x = input[i];
+                if (x != 0) { // Clipped units are often zero
+                    sums = sums.add(IntVector.fromArray(INTS, weights, i * outputs + j).mul(x));
+                }
+            }
+            sums.intoArray(output, j);
+        }
+        for (; j < outputs; j++) {
+            int sum = biases[j];
+            for (int i = 0; i < input.length; i++) {
+                sum += input[i] * weights[i * outputs + j];
+            }
+            output[j] = sum;
+        }
+    }
+}
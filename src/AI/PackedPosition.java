@@ -0,0 +1,114 @@
+package AI;
+
+import Pieces.Piece;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/// The fixed-width binary record of a training position, 32 bytes,
+/// little-endian. Training files are these records back to back, with no
+/// header, so a file can be read in blocks of any size, split or concatenated.
+///
+/// | Bytes | Field                                                          |
+/// |-------|----------------------------------------------------------------|
+/// | 0-7   | Occupied squares, bit `row * 8 + col` (row 0 is the 8th rank)  |
+/// | 8-23  | Piece code of each occupied square in square order, 4 bits each, low bits first |
+/// | 24-25 | Search score from White's point of view, in evaluation points  |
+/// | 26    | Game result: 0 if Black won, 1 for a draw, 2 if White won      |
+/// | 27    | Side to move: 0 for White, 1 for Black                         |
+/// | 28-29 | Half-moves played before the position                          |
+/// | 30-31 | Reserved, zero                                                 |
+///
+/// Piece codes are those of [Nnue]: 1 to 6 for White's pawn, knight, bishop,
+/// rook, queen and king, 7 to 12 for Black's.
+public final class PackedPosition {
+    /** Bytes per record. */
+    public static final int SIZE = 32;
+
+    private PackedPosition() {
+    }
+
+    /**
+     * Writes a position as one record.
+     *
+     * @param board       The position
+     * @param whiteToMove true if White is to move
+     * @param score       Search score from White's point of view, clamped to
+     *                    16 bits
+     * @param result      The game's result for White: 1, 0.5 or 0
+     * @param ply         Half-moves played before the position
+     * @param out         Buffer to write the record to, at its position
+     */
+    public static void pack(Piece[][] board, boolean whiteToMove, int score, double result, int ply,
+            ByteBuffer out) {
+        ByteOrder order = out.order();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        long occupied = 0;
+        byte[] pieces = new byte[16];
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            Piece piece = board[square / 8][square % 8];
+            if (piece != null) {
+                occupied |= 1L << square;
+                pieces[count / 2] |= (byte) (Nnue.code(piece) << (count % 2 * 4));
+                count++;
+            }
+        }
+        out.putLong(occupied);
+        out.put(pieces);
+        out.putShort((short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, score)));
+        out.put((byte) Math.round(result * 2));
+        out.put((byte) (whiteToMove ? 0 : 1));
+        out.putShort((short) Math.min(0xFFFF, ply));
+        out.putShort((short) 0);
+        out.order(order);
+    }
+
+    /**
+     * Reads the board of a record.
+     *
+     * @param data   Bytes holding the record
+     * @param offset Offset of the record
+     * @param board  Receives the piece code of each square, 0 if empty
+     */
+    public static void unpack(byte[] data, int offset, byte[] board) {
+        long occupied = getLong(data, offset);
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            if ((occupied & 1L << square) == 0) {
+                board[square] = 0;
+            } else {
+                board[square] = (byte) (data[offset + 8 + count / 2] >> (count % 2 * 4) & 0xF);
+                count++;
+            }
+        }
+    }
+
+    /** Returns a record's search score from White's point of view. */
+    public static int score(byte[] data, int offset) {
+        return (short) (data[offset + 24] & 0xFF | data[offset + 25] << 8);
+    }
+
+    /** Returns a record's game result for White: 1, 0.5 or 0. */
+    public static float result(byte[] data, int offset) {
+        return data[offset + 26] / 2f;
+    }
+
+    /** Tells whether White is to move in a record's position. */
+    public static boolean whiteToMove(byte[] data, int offset) {
+        return data[offset + 27] == 0;
+    }
+
+    /** Returns the half-moves played before a record's position. */
+    public static int ply(byte[] data, int offset) {
+        return data[offset + 28] & 0xFF | (data[offset + 29] & 0xFF) << 8;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = value << 8 | data[offset + i] & 0xFF;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,156 @@
+package AI;
+
+import Utilities.Move;
+import Utilities.MoveCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Searches on the opponent's time. After the engine moves, a background thread
+ * searches the positions the opponent's replies lead to, with the engine to
+ * move: first the reply the engine's own search expected, then every other
+ * reply, then the expected reply again at greater depth. Every search fills the
+ * shared {@link AI_Minimax#TABLE}, and each finished one is kept as a ready
+ * answer for its position.
+ *
+ * Sessions run on the {@link EngineService} pool. When the opponent moves,
+ * {@link #stop()} only raises a flag that the search checks at every node, so
+ * it returns immediately and frees its thread. If the reply was pondered
+ * deeply enough, {@link #take(long, int)} hands its move to the engine without
+ * searching; otherwise the engine searches with the warmed table.
+ *
+ * Answers belong to their session, so they hold at most one per reply. A
+ * session's answers are dropped when they are taken, when the next session
+ * starts, or when the game is undone or reset through {@link #discard()}.
+ */
+final class Ponderer {
+    /** A finished ponder search: the move to answer with and its depth. */
+    private static final class Result {
+        final Move move;
+        final int depth;
+
+        Result(Move move, int depth) {
+            this.move = move;
+            this.depth = depth;
+        }
+    }
+
+    /** The latest session, running or stopped, until its answers are taken or discarded. */
+    private static volatile Ponderer current;
+
+    private final ConcurrentHashMap<Long, Result> results = new ConcurrentHashMap<>();
+
+    private final ArrayList<Move> moves;
+    private final long[] history;
+    private final int halfMoveClock;
+    private final boolean engineIsWhite;
+    private final int depth;
+    private volatile boolean cancelled = false;
+
+    private Ponderer(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean engineIsWhite, int depth) {
+        this.moves = moves;
+        this.history = history;
+        this.halfMoveClock = halfMoveClock;
+        this.engineIsWhite = engineIsWhite;
+        this.depth = depth;
+    }
+
+    /**
+     * Starts pondering the position after the engine's move, replacing any
+     * earlier session.
+     *
+     * @param moves         Moves of the game so far, ending with the engine's move
+     * @param history       Position keys since the last capture or pawn move
+     * @param halfMoveClock Half-moves since the last capture or pawn move
+     * @param engineIsWhite true if the engine plays White
+     * @param depth         Depth the engine searches its moves to
+     */
+    static void start(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean engineIsWhite, int depth) {
+        discard();
+        Ponderer session = new Ponderer(moves, history, halfMoveClock, engineIsWhite, depth);
+        current = session;
+        EngineService.shared().execute(session::run);
+    }
+
+    /**
+     * Cancels the running session, if any, without waiting for it to finish.
+     * Its answers are kept for {@link #take(long, int)}.
+     */
+    static void stop() {
+        Ponderer session = current;
+        if (session != null) {
+            session.cancelled = true;
+        }
+    }
+
+    /** Cancels the session, if any, and drops its answers. */
+    static void discard() {
+        stop();
+        current = null;
+    }
+
+    /**
+     * Returns the pondered answer for a position, if one was searched at least
+     * to the given depth. The session's other answers are dropped, since the
+     * game has moved past them.
+     *
+     * @param key   Zobrist key of the position, with the engine to move
+     * @param depth Minimum depth
+     * @return The move, or null on a ponder miss
+     */
+    static Move take(long key, int depth) {
+        Ponderer session = current;
+        discard();
+        Result result = session == null ? null : session.results.get(key);
+        return result != null && result.depth >= depth ? result.move : null;
+    }
+
+    private void run() {
+        ArrayList<Move> replies = AI_Minimax.legalMoves(moves, !engineIsWhite);
+        long entry = AI_Minimax.TABLE.probe(history[history.length - 1]);
+        if (entry != TranspositionTable.MISS) {
+            short expected = TranspositionTable.move(entry);
+            for (int i = 0; i < replies.size(); i++) {
+                if (MoveCodec.encode(replies.get(i)) == expected) {
+                    replies.addFirst(replies.remove(i));
+                    break;
+                }
+            }
+        }
+        if (replies.isEmpty()) {
+            return;
+        }
+        // The expected reply, which the search deepens to the engine's depth
+        ponder(replies.getFirst(), depth);
+        // Every other reply, so a miss still finds the table warm
+        for (int i = 1; i < replies.size() && !cancelled; i++) {
+            ponder(replies.get(i), depth);
+        }
+        // The expected reply again, deeper than the engine would search it; each
+        // search repeats the shallower depths from the table and keeps its own result
+        for (int d = depth + 1; d <= AI_Minimax.MAX_DEPTH && !cancelled; d++) {
+            ponder(replies.getFirst(), d);
+        }
+    }
+
+    private void ponder(Move reply, int searchDepth) {
+        ArrayList<Move> line = new ArrayList<>(moves);
+        line.add(reply);
+        long key = AI_Minimax.positionKey(line, engineIsWhite);
+        boolean irreversible = reply.piece.name.equals("Pawn") || reply.capturedPiece != null;
+        long[] lineHistory;
+        if (irreversible) {
+            lineHistory = new long[] { key };
+        } else {
+            lineHistory = Arrays.copyOf(history, history.length + 1);
+            lineHistory[history.length] = key;
+        }
+        Move best = AI_Minimax.search(line, lineHistory, irreversible ? 0 : halfMoveClock + 1, searchDepth,
+                engineIsWhite, 0, () -> cancelled);
+        if (!cancelled && best != null && current == this) {
+            results.put(key, new Result(best, searchDepth));
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package AI;
+
+import Pieces.Piece;
+import Storage.ArchiveReader;
+import Storage.SavedGame;
+import Storage.SavedMove;
+import Utilities.Fen;
+import Utilities.Move;
+import Utilities.MoveCodec;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Mines tactical puzzles from the games of an archive, such as saved games or
+/// the self-play games of [DataGenerator].
+///
+/// Every position of every game, past the opening, is searched to a shallow
+/// depth. A position is a candidate when the move that led to it threw away
+/// much of its player's score, so that the side to move now stands clearly
+/// better, unless the best move just takes back what the last one captured.
+/// A candidate becomes a puzzle only if a deeper search agrees, and:
+///
+/// - its best move is the only good one: every other move, searched as deep,
+///   leaves at most a small edge and much less than the best move;
+/// - it wins quickly: a mate the [MateSolver] proves in a few moves, starting
+///   with the best move, or a line of a few moves after which the side to move
+///   is ahead in material by the margin it needs.
+///
+/// Games are split into shards on a work-stealing fork-join pool, so threads
+/// that finish short games take over the shards of long ones. Each thread
+/// reads the archive through a reader of its own and searches with its own
+/// transposition table and mate solver, so threads share nothing but the
+/// puzzles found. Puzzles are written in game order once all games are mined:
+/// as EPD, with the solution in the `bm` and `pv` operations in coordinate
+/// notation, or as a JSON array if the output file's name ends in `.json`.
+///
+/// Usage: `puzzles <game archive> <output file> [scan depth] [verify depth] [threads]`
+public class PuzzleMiner {
+    /** Half-moves at the start of each game that are not mined. */
+    private static final int OPENING_PLIES = 10;
+
+    /** Games one fork-join task mines without splitting further. */
+    private static final int LEAF_GAMES = 4;
+
+    /** Nodes one search may visit, whatever its depth. */
+    private static final long SEARCH_NODES = 2_000_000;
+
+    /** Longest mate accepted, in moves. */
+    private static final int MATE_MOVES = 4;
+
+    /** Nodes the mate solver may expand for one puzzle. */
+    private static final long MATE_NODES = 200_000;
+
+    /** Longest line in which a puzzle must win material, in half-moves. */
+    private static final int LINE_PLIES = 7;
+
+    /** Transposition table entries of each thread, as a power of two. */
+    private static final int TABLE_BITS = 18;
+
+    /** Mate solver table of each thread, in megabytes. */
+    private static final int SOLVER_MEGABYTES = 16;
+
+    /** Seconds between progress reports. */
+    private static final int REPORT_SECONDS = 10;
+
+    private static final int PAWN = AI_Minimax.PARAMS.get(EvalParams.PAWN);
+
+    /** Score the side to move must have after the best move. */
+    private static final int WINNING = 2 * PAWN;
+
+    /** Score the move before the puzzle must have thrown away. */
+    private static final int SWING = 2 * PAWN;
+
+    /** Highest score another move may have. */
+    private static final int SECOND_BEST = PAWN;
+
+    /** Material the solution line must win. */
+    private static final int GAIN = 2 * PAWN;
+
+    private final Path archive;
+    private final int scanDepth;
+    private final int verifyDepth;
+    private final List<Worker> workers = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<Worker> worker = ThreadLocal.withInitial(this::newWorker);
+    private final ConcurrentLinkedQueue<Puzzle> puzzles = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mined = new AtomicInteger();
+    private final AtomicInteger candidates = new AtomicInteger();
+    private int games;
+
+    private PuzzleMiner(Path archive, int scanDepth, int verifyDepth) {
+        this.archive = archive;
+        this.scanDepth = scanDepth;
+        this.verifyDepth = verifyDepth;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: puzzles <game archive> <output file> [scan depth] [verify depth] [threads]");
+            return;
+        }
+        int scanDepth = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int verifyDepth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        PuzzleMiner miner = new PuzzleMiner(Paths.get(args[0]), scanDepth, verifyDepth);
+        List<Puzzle> found = miner.run(threads);
+        Path output = Paths.get(args[1]);
+        if (output.toString().endsWith(".json")) {
+            writeJson(found, output);
+        } else {
+            writeEpd(found, output);
+        }
+        System.out.println("Wrote " + found.size() + " puzzles to " + output);
+    }
+
+    /** Mines every game and returns the puzzles in game order. */
+    private List<Puzzle> run(int threads) throws IOException, InterruptedException {
+        try (ArchiveReader reader = new ArchiveReader(archive)) {
+            games = reader.size();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            ForkJoinTask<Void> task = pool.submit(new Shard(0, games));
+            while (true) {
+                try {
+                    task.get(REPORT_SECONDS, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    report(start);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof UncheckedIOException io) {
+                        throw io.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            for (Worker each : workers) {
+                each.reader.close();
+            }
+        }
+        report(start);
+        ArrayList<Puzzle> found = new ArrayList<>(puzzles);
+        found.sort(Comparator.comparingInt((Puzzle puzzle) -> puzzle.game).thenComparingInt(puzzle -> puzzle.ply));
+        return found;
+    }
+
+    private Worker newWorker() {
+        try {
+            Worker created = new Worker(new ArchiveReader(archive));
+            workers.add(created);
+            return created;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void report(long start) {
+        double minutes = (System.nanoTime() - start) / 60e9;
+        System.out.printf("%d/%d games, %d candidates, %d puzzles, %.0f games/min%n", mined.get(), games,
+                candidates.get(), puzzles.size(), mined.get() / minutes);
+    }
+
+    /** A range of games, split in halves until it is small. Never serialized. */
+    @SuppressWarnings("serial")
+    private final class Shard extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Shard(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_GAMES) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Shard(from, middle), new Shard(middle, to));
+                return;
+            }
+            Worker current = worker.get();
+            for (int game = from; game < to; game++) {
+                try {
+                    current.mine(game);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                mined.incrementAndGet();
+            }
+        }
+    }
+
+    /** The reader and search state of one thread. */
+    private final class Worker {
+        final ArchiveReader reader;
+        final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+        final MateSolver solver = new MateSolver(SOLVER_MEGABYTES);
+
+        Worker(ArchiveReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Replays a game, scanning each position after the opening. A game
+         * stops being mined at a move the engine cannot play, such as an
+         * under-promotion.
+         */
+        void mine(int index) throws IOException {
+            SavedGame game = reader.read(index);
+            ArrayList<Move> moves = new ArrayList<>();
+            long[] keys = new long[game.moves.size() + 1];
+            keys[0] = AI_Minimax.positionKey(moves, true);
+            int halfMoveClock = 0;
+            int previous = 0;
+            boolean scanned = false;
+            for (int ply = 0; ; ply++) {
+                boolean white = ply % 2 == 0;
+                long[] history = Arrays.copyOfRange(keys, ply - halfMoveClock, ply + 1);
+                if (ply >= OPENING_PLIES) {
+                    Move best = AI_Minimax.search(context(history, halfMoveClock), moves, scanDepth, white);
+                    if (best == null) {
+                        return;
+                    }
+                    int score = white ? best.eval : -best.eval;
+                    if (scanned && score >= WINNING && score + previous >= SWING && !recaptures(best, moves)) {
+                        candidates.incrementAndGet();
+                        Puzzle puzzle = verify(moves, history, halfMoveClock, white);
+                        if (puzzle != null) {
+                            puzzle.game = index;
+                            puzzle.ply = ply;
+                            puzzles.add(puzzle);
+                        }
+                    }
+                    previous = score;
+                    scanned = true;
+                }
+                if (ply == game.moves.size()) {
+                    return;
+                }
+                Move move = find(AI_Minimax.legalMoves(moves, white), game.moves.get(ply));
+                if (move == null) {
+                    return;
+                }
+                moves.add(move);
+                boolean irreversible = move.piece.name.equals("Pawn") || move.capturedPiece != null;
+                halfMoveClock = irreversible ? 0 : halfMoveClock + 1;
+                keys[ply + 1] = AI_Minimax.positionKey(moves, !white);
+            }
+        }
+
+        /**
+         * Searches a candidate deeper and checks that it has one winning move
+         * and a short solution.
+         *
+         * @return The puzzle, or null if the candidate is not one
+         */
+        private Puzzle verify(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean white) {
+            Move best = AI_Minimax.search(context(history, halfMoveClock), moves, verifyDepth, white);
+            if (best == null) {
+                return null;
+            }
+            int score = white ? best.eval : -best.eval;
+            if (score < WINNING) {
+                return null;
+            }
+            for (Move other : AI_Minimax.legalMoves(moves, white)) {
+                if (MoveCodec.encode(other) == MoveCodec.encode(best)) {
+                    continue;
+                }
+                int otherScore = scoreAfter(moves, other, history, halfMoveClock, white);
+                if (otherScore > SECOND_BEST || otherScore > score - SWING) {
+                    return null;
+                }
+            }
+
+            Puzzle puzzle = new Puzzle();
+            Move lastMove = moves.isEmpty() ? null : moves.getLast();
+            Piece[][] board = AI_Minimax.getBoard(moves);
+            puzzle.fen = Fen.write(board, white, lastMove, halfMoveClock, moves.size() / 2 + 1);
+            puzzle.score = score;
+            if (AI_Minimax.isMateScore(best.eval)) {
+                MateSolver.Result mate = solver.solve(board, white, lastMove, MATE_MOVES, MATE_NODES, null);
+                if (mate.status != MateSolver.Status.MATE || mate.line.isEmpty()
+                        || MoveCodec.encode(mate.line.getFirst()) != MoveCodec.encode(best)) {
+                    return null;
+                }
+                puzzle.mate = mate.moves;
+                puzzle.line = mate.line;
+                return puzzle;
+            }
+            List<Move> line = variation(moves, best, white);
+            if (material(AI_Minimax.getBoard(line(moves, line)), white) - material(board, white) < GAIN) {
+                return null;
+            }
+            // End on the side to move's last move; the reply to it is forced
+            puzzle.line = line.subList(0, line.size() - 1 + line.size() % 2);
+            return puzzle;
+        }
+
+        /**
+         * Scores the position after another move from the side to move's
+         * point of view, with a search one half-move shallower.
+         */
+        private int scoreAfter(ArrayList<Move> moves, Move move, long[] history, int halfMoveClock, boolean white) {
+            ArrayList<Move> line = new ArrayList<>(moves);
+            line.add(move);
+            if (AI_Minimax.legalMoves(line, !white).isEmpty()) {
+                return AI_Minimax.inCheck(line, !white) ? Integer.MAX_VALUE : 0;
+            }
+            long key = AI_Minimax.positionKey(line, !white);
+            boolean irreversible = move.piece.name.equals("Pawn") || move.capturedPiece != null;
+            long[] lineHistory;
+            if (irreversible) {
+                lineHistory = new long[] { key };
+            } else {
+                lineHistory = Arrays.copyOf(history, history.length + 1);
+                lineHistory[history.length] = key;
+            }
+            SearchContext context = context(lineHistory, irreversible ? 0 : halfMoveClock + 1);
+            int score = AI_Minimax.score(context, line, verifyDepth - 1, !white);
+            return white ? score : -score;
+        }
+
+        /**
+         * Reads the best line after the best move back from the table, at most
+         * {@link #LINE_PLIES} half-moves and one reply.
+         */
+        private List<Move> variation(ArrayList<Move> moves, Move best, boolean white) {
+            ArrayList<Move> variation = new ArrayList<>();
+            variation.add(best);
+            ArrayList<Move> line = line(moves, variation);
+            boolean side = !white;
+            while (variation.size() <= LINE_PLIES) {
+                long entry = table.probe(AI_Minimax.positionKey(line, side));
+                if (entry == TranspositionTable.MISS || TranspositionTable.move(entry) == MoveCodec.NONE) {
+                    break;
+                }
+                Move next = null;
+                for (Move move : AI_Minimax.legalMoves(line, side)) {
+                    if (MoveCodec.encode(move) == TranspositionTable.move(entry)) {
+                        next = move;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                variation.add(next);
+                line.add(next);
+                side = !side;
+            }
+            return variation;
+        }
+
+        private SearchContext context(long[] history, int halfMoveClock) {
+            SearchContext context = new SearchContext(history, halfMoveClock);
+            context.useTable(table);
+            context.limitNodes(SEARCH_NODES);
+            context.disableNoise();
+            return context;
+        }
+    }
+
+    /** Tells whether a move takes back a piece the last move captured. */
+    private static boolean recaptures(Move move, ArrayList<Move> moves) {
+        Move last = moves.isEmpty() ? null : moves.getLast();
+        return last != null && last.capturedPiece != null && move.capturedPiece != null
+                && move.toRow == last.toRow && move.toCol == last.toCol;
+    }
+
+    /** Finds the legal move a saved move stands for, or null. */
+    private static Move find(ArrayList<Move> legal, SavedMove saved) {
+        if (saved.promoteTo != null && !saved.promoteTo.equals("Queen")) {
+            return null;
+        }
+        for (Move move : legal) {
+            if (move.fromRow == saved.fromRow && move.fromCol == saved.fromCol && move.toRow == saved.toRow
+                    && move.toCol == saved.toCol) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    private static ArrayList<Move> line(ArrayList<Move> moves, List<Move> variation) {
+        ArrayList<Move> line = new ArrayList<>(moves);
+        line.addAll(variation);
+        return line;
+    }
+
+    /** Returns the material balance from one side's point of view, kings aside. */
+    private static int material(Piece[][] board, boolean white) {
+        int balance = 0;
+        for (Piece[] row : board) {
+            for (Piece piece : row) {
+                if (piece != null && !piece.name.equals("King")) {
+                    int value = AI_Minimax.getPieceValue(piece);
+                    balance += piece.color.equals("White") == white ? value : -value;
+                }
+            }
+        }
+        return balance;
+    }
+
+    private static void writeEpd(List<Puzzle> puzzles, Path output) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(output)) {
+            for (Puzzle puzzle : puzzles) {
+                String[] fields = puzzle.fen.split(" ");
+                out.write(String.join(" ", Arrays.asList(fields).subList(0, 4)));
+                out.write(" bm " + puzzle.line.getFirst().toCoordinates() + "; pv " + puzzle.moves(" ") + ";");
+                out.write(puzzle.mate > 0 ? " dm " + puzzle.mate + ";" : " ce " + puzzle.centipawns() + ";");
+                out.write(" id \"game " + puzzle.game + " ply " + puzzle.ply + "\";");
+                out.newLine();
+            }
+        }
+    }
+
+    private static void writeJson(List<Puzzle> puzzles, Path output) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(output)) {
+            out.write("[");
+            for (int i = 0; i < puzzles.size(); i++) {
+                Puzzle puzzle = puzzles.get(i);
+                out.write(i == 0 ? "\n" : ",\n");
+                out.write("  {\"game\": " + puzzle.game + ", \"ply\": " + puzzle.ply + ", \"fen\": \"" + puzzle.fen
+                        + "\", \"moves\": [\"" + puzzle.moves("\", \"") + "\"], "
+                        + (puzzle.mate > 0 ? "\"mate\": " + puzzle.mate : "\"centipawns\": " + puzzle.centipawns())
+                        + "}");
+            }
+            out.write("\n]\n");
+        }
+    }
+
+    /** A position with a single winning tactic and its solution. */
+    private static final class Puzzle {
+        int game;
+        int ply;
+        String fen;
+
+        /** The solution, starting with the side to move's move. */
+        List<Move> line;
+
+        /** Score of the best move from the side to move's point of view. */
+        int score;
+
+        /** Moves to mate, 0 if the tactic wins material instead. */
+        int mate;
+
+        String moves(String separator) {
+            ArrayList<String> text = new ArrayList<>();
+            for (Move move : line) {
+                text.add(move.toCoordinates());
+            }
+            return String.join(separator, text);
+        }
+
+        int centipawns() {
+            return score * 100 / PAWN;
+        }
+    }
+}
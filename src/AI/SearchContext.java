@@ -0,0 +1,443 @@
+package AI;
+
+import Pieces.Piece;
+import Utilities.LatestValue;
+import Utilities.Move;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * State carried through one search: the Zobrist keys of the positions since
+ * the game's last irreversible move followed by the positions on the current
+ * search path, each with its half-move clock. Lets the search recognise
+ * repetitions and fifty-move draws without looking at the move list. Also
+ * holds what stops the search early: its deadline and a cancellation check.
+ */
+class SearchContext {
+    private long[] keys;
+    private int[] clocks;
+    private int count;
+    private long nodes;
+
+    // Counts added to EngineMetrics when the search ends
+    private long quiescenceNodes;
+    private int depthReached;
+    private long tableProbes;
+    private long tableHits;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+    private long cutoffMoveNumbers;
+    private long expandedNodes;
+    private long childrenSearched;
+
+    /** Where progress is published, or null if nobody is watching. */
+    private LatestValue<SearchProgress> progress;
+    private final long started = System.nanoTime();
+    private int rootDepth;
+    private Move rootBest;
+
+    /** System.nanoTime() at which the search must stop, if {@link #timed}. */
+    private final long deadline;
+    private final boolean timed;
+    private final BooleanSupplier cancelled;
+    private long nodeLimit;
+
+    /** True while the time budget and node limit are not applied. */
+    private boolean limitsHeld;
+
+    /** Weights the search orders moves by. */
+    private SearchParams params = AI_Minimax.SEARCH_PARAMS;
+
+    /** Where the search stores and looks up its results. */
+    private TranspositionTable table = AI_Minimax.TABLE;
+
+    /** Whether leaf scores get a little random noise, so equal moves vary. */
+    private boolean noisy = true;
+
+    /** Network accumulators along the search path, if a network evaluates. */
+    private Nnue.Accumulators accumulators;
+
+    /** Number of entries that belong to the game rather than the search path. */
+    private final int rootCount;
+
+    /**
+     * Creates the context for a search from the given root.
+     *
+     * @param history   Keys of the game's positions since its last capture or pawn
+     *                  move, ending with the root position
+     * @param rootClock Half-move clock of the root position
+     */
+    SearchContext(long[] history, int rootClock) {
+        this(history, rootClock, 0);
+    }
+
+    /**
+     * Creates the context for a search from the given root with a time budget.
+     *
+     * @param history     Keys of the game's positions since its last capture or pawn
+     *                    move, ending with the root position
+     * @param rootClock   Half-move clock of the root position
+     * @param budgetNanos Time the search may take, 0 for no limit
+     */
+    SearchContext(long[] history, int rootClock, long budgetNanos) {
+        this(history, rootClock, budgetNanos, () -> false);
+    }
+
+    /**
+     * Creates the context for a cancellable search from the given root.
+     *
+     * @param history     Keys of the game's positions since its last capture or pawn
+     *                    move, ending with the root position
+     * @param rootClock   Half-move clock of the root position
+     * @param budgetNanos Time the search may take, 0 for no limit
+     * @param cancelled   Returns true once the search should be abandoned
+     */
+    SearchContext(long[] history, int rootClock, long budgetNanos, BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+        rootCount = history.length;
+        timed = budgetNanos > 0;
+        deadline = System.nanoTime() + budgetNanos;
+        keys = Arrays.copyOf(history, history.length + 64);
+        clocks = new int[keys.length];
+        count = history.length;
+        for (int i = 0; i < count; i++) {
+            clocks[i] = Math.max(0, rootClock - (count - 1 - i));
+        }
+    }
+
+    /**
+     * Checks whether the search should stop: its time budget or node limit is
+     * used up or it was cancelled. Results found after this returns true are
+     * incomplete.
+     *
+     * @return true once the deadline has passed, the node limit was reached or
+     *         the search was cancelled
+     */
+    boolean shouldStop() {
+        return cancelled.getAsBoolean() || !limitsHeld
+                && ((timed && System.nanoTime() - deadline >= 0) || (nodeLimit > 0 && nodes >= nodeLimit));
+    }
+
+    /**
+     * Suspends or restores the time budget and node limit, so that a search
+     * can finish the depth it needs to have a move at all. Cancellation still
+     * stops it.
+     *
+     * @param held true to suspend the limits
+     */
+    void holdLimits(boolean held) {
+        limitsHeld = held;
+    }
+
+    /**
+     * Stops the search after a number of nodes, which unlike a time budget
+     * does not depend on how busy the machine is.
+     *
+     * @param limit Nodes the search may visit, 0 for no limit
+     */
+    void limitNodes(long limit) {
+        nodeLimit = limit;
+    }
+
+    /**
+     * Makes the search order moves by other weights than the engine's.
+     *
+     * @param params The weights to use
+     */
+    void useParams(SearchParams params) {
+        this.params = params;
+    }
+
+    /**
+     * Makes the search use a transposition table of its own instead of the
+     * engine's, so batch jobs on many threads do not evict each other's
+     * entries.
+     *
+     * @param table The table to use
+     */
+    void useTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Turns off the random noise added to leaf scores, so that a node-limited
+     * search gives the same result every time it is run.
+     */
+    void disableNoise() {
+        noisy = false;
+    }
+
+    /**
+     * Checks whether leaf scores get random noise.
+     *
+     * @return true unless {@link #disableNoise()} was called
+     */
+    boolean noisy() {
+        return noisy;
+    }
+
+    /**
+     * Makes the search evaluate with a network, starting its accumulators at
+     * the root.
+     *
+     * @param network The network, or null for the hand-crafted evaluation
+     * @param root    The root position
+     */
+    void evaluateWith(Nnue network, Piece[][] root) {
+        accumulators = network == null ? null : network.accumulators(root);
+    }
+
+    /**
+     * Returns the network accumulators of the current position.
+     *
+     * @return The accumulators, or null if no network evaluates
+     */
+    Nnue.Accumulators accumulators() {
+        return accumulators;
+    }
+
+    /**
+     * Updates the network accumulators for a move the search makes. Calls
+     * must be paired with {@link #leave()}, like {@link #push} with
+     * {@link #pop()}.
+     *
+     * @param move The move made
+     */
+    void enter(Move move) {
+        if (accumulators != null) {
+            accumulators.push(move);
+        }
+    }
+
+    /** Takes back the network accumulators' last move. */
+    void leave() {
+        if (accumulators != null) {
+            accumulators.pop();
+        }
+    }
+
+    /**
+     * Returns the weights the search orders moves by.
+     *
+     * @return The move-ordering weights
+     */
+    SearchParams params() {
+        return params;
+    }
+
+    /**
+     * Returns the transposition table the search uses.
+     *
+     * @return The table
+     */
+    TranspositionTable table() {
+        return table;
+    }
+
+    /** Counts one searched node, publishing progress every 1024 nodes. */
+    void countNode() {
+        nodes++;
+        if (progress != null && (nodes & 1023) == 0) {
+            publishProgress();
+        }
+    }
+
+    /** Counts one quiescence node. */
+    void countQuiescenceNode() {
+        quiescenceNodes++;
+    }
+
+    /**
+     * Counts one transposition table probe.
+     *
+     * @param hit true if the position was found
+     */
+    void countProbe(boolean hit) {
+        tableProbes++;
+        if (hit) {
+            tableHits++;
+        }
+    }
+
+    /**
+     * Counts a beta cutoff.
+     *
+     * @param moveNumber Number of moves searched at the node, the cutting move
+     *                   included
+     */
+    void countCutoff(int moveNumber) {
+        cutoffs++;
+        cutoffMoveNumbers += moveNumber;
+        if (moveNumber == 1) {
+            firstMoveCutoffs++;
+        }
+    }
+
+    /**
+     * Counts a node whose moves were searched.
+     *
+     * @param children Number of moves searched
+     */
+    void countExpanded(int children) {
+        expandedNodes++;
+        childrenSearched += children;
+    }
+
+    long quiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /** Returns the greatest number of moves entered below the root. */
+    int depthReached() {
+        return depthReached;
+    }
+
+    long tableProbes() {
+        return tableProbes;
+    }
+
+    long tableHits() {
+        return tableHits;
+    }
+
+    long cutoffs() {
+        return cutoffs;
+    }
+
+    long firstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    long cutoffMoveNumbers() {
+        return cutoffMoveNumbers;
+    }
+
+    long expandedNodes() {
+        return expandedNodes;
+    }
+
+    long childrenSearched() {
+        return childrenSearched;
+    }
+
+    /**
+     * Publishes the search's progress to a channel from now on.
+     *
+     * @param channel Receives the progress
+     */
+    void reportTo(LatestValue<SearchProgress> channel) {
+        progress = channel;
+    }
+
+    /**
+     * Records a new best root move and publishes it.
+     *
+     * @param depth Depth the root is being searched to
+     * @param best  Best move so far, with its score, or null as the root search
+     *              starts
+     */
+    void rootBest(int depth, Move best) {
+        rootDepth = depth;
+        rootBest = best;
+        if (progress != null) {
+            publishProgress();
+        }
+    }
+
+    private void publishProgress() {
+        progress.publish(new SearchProgress(rootDepth, rootBest, rootBest == null ? 0 : rootBest.eval, nodes,
+                System.nanoTime() - started));
+    }
+
+    /**
+     * Returns the number of nodes searched so far.
+     *
+     * @return Node count
+     */
+    long nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the key of the current position.
+     *
+     * @return Zobrist key
+     */
+    long key() {
+        return keys[count - 1];
+    }
+
+    /**
+     * Checks whether the current position is the root of the search.
+     *
+     * @return true if no move has been entered
+     */
+    boolean isRoot() {
+        return count == rootCount;
+    }
+
+    /**
+     * Returns how far the current position is from the root.
+     *
+     * @return Half-moves entered since the root
+     */
+    int ply() {
+        return count - rootCount;
+    }
+
+    /**
+     * Enters a position on the search path.
+     *
+     * @param key   Zobrist key of the position
+     * @param clock Half-move clock of the position
+     */
+    void push(long key, int clock) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2);
+            clocks = Arrays.copyOf(clocks, count * 2);
+        }
+        keys[count] = key;
+        clocks[count] = clock;
+        count++;
+        depthReached = Math.max(depthReached, count - rootCount);
+    }
+
+    /** Leaves the most recently entered position. */
+    void pop() {
+        count--;
+    }
+
+    /**
+     * Returns the half-move clock of the current position.
+     *
+     * @return Half-moves since the last capture or pawn move
+     */
+    int clock() {
+        return clocks[count - 1];
+    }
+
+    /**
+     * Checks whether the current position is a draw by the fifty-move rule or
+     * repeats an earlier position. Within a search one repetition is enough:
+     * if a line repeats once, either side can repeat it again. Only positions
+     * back to the last irreversible move, with the same side to move, are
+     * compared.
+     *
+     * @return true if the position should be scored as a draw
+     */
+    boolean isDraw() {
+        int top = count - 1;
+        if (clocks[top] >= 100) {
+            return true;
+        }
+        long key = keys[top];
+        int limit = Math.max(0, top - clocks[top]);
+        for (int i = top - 2; i >= limit; i -= 2) {
+            if (keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
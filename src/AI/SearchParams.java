@@ -0,0 +1,157 @@
+package AI;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The weights the search orders moves by. They change how soon good moves are
+ * tried, and so how much of the tree a limited search covers, but not the
+ * evaluation. Unlike {@link EvalParams} they cannot be fitted from positions,
+ * so {@link SpsaTuner} tunes them by playing games.
+ *
+ * The engine reads them once, at startup, from the file named by the
+ * {@code chess.searchParams} system property, or from {@code search.params} in
+ * the working directory if it exists, and otherwise uses the defaults. The
+ * file has one weight per line, its name followed by its value; lines starting
+ * with {@code #} are comments.
+ */
+public final class SearchParams {
+    /** Bonus per point of the captured piece's value. */
+    public static final int CAPTURE = 0;
+
+    /** Bonus per point the captured piece is worth more than the capturing one. */
+    public static final int EXCHANGE = 1;
+
+    /** Bonus for giving check. */
+    public static final int CHECK = 2;
+
+    /** Bonus for getting out of check. */
+    public static final int EVASION = 3;
+
+    /** Bonus per step closer to the enemy king the move lands. */
+    public static final int KING_APPROACH = 4;
+
+    /** Number of weights. */
+    public static final int COUNT = 5;
+
+    /** File the weights are read from when no system property names one. */
+    public static final String DEFAULT_FILE = "search.params";
+
+    static final String[] NAMES = { "CAPTURE_ORDER", "EXCHANGE_ORDER", "CHECK_ORDER", "EVASION_ORDER",
+            "KING_APPROACH_ORDER" };
+    private static final int[] DEFAULTS = { 10, 5, 20, 40, 10 };
+
+    private final int[] values;
+
+    /**
+     * Creates weights from their values.
+     *
+     * @param values One value per index, {@link #COUNT} in all
+     */
+    public SearchParams(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights, got " + values.length);
+        }
+        this.values = values.clone();
+    }
+
+    /**
+     * Returns the weights the engine was written with.
+     *
+     * @return The default weights
+     */
+    public static SearchParams defaults() {
+        return new SearchParams(DEFAULTS);
+    }
+
+    /**
+     * Reads the weights the engine starts with: those of the file named by the
+     * {@code chess.searchParams} system property, else those of
+     * {@value #DEFAULT_FILE} if it exists, else the defaults. A file that
+     * cannot be read is reported and the defaults are used.
+     *
+     * @return The weights to search with
+     */
+    public static SearchParams load() {
+        String name = System.getProperty("chess.searchParams");
+        Path file = Paths.get(name != null ? name : DEFAULT_FILE);
+        if (name == null && !Files.exists(file)) {
+            return defaults();
+        }
+        try {
+            return read(file);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return defaults();
+        }
+    }
+
+    /**
+     * Reads weights from a file. Weights the file does not name keep their
+     * default values.
+     *
+     * @param file The file to read
+     * @return The weights
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a line names an unknown weight or its
+     *                                  value is not a number
+     */
+    public static SearchParams read(Path file) throws IOException {
+        int[] values = DEFAULTS.clone();
+        for (String line : Files.readAllLines(file)) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty() || words[0].startsWith("#")) {
+                continue;
+            }
+            int index = Arrays.asList(NAMES).indexOf(words[0]);
+            if (index < 0 || words.length < 2) {
+                throw new IllegalArgumentException("Bad line in " + file + ": " + line);
+            }
+            values[index] = Integer.parseInt(words[1]);
+        }
+        return new SearchParams(values);
+    }
+
+    /**
+     * Writes the weights to a file that {@link #read} accepts.
+     *
+     * @param file    The file to write
+     * @param comment A line written at the top of the file, or null
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file, String comment) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            if (comment != null) {
+                out.write("# " + comment);
+                out.newLine();
+            }
+            for (int i = 0; i < COUNT; i++) {
+                out.write(NAMES[i] + " " + values[i]);
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Returns one weight.
+     *
+     * @param index The weight's index
+     * @return Its value
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a copy of all weights.
+     *
+     * @return One value per index
+     */
+    public int[] values() {
+        return values.clone();
+    }
+}
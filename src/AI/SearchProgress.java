@@ -0,0 +1,55 @@
+package AI;
+
+import Utilities.Move;
+
+/**
+ * A snapshot of a running search, published while it runs so the UI can show
+ * what the engine is thinking.
+ */
+public final class SearchProgress {
+    /** Depth being searched, in half-moves. */
+    public final int depth;
+
+    /** Best root move found so far, or null before the first one is scored. */
+    public final Move bestMove;
+
+    /** Score of the best move from White's point of view. */
+    public final int score;
+
+    /** Nodes searched so far. */
+    public final long nodes;
+
+    /** Time searched so far, in nanoseconds. */
+    public final long nanos;
+
+    SearchProgress(int depth, Move bestMove, int score, long nodes, long nanos) {
+        this.depth = depth;
+        this.bestMove = bestMove;
+        this.score = score;
+        this.nodes = nodes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Returns the search speed.
+     *
+     * @return Nodes per second, 0 if no time was measured
+     */
+    public long nodesPerSecond() {
+        return nanos > 0 ? nodes * 1_000_000_000L / nanos : 0;
+    }
+
+    /**
+     * Formats the progress for display, e.g.
+     * {@code Depth 3  g1f3  +0.4  12k nodes  5k/s}.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Depth ").append(depth);
+        if (bestMove != null) {
+            text.append("  ").append(bestMove.toCoordinates()).append("  ").append(Analysis.formatScore(score));
+        }
+        return text.append("  ").append(nodes / 1000).append("k nodes  ").append(nodesPerSecond() / 1000)
+                .append("k/s").toString();
+    }
+}
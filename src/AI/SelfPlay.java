@@ -0,0 +1,115 @@
+package AI;
+
+import Utilities.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A game between two engines with no board, clock or window: just the move
+ * list, the position keys for repetitions and the half-move clock. Games end
+ * by checkmate, stalemate, the fifty-move rule, threefold repetition, or are
+ * called drawn after a number of half-moves. Each game is independent, so any
+ * number can be played at once on different threads.
+ */
+final class SelfPlay {
+    /** Chooses the move of the side to move. */
+    interface Engine {
+        /**
+         * Chooses a move.
+         *
+         * @param moves         Moves of the game so far
+         * @param history       Keys of the positions since the last capture or
+         *                      pawn move, ending with the current one
+         * @param halfMoveClock Half-moves since the last capture or pawn move
+         * @param whiteToMove   true if White is to move
+         * @return One of the legal moves
+         */
+        Move choose(ArrayList<Move> moves, long[] history, int halfMoveClock, boolean whiteToMove);
+    }
+
+    /** Moves of the game, opening included. */
+    final ArrayList<Move> moves;
+
+    /** Key of the position before each move, and of the final position. */
+    final long[] keys;
+
+    /** The result for White: 1 for a win, 0.5 for a draw, 0 for a loss. */
+    final double result;
+
+    private SelfPlay(ArrayList<Move> moves, long[] keys, double result) {
+        this.moves = moves;
+        this.keys = keys;
+        this.result = result;
+    }
+
+    /**
+     * Plays random legal moves from the initial position, to start games from
+     * varied positions.
+     *
+     * @param plies  Number of half-moves
+     * @param random Source of the choices
+     * @return The moves, fewer if the game ended first
+     */
+    static ArrayList<Move> randomOpening(int plies, SplittableRandom random) {
+        ArrayList<Move> moves = new ArrayList<>();
+        for (int ply = 0; ply < plies; ply++) {
+            ArrayList<Move> legal = AI_Minimax.legalMoves(moves, ply % 2 == 0);
+            if (legal.isEmpty()) {
+                break;
+            }
+            moves.add(legal.get(random.nextInt(legal.size())));
+        }
+        return moves;
+    }
+
+    /**
+     * Plays a game to its end.
+     *
+     * @param opening  Moves the game starts with
+     * @param white    Engine playing White
+     * @param black    Engine playing Black
+     * @param maxPlies Half-moves after which the game is called drawn
+     * @return The finished game
+     */
+    static SelfPlay play(ArrayList<Move> opening, Engine white, Engine black, int maxPlies) {
+        ArrayList<Move> moves = new ArrayList<>();
+        long[] keys = new long[maxPlies + 1];
+        int halfMoveClock = 0;
+        boolean whiteToMove = true;
+        keys[0] = AI_Minimax.positionKey(moves, true);
+        for (int ply = 0; ; ply++) {
+            if (ply == maxPlies || halfMoveClock >= 100 || repeatedThreeTimes(keys, ply, halfMoveClock)) {
+                return new SelfPlay(moves, Arrays.copyOf(keys, ply + 1), 0.5);
+            }
+            ArrayList<Move> legal = AI_Minimax.legalMoves(moves, whiteToMove);
+            if (legal.isEmpty()) {
+                double result = !AI_Minimax.inCheck(moves, whiteToMove) ? 0.5 : whiteToMove ? 0 : 1;
+                return new SelfPlay(moves, Arrays.copyOf(keys, ply + 1), result);
+            }
+            Move move;
+            if (ply < opening.size()) {
+                move = opening.get(ply);
+            } else {
+                long[] history = Arrays.copyOfRange(keys, ply - halfMoveClock, ply + 1);
+                move = (whiteToMove ? white : black).choose(moves, history, halfMoveClock, whiteToMove);
+            }
+            moves.add(move);
+            boolean irreversible = move.piece.name.equals("Pawn") || move.capturedPiece != null;
+            halfMoveClock = irreversible ? 0 : halfMoveClock + 1;
+            whiteToMove = !whiteToMove;
+            keys[ply + 1] = AI_Minimax.positionKey(moves, whiteToMove);
+        }
+    }
+
+    private static boolean repeatedThreeTimes(long[] keys, int ply, int halfMoveClock) {
+        int repetitions = 1;
+        for (int i = ply - 2; i >= ply - halfMoveClock; i -= 2) {
+            if (keys[i] == keys[ply] && ++repetitions == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
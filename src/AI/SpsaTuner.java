@@ -0,0 +1,200 @@
+package AI;
+
+import Utilities.Move;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/// Tunes the [SearchParams] by simultaneous perturbation stochastic
+/// approximation (SPSA), which needs nothing but game results.
+///
+/// Each iteration nudges every weight up or down at random at once, giving two
+/// engines: one with the weights plus the nudges, one with the weights minus
+/// them. The two play a mini-match of game pairs from random openings, each
+/// opening once with either color, all pairs at the same time on the cores of
+/// the machine. Every weight then moves towards the side that scored better, in
+/// proportion to the score difference. The nudges and steps shrink as the
+/// iterations go on, so over thousands of games the weights settle.
+///
+/// Searches are limited by nodes rather than time and evaluate without random
+/// noise, so results do not depend on how busy the machine is, and better move ordering shows up as deeper
+/// searches within the same limit. Each engine searches every game with a
+/// table of its own, so games running at the same time do not share entries,
+/// and neither engine orders its moves by entries stored under the other's
+/// weights. The state is written to a checkpoint file
+/// every few iterations, and the rounded weights to `search.params`; running
+/// the tuner again with the same checkpoint resumes the run.
+///
+/// Usage: `spsa [iterations] [game pairs per iteration] [nodes per move] [checkpoint file]`
+public class SpsaTuner {
+    /** Iterations between checkpoints. */
+    private static final int CHECKPOINT_EVERY = 10;
+
+    /** Random half-moves each opening starts with. */
+    private static final int OPENING_PLIES = 6;
+
+    /** Half-moves after which a game is called drawn. */
+    private static final int MAX_PLIES = 160;
+
+    /** Size of each engine's transposition table per game, as a power of two. */
+    private static final int TABLE_BITS = 18;
+
+    private static final double ALPHA = 0.602;
+    private static final double GAMMA = 0.101;
+
+    /** Step size at the last iteration per unit of perturbation squared. */
+    private static final double R_END = 0.002;
+
+    private final int iterations;
+    private final int pairs;
+    private final long nodes;
+    private final Path checkpoint;
+    private final double[] theta;
+    private final double[] perturbation;
+    private int iteration;
+
+    private SpsaTuner(int iterations, int pairs, long nodes, Path checkpoint) {
+        this.iterations = iterations;
+        this.pairs = pairs;
+        this.nodes = nodes;
+        this.checkpoint = checkpoint;
+        theta = Arrays.stream(AI_Minimax.SEARCH_PARAMS.values()).asDoubleStream().toArray();
+        perturbation = new double[SearchParams.COUNT];
+        for (int i = 0; i < perturbation.length; i++) {
+            // Nudge each weight by a fifth of its size at the end of the run
+            perturbation[i] = Math.max(1, Math.abs(theta[i]) / 5);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int pairs = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(2, Runtime.getRuntime().availableProcessors());
+        long nodes = args.length > 2 ? Long.parseLong(args[2]) : 3000;
+        Path checkpoint = Paths.get(args.length > 3 ? args[3] : "spsa.checkpoint");
+        SpsaTuner tuner = new SpsaTuner(iterations, pairs, nodes, checkpoint);
+        if (Files.exists(checkpoint)) {
+            tuner.resume();
+            System.out.println("Resuming at iteration " + (tuner.iteration + 1));
+        }
+        tuner.run();
+    }
+
+    private void run() throws IOException {
+        SplittableRandom random = new SplittableRandom();
+        double stability = iterations / 10.0;
+        while (iteration < iterations) {
+            iteration++;
+            double progress = iteration;
+            double stepScale = Math.pow((stability + iterations) / (stability + progress), ALPHA);
+            double nudgeScale = Math.pow((double) iterations / progress, GAMMA);
+
+            int[] plus = new int[SearchParams.COUNT];
+            int[] minus = new int[SearchParams.COUNT];
+            double[] nudges = new double[SearchParams.COUNT];
+            for (int i = 0; i < theta.length; i++) {
+                nudges[i] = (random.nextBoolean() ? 1 : -1) * perturbation[i] * nudgeScale;
+                plus[i] = (int) Math.round(theta[i] + nudges[i]);
+                minus[i] = (int) Math.round(theta[i] - nudges[i]);
+            }
+
+            long start = System.nanoTime();
+            double score = match(new SearchParams(plus), new SearchParams(minus), random.split());
+            // Wins minus losses of the plus engine
+            double difference = 2 * score - 2 * pairs;
+            for (int i = 0; i < theta.length; i++) {
+                double step = R_END * perturbation[i] * perturbation[i] * stepScale;
+                theta[i] += step * difference / nudges[i];
+            }
+            System.out.printf("Iteration %d: plus scored %.1f/%d in %.1f s, weights %s%n", iteration, score,
+                    2 * pairs, (System.nanoTime() - start) / 1e9, format(theta));
+            if (iteration % CHECKPOINT_EVERY == 0 || iteration == iterations) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Plays the two engines against each other, each opening once with either
+     * color, the pairs in parallel.
+     *
+     * @return The first engine's score
+     */
+    private double match(SearchParams first, SearchParams second, SplittableRandom random) {
+        List<SplittableRandom> randoms = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            randoms.add(random.split());
+        }
+        return IntStream.range(0, pairs).parallel().mapToDouble(pair -> {
+            ArrayList<Move> opening = SelfPlay.randomOpening(OPENING_PLIES, randoms.get(pair));
+            return SelfPlay.play(opening, engine(first), engine(second), MAX_PLIES).result
+                    + 1 - SelfPlay.play(opening, engine(second), engine(first), MAX_PLIES).result;
+        }).sum();
+    }
+
+    /** Creates an engine for one game, with a transposition table of its own. */
+    private SelfPlay.Engine engine(SearchParams params) {
+        TranspositionTable table = new TranspositionTable(TABLE_BITS);
+        return (moves, history, halfMoveClock, whiteToMove) -> {
+            SearchContext context = new SearchContext(history, halfMoveClock);
+            context.useParams(params);
+            context.useTable(table);
+            context.limitNodes(nodes);
+            context.disableNoise();
+            return AI_Minimax.search(context, moves, AI_Minimax.MAX_DEPTH, whiteToMove);
+        };
+    }
+
+    /** Writes the checkpoint and the rounded weights. */
+    private void save() throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(checkpoint)) {
+            out.write("ITERATION " + iteration);
+            out.newLine();
+            for (int i = 0; i < theta.length; i++) {
+                out.write(SearchParams.NAMES[i] + " " + theta[i]);
+                out.newLine();
+            }
+        }
+        int[] rounded = new int[theta.length];
+        for (int i = 0; i < theta.length; i++) {
+            rounded[i] = (int) Math.round(theta[i]);
+        }
+        Path params = Paths.get(SearchParams.DEFAULT_FILE);
+        new SearchParams(rounded).write(params, "SPSA after " + iteration + " of " + iterations + " iterations");
+        System.out.println("Checkpoint written, weights in " + params);
+    }
+
+    /** Reads the iteration and weights back from the checkpoint. */
+    private void resume() throws IOException {
+        for (String line : Files.readAllLines(checkpoint)) {
+            String[] words = line.trim().split("\\s+");
+            if (words.length < 2) {
+                continue;
+            }
+            if (words[0].equals("ITERATION")) {
+                iteration = Integer.parseInt(words[1]);
+            } else {
+                int index = Arrays.asList(SearchParams.NAMES).indexOf(words[0]);
+                if (index >= 0) {
+                    theta[index] = Double.parseDouble(words[1]);
+                }
+            }
+        }
+    }
+
+    private static String format(double[] values) {
+        StringBuilder text = new StringBuilder();
+        for (double value : values) {
+            text.append(text.isEmpty() ? "" : " ").append(String.format("%.1f", value));
+        }
+        return text.toString();
+    }
+}
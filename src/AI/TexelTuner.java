@@ -0,0 +1,301 @@
+package AI;
+
+import Utilities.Fen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/// Tunes the evaluation weights on positions labelled with the results of the
+/// games they came from, after Texel's method.
+///
+/// The evaluation of a position is its feature counts times the
+/// [EvalParams] weights, so a position is kept as just its non-zero counts, in
+/// primitive arrays shared by all positions; millions of them fit in a few
+/// hundred megabytes. The tuner first fits the scale `K` that turns the current
+/// evaluation into the best prediction of the results, `1 / (1 + e^(-K * eval))`,
+/// then moves every weight down the gradient of the mean squared prediction
+/// error with Adam steps. The error and its gradient are summed over the
+/// positions in parallel on the common fork-join pool, so every core works on
+/// every step.
+///
+/// The positions file has one position per line: a FEN or EPD position followed
+/// by the game's result for White, as `1-0`, `0-1` or `1/2-1/2` (quoted or in
+/// brackets) or as `1.0`, `0.5` or `0.0`. Lines without a result are skipped,
+/// as are positions where the side to move has no legal move.
+///
+/// Usage: `tune <positions file> [output file] [iterations]`
+public class TexelTuner {
+    /** Lines parsed together, in parallel, while loading. */
+    private static final int BATCH = 1 << 16;
+
+    /** Positions one fork-join task sums without splitting further. */
+    private static final int LEAF = 1 << 14;
+
+    private static final double LEARNING_RATE = 1.0;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+
+    private int count;
+    private float[] results = new float[1024];
+    private int[] starts = new int[1025];
+    private short[] indices = new short[1 << 16];
+    private short[] counts = new short[1 << 16];
+    private double k;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: tune <positions file> [output file] [iterations]");
+            return;
+        }
+        Path output = Paths.get(args.length > 1 ? args[1] : EvalParams.DEFAULT_FILE);
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        TexelTuner tuner = new TexelTuner();
+        long start = System.nanoTime();
+        tuner.load(Paths.get(args[0]));
+        System.out.printf("Loaded %d positions in %.1f s%n", tuner.count, (System.nanoTime() - start) / 1e9);
+        if (tuner.count == 0) {
+            return;
+        }
+
+        EvalParams initial = AI_Minimax.PARAMS;
+        double[] weights = Arrays.stream(initial.values()).asDoubleStream().toArray();
+        tuner.k = tuner.fitScale(weights);
+        double before = tuner.error(weights);
+        System.out.printf("K = %.5f, error %.6f%n", tuner.k, before);
+
+        start = System.nanoTime();
+        tuner.tune(weights, iterations);
+        int[] rounded = new int[EvalParams.COUNT];
+        for (int i = 0; i < rounded.length; i++) {
+            rounded[i] = (int) Math.round(weights[i]);
+        }
+        double after = tuner.error(Arrays.stream(rounded).asDoubleStream().toArray());
+        System.out.printf("Tuned in %.1f s, error %.6f -> %.6f%n", (System.nanoTime() - start) / 1e9, before, after);
+
+        new EvalParams(rounded).write(output, String.format("Tuned on %d positions from %s, K = %.5f, error %.6f",
+                tuner.count, args[0], tuner.k, after));
+        System.out.println("Wrote " + output);
+    }
+
+    /**
+     * Reads the labelled positions of a file, counting their features in
+     * parallel a batch of lines at a time.
+     *
+     * @param file The positions file
+     * @throws IOException if the file cannot be read
+     */
+    private void load(Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            ArrayList<String> batch = new ArrayList<>(BATCH);
+            String line;
+            while ((line = in.readLine()) != null) {
+                batch.add(line);
+                if (batch.size() == BATCH) {
+                    addAll(batch);
+                    batch.clear();
+                }
+            }
+            addAll(batch);
+        }
+    }
+
+    /** A position's result and non-zero feature counts. */
+    private record Sample(float result, short[] indices, short[] counts) {
+    }
+
+    private void addAll(List<String> lines) {
+        List<Sample> samples = lines.parallelStream().map(TexelTuner::sample).toList();
+        for (Sample sample : samples) {
+            if (sample == null) {
+                continue;
+            }
+            if (count == results.length) {
+                results = Arrays.copyOf(results, count * 2);
+                starts = Arrays.copyOf(starts, count * 2 + 1);
+            }
+            int start = starts[count];
+            int end = start + sample.indices.length;
+            if (end > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(end, indices.length * 2));
+                counts = Arrays.copyOf(counts, indices.length);
+            }
+            System.arraycopy(sample.indices, 0, indices, start, sample.indices.length);
+            System.arraycopy(sample.counts, 0, counts, start, sample.counts.length);
+            results[count] = sample.result;
+            starts[++count] = end;
+        }
+    }
+
+    /**
+     * Counts the features of a labelled position.
+     *
+     * @return The position's sample, or null if the line has no result, is not
+     *         a position, or the side to move has no legal move
+     */
+    private static Sample sample(String line) {
+        float result = result(line);
+        if (Float.isNaN(result)) {
+            return null;
+        }
+        Fen position;
+        try {
+            position = Fen.parse(line);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        int[] features = new int[EvalParams.COUNT];
+        if (AI_Minimax.features(position.board, position.whiteToMove, position.lastMove, features) == 0) {
+            return null;
+        }
+        int nonZero = 0;
+        for (int feature : features) {
+            if (feature != 0) {
+                nonZero++;
+            }
+        }
+        short[] indices = new short[nonZero];
+        short[] counts = new short[nonZero];
+        for (int i = 0, next = 0; i < features.length; i++) {
+            if (features[i] != 0) {
+                indices[next] = (short) i;
+                counts[next++] = (short) features[i];
+            }
+        }
+        return new Sample(result, indices, counts);
+    }
+
+    /**
+     * Finds the game result on a line, looking from its end.
+     *
+     * @return 1 if White won, 0 if Black won, 0.5 for a draw, NaN if there is
+     *         no result
+     */
+    private static float result(String line) {
+        String[] tokens = line.trim().split("[\\s\"\\[\\];]+");
+        for (int i = tokens.length - 1; i >= 4; i--) {
+            switch (tokens[i]) {
+                case "1-0", "1.0" -> {
+                    return 1f;
+                }
+                case "0-1", "0.0" -> {
+                    return 0f;
+                }
+                case "1/2-1/2", "0.5" -> {
+                    return 0.5f;
+                }
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Finds the scale that makes the current evaluation the best predictor of
+     * the results, by golden-section search.
+     */
+    private double fitScale(double[] weights) {
+        double low = 0;
+        double high = 1;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        while (high - low > 1e-5) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            k = a;
+            double errorA = error(weights);
+            k = b;
+            double errorB = error(weights);
+            if (errorA < errorB) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /** Mean squared difference between the results and their predictions. */
+    private double error(double[] weights) {
+        return ForkJoinPool.commonPool().invoke(new Gradient(weights, 0, count, false))[EvalParams.COUNT] / count;
+    }
+
+    /** Moves the weights down the error gradient with Adam steps. */
+    private void tune(double[] weights, int iterations) {
+        double[] momentum = new double[EvalParams.COUNT];
+        double[] velocity = new double[EvalParams.COUNT];
+        for (int step = 1; step <= iterations; step++) {
+            double[] sums = ForkJoinPool.commonPool().invoke(new Gradient(weights, 0, count, true));
+            for (int i = 0; i < EvalParams.COUNT; i++) {
+                double gradient = sums[i] / count;
+                momentum[i] = BETA1 * momentum[i] + (1 - BETA1) * gradient;
+                velocity[i] = BETA2 * velocity[i] + (1 - BETA2) * gradient * gradient;
+                double m = momentum[i] / (1 - Math.pow(BETA1, step));
+                double v = velocity[i] / (1 - Math.pow(BETA2, step));
+                weights[i] -= LEARNING_RATE * m / (Math.sqrt(v) + 1e-12);
+            }
+            if (step % 50 == 0 || step == iterations) {
+                System.out.printf("Step %d, error %.6f%n", step, sums[EvalParams.COUNT] / count);
+            }
+        }
+    }
+
+    /**
+     * Sums the squared prediction error, and optionally its gradient, over a
+     * range of positions, splitting the range until it is small enough for one
+     * task. The result holds the gradient in its first {@link EvalParams#COUNT}
+     * entries and the error in the last. Never serialized.
+     */
+    @SuppressWarnings("serial")
+    private class Gradient extends RecursiveTask<double[]> {
+        private final double[] weights;
+        private final int from;
+        private final int to;
+        private final boolean withGradient;
+
+        Gradient(double[] weights, int from, int to, boolean withGradient) {
+            this.weights = weights;
+            this.from = from;
+            this.to = to;
+            this.withGradient = withGradient;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > LEAF) {
+                int middle = (from + to) >>> 1;
+                Gradient left = new Gradient(weights, from, middle, withGradient);
+                left.fork();
+                double[] sums = new Gradient(weights, middle, to, withGradient).compute();
+                double[] other = left.join();
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += other[i];
+                }
+                return sums;
+            }
+            double[] sums = new double[EvalParams.COUNT + 1];
+            for (int position = from; position < to; position++) {
+                double eval = 0;
+                for (int i = starts[position]; i < starts[position + 1]; i++) {
+                    eval += counts[i] * weights[indices[i]];
+                }
+                double predicted = 1 / (1 + Math.exp(-k * eval));
+                double difference = predicted - results[position];
+                sums[EvalParams.COUNT] += difference * difference;
+                if (withGradient) {
+                    double slope = 2 * difference * predicted * (1 - predicted) * k;
+                    for (int i = starts[position]; i < starts[position + 1]; i++) {
+                        sums[indices[i]] += slope * counts[i];
+                    }
+                }
+            }
+            return sums;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package AI;
+
+import Diagnostics.TranspositionTableEvent;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table of search results keyed by Zobrist key. The engine's
+ * table is shared by every search of the game, pondering included; batch jobs
+ * give each of their threads one of its own. Each entry packs the score, the
+ * depth it was searched to, whether the score is exact or a bound, and the best
+ * move as a {@link Utilities.MoveCodec} value into one long.
+ *
+ * Entries are written without locking: the key is stored XORed with the data,
+ * so a torn write from two threads racing on one slot fails the key check on
+ * the next probe and reads as a miss instead of as wrong data.
+ */
+final class TranspositionTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1;
+    static final int UPPER = 2;
+
+    /** Returned by {@link #probe(long)} when the position is not stored. */
+    static final long MISS = 0;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * Creates an empty table.
+     *
+     * @param sizeBits The table holds {@code 2^sizeBits} entries
+     */
+    TranspositionTable(int sizeBits) {
+        TranspositionTableEvent event = new TranspositionTableEvent();
+        event.begin();
+        keys = new long[1 << sizeBits];
+        data = new long[1 << sizeBits];
+        mask = (1 << sizeBits) - 1;
+        event.allocated = true;
+        event.entries = keys.length;
+        event.commit();
+    }
+
+    /**
+     * Looks a position up.
+     *
+     * @param key Zobrist key of the position
+     * @return The packed entry, or {@link #MISS}
+     */
+    long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = data[slot];
+        return entry != MISS && (keys[slot] ^ entry) == key ? entry : MISS;
+    }
+
+    /**
+     * Stores a search result, keeping an existing entry for the same position if
+     * it was searched deeper.
+     *
+     * @param key   Zobrist key of the position
+     * @param eval  Score of the position
+     * @param depth Depth searched
+     * @param flag  {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move  Best move found, or {@link Utilities.MoveCodec#NONE}
+     */
+    void store(long key, int eval, int depth, int flag, short move) {
+        int slot = (int) key & mask;
+        long old = data[slot];
+        if (old != MISS && (keys[slot] ^ old) == key && depth(old) > depth) {
+            return;
+        }
+        long entry = ((long) eval << 32) | ((long) (depth & 0x7F) << 24) | ((long) flag << 16) | (move & 0xFFFF)
+                | 1L << 31; // Keeps a stored entry distinct from MISS
+        data[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    /** Forgets every entry. */
+    void clear() {
+        TranspositionTableEvent event = new TranspositionTableEvent();
+        event.begin();
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+        event.entries = keys.length;
+        event.commit();
+    }
+
+    static int eval(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    static int depth(long entry) {
+        return (int) (entry >>> 24) & 0x7F;
+    }
+
+    static int flag(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    static short move(long entry) {
+        return (short) entry;
+    }
+}
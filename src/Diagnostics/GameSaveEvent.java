@@ -0,0 +1,19 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A game being saved to, or restored from, its journal. */
+@Name("chess.GameSave")
+@Label("Game Save")
+@Category({ "Chess", "Game" })
+@StackTrace(false)
+public class GameSaveEvent extends jdk.jfr.Event {
+    @Label("Restore")
+    public boolean restore;
+
+    @Label("Moves")
+    public int moves;
+}
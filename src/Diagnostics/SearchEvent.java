@@ -0,0 +1,34 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One engine search, from its start to its result. Its duration is the time
+ * the search took.
+ */
+@Name("chess.Search")
+@Label("Search")
+@Category({ "Chess", "Engine" })
+@Description("An engine search from start to result")
+@StackTrace(false)
+public class SearchEvent extends jdk.jfr.Event {
+    @Label("Depth")
+    public int depth;
+
+    @Label("Nodes")
+    public long nodes;
+
+    @Label("Quiescence Nodes")
+    public long quiescenceNodes;
+
+    @Label("Best Move")
+    public String bestMove;
+
+    @Label("Stopped Early")
+    @Description("The search ran out of time or was cancelled")
+    public boolean stopped;
+}
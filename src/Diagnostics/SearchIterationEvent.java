@@ -0,0 +1,29 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One completed depth of a search, with its result. */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({ "Chess", "Engine" })
+@Description("A search completed to one depth")
+@StackTrace(false)
+public class SearchIterationEvent extends jdk.jfr.Event {
+    @Label("Source")
+    @Description("What searched: engine or analysis")
+    public String source;
+
+    @Label("Depth")
+    public int depth;
+
+    @Label("Score")
+    @Description("Score of the best move from White's point of view")
+    public int score;
+
+    @Label("Nodes")
+    public long nodes;
+}
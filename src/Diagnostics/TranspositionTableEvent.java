@@ -0,0 +1,19 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A transposition table being allocated with its size, or cleared. */
+@Name("chess.TranspositionTable")
+@Label("Transposition Table")
+@Category({ "Chess", "Engine" })
+@StackTrace(false)
+public class TranspositionTableEvent extends jdk.jfr.Event {
+    @Label("Allocated")
+    public boolean allocated;
+
+    @Label("Entries")
+    public int entries;
+}
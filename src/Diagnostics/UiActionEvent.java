@@ -0,0 +1,25 @@
+package Diagnostics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An event handler run on the event dispatch thread. A long one is a stall of
+ * the whole UI.
+ */
+@Name("chess.UiAction")
+@Label("UI Action")
+@Category({ "Chess", "UI" })
+@Description("A handler run on the event dispatch thread")
+@StackTrace(false)
+public class UiActionEvent extends jdk.jfr.Event {
+    @Label("Action")
+    public String action;
+
+    @Label("Square")
+    @Description("Square acted on, such as e2, if any")
+    public String square;
+}
@@ -1,14 +1,16 @@
 package GameManager;
 
 import AI.*;
+import Diagnostics.UiActionEvent;
 import Pieces.*;
+import Server.GameBroadcaster;
 import Utilities.*;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
-import java.nio.file.*;
+import java.util.ArrayList;
 
 /// Represents a complete chess game application with a graphical user
 /// interface. This class manages the entire chess game lifecycle, including: -
@@ -45,6 +47,11 @@ public class Game extends JFrame {
      */
     private int selectedRow = -1, selectedCol = -1;
 
+    /**
+     * Squares currently showing a move dot, bit {@code row * 8 + col} per square.
+     */
+    private long dots = 0;
+
     /**
      * Defines the primary color used for one set of chessboard squares in the UI.
      * Defaults to light gray to provide visual contrast.
@@ -53,6 +60,28 @@ public class Game extends JFrame {
 
     private AIPlayer ai;
 
+    /**
+     * Streams the game to watchers when the {@code chess.broadcastPort} system
+     * property names a port, otherwise null.
+     */
+    private transient GameBroadcaster broadcaster;
+
+    /** Number of engine lines shown in analysis mode. */
+    private static final int ANALYSIS_LINES = 3;
+
+    /** Analyses the current position while the board's analyze button is on. */
+    private final transient Analyzer analyzer = new Analyzer(ANALYSIS_LINES,
+            analysis -> EventQueue.invokeLater(() -> showAnalysis(analysis)));
+
+    /** Longest mate the mate button looks for, in moves. */
+    private static final int MATE_SEARCH_MOVES = 6;
+
+    /** Time the mate button's search may take. */
+    private static final long MATE_SEARCH_NANOS = 10_000_000_000L;
+
+    /** Stops the running mate search, or null. */
+    private transient CancellationToken mateSearch;
+
     /**
      * Manages the graphical user interface for the chessboard and handles user
      * interactions.
@@ -81,115 +110,48 @@ public class Game extends JFrame {
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
                 if (gameLogic.boardState[i][j] != null) {
-                    board.addSquare(i, j, gameLogic.boardState[i][j].getIcon());
+                    board.addSquare(i, j, gameLogic.boardState[i][j]);
                 }
             }
         }
     }
 
     /**
-     * Continuously monitors the game for checkmate or stalemate conditions.
-     * If either condition is met, displays an appropriate message and provides
-     * restart options.
+     * Announces the end of the game and offers a restart. Runs on the event
+     * dispatch thread once the move or flag fall that ended the game has been
+     * handled.
+     *
+     * @param result     How the game ended
+     * @param loserColor Color of the player who lost, or who was to move on a draw
      */
-    private void isGameOver() {
-        new Thread(() -> {
-            while (true) {
-                if (gameLogic.isCheckmate() && (board.whiteTimer.isRunning() || board.blackTimer.isRunning())) {
-                    EventQueue.invokeLater(() -> {
-                        Path path = Paths.get("lastSave.txt");
-                        try {
-                            Files.deleteIfExists(path);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                        gameLogic.moves.clear();
-                        board.whiteTimer.stop();
-                        board.blackTimer.stop();
-                        JOptionPane.showMessageDialog(this,
-                                (gameLogic.currentPlayer.getColor().equals("White") ? "Black" : "White") + " has won!");
-
-                        int restartOption = JOptionPane.showConfirmDialog(this, "Do you want to restart the game?",
-                                "Restart Game", JOptionPane.YES_NO_OPTION);
-                        boolean restartChoice = restartOption == JOptionPane.YES_OPTION;
-
-                        if (restartChoice) {
-                            board.dispose();
-                            resetGame();
-                        } else {
-                            System.exit(0);
-                        }
-                    });
-                    break;
-                } else if (gameLogic.isStalemate() && (board.whiteTimer.isRunning() || board.blackTimer.isRunning())) {
-                    EventQueue.invokeLater(() -> {
-                        Path path = Paths.get("lastSave.txt");
-                        try {
-                            Files.deleteIfExists(path);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                        gameLogic.moves.clear();
-                        board.whiteTimer.stop();
-                        board.blackTimer.stop();
-                        JOptionPane.showMessageDialog(this, "It's stalemate!");
-                        int restartOption = JOptionPane.showConfirmDialog(this, "Do you want to restart the game?",
-                                "Restart Game", JOptionPane.YES_NO_OPTION);
-                        boolean restartChoice = restartOption == JOptionPane.YES_OPTION;
-
-                        if (restartChoice) {
-                            board.dispose();
-                            resetGame();
-                        } else {
-                            System.exit(0);
-                        }
-                    });
-                    break;
-                } else if (board.whiteTimeRemaining <= 0 || board.blackTimeRemaining <= 0) {
-                    EventQueue.invokeLater(() -> {
-                        if (ai != null)
-                            ai.cancel(true);
-                        Path path = Paths.get("lastSave.txt");
-                        try {
-                            Files.deleteIfExists(path);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                        gameLogic.moves.clear();
-                        board.whiteTimer.stop();
-                        board.blackTimer.stop();
-                        JOptionPane.showMessageDialog(this, gameLogic.currentPlayer.getColor() + " is out of time.");
-                        int restartOption = JOptionPane.showConfirmDialog(this, "Do you want to restart the game?",
-                                "Restart Game", JOptionPane.YES_NO_OPTION);
-                        boolean restartChoice = restartOption == JOptionPane.YES_OPTION;
-
-                        if (restartChoice) {
-                            board.dispose();
-                            resetGame();
-                        } else {
-                            System.exit(0);
-                        }
-                    });
-                    break;
-                }
-                try {
-                    // noinspection BusyWait
-                    Thread.sleep(100); // Checkmate check interval
-                } catch (InterruptedException e) {
-                    // noinspection CallToPrintStackTrace
-                    e.printStackTrace();
-                }
-            }
-        }).start();
+    private void showGameOver(GameResult result, String loserColor) {
+        if (result == GameResult.TIMEOUT && ai != null)
+            ai.cancel();
+        gameLogic.deleteSave();
+        gameLogic.moves.clear();
+        board.stopClock();
+        JOptionPane.showMessageDialog(this, result.describe(loserColor));
+        int restartOption = JOptionPane.showConfirmDialog(this, "Do you want to restart the game?",
+                "Restart Game", JOptionPane.YES_NO_OPTION);
+        boolean restartChoice = restartOption == JOptionPane.YES_OPTION;
+
+        if (restartChoice) {
+            board.dispose();
+            resetGame();
+        } else {
+            System.exit(0);
+        }
     }
 
     /**
-     * Starts the chess game. Checks for any saved games and prompts the user to
-     * continue from the last save or begin a new game.
+     * Starts the chess game. Listens for the game's end, then checks for any
+     * saved games and prompts the user to continue from the last save or begin
+     * a new game.
      */
     private void startGame() {
-        Path path = Paths.get("lastSave.txt");
-        if (Files.exists(path)) {
+        gameLogic.addGameListener(
+                (result, loserColor) -> EventQueue.invokeLater(() -> showGameOver(result, loserColor)));
+        if (gameLogic.hasSavedGame()) {
             int choice = JOptionPane.showConfirmDialog(this, "A saved game was found. Do you want to continue?",
                     "Continue From Last Game", JOptionPane.YES_NO_OPTION);
             if (choice == JOptionPane.YES_OPTION) {
@@ -201,18 +163,23 @@ public class Game extends JFrame {
         } else {
             initializeNewGame();
         }
+        startBroadcast();
         initGame();
-        if (!gameLogic.moves.isEmpty()) {
-            Move lastMove = gameLogic.moves.getLast();
-            board.whiteTimeRemaining = lastMove.timers[0];
-            board.blackTimeRemaining = lastMove.timers[1];
-            board.updateWhiteTimer(board.whiteTimeRemaining);
-            board.updateBlackTimer(board.blackTimeRemaining);
-            updateCapturedPiecesPanel();
-            board.setLastMove(lastMove.fromRow, lastMove.fromCol, lastMove.toRow, lastMove.toCol);
-            board.clearHighlights();
-            highlightCheck();
-            board.repaint();
+    }
+
+    /**
+     * Starts streaming the game to watchers if a broadcast port is configured.
+     */
+    private void startBroadcast() {
+        int port = Integer.getInteger("chess.broadcastPort", 0);
+        if (port <= 0) {
+            return;
+        }
+        try {
+            broadcaster = new GameBroadcaster(port, GameBroadcaster.DEFAULT_RING_SIZE);
+            broadcaster.attach(gameLogic);
+        } catch (IOException e) {
+            System.err.println("Broadcast not started on port " + port + ": " + e);
         }
     }
 
@@ -259,16 +226,20 @@ public class Game extends JFrame {
             ai.execute();
         }
 
-        // Prompt for timer duration
-        String timerInput = JOptionPane.showInputDialog(this, "Enter timer duration in minutes (default 10):");
+        // Prompt for the time control
+        String timerInput = JOptionPane.showInputDialog(this,
+                "Enter the time control in minutes, optionally with an increment (10+5)\n"
+                        + "or a delay (10d2) in seconds (default 10):");
+        TimeControl control;
         try {
-            timerDuration = Integer.parseInt(timerInput);
-            if (timerDuration <= 0 || timerDuration > 60)
-                throw new NumberFormatException();
+            control = TimeControl.parse(timerInput);
         } catch (NumberFormatException e) {
-            timerDuration = 10; // Default timer duration
+            control = new TimeControl(10, 0, 0); // Default time control
         }
-        gameLogic.timerDuration = timerDuration;
+        timerDuration = control.minutes;
+        gameLogic.timerDuration = control.minutes;
+        gameLogic.incrementSeconds = control.incrementSeconds;
+        gameLogic.delaySeconds = control.delaySeconds;
 
         gameLogic.currentPlayer = gameLogic.player1.getColor().equals("White") ? gameLogic.player1 : gameLogic.player2;
         if (gameLogic.currentPlayer instanceof AI_Minimax) {
@@ -284,8 +255,19 @@ public class Game extends JFrame {
     private void initGame() {
         EventQueue.invokeLater(() -> {
             // Initialize the chessboard
-            board = new ChessBoard(new int[] { 800, 800 }, color, timerDuration);
+            board = new ChessBoard(new int[] { 800, 800 }, color,
+                    new TimeControl(gameLogic.timerDuration, gameLogic.incrementSeconds, gameLogic.delaySeconds));
             updateIcons();
+            if (!gameLogic.moves.isEmpty()) {
+                // Continue a restored game from the clocks and position it was saved at
+                Move lastMove = gameLogic.moves.getLast();
+                board.updateWhiteTimer(lastMove.timers[0]);
+                board.updateBlackTimer(lastMove.timers[1]);
+                updateCapturedPiecesPanel();
+                board.setLastMove(lastMove.fromRow, lastMove.fromCol, lastMove.toRow, lastMove.toCol);
+                board.clearHighlights();
+                highlightCheck();
+            }
             setCH();
             board.setVisible(true);
 
@@ -309,7 +291,10 @@ public class Game extends JFrame {
                 board.setPlayerNames(gameLogic.player2.getName(), gameLogic.player1.getName());
             }
 
-            board.switchTimers(gameLogic.currentPlayer.getColor().equals("White") ? "Black" : "White");
+            board.startClock(gameLogic.currentPlayer.getColor());
+            if (broadcaster != null) {
+                broadcaster.setClock(board.clock);
+            }
 
             board.addUndoListener(e -> undo());
             board.addRestartListener(e -> {
@@ -333,40 +318,25 @@ public class Game extends JFrame {
                     if (p != null && gameLogic.currentPlayer.getColor().equals(p.color)) {
                         assistant(row, col);
                         board.highlightSquare(row, col, Color.YELLOW);
-                        board.repaint();
                     }
                 }
 
                 @Override
                 public void onDragEnd() {
-                    for (int i = 0; i < 8; i++) {
-                        for (int j = 0; j < 8; j++) {
-                            board.removeDot(i, j, gameLogic.boardState[i][j]);
-                        }
-                    }
+                    clearDots();
                 }
             });
-            isGameOver();
+            board.addTimeoutListener(e -> gameLogic.flagFall(e.getActionCommand()));
+            board.addAnalyzeListener(e -> updateAnalysis());
+            board.addMateListener(e -> findMate());
         });
     }
 
     /**
-     * Sets up mouse click listeners for each square on the chessboard to handle
-     * piece movements.
+     * Sets up the click listener that handles piece selection and movement.
      */
     private void setCH() {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                int finalI = i;
-                int finalJ = j;
-                board.getSquare(i, j).addMouseListener(new MouseAdapter() {
-                    @Override
-                    public void mouseClicked(MouseEvent e) {
-                        handleClick(finalI, finalJ);
-                    }
-                });
-            }
-        }
+        board.addSquareListener(this::handleClick);
     }
 
     /**
@@ -378,12 +348,10 @@ public class Game extends JFrame {
      * @param col The column index of the clicked square.
      */
     private void handleClick(int row, int col) {
+        UiActionEvent event = new UiActionEvent();
+        event.begin();
         board.clearHighlights();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board.removeDot(i, j, gameLogic.boardState[i][j]);
-            }
-        }
+        clearDots();
         if (!(gameLogic.currentPlayer instanceof AI_Minimax)) {
             if (selectedPiece == null) {
                 // Select a piece
@@ -397,8 +365,8 @@ public class Game extends JFrame {
                 }
             } else {
                 // Attempt to move the selected piece
-                if (gameLogic.checkValidateMove(selectedRow, selectedCol, row, col, board.whiteTimeRemaining,
-                        board.blackTimeRemaining)) {
+                if (gameLogic.isLegalMove(selectedRow, selectedCol, row, col)) {
+                    AIPlayer.stopPondering();
                     movePiece(selectedRow, selectedCol, row, col);
                 }
                 selectedPiece = gameLogic.boardState[row][col];
@@ -414,7 +382,7 @@ public class Game extends JFrame {
                 }
             }
         }
-        if (gameLogic.currentPlayer instanceof AI_Minimax && !AIPlayer.isThinking()) {
+        if (gameLogic.currentPlayer instanceof AI_Minimax && (ai == null || !ai.isThinking())) {
             String aiColor = gameLogic.currentPlayer.getColor();
             ai = new AIPlayer(gameLogic.currentPlayer.getColor().equals("White"), this, aiColor);
             ai.execute();
@@ -423,16 +391,17 @@ public class Game extends JFrame {
         highlightCheck();
 
         board.highlightSquare(row, col, Color.YELLOW);
-        board.repaint();
-        board.revalidate();
+        event.action = "click";
+        event.square = squareName(row, col);
+        event.commit();
     }
 
     private void handleDragMove(int fromRow, int fromCol, int toRow, int toCol) {
-        if (gameLogic.checkValidateMove(fromRow, fromCol, toRow, toCol, board.whiteTimeRemaining,
-                board.blackTimeRemaining)) {
+        if (gameLogic.isLegalMove(fromRow, fromCol, toRow, toCol)) {
+            AIPlayer.stopPondering();
             movePiece(fromRow, fromCol, toRow, toCol);
 
-            if (gameLogic.currentPlayer instanceof AI_Minimax && !AIPlayer.isThinking()) {
+            if (gameLogic.currentPlayer instanceof AI_Minimax && (ai == null || !ai.isThinking())) {
                 String aiColor = gameLogic.currentPlayer.getColor();
                 ai = new AIPlayer(gameLogic.currentPlayer.getColor().equals("White"), this, aiColor);
                 ai.execute();
@@ -440,20 +409,15 @@ public class Game extends JFrame {
 
             board.clearHighlights();
             highlightCheck();
-            board.repaint();
-            board.revalidate();
-        } else {
-            board.repaint();
         }
     }
 
     /**
      * Shows a dialog to the player to choose a piece to promote the pawn to.
-     * 
-     * @param row Row of the pawn that needs promotion.
-     * @param col Column of the pawn that needs promotion.
+     *
+     * @return Name of the chosen piece, a queen if the dialog is dismissed.
      */
-    private void showPromotionDialog(int row, int col) {
+    private String showPromotionDialog() {
         Object[] options = { "Queen", "Rook", "Bishop", "Knight" };
         String selectedOption = (String) JOptionPane.showInputDialog(
                 this,
@@ -463,29 +427,7 @@ public class Game extends JFrame {
                 null,
                 options,
                 options[0]);
-
-        if (selectedOption != null) {
-            switch (selectedOption) {
-                case "Queen":
-                    gameLogic.boardState[row][col] = new Queen(gameLogic.boardState[row][col].color);
-                    break;
-                case "Rook":
-                    gameLogic.boardState[row][col] = new Rook(gameLogic.boardState[row][col].color);
-                    break;
-                case "Bishop":
-                    gameLogic.boardState[row][col] = new Bishop(gameLogic.boardState[row][col].color);
-                    break;
-                case "Knight":
-                    gameLogic.boardState[row][col] = new Knight(gameLogic.boardState[row][col].color);
-                    break;
-            }
-            gameLogic.moves.getLast().promoteTo = selectedOption;
-        } else {
-            gameLogic.boardState[row][col] = new Queen(gameLogic.boardState[row][col].color);
-            gameLogic.moves.getLast().promoteTo = "Queen";
-        }
-        board.removeSquare(row, col);
-        board.addSquare(row, col, gameLogic.boardState[row][col].getIcon());
+        return selectedOption != null ? selectedOption : "Queen";
     }
 
     public void highlightCheck() {
@@ -506,90 +448,198 @@ public class Game extends JFrame {
     }
 
     private void assistant(int row, int col) {
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (gameLogic.checkValidateMove(row, col, i, j, board.whiteTimeRemaining,
-                        board.blackTimeRemaining)) {
-                    if (gameLogic.boardState[i][j] == null) {
-                        board.addDot(i, j, calculateMidColor(Color.WHITE, color));
-                    } else {
-                        board.highlightSquare(i, j, calculateMidColor(Color.WHITE, Color.red));
-                    }
-                }
+        long targets = gameLogic.getLegalTargets(row, col);
+        for (long rest = targets; rest != 0; rest &= rest - 1) {
+            int square = Long.numberOfTrailingZeros(rest);
+            int i = square / 8;
+            int j = square % 8;
+            if (gameLogic.boardState[i][j] == null) {
+                board.addDot(i, j, calculateMidColor(Color.WHITE, color));
+                dots |= 1L << square;
+            } else {
+                board.highlightSquare(i, j, calculateMidColor(Color.WHITE, Color.red));
             }
         }
     }
 
     /**
-     * Moves a piece from one square to another, performs castling if applicable,
-     * and saves the move history to file.
-     * * @param fromRow The starting row of the piece.
-     * 
+     * Removes the move dots shown by {@link #assistant(int, int)}, restoring the
+     * piece icon of only those squares.
+     */
+    public void clearDots() {
+        for (long rest = dots; rest != 0; rest &= rest - 1) {
+            int square = Long.numberOfTrailingZeros(rest);
+            board.removeDot(square / 8, square % 8, gameLogic.boardState[square / 8][square % 8]);
+        }
+        dots = 0;
+    }
+
+    /**
+     * Moves a piece from one square to another through the game's move pipeline
+     * and updates the board display. Asks the player for the promotion piece when
+     * a pawn reaches the last rank.
+     *
      * @param fromCol The starting column of the piece.
+     * @param fromRow The starting row of the piece.
      * @param toRow   The target row for the piece.
      * @param toCol   The target column for the piece.
      */
     public void movePiece(int fromRow, int fromCol, int toRow, int toCol) {
-        boolean castling = false;
-        gameLogic.moves.add(new Move(fromRow, fromCol, toRow, toCol, gameLogic.boardState[fromRow][fromCol],
-                gameLogic.boardState[toRow][toCol],
-                board.whiteTimeRemaining, board.blackTimeRemaining));
-
-        int dir = (toCol - fromCol > 0 ? 1 : -1);
-        if (gameLogic.boardState[fromRow][fromCol].name.equals("King") && (Math.abs(toCol - fromCol) == 2)) {
-            castling = !gameLogic.underCheck(gameLogic.boardState, gameLogic.currentPlayer.getColor());
-        } else if (gameLogic.boardState[fromRow][fromCol].name.equals("Pawn") && (Math.abs(toCol - fromCol) == 1)
-                && gameLogic.boardState[toRow][toCol] == null) {
-            gameLogic.currentPlayer.capturedPieces.add(gameLogic.boardState[fromRow][toCol]);
-            gameLogic.moves.removeLast();
-            Move move = gameLogic.moves.getLast();
-            gameLogic.boardState[move.toRow][move.toCol] = null;
-            board.removeSquare(move.toRow, move.toCol);
-            gameLogic.moves.add(new Move(fromRow, fromCol, toRow, toCol, gameLogic.boardState[fromRow][fromCol],
-                    gameLogic.boardState[fromRow][toCol],
-                    board.whiteTimeRemaining, board.blackTimeRemaining));
-        } else if (gameLogic.boardState[toRow][toCol] != null) {
-            gameLogic.currentPlayer.capturedPieces.add(gameLogic.boardState[toRow][toCol]);
+        movePiece(fromRow, fromCol, toRow, toCol, null);
+    }
+
+    /**
+     * Moves a piece from one square to another through the game's move pipeline
+     * and updates the board display.
+     *
+     * @param fromRow   The starting row of the piece.
+     * @param fromCol   The starting column of the piece.
+     * @param toRow     The target row for the piece.
+     * @param toCol     The target column for the piece.
+     * @param promoteTo Piece a promoting pawn becomes, or null to ask the player.
+     */
+    public void movePiece(int fromRow, int fromCol, int toRow, int toCol, String promoteTo) {
+        UiActionEvent event = new UiActionEvent();
+        event.begin();
+        Piece piece = gameLogic.boardState[fromRow][fromCol];
+        if (promoteTo == null && piece.name.equals("Pawn") && (toRow == 0 || toRow == 7)) {
+            promoteTo = showPromotionDialog();
+        }
+        String moverColor = gameLogic.currentPlayer.getColor();
+        gameLogic.applyMove(fromRow, fromCol, toRow, toCol, board.getWhiteTimeRemaining(),
+                board.getBlackTimeRemaining(), promoteTo);
+
+        refreshSquare(fromRow, fromCol);
+        refreshSquare(toRow, toCol);
+        refreshSquare(fromRow, toCol); // En passant capture
+        if (piece.name.equals("King") && Math.abs(toCol - fromCol) == 2) {
+            for (int col : new int[] { 0, 3, 5, 7 }) {
+                refreshSquare(fromRow, col);
+            }
         }
         updateCapturedPiecesPanel();
 
-        gameLogic.boardState[toRow][toCol] = gameLogic.boardState[fromRow][fromCol];
-        gameLogic.boardState[fromRow][fromCol] = null;
-        gameLogic.boardState[toRow][toCol].haveMove = true;
+        System.out.print(
+                gameLogic.moves.size() % 2 == 1 ? (gameLogic.moves.size() + 1) / 2 + ") " + gameLogic.moves.getLast()
+                        : "\t | " + gameLogic.moves.getLast() + "\n");
+        board.switchTimers(moverColor);
+        board.setLastMove(fromRow, fromCol, toRow, toCol);
+        updateAnalysis();
+        event.action = "move";
+        event.square = squareName(toRow, toCol);
+        event.commit();
+    }
 
-        board.moveSquare(fromRow, fromCol, toRow, toCol, gameLogic.boardState[toRow][toCol].getIcon());
+    /**
+     * Names a square in algebraic notation.
+     *
+     * @param row Row index of the square.
+     * @param col Column index of the square.
+     * @return The square's name, such as e4.
+     */
+    private static String squareName(int row, int col) {
+        return "" + (char) ('a' + col) + (8 - row);
+    }
 
-        if (castling) {
-            if (dir > 0) {
-                movePiece(fromRow, 7, toRow, 5);
-            } else {
-                movePiece(fromRow, 0, toRow, 3);
-            }
-            gameLogic.moves.removeLast();
+    /**
+     * Restarts analysis on the current position if analysis is on, and stops it
+     * otherwise or once the game is over.
+     */
+    private void updateAnalysis() {
+        if (board.isAnalyzing() && gameLogic.getResult() == null) {
+            analyzer.analyze(gameLogic.moves, gameLogic.getRepetitionHistory(), gameLogic.halfMoveClock,
+                    gameLogic.currentPlayer.getColor().equals("White"));
+        } else {
+            analyzer.stop();
+            board.analysisPanel.clear();
         }
+    }
 
-        if (gameLogic.boardState[toRow][toCol].name.equals("Pawn")) {
-            if ((toRow == 0 && gameLogic.boardState[toRow][toCol].color.equals("White"))
-                    || (toRow == 7 && gameLogic.boardState[toRow][toCol].color.equals("Black"))) {
-                showPromotionDialog(toRow, toCol);
-                gameLogic.movesToStalemate = 0;
-            } else {
-                gameLogic.movesToStalemate = gameLogic.updateStalemateCounter(gameLogic.boardState[toRow][toCol]);
-            }
-        } else {
-            gameLogic.movesToStalemate = gameLogic.updateStalemateCounter(gameLogic.boardState[toRow][toCol]);
+    /**
+     * Shows a result from the analyzer, unless the position has changed since it
+     * was searched.
+     *
+     * @param analysis The result
+     */
+    private void showAnalysis(Analysis analysis) {
+        long[] history = gameLogic.getRepetitionHistory();
+        if (!board.isAnalyzing() || analysis.key != history[history.length - 1]) {
+            return;
+        }
+        if (analysis.lines.isEmpty()) {
+            board.analysisPanel.show("No legal moves", java.util.List.of());
+            return;
         }
+        ArrayList<String> lines = new ArrayList<>();
+        for (Analysis.Line line : analysis.lines) {
+            lines.add(line.toString());
+        }
+        board.analysisPanel.show("Depth " + analysis.depth + "   " + analysis.nodesPerSecond() / 1000 + "k nodes/s",
+                lines);
+    }
 
-        System.out.print(
-                gameLogic.moves.size() % 2 == 1 ? (gameLogic.moves.size() + 1) / 2 + ") " + gameLogic.moves.getLast()
-                        : "\t | " + gameLogic.moves.getLast() + "\n");
-        board.switchTimers(gameLogic.currentPlayer.getColor());
-        gameLogic.currentPlayer = gameLogic.currentPlayer.getColor().equals(gameLogic.player1.getColor())
-                ? gameLogic.player2
-                : gameLogic.player1;
+    /**
+     * Looks for a forced mate by the side to move in the background, replacing
+     * a search still running, and shows the outcome under the buttons.
+     */
+    private void findMate() {
+        stopMateSearch();
+        if (gameLogic.getResult() != null) {
+            return;
+        }
+        long[] history = gameLogic.getRepetitionHistory();
+        long key = history[history.length - 1];
+        CancellationToken token = CancellationToken.withDeadline(MATE_SEARCH_NANOS);
+        mateSearch = token;
+        board.showEngineStatus("Looking for a forced mate...");
+        EngineService.shared().findMate(gameLogic.moves, gameLogic.currentPlayer.getColor().equals("White"),
+                MATE_SEARCH_MOVES, token).thenAccept(result -> EventQueue.invokeLater(() -> {
+                    if (!token.isCancelled()) {
+                        showMate(result, key);
+                    }
+                }));
+    }
 
-        board.setLastMove(fromRow, fromCol, toRow, toCol);
-        gameLogic.saveMovesToFile();
+    /**
+     * Shows the outcome of a mate search, unless the position has changed
+     * since it was searched.
+     *
+     * @param result The outcome
+     * @param key    Key of the position searched
+     */
+    private void showMate(MateSolver.Result result, long key) {
+        long[] history = gameLogic.getRepetitionHistory();
+        if (key != history[history.length - 1]) {
+            return;
+        }
+        mateSearch = null;
+        board.showEngineStatus(switch (result.status) {
+            case MATE -> "Forced mate found in " + result.moves
+                    + (result.line.isEmpty() ? "" : ": " + result.line.getFirst().toCoordinates());
+            case NO_MATE -> "No forced mate in " + result.moves + " moves";
+            case UNKNOWN -> "No forced mate found in time";
+        });
+    }
+
+    /** Cancels the running mate search, if any. */
+    private void stopMateSearch() {
+        if (mateSearch != null) {
+            mateSearch.cancel();
+            mateSearch = null;
+        }
+    }
+
+    /**
+     * Redraws one square from the board state.
+     *
+     * @param row Row index of the square.
+     * @param col Column index of the square.
+     */
+    private void refreshSquare(int row, int col) {
+        board.removeSquare(row, col);
+        if (gameLogic.boardState[row][col] != null) {
+            board.addSquare(row, col, gameLogic.boardState[row][col]);
+        }
     }
 
     /**
@@ -614,41 +664,41 @@ public class Game extends JFrame {
      * Handles undoing special moves such as castling and en passant.
      */
     private void undo() {
+        UiActionEvent event = new UiActionEvent();
+        event.begin();
+        AIPlayer.discardPondering();
         board.clearHighlights();
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                board.removeDot(i, j, gameLogic.boardState[i][j]);
-            }
-        }
+        clearDots();
         Move move = gameLogic.undo();
         if (move != null) {
-            board.moveSquare(move.toRow, move.toCol, move.fromRow, move.fromCol, move.piece.getIcon());
+            board.moveSquare(move.toRow, move.toCol, move.fromRow, move.fromCol, move.piece);
 
             if (move.piece.name.equals("Pawn") && (Math.abs(move.toCol - move.fromCol) == 1)
                     && move.capturedPiece == null) {
-                board.addSquare(move.fromRow, move.toCol, gameLogic.boardState[move.fromRow][move.toCol].getIcon());
+                board.addSquare(move.fromRow, move.toCol, gameLogic.boardState[move.fromRow][move.toCol]);
             } else if (move.piece.name.equals("King")) {
                 if (move.toCol - move.fromCol == 2) {
-                    board.moveSquare(move.fromRow, 5, move.fromRow, 7, gameLogic.boardState[move.fromRow][7].getIcon());
+                    board.moveSquare(move.fromRow, 5, move.fromRow, 7, gameLogic.boardState[move.fromRow][7]);
                 } else if (move.toCol - move.fromCol == -2) {
-                    board.moveSquare(move.toRow, 3, move.fromRow, 0, gameLogic.boardState[move.fromRow][0].getIcon());
+                    board.moveSquare(move.toRow, 3, move.fromRow, 0, gameLogic.boardState[move.fromRow][0]);
                 }
             }
 
             if (move.capturedPiece != null) {
-                board.addSquare(move.toRow, move.toCol, move.capturedPiece.getIcon());
+                board.addSquare(move.toRow, move.toCol, move.capturedPiece);
             } else {
                 board.removeSquare(move.toRow, move.toCol);
             }
 
             updateCapturedPiecesPanel();
-            board.switchTimers(gameLogic.currentPlayer.getColor());
             board.updateWhiteTimer(move.timers[0]);
             board.updateBlackTimer(move.timers[1]);
+            board.startClock(gameLogic.currentPlayer.getColor());
 
             if (gameLogic.currentPlayer instanceof AI_Minimax) {
                 undo();
             }
+            updateAnalysis();
 
             if (!gameLogic.moves.isEmpty()) {
                 Move lastMove = gameLogic.moves.getLast();
@@ -657,38 +707,31 @@ public class Game extends JFrame {
                 board.setLastMove(-1, -1, -1, -1); // Clear highlight
             }
         }
-        board.repaint();
-        board.revalidate();
+        event.action = "undo";
+        event.commit();
     }
 
     /**
      * Updates the display of captured pieces in the right panel.
      */
     private void updateCapturedPiecesPanel() {
-        board.whiteCapturedPanel.removeAll();
-        for (Piece piece : gameLogic.player1.capturedPieces) {
-            JLabel pieceIcon = new JLabel(
-                    new ImageIcon(piece.getIcon().getImage().getScaledInstance(20, 20, Image.SCALE_SMOOTH)));
-            board.whiteCapturedPanel.add(pieceIcon);
-        }
-
-        board.blackCapturedPanel.removeAll();
-        for (Piece piece : gameLogic.player2.capturedPieces) {
-            JLabel pieceIcon = new JLabel(
-                    new ImageIcon(piece.getIcon().getImage().getScaledInstance(20, 20, Image.SCALE_SMOOTH)));
-            board.blackCapturedPanel.add(pieceIcon);
-        }
-
-        // Repaint the right panel to reflect changes
-        board.rightPanel.revalidate();
-        board.rightPanel.repaint();
+        board.whiteCapturedPanel.update(gameLogic.player1.capturedPieces);
+        board.blackCapturedPanel.update(gameLogic.player2.capturedPieces);
     }
 
     /**
      * Resets the game board and state to its initial configuration.
      */
     private void resetGame() {
+        AIPlayer.discardPondering();
+        if (ai != null) {
+            ai.cancel();
+        }
+        analyzer.stop();
+        stopMateSearch();
+        AI_Minimax.clearTable();
         board.removeAll();
+        dots = 0;
         gameLogic.reset();
         initGame();
     }
@@ -3,15 +3,54 @@ package GameManager;
 import Pieces.*;
 import Utilities.*;
 import AI.AI_Minimax;
+import AI.EngineMetrics;
+import Diagnostics.GameSaveEvent;
+
+import Storage.GameJournal;
+import Storage.GameStore;
+import Storage.SavedGame;
+import Storage.SavedMove;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 
 public class GameLogic {
+    /**
+     * Receives the result of the game once, from the move pipeline that ended it.
+     */
+    public interface GameListener {
+        /**
+         * Called when the game ends.
+         *
+         * @param result     How the game ended
+         * @param loserColor Color of the player who lost, or who was to move on a draw
+         */
+        void onGameOver(GameResult result, String loserColor);
+    }
+
+    /**
+     * Receives every change to the move list, for mirroring the game elsewhere.
+     */
+    public interface MoveListener {
+        /**
+         * Called after a move has been played and recorded.
+         *
+         * @param move The move, with the remaining times it was played at
+         */
+        void onMove(Move move);
+
+        /**
+         * Called after a move has been taken back.
+         *
+         * @param move The move taken back
+         */
+        default void onUndo(Move move) {
+        }
+
+        /** Called after the game has been reset to the initial position. */
+        default void onReset() {
+        }
+    }
+
     public final Player player1 = new Player();
     public Player player2 = new Player();
     public Player currentPlayer = player1;
@@ -21,7 +60,36 @@ public class GameLogic {
 
     private int[] whiteKingPosition = new int[] { 7, 3 };
     private int[] blackKingPosition = new int[] { 0, 3 };
-    public int movesToStalemate = 0;
+
+    /** Half-moves since the last capture or pawn move, for the fifty-move rule. */
+    public int halfMoveClock = 0;
+
+    /** Zobrist key of every position of the game, the current one last. */
+    private final ArrayList<Long> positionKeys = new ArrayList<>();
+
+    /** The half-move clock of every position in {@link #positionKeys}. */
+    private final ArrayList<Integer> halfMoveClocks = new ArrayList<>();
+
+    /**
+     * Legal moves of the player to move, one bitmask of target squares
+     * ({@code row * 8 + col}) per origin square. Valid while
+     * {@link #legalMovesKey} matches the current position key.
+     */
+    private final long[] legalTargets = new long[64];
+    private long legalMovesKey;
+    private boolean legalMovesValid = false;
+
+    /** Append-only journal the game is saved to. */
+    private final GameJournal journal;
+
+    /** The moves the journal currently holds, compared by identity against {@link #moves}. */
+    private final ArrayList<Move> journaledMoves = new ArrayList<>();
+
+    private final ArrayList<GameListener> listeners = new ArrayList<>();
+    private final ArrayList<MoveListener> moveListeners = new ArrayList<>();
+
+    /** How the game ended, or null while it is still in progress. */
+    private GameResult result;
 
     public int[] getWhiteKingPosition() {
         return whiteKingPosition;
@@ -31,31 +99,96 @@ public class GameLogic {
         return blackKingPosition;
     }
 
-    public int updateStalemateCounter(Piece movedPiece) {
-        if (movedPiece.name.equals("Pawn")) {
+    /**
+     * Returns the half-move clock that follows a move: zero after a pawn move or
+     * a capture, since neither can be reversed, otherwise one more than before.
+     *
+     * @param move The move just played
+     * @return The new half-move clock
+     */
+    public int nextHalfMoveClock(Move move) {
+        if (move.piece.name.equals("Pawn") || move.capturedPiece != null) {
             return 0;
         }
-        return movesToStalemate + 1;
+        return halfMoveClock + 1;
+    }
+
+    /**
+     * Returns the keys of the positions since the last capture or pawn move, the
+     * only ones the current position can repeat, ending with the current one.
+     *
+     * @return Position keys, oldest first
+     */
+    public long[] getRepetitionHistory() {
+        int count = Math.min(halfMoveClock + 1, positionKeys.size());
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = positionKeys.get(positionKeys.size() - count + i);
+        }
+        return keys;
+    }
+
+    /**
+     * Records the current position on the key stack. Called after every move and
+     * once for the starting position.
+     */
+    private void pushPosition() {
+        positionKeys.add(Zobrist.hash(boardState, currentPlayer.getColor(), moves.isEmpty() ? null : moves.getLast()));
+        halfMoveClocks.add(halfMoveClock);
+    }
+
+    private void popPosition() {
+        if (positionKeys.size() > 1) {
+            positionKeys.removeLast();
+            halfMoveClocks.removeLast();
+        }
+        halfMoveClock = halfMoveClocks.getLast();
     }
 
     public int timerDuration = 10; // Default
 
+    /** Fischer increment per move in seconds, 0 for none. */
+    public int incrementSeconds = 0;
+
+    /** Bronstein delay per move in seconds, 0 for none. */
+    public int delaySeconds = 0;
+
     public GameLogic() {
-        // Initialize players or other state if needed
+        this(GameStore.defaultStore(), "default");
+    }
+
+    /**
+     * Creates the logic for one game that is saved under the given id.
+     *
+     * @param store  Store the game is saved to and restored from
+     * @param gameId Id of the game within the store
+     */
+    public GameLogic(GameStore store, String gameId) {
+        this.journal = store.journal(gameId);
+        pushPosition();
     }
 
     public void reset() {
+        deleteSave();
         boardState = Piece.getInitialSetup();
         player1.capturedPieces.clear();
         player2.capturedPieces.clear();
         moves.clear();
         currentPlayer = player1;
-        movesToStalemate = 0;
+        halfMoveClock = 0;
+        result = null;
         whiteKingPosition = new int[] { 7, 3 };
         blackKingPosition = new int[] { 0, 3 };
+        positionKeys.clear();
+        halfMoveClocks.clear();
+        pushPosition();
+        for (MoveListener listener : moveListeners) {
+            listener.onReset();
+        }
     }
 
     public boolean checkValidateMove(int fromRow, int fromCol, int toRow, int toCol, int whiteTime, int blackTime) {
+        EngineMetrics.countMoveValidation();
         boolean result = false;
         Piece selectedPiece = boardState[fromRow][fromCol];
         Piece piece = boardState[toRow][toCol];
@@ -87,6 +220,55 @@ public class GameLogic {
         return result;
     }
 
+    /**
+     * Returns the squares the piece on a square can legally move to, as a bitmask
+     * with bit {@code row * 8 + col} set for each target. The legal moves of a
+     * position are generated once and reused until the position changes.
+     *
+     * @param row Row of the piece
+     * @param col Column of the piece
+     * @return Bitmask of target squares, zero if the square holds no piece of the
+     *         player to move
+     */
+    public long getLegalTargets(int row, int col) {
+        long key = positionKeys.getLast();
+        if (!legalMovesValid || legalMovesKey != key) {
+            generateLegalMoves();
+            legalMovesKey = key;
+            legalMovesValid = true;
+        }
+        return legalTargets[row * 8 + col];
+    }
+
+    /**
+     * Checks a move against the legal moves of the current position.
+     *
+     * @param fromRow The starting row of the piece
+     * @param fromCol The starting column of the piece
+     * @param toRow   The target row
+     * @param toCol   The target column
+     * @return true if the player to move may play the move
+     */
+    public boolean isLegalMove(int fromRow, int fromCol, int toRow, int toCol) {
+        return (getLegalTargets(fromRow, fromCol) & (1L << (toRow * 8 + toCol))) != 0;
+    }
+
+    private void generateLegalMoves() {
+        String color = currentPlayer.getColor();
+        for (int from = 0; from < 64; from++) {
+            long targets = 0;
+            Piece piece = boardState[from / 8][from % 8];
+            if (piece != null && piece.color.equals(color)) {
+                for (int to = 0; to < 64; to++) {
+                    if (checkValidateMove(from / 8, from % 8, to / 8, to % 8, 0, 0)) {
+                        targets |= 1L << to;
+                    }
+                }
+            }
+            legalTargets[from] = targets;
+        }
+    }
+
     public void movePiece(int fromRow, int fromCol, int toRow, int toCol, int whiteTime, int blackTime) {
         boolean castling = false;
         moves.add(new Move(fromRow, fromCol, toRow, toCol, boardState[fromRow][fromCol], boardState[toRow][toCol],
@@ -121,8 +303,122 @@ public class GameLogic {
             }
             moves.removeLast();
         }
+    }
 
+    /**
+     * Plays a move through the full pipeline: updates the board, promotes a pawn
+     * that reached the last rank, advances the half-move clock, passes the turn,
+     * records the position key, saves the move and evaluates whether the game is over. A game-ending result
+     * is published to the registered {@link GameListener}s.
+     *
+     * @param fromRow   The starting row of the piece
+     * @param fromCol   The starting column of the piece
+     * @param toRow     The target row for the piece
+     * @param toCol     The target column for the piece
+     * @param whiteTime White's remaining time in deciseconds
+     * @param blackTime Black's remaining time in deciseconds
+     * @param promoteTo Piece a promoting pawn becomes, or null for a queen
+     * @return The recorded move
+     */
+    public Move applyMove(int fromRow, int fromCol, int toRow, int toCol, int whiteTime, int blackTime,
+            String promoteTo) {
+        movePiece(fromRow, fromCol, toRow, toCol, whiteTime, blackTime);
+        Move move = moves.getLast();
+        Piece piece = boardState[toRow][toCol];
+        if (piece.name.equals("Pawn") && (toRow == 0 || toRow == 7)) {
+            move.promoteTo = promoteTo != null ? promoteTo : "Queen";
+            boardState[toRow][toCol] = switch (move.promoteTo) {
+                case "Rook" -> new Rook(piece.color);
+                case "Bishop" -> new Bishop(piece.color);
+                case "Knight" -> new Knight(piece.color);
+                default -> new Queen(piece.color);
+            };
+            boardState[toRow][toCol].haveMove = true;
+        }
+        halfMoveClock = nextHalfMoveClock(move);
+        currentPlayer = currentPlayer.getColor().equals(player1.getColor()) ? player2 : player1;
+        pushPosition();
         saveMovesToFile();
+        for (MoveListener listener : moveListeners) {
+            listener.onMove(move);
+        }
+
+        GameResult outcome = evaluateResult();
+        if (outcome != null) {
+            endGame(outcome, currentPlayer.getColor());
+        }
+        return move;
+    }
+
+    /**
+     * Ends the game because a player ran out of time.
+     *
+     * @param color Color of the player whose flag fell
+     */
+    public void flagFall(String color) {
+        endGame(GameResult.TIMEOUT, color);
+    }
+
+    /**
+     * Registers a listener for the end of the game.
+     *
+     * @param listener Listener to notify
+     */
+    public void addGameListener(GameListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Registers a listener for moves, undos and resets.
+     *
+     * @param listener Listener to notify
+     */
+    public void addMoveListener(MoveListener listener) {
+        moveListeners.add(listener);
+    }
+
+    /**
+     * Returns how the game ended.
+     *
+     * @return The result, or null while the game is in progress
+     */
+    public GameResult getResult() {
+        return result;
+    }
+
+    /**
+     * Works out whether the player to move is checkmated, stalemated or bound
+     * by a draw rule. Legal moves are searched only once.
+     *
+     * @return The result, or null if the game goes on
+     */
+    public GameResult evaluateResult() {
+        long start = System.nanoTime();
+        try {
+            boolean inCheck = underCheck(boardState, currentPlayer.getColor());
+            if (playerCantMove()) {
+                return inCheck ? GameResult.CHECKMATE : GameResult.STALEMATE;
+            }
+            if (halfMoveClock >= 100) {
+                return GameResult.FIFTY_MOVE_RULE;
+            }
+            if (isThreefoldRepetition()) {
+                return GameResult.THREEFOLD_REPETITION;
+            }
+            return null;
+        } finally {
+            EngineMetrics.recordGameOverCheck(System.nanoTime() - start);
+        }
+    }
+
+    private void endGame(GameResult outcome, String loserColor) {
+        if (result != null) {
+            return;
+        }
+        result = outcome;
+        for (GameListener listener : listeners) {
+            listener.onGameOver(outcome, loserColor);
+        }
     }
 
     public Move undo() {
@@ -156,6 +452,11 @@ public class GameLogic {
             }
 
             currentPlayer = currentPlayer.getColor().equals(player1.getColor()) ? player2 : player1;
+            popPosition();
+            result = null;
+            for (MoveListener listener : moveListeners) {
+                listener.onUndo(move);
+            }
             if (currentPlayer instanceof AI_Minimax) {
                 return undo(); // Recursive undo for AI
             }
@@ -194,107 +495,122 @@ public class GameLogic {
         }
     }
 
-    public boolean isCheckmate() {
-        if (!underCheck(boardState, currentPlayer.getColor()))
-            return false;
-        return playerCantMove();
-    }
-
-    public boolean isStalemate() {
-        if (!underCheck(boardState, currentPlayer.getColor()) && (movesToStalemate >= 50 || isThreefoldRepetition()))
-            return true;
-        return playerCantMove();
-    }
-
     private boolean playerCantMove() {
-        for (int fromRow = 0; fromRow < 8; fromRow++) {
-            for (int fromCol = 0; fromCol < 8; fromCol++) {
-                for (int toRow = 0; toRow < 8; toRow++) {
-                    for (int toCol = 0; toCol < 8; toCol++) {
-                        if (checkValidateMove(fromRow, fromCol, toRow, toCol, 0, 0)) { // Time doesn't matter for
-                                                                                       // validation here
-                            return false;
-                        }
-                    }
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                if (getLegalTargets(row, col) != 0) {
+                    return false;
                 }
             }
         }
         return true;
     }
 
+    /**
+     * Checks whether the current position has occurred three times. Only
+     * positions since the last capture or pawn move are compared, stepping back
+     * two plies at a time so the same side is to move.
+     */
     private boolean isThreefoldRepetition() {
-        if (moves.size() < 12)
-            return false;
-        return moves.getLast().equals(moves.get(moves.size() - 5))
-                && moves.getLast().equals(moves.get(moves.size() - 9))
-                && moves.get(moves.size() - 2).equals(moves.get(moves.size() - 6))
-                && moves.get(moves.size() - 2).equals(moves.get(moves.size() - 10));
+        int top = positionKeys.size() - 1;
+        long key = positionKeys.get(top);
+        int limit = Math.max(0, top - halfMoveClock);
+        int repetitions = 1;
+        for (int i = top - 2; i >= limit; i -= 2) {
+            if (positionKeys.get(i) == key && ++repetitions >= 3) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Brings the journal in line with the move history: moves that were undone
+     * since the last save become undo records and newly played moves become move
+     * records. Only the difference is written, so each call costs O(changes)
+     * instead of rewriting the whole game.
+     */
     public void saveMovesToFile() {
-        try {
-            new FileWriter("lastSave.txt", false).close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        for (Move move : moves) {
-            try (FileWriter writer = new FileWriter("lastSave.txt", true)) {
-                writer.write(
-                        move.fromRow + "," + move.fromCol + "," + move.toRow + "," + move.toCol + "," + move.timers[0]
-                                + "," + move.timers[1] + (move.promoteTo == null ? "" : "," + move.promoteTo) + "\n");
-            } catch (java.io.IOException ex) {
-                ex.printStackTrace();
-            }
+        GameSaveEvent event = new GameSaveEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int common = Math.min(journaledMoves.size(), moves.size());
+        while (common > 0 && journaledMoves.get(common - 1) != moves.get(common - 1)) {
+            common--;
         }
         savePlayers();
+        while (journaledMoves.size() > common) {
+            journaledMoves.removeLast();
+            journal.appendUndo();
+        }
+        for (int i = common; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            journaledMoves.add(move);
+            journal.appendMove(SavedMove.of(move));
+        }
+        EngineMetrics.recordSave(System.nanoTime() - start);
+        event.moves = moves.size();
+        event.commit();
     }
 
     public void savePlayers() {
-        try (FileWriter writer = new FileWriter("players.txt", false)) {
-            writer.write(player1.getName() + "," + player1.getColor() + "," + timerDuration + "\n");
-            writer.write(player2.getName() + "," + player2.getColor() + "\n");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        SavedGame players = new SavedGame();
+        players.player1Name = player1.getName();
+        players.player1Color = player1.getColor();
+        players.player2Name = player2.getName();
+        players.player2Color = player2.getColor();
+        players.timerDuration = timerDuration;
+        players.incrementSeconds = incrementSeconds;
+        players.delaySeconds = delaySeconds;
+        journal.appendPlayers(players);
     }
 
-    public void readPlayers() {
-        Path path = Paths.get("players.txt");
-        try {
-            java.util.List<String> lines = Files.readAllLines(path);
-            String[] parts = lines.getFirst().split(",");
-            player1.setName(parts[0].trim());
-            player1.setColor(parts[1].trim());
-            timerDuration = Integer.parseInt(parts[2].trim());
-            parts = lines.get(1).split(",");
-            if (parts[0].trim().equals("AI MiniMax"))
-                player2 = new AI_Minimax();
-            player2.setName(parts[0].trim());
-            player2.setColor(parts[1].trim());
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    /**
+     * Checks whether there is a saved game to continue from.
+     *
+     * @return true if the journal holds a game
+     */
+    public boolean hasSavedGame() {
+        return journal.exists();
+    }
+
+    /**
+     * Deletes the saved game, typically once the game has ended.
+     */
+    public void deleteSave() {
+        journal.delete();
+        journaledMoves.clear();
+    }
+
+    private void readPlayers(SavedGame saved) {
+        player1.setName(saved.player1Name);
+        player1.setColor(saved.player1Color);
+        timerDuration = saved.timerDuration;
+        incrementSeconds = saved.incrementSeconds;
+        delaySeconds = saved.delaySeconds;
+        if (saved.player2Name.equals("AI MiniMax"))
+            player2 = new AI_Minimax();
+        player2.setName(saved.player2Name);
+        player2.setColor(saved.player2Color);
     }
 
     public void restoreMovesFromFile() {
-        Path path = Paths.get("lastSave.txt");
-        readPlayers();
+        GameSaveEvent event = new GameSaveEvent();
+        event.begin();
+        SavedGame saved = journal.recover();
+        readPlayers(saved);
         try {
-            java.util.List<String> lines = Files.readAllLines(path);
-            for (String line : lines) {
-                String[] parts = line.split(",");
-                if (parts.length < 6)
-                    continue;
-                int fromRow = Integer.parseInt(parts[0].trim());
-                int fromCol = Integer.parseInt(parts[1].trim());
-                int toRow = Integer.parseInt(parts[2].trim());
-                int toCol = Integer.parseInt(parts[3].trim());
-                int whiteTime = Integer.parseInt(parts[4].trim());
-                int blackTime = Integer.parseInt(parts[5].trim());
-                String promoteTo = parts.length > 6 ? parts[6].trim() : null;
+            for (SavedMove savedMove : saved.moves) {
+                int fromRow = savedMove.fromRow;
+                int fromCol = savedMove.fromCol;
+                int toRow = savedMove.toRow;
+                int toCol = savedMove.toCol;
+                String promoteTo = savedMove.promoteTo;
                 Move move = new Move(fromRow, fromCol, toRow, toCol, boardState[fromRow][fromCol],
-                        boardState[toRow][toCol], whiteTime, blackTime);
+                        boardState[toRow][toCol], savedMove.whiteTime, savedMove.blackTime);
+                move.promoteTo = promoteTo;
                 moves.add(move);
+                journaledMoves.add(move);
                 if (boardState[toRow][toCol] != null) {
                     currentPlayer.capturedPieces.add(boardState[toRow][toCol]);
                 }
@@ -325,9 +641,14 @@ public class GameLogic {
                         boardState[move.fromRow][0] = null;
                     }
                 }
+                halfMoveClock = nextHalfMoveClock(move);
+                pushPosition();
             }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
+        event.restore = true;
+        event.moves = moves.size();
+        event.commit();
     }
 }
@@ -0,0 +1,30 @@
+package GameManager;
+
+/**
+ * The ways a game can end. Published to {@link GameLogic.GameListener}s once,
+ * by the move that ends the game or by a player's flag falling.
+ */
+public enum GameResult {
+    CHECKMATE,
+    STALEMATE,
+    FIFTY_MOVE_RULE,
+    THREEFOLD_REPETITION,
+    TIMEOUT;
+
+    /**
+     * Describes the result for the players.
+     *
+     * @param loserColor Color of the player who lost, or who was to move on a draw
+     * @return A message announcing the result
+     */
+    public String describe(String loserColor) {
+        String winnerColor = loserColor.equals("White") ? "Black" : "White";
+        return switch (this) {
+            case CHECKMATE -> winnerColor + " has won!";
+            case STALEMATE -> "It's stalemate!";
+            case FIFTY_MOVE_RULE -> "It's a draw by the fifty-move rule!";
+            case THREEFOLD_REPETITION -> "It's a draw by threefold repetition!";
+            case TIMEOUT -> loserColor + " is out of time.";
+        };
+    }
+}
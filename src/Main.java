@@ -1,7 +1,34 @@
+import AI.DataGenerator;
+import AI.MateSolver;
+import AI.NnueTrainer;
+import AI.PuzzleMiner;
+import AI.SpsaTuner;
+import AI.TexelTuner;
 import GameManager.*;
+import Server.GameBroadcaster;
+import Server.GameServer;
+import Server.LoadClient;
+import Server.WatchClient;
+import Storage.SaveConverter;
+
+import java.util.Arrays;
 
 public class Main {
-    public static void main(String[] args) {
-        Game.main(args);
+    public static void main(String[] args) throws Exception {
+        String[] rest = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+        switch (args.length > 0 ? args[0] : "") {
+            case "convert" -> SaveConverter.main(rest);
+            case "server" -> GameServer.main(rest);
+            case "loadtest" -> LoadClient.main(rest);
+            case "broadcast" -> GameBroadcaster.main(rest);
+            case "watch" -> WatchClient.main(rest);
+            case "tune" -> TexelTuner.main(rest);
+            case "spsa" -> SpsaTuner.main(rest);
+            case "train" -> NnueTrainer.main(rest);
+            case "generate" -> DataGenerator.main(rest);
+            case "mate" -> MateSolver.main(rest);
+            case "puzzles" -> PuzzleMiner.main(rest);
+            default -> Game.main(args);
+        }
     }
 }
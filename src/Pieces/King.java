@@ -4,7 +4,7 @@ package Pieces;
  * Represents a King piece in a chess game.
  * The King can move one square in any direction and has the ability to castle under specific conditions.
  */
-class King extends Piece {
+public class King extends Piece {
 
     /**
      * Constructs a King with the specified color.
@@ -2,12 +2,10 @@ package Pieces;
 
 import Utilities.*;
 
-import javax.swing.*;
-import java.io.File;
-
 /// Represents an abstract base class for chess pieces in a chess game.
 /// This class provides common properties and methods for all chess pieces,
-/// including name, color, icon representation, and movement validation.
+/// including name, color, and movement validation. Pieces are drawn from
+/// [SpriteCache].
 /// Each chess piece type (Pawn, Rook, Knight, etc.) will extend this abstract class
 /// and implement its own movement rules.
 ///
@@ -24,42 +22,20 @@ public abstract class Piece {
      */
     public String color;
 
-    /**
-     * The visual icon representing the piece, loaded from an image file.
-     */
-    public ImageIcon icon;
-
     /**
      * Flag to indicate if the piece has moved during the game.
      * Useful for special moves like castling or pawn's first move.
      */
     public boolean haveMove = false;
 
-    /**
-     * Base path for loading piece icons, constructed using the user's directory.
-     */
-    protected static String basePath = "assets" + File.separator;
-
     /// Constructor for creating a chess piece with a name and color.
-    /// Initializes the piece's name, color, and loads its corresponding icon image.
-    /// The icon is loaded from a file named with the first character of the color
-    /// and the piece's name (e.g., "BPawn.png" for a Black Pawn).
+    /// Initializes the piece's name and color.
     ///
     /// @param name The name of the chess piece
     /// @param color The color of the piece ("White" or "Black")
     public Piece(String name, String color) {
         this.name = name;
         this.color = color;
-        this.icon = new ImageIcon(basePath + color.charAt(0) + name +".png");
-    }
-
-    /**
-     * Returns the visual icon representing the chess piece.
-     *
-     * @return The ImageIcon for the piece
-     */
-    public ImageIcon getIcon() {
-        return icon;
     }
 
     /// Abstract method to validate if a piece can move from one position to another.
@@ -0,0 +1,502 @@
+package Server;
+
+import GameManager.GameLogic;
+import Storage.GameStore;
+import Utilities.GameClock;
+import Utilities.Move;
+import Utilities.TimeControl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Streams one game's moves and clocks to any number of watchers over TCP.
+///
+/// A single selector thread accepts watchers and writes to them without
+/// blocking. Events are encoded once, as text lines, into a ring buffer in
+/// direct memory that all watchers share: each watcher only holds its position
+/// in the stream, and its socket is written straight from a view of the ring,
+/// so no event is copied per watcher.
+///
+/// A watcher that joins late first receives a snapshot of the game so far,
+/// which is built once and shared by everyone joining at that point, and then
+/// the live tail. A watcher that falls more than the ring's capacity behind has
+/// missed events; once it has taken what was already sent, it is downsampled to
+/// a fresh snapshot and continues from the tail. It is dropped after
+/// [#MAX_RESYNCS] such resyncs, or when its socket takes nothing for
+/// [#STALL_TIMEOUT_NANOS] while it has data waiting. Stalls are checked on
+/// every write and by a sweep about once a second, so a watcher is dropped on
+/// time even when no new events arrive.
+///
+/// The stream is made of these lines:
+///
+/// - `SNAPSHOT <moves>`, the `MOVE` lines of the game so far, then `LIVE`
+/// - `MOVE <number> <move> <white ds> <black ds>`, remaining times in deciseconds
+/// - `UNDO <number>`
+/// - `CLOCK <white ds> <black ds>`, about once a second while a clock runs
+/// - `END <result> <loser color>`
+/// - `NEWGAME`
+public class GameBroadcaster implements Closeable {
+    /** Default size of the shared event ring. */
+    public static final int DEFAULT_RING_SIZE = 1 << 16;
+
+    /** Number of times a slow watcher is resynchronised before it is dropped. */
+    private static final int MAX_RESYNCS = 3;
+
+    /** A watcher whose socket takes nothing for this long is dropped. */
+    private static final long STALL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Kernel send buffer per watcher. Kept small so thousands of watchers stay
+     * cheap and a stalled one shows up as lag in the ring instead of hiding in
+     * the kernel.
+     */
+    private static final int SEND_BUFFER = 16 * 1024;
+
+    private static final long CLOCK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** One connected watcher and its place in the stream. */
+    private static final class Watcher {
+        final SocketChannel channel;
+
+        /** Stream offset of the next byte of the ring to send. */
+        long position;
+
+        /** Rest of a snapshot still to send before the ring, or null. */
+        ByteBuffer snapshot;
+
+        int resyncs;
+
+        /** System.nanoTime() at which the socket last took data or was caught up. */
+        long lastProgress = System.nanoTime();
+
+        Watcher(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ByteBuffer ring;
+    private final int capacity;
+
+    /** Total bytes ever appended to the ring; the stream offset of its end. */
+    private long head;
+
+    /** Encoded MOVE lines of the game so far, for snapshots. Selector thread only. */
+    private final ArrayList<byte[]> journal = new ArrayList<>();
+    private byte[] lastClock;
+    private byte[] end;
+
+    /** Snapshot of the game at {@link #snapshotHead}, shared by joiners. */
+    private ByteBuffer snapshot;
+    private long snapshotHead = -1;
+
+    private final ArrayList<Watcher> watchers = new ArrayList<>();
+    private final ConcurrentLinkedQueue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private volatile GameClock clock;
+    private long lastClockTick;
+    private long lastSweep;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts broadcasting on a port of the loopback interface.
+     *
+     * @param port     Port to listen on, 0 for any free port
+     * @param ringSize Bytes of events kept for watchers that fall behind
+     * @throws IOException if the port cannot be bound
+     */
+    public GameBroadcaster(int port, int ringSize) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        capacity = ringSize;
+        ring = ByteBuffer.allocateDirect(ringSize);
+        thread = new Thread(this::run, "Broadcast");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Broadcasts a game of random moves, for trying out watchers.
+     *
+     * Usage: {@code broadcast [port] [moves per second] [ring bytes]}
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT + 1;
+        int movesPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int ringSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RING_SIZE;
+        Path directory = Files.createTempDirectory("broadcast");
+        try (GameStore store = GameStore.open(directory);
+                GameBroadcaster broadcaster = new GameBroadcaster(port, ringSize)) {
+            GameLogic logic = new GameLogic(store, "broadcast");
+            logic.player1.setColor("White");
+            logic.player2.setColor("Black");
+            broadcaster.attach(logic);
+            System.out.println("Broadcasting on " + broadcaster.getPort());
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                GameClock clock = new GameClock(new TimeControl(10, 0, 0));
+                broadcaster.setClock(clock);
+                clock.start("White");
+                while (logic.getResult() == null && logic.moves.size() < 300) {
+                    Thread.sleep(1000 / movesPerSecond);
+                    ArrayList<int[]> legal = new ArrayList<>();
+                    for (int from = 0; from < 64; from++) {
+                        long targets = logic.getLegalTargets(from / 8, from % 8);
+                        for (; targets != 0; targets &= targets - 1) {
+                            legal.add(new int[] { from, Long.numberOfTrailingZeros(targets) });
+                        }
+                    }
+                    int[] move = legal.get(random.nextInt(legal.size()));
+                    clock.press(logic.currentPlayer.getColor());
+                    logic.applyMove(move[0] / 8, move[0] % 8, move[1] / 8, move[1] % 8,
+                            clock.remainingDeciseconds("White"), clock.remainingDeciseconds("Black"), null);
+                }
+                Thread.sleep(2000);
+                logic.reset();
+            }
+        }
+    }
+
+    /**
+     * Mirrors a game: its moves, undos, resets and result are broadcast as they
+     * happen, starting with the moves it already has.
+     *
+     * @param logic The game
+     */
+    public void attach(GameLogic logic) {
+        for (int i = 0; i < logic.moves.size(); i++) {
+            publish(moveLine(i + 1, logic.moves.get(i)));
+        }
+        logic.addMoveListener(new GameLogic.MoveListener() {
+            private int count = logic.moves.size();
+
+            @Override
+            public void onMove(Move move) {
+                publish(moveLine(++count, move));
+            }
+
+            @Override
+            public void onUndo(Move move) {
+                publish("UNDO " + count--);
+            }
+
+            @Override
+            public void onReset() {
+                count = 0;
+                publish("NEWGAME");
+            }
+        });
+        logic.addGameListener((result, loserColor) -> publish("END " + result + " " + loserColor));
+    }
+
+    /**
+     * Broadcasts the clock about once a second while it runs.
+     *
+     * @param clock The game's clock, or null to stop
+     */
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the port watchers connect to.
+     *
+     * @return The local port
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of connected watchers.
+     *
+     * @return Watchers
+     */
+    public synchronized int getWatcherCount() {
+        return watchers.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String moveLine(int number, Move move) {
+        return "MOVE " + number + " " + move.toCoordinates() + " " + move.timers[0] + " " + move.timers[1];
+    }
+
+    /** Queues an event for the selector thread. Safe from any thread. */
+    private void publish(String line) {
+        pending.add((line + "\n").getBytes(StandardCharsets.US_ASCII));
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select(250);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isWritable()) {
+                        flush((Watcher) key.attachment());
+                    }
+                }
+                boolean appended = drainPending();
+                appended |= tickClock();
+                if (appended) {
+                    for (Watcher watcher : new ArrayList<>(watchers)) {
+                        flush(watcher);
+                    }
+                }
+                sweepStalled();
+            }
+        } catch (IOException e) {
+            System.err.println("Broadcast stopped: " + e);
+        } finally {
+            synchronized (this) {
+                for (Watcher watcher : watchers) {
+                    closeQuietly(watcher.channel);
+                }
+                watchers.clear();
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, SEND_BUFFER);
+            Watcher watcher = new Watcher(channel);
+            startFromSnapshot(watcher);
+            channel.register(selector, 0, watcher);
+            synchronized (this) {
+                watchers.add(watcher);
+            }
+            flush(watcher);
+        }
+    }
+
+    /** Applies queued events to the journal and the ring. */
+    private boolean drainPending() {
+        boolean appended = false;
+        byte[] line;
+        while ((line = pending.poll()) != null) {
+            switch (line[0]) {
+                case 'M' -> journal.add(line);
+                case 'U' -> {
+                    if (!journal.isEmpty()) {
+                        journal.removeLast();
+                    }
+                    end = null;
+                }
+                case 'N' -> {
+                    journal.clear();
+                    lastClock = null;
+                    end = null;
+                }
+                case 'E' -> end = line;
+                default -> {
+                }
+            }
+            append(line);
+            appended = true;
+        }
+        return appended;
+    }
+
+    private boolean tickClock() {
+        GameClock current = clock;
+        long now = System.nanoTime();
+        if (current == null || current.running() == null || now - lastClockTick < CLOCK_INTERVAL_NANOS) {
+            return false;
+        }
+        lastClockTick = now;
+        byte[] line = ("CLOCK " + current.remainingDeciseconds("White") + " " + current.remainingDeciseconds("Black")
+                + "\n").getBytes(StandardCharsets.US_ASCII);
+        lastClock = line;
+        append(line);
+        return true;
+    }
+
+    /**
+     * Drops the watchers that have taken nothing for too long, about once a
+     * second. Caught-up watchers are marked as making progress, so that the
+     * stall timeout runs from when data starts waiting for them.
+     */
+    private void sweepStalled() {
+        long now = System.nanoTime();
+        if (now - lastSweep < CLOCK_INTERVAL_NANOS) {
+            return;
+        }
+        lastSweep = now;
+        for (Watcher watcher : new ArrayList<>(watchers)) {
+            if (watcher.snapshot == null && watcher.position == head) {
+                watcher.lastProgress = now;
+            } else if (stalled(watcher, now)) {
+                drop(watcher);
+            }
+        }
+    }
+
+    /** Checks whether a watcher has data waiting that its socket has not taken in time. */
+    private boolean stalled(Watcher watcher, long now) {
+        return (watcher.snapshot != null || watcher.position < head)
+                && now - watcher.lastProgress > STALL_TIMEOUT_NANOS;
+    }
+
+    private void append(byte[] line) {
+        for (int i = 0; i < line.length; i++) {
+            ring.put((int) ((head + i) % capacity), line[i]);
+        }
+        head += line.length;
+    }
+
+    /**
+     * Writes as much of a watcher's backlog as its socket takes without
+     * blocking, and asks to be told when it can take more.
+     */
+    private void flush(Watcher watcher) {
+        try {
+            long now = System.nanoTime();
+            if (watcher.snapshot != null) {
+                if (watcher.channel.write(watcher.snapshot) > 0) {
+                    watcher.lastProgress = now;
+                }
+                if (watcher.snapshot.hasRemaining()) {
+                    if (stalled(watcher, now)) {
+                        drop(watcher);
+                    } else {
+                        watchWritable(watcher, true);
+                    }
+                    return;
+                }
+                watcher.snapshot = null;
+            }
+            if (head - watcher.position > capacity) {
+                // Events the watcher has not received were overwritten
+                if (++watcher.resyncs > MAX_RESYNCS) {
+                    drop(watcher);
+                    return;
+                }
+                startFromSnapshot(watcher);
+                flush(watcher);
+                return;
+            }
+            while (watcher.position < head) {
+                int offset = (int) (watcher.position % capacity);
+                int length = (int) Math.min(head - watcher.position, capacity - offset);
+                ByteBuffer view = ring.duplicate();
+                view.limit(offset + length).position(offset);
+                int written = watcher.channel.write(view);
+                watcher.position += written;
+                if (written > 0) {
+                    watcher.lastProgress = now;
+                }
+                if (written < length) {
+                    break;
+                }
+            }
+            if (watcher.position == head) {
+                watcher.lastProgress = now;
+            } else if (stalled(watcher, now)) {
+                drop(watcher);
+                return;
+            }
+            watchWritable(watcher, watcher.position < head);
+        } catch (IOException e) {
+            drop(watcher);
+        }
+    }
+
+    /** Sends the watcher the game so far, then continues it from the live tail. */
+    private void startFromSnapshot(Watcher watcher) {
+        if (snapshotHead != head) {
+            snapshot = buildSnapshot();
+            snapshotHead = head;
+        }
+        watcher.snapshot = snapshot.duplicate();
+        watcher.position = head;
+    }
+
+    private ByteBuffer buildSnapshot() {
+        int size = 0;
+        byte[] header = ("SNAPSHOT " + journal.size() + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] live = "LIVE\n".getBytes(StandardCharsets.US_ASCII);
+        size += header.length + live.length;
+        for (byte[] line : journal) {
+            size += line.length;
+        }
+        size += (lastClock != null ? lastClock.length : 0) + (end != null ? end.length : 0);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        buffer.put(header);
+        for (byte[] line : journal) {
+            buffer.put(line);
+        }
+        if (lastClock != null) {
+            buffer.put(lastClock);
+        }
+        if (end != null) {
+            buffer.put(end);
+        }
+        buffer.put(live);
+        return buffer.flip().asReadOnlyBuffer();
+    }
+
+    private void watchWritable(Watcher watcher, boolean writable) {
+        SelectionKey key = watcher.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(writable ? SelectionKey.OP_WRITE : 0);
+        }
+    }
+
+    private void drop(Watcher watcher) {
+        synchronized (this) {
+            watchers.remove(watcher);
+        }
+        closeQuietly(watcher.channel);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package Server;
+
+import Storage.GameStore;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// Headless game server speaking a line protocol on a local TCP port.
+///
+/// Every connection is served by its own virtual thread, which blocks on its
+/// socket at no cost to the others, so tens of thousands of idle connections
+/// need only their sockets and buffers. A connection plays one game at a time
+/// as a [GameSession]; engine moves are searched on the shared, bounded
+/// [AI.EngineService] pool. Games are kept in a [GameStore] while they last.
+///
+/// Commands, one per line, each answered with one line unless noted:
+///
+/// | Command                         | Reply                                        |
+/// |---------------------------------|----------------------------------------------|
+/// | `NEW [white\|black] [ai\|self]` | `OK <game id>`, then `MOVE <move>` if the engine opens |
+/// | `MOVE <move>`                   | `OK` or `ERR illegal move`; against the engine `MOVE <move>` follows |
+/// | `MOVES`                         | `MOVES <move>...` for the side to move        |
+/// | `UNDO`                          | `OK` or `ERR nothing to undo`; `MOVE <move>` follows if the engine is left to move |
+/// | `PING`                          | `PONG`                                        |
+/// | `QUIT`                          | `BYE`, then the server closes the connection  |
+///
+/// Moves are in coordinate notation, such as `e2e4` or `e7e8n`. When a move ends
+/// the game, `END <result> <loser color>` follows its replies. With `self` the
+/// client plays both sides; games have no clocks.
+///
+/// Usage: `server [port] [store directory] [engine depth] [engine ms per move]`
+public class GameServer {
+    public static final int DEFAULT_PORT = 5757;
+
+    private static final int BACKLOG = 4096;
+
+    private final ServerSocket serverSocket;
+    private final GameStore store;
+    private final int engineDepth;
+    private final long engineBudgetNanos;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicLong nextGameId = new AtomicLong();
+
+    /**
+     * Binds the server to a port on the loopback interface.
+     *
+     * @param port              Port to listen on, 0 for any free port
+     * @param store             Store games are kept in while they last
+     * @param engineDepth       Depth the engine searches its moves to
+     * @param engineBudgetNanos Time the engine may take per move
+     * @throws IOException if the port cannot be bound
+     */
+    public GameServer(int port, GameStore store, int engineDepth, long engineBudgetNanos) throws IOException {
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.store = store;
+        this.engineDepth = engineDepth;
+        this.engineBudgetNanos = engineBudgetNanos;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path directory = Paths.get(args.length > 1 ? args[1] : "server-games");
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        long budget = TimeUnit.MILLISECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 500);
+        try (GameStore store = GameStore.open(directory)) {
+            GameServer server = new GameServer(port, store, depth, budget);
+            System.out.println("Listening on " + server.getPort());
+            server.serve();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return Connections being served
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     *
+     * @throws IOException if accepting fails for a reason other than closing
+     */
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connections.execute(() -> handle(socket));
+            }
+        } catch (SocketException e) {
+            if (!serverSocket.isClosed()) {
+                throw e;
+            }
+        }
+    }
+
+    /** Stops accepting connections and closes the listening socket. */
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        openConnections.incrementAndGet();
+        GameSession session = null;
+        try (socket;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                BufferedWriter out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                switch (words[0].toUpperCase()) {
+                    case "NEW" -> {
+                        if (session != null) {
+                            session.close();
+                        }
+                        String color = words.length > 1 && words[1].equalsIgnoreCase("black") ? "Black" : "White";
+                        boolean engine = words.length < 3 || !words[2].equalsIgnoreCase("self");
+                        session = new GameSession(store, "server-" + nextGameId.incrementAndGet(), color, engine,
+                                engineDepth, engineBudgetNanos);
+                        reply(out, "OK " + session.id);
+                        engineReply(out, session);
+                    }
+                    case "MOVE" -> {
+                        if (session == null || words.length < 2 || !session.play(words[1].toLowerCase())) {
+                            reply(out, "ERR illegal move");
+                        } else {
+                            reply(out, "OK");
+                            endReply(out, session);
+                            engineReply(out, session);
+                        }
+                    }
+                    case "MOVES" -> reply(out,
+                            session == null ? "MOVES" : ("MOVES " + String.join(" ", session.legalMoves())).trim());
+                    case "UNDO" -> {
+                        if (session == null || !session.undo()) {
+                            reply(out, "ERR nothing to undo");
+                        } else {
+                            reply(out, "OK");
+                            // Taking back the engine's opening move leaves it to move again
+                            engineReply(out, session);
+                        }
+                    }
+                    case "PING" -> reply(out, "PONG");
+                    case "QUIT" -> {
+                        reply(out, "BYE");
+                        return;
+                    }
+                    default -> reply(out, "ERR unknown command");
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; its game is dropped below
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+            openConnections.decrementAndGet();
+        }
+    }
+
+    /** Sends the engine's move, if it is the engine's turn, and any result. */
+    private static void engineReply(BufferedWriter out, GameSession session) throws IOException {
+        String move = session.engineMove();
+        if (move != null) {
+            reply(out, "MOVE " + move);
+            endReply(out, session);
+        }
+    }
+
+    private static void endReply(BufferedWriter out, GameSession session) throws IOException {
+        String result = session.result();
+        if (result != null) {
+            reply(out, "END " + result);
+        }
+    }
+
+    private static void reply(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,172 @@
+package Server;
+
+import AI.AI_Minimax;
+import AI.CancellationToken;
+import AI.EngineService;
+import GameManager.GameLogic;
+import GameManager.GameResult;
+import Storage.GameStore;
+import Utilities.Move;
+import Utilities.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One game played over a server connection. Holds the game's {@link GameLogic},
+ * saved in the server's store while the game lasts, and answers the protocol
+ * commands that concern it. The engine's moves are searched on the shared
+ * {@link EngineService} pool while the connection's virtual thread waits.
+ *
+ * A session is used by one connection thread only, so it needs no locking.
+ */
+class GameSession {
+    final String id;
+    private final GameLogic logic;
+    private final boolean engine;
+    private final int engineDepth;
+    private final long engineBudgetNanos;
+    private GameResult result;
+    private String loserColor;
+
+    /**
+     * Starts a game from the initial position.
+     *
+     * @param store             Store the game is saved to while it lasts
+     * @param id                Id of the game within the store
+     * @param clientColor       Color the client plays, "White" or "Black"
+     * @param engine            true to play the engine, false for the client to
+     *                          play both sides
+     * @param engineDepth       Depth the engine searches to
+     * @param engineBudgetNanos Time the engine may take per move
+     */
+    GameSession(GameStore store, String id, String clientColor, boolean engine, int engineDepth,
+            long engineBudgetNanos) {
+        this.id = id;
+        this.engine = engine;
+        this.engineDepth = engineDepth;
+        this.engineBudgetNanos = engineBudgetNanos;
+        logic = new GameLogic(store, id);
+        logic.player1.setName("Client");
+        logic.player1.setColor(clientColor);
+        logic.player2 = engine ? new AI_Minimax() : new Player();
+        logic.player2.setName(engine ? "AI MiniMax" : "Client");
+        logic.player2.setColor(clientColor.equals("White") ? "Black" : "White");
+        logic.currentPlayer = clientColor.equals("White") ? logic.player1 : logic.player2;
+        logic.addGameListener((outcome, loser) -> {
+            result = outcome;
+            loserColor = loser;
+        });
+    }
+
+    /**
+     * Plays a move given in coordinate notation.
+     *
+     * @param text The move, e.g. {@code e2e4} or {@code e7e8n}
+     * @return false if the move is malformed or illegal
+     */
+    boolean play(String text) {
+        if (result != null || !isClientTurn() || !(text.length() == 4 || text.length() == 5)) {
+            return false;
+        }
+        int fromCol = text.charAt(0) - 'a';
+        int fromRow = '8' - text.charAt(1);
+        int toCol = text.charAt(2) - 'a';
+        int toRow = '8' - text.charAt(3);
+        if (!onBoard(fromRow, fromCol) || !onBoard(toRow, toCol)
+                || !logic.isLegalMove(fromRow, fromCol, toRow, toCol)) {
+            return false;
+        }
+        String promoteTo = text.length() == 5 ? switch (text.charAt(4)) {
+            case 'r' -> "Rook";
+            case 'b' -> "Bishop";
+            case 'n' -> "Knight";
+            default -> "Queen";
+        } : null;
+        logic.applyMove(fromRow, fromCol, toRow, toCol, 0, 0, promoteTo);
+        return true;
+    }
+
+    /**
+     * Lets the engine move if it is its turn.
+     *
+     * @return The engine's move in coordinate notation, or null if it did not
+     *         move
+     */
+    String engineMove() {
+        if (!engine || result != null || isClientTurn()) {
+            return null;
+        }
+        boolean white = logic.currentPlayer.getColor().equals("White");
+        Move move = EngineService.shared().bestMove(new ArrayList<>(logic.moves), logic.getRepetitionHistory(),
+                logic.halfMoveClock, engineDepth, white, CancellationToken.withDeadline(engineBudgetNanos), null)
+                .join();
+        if (move == null) {
+            return null;
+        }
+        Move played = logic.applyMove(move.fromRow, move.fromCol, move.toRow, move.toCol, 0, 0, "Queen");
+        return played.toCoordinates();
+    }
+
+    /**
+     * Takes back the client's last move, and the engine's reply to it. When
+     * that leaves the engine to move, as when its opening move is taken back,
+     * {@link #engineMove()} plays again.
+     *
+     * @return false if there is nothing to take back
+     */
+    boolean undo() {
+        if (logic.moves.isEmpty()) {
+            return false;
+        }
+        logic.undo();
+        result = null;
+        return true;
+    }
+
+    /**
+     * Lists the legal moves of the side to move, promotions as queen promotions.
+     *
+     * @return Moves in coordinate notation
+     */
+    List<String> legalMoves() {
+        ArrayList<String> legal = new ArrayList<>();
+        if (result != null) {
+            return legal;
+        }
+        for (int from = 0; from < 64; from++) {
+            long targets = logic.getLegalTargets(from / 8, from % 8);
+            while (targets != 0) {
+                int to = Long.numberOfTrailingZeros(targets);
+                targets &= targets - 1;
+                Move move = new Move(from / 8, from % 8, to / 8, to % 8, logic.boardState[from / 8][from % 8], null,
+                        0, 0);
+                legal.add(move.toCoordinates());
+            }
+        }
+        return legal;
+    }
+
+    /**
+     * Describes how the game ended.
+     *
+     * @return The result and the loser's color, e.g. {@code CHECKMATE Black}, or
+     *         null while the game goes on
+     */
+    String result() {
+        return result == null ? null : result + " " + loserColor;
+    }
+
+    /** Removes the game from the store. */
+    void close() {
+        logic.deleteSave();
+    }
+
+    private boolean isClientTurn() {
+        return !engine || logic.currentPlayer == logic.player1;
+    }
+
+    private static boolean onBoard(int row, int col) {
+        return row >= 0 && row < 8 && col >= 0 && col < 8;
+    }
+}
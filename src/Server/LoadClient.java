@@ -0,0 +1,158 @@
+package Server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Load test client for [GameServer].
+///
+/// Opens a number of idle connections that only answer one `PING`, then plays
+/// random games on a number of active connections, each on its own virtual
+/// thread, for a fixed time. Every move's round trip is timed: until `OK` when
+/// the client plays both sides, or until the engine's reply against the engine.
+/// Prints the number of moves, the throughput and the latency percentiles.
+///
+/// Usage: `loadtest [port] [idle connections] [active games] [seconds] [self|ai]`
+public class LoadClient {
+    /** Games are restarted after this many half-moves. */
+    private static final int MAX_PLIES = 80;
+
+    private final int port;
+    private final boolean engine;
+    private final List<long[]> samples = new ArrayList<>();
+
+    private LoadClient(int port, boolean engine) {
+        this.port = port;
+        this.engine = engine;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+        int idle = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int active = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        boolean engine = args.length > 4 && args[4].equalsIgnoreCase("ai");
+        new LoadClient(port, engine).run(idle, active, seconds);
+    }
+
+    private void run(int idle, int active, int seconds) throws Exception {
+        ArrayList<Socket> idleSockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < idle; i++) {
+                Socket socket = new Socket("localhost", port);
+                send(socket, "PING");
+                idleSockets.add(socket);
+            }
+            for (Socket socket : idleSockets) {
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+                        .readLine();
+            }
+            System.out.println("Opened " + idleSockets.size() + " idle connections");
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long start = System.nanoTime();
+            try (ExecutorService players = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < active; i++) {
+                    players.execute(() -> play(deadline));
+                }
+            }
+            report(active, System.nanoTime() - start);
+        } finally {
+            for (Socket socket : idleSockets) {
+                socket.close();
+            }
+        }
+    }
+
+    /** Plays random games on one connection until the deadline. */
+    private void play(long deadline) {
+        long[] times = new long[1024];
+        int count = 0;
+        try (Socket socket = new Socket("localhost", port);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                BufferedWriter out = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            socket.setTcpNoDelay(true);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                write(out, engine ? "NEW white ai" : "NEW white self");
+                in.readLine();
+                for (int ply = 0; ply < MAX_PLIES && System.nanoTime() < deadline; ply++) {
+                    write(out, "MOVES");
+                    String[] legal = readPrefixed(in, "MOVES").split(" ");
+                    if (legal.length < 2) {
+                        break; // Game over
+                    }
+                    long sent = System.nanoTime();
+                    write(out, "MOVE " + legal[1 + random.nextInt(legal.length - 1)]);
+                    String reply = in.readLine();
+                    if (engine && reply.equals("OK")) {
+                        reply = in.readLine(); // The engine's move, or the end of the game
+                    }
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                    }
+                    times[count++] = System.nanoTime() - sent;
+                    if (reply.startsWith("END")) {
+                        break;
+                    }
+                }
+            }
+            write(out, "QUIT");
+        } catch (IOException e) {
+            System.err.println("Connection to port " + port + " failed: " + e);
+        }
+        synchronized (samples) {
+            samples.add(Arrays.copyOf(times, count));
+        }
+    }
+
+    /** Reads lines until one starts with the prefix, skipping results. */
+    private static String readPrefixed(BufferedReader in, String prefix) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        throw new IOException("Connection closed");
+    }
+
+    private void report(int active, long elapsedNanos) {
+        long[] all = samples.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            System.out.println("No moves were played");
+            return;
+        }
+        System.out.printf("%d active games, %d moves in %.1f s (%.0f moves/s)%n", active, all.length,
+                elapsedNanos / 1e9, all.length * 1e9 / elapsedNanos);
+        System.out.printf("Move round trip: p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+                percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), all[all.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void write(BufferedWriter out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+    }
+}
@@ -0,0 +1,95 @@
+package Server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Load test client for [GameBroadcaster].
+///
+/// Connects a number of watchers over loopback, each on its own virtual thread,
+/// and reads the stream for a fixed time. A share of them can be made slow: they
+/// stop reading for the first half of the run, so that they fall behind and get
+/// resynchronised or dropped, then catch up. Prints how many
+/// events arrived and how many watchers were resynchronised or dropped.
+///
+/// Usage: `watch [port] [watchers] [seconds] [slow watchers]`
+public class WatchClient {
+    /** Receive buffer of a slow watcher, small so it backs up quickly. */
+    private static final int SLOW_RECEIVE_BUFFER = 1024;
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT + 1;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int slow = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        LongAdder moves = new LongAdder();
+        LongAdder clocks = new LongAdder();
+        AtomicInteger snapshots = new AtomicInteger();
+        AtomicInteger resyncs = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        try (ExecutorService watchers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                boolean isSlow = i < slow;
+                watchers.execute(() -> {
+                    try (Socket socket = new Socket();
+                            BufferedReader in = new BufferedReader(
+                                    new InputStreamReader(connect(socket, port, isSlow), StandardCharsets.US_ASCII))) {
+                        socket.setSoTimeout(1000);
+                        boolean first = true;
+                        long stallUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds) / 2;
+                        while (System.nanoTime() < deadline) {
+                            String line;
+                            try {
+                                line = in.readLine();
+                            } catch (SocketTimeoutException e) {
+                                continue;
+                            }
+                            if (line == null) {
+                                dropped.incrementAndGet();
+                                return;
+                            }
+                            if (line.startsWith("SNAPSHOT")) {
+                                (first ? snapshots : resyncs).incrementAndGet();
+                                first = false;
+                            } else if (line.startsWith("MOVE")) {
+                                moves.increment();
+                            } else if (line.startsWith("CLOCK")) {
+                                clocks.increment();
+                            }
+                            if (isSlow && !first && stallUntil > 0) {
+                                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(stallUntil - System.nanoTime()));
+                                stallUntil = 0;
+                            }
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        dropped.incrementAndGet();
+                    }
+                });
+            }
+        }
+        System.out.printf("%d watchers: %d snapshots, %d move lines, %d clock lines, %d resynced, %d dropped%n",
+                count, snapshots.get(), moves.sum(), clocks.sum(), resyncs.get(), dropped.get());
+    }
+
+    /** Connects a watcher, shrinking its receive buffer first if it is slow. */
+    private static InputStream connect(Socket socket, int port, boolean slow) throws IOException {
+        if (slow) {
+            socket.setReceiveBufferSize(SLOW_RECEIVE_BUFFER);
+        }
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return socket.getInputStream();
+    }
+}
@@ -0,0 +1,146 @@
+package Storage;
+
+import Utilities.MoveCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/// Constants and game encoding shared by [ArchiveWriter] and [ArchiveReader].
+///
+/// File layout:
+///
+/// - header: `int MAGIC | short VERSION`
+/// - blocks: `int rawLength | int compressedLength | int gameCount | deflated games`
+/// - footer: string table, then one `offset, firstGame, gameCount` entry per block
+/// - trailer: `long footerOffset | int MAGIC`
+///
+/// A game is its four header strings, timer, increment and delay as varints
+/// (strings are ids into the string table), the move count, and then per move
+/// the 16-bit
+/// [MoveCodec] value followed by the zig-zag varint change of each clock since
+/// the previous move. Version 1 archives have no increment or delay; their
+/// games read with both at 0.
+final class ArchiveFormat {
+    static final int MAGIC = 0x43474131; // "CGA1"
+    static final short VERSION = 2;
+
+    /** Oldest version that can still be read. */
+    static final short MIN_VERSION = 1;
+    static final int HEADER_SIZE = 6;
+    static final int TRAILER_SIZE = 12;
+
+    /** Uncompressed size at which a block is closed and compressed. */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Interns header strings into the table written to the footer. */
+    interface StringTable {
+        int id(String value);
+    }
+
+    private ArchiveFormat() {
+    }
+
+    static void writeGame(ByteArrayOutputStream out, SavedGame game, StringTable strings) {
+        writeVarint(out, strings.id(game.player1Name));
+        writeVarint(out, strings.id(game.player1Color));
+        writeVarint(out, strings.id(game.player2Name));
+        writeVarint(out, strings.id(game.player2Color));
+        writeVarint(out, game.timerDuration);
+        writeVarint(out, game.incrementSeconds);
+        writeVarint(out, game.delaySeconds);
+        writeVarint(out, game.moves.size());
+        int whiteTime = game.timerDuration * 600;
+        int blackTime = whiteTime;
+        for (SavedMove move : game.moves) {
+            short code = MoveCodec.encode(move.fromRow, move.fromCol, move.toRow, move.toCol, move.promoteTo);
+            out.write(code >> 8);
+            out.write(code);
+            writeVarint(out, zigZag(move.whiteTime - whiteTime));
+            writeVarint(out, zigZag(move.blackTime - blackTime));
+            whiteTime = move.whiteTime;
+            blackTime = move.blackTime;
+        }
+    }
+
+    static SavedGame readGame(ByteBuffer in, String[] strings, short version) {
+        SavedGame game = new SavedGame();
+        game.player1Name = strings[readVarint(in)];
+        game.player1Color = strings[readVarint(in)];
+        game.player2Name = strings[readVarint(in)];
+        game.player2Color = strings[readVarint(in)];
+        game.timerDuration = readVarint(in);
+        if (version >= 2) {
+            game.incrementSeconds = readVarint(in);
+            game.delaySeconds = readVarint(in);
+        }
+        int count = readVarint(in);
+        int whiteTime = game.timerDuration * 600;
+        int blackTime = whiteTime;
+        game.moves.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            short code = in.getShort();
+            whiteTime += unZigZag(readVarint(in));
+            blackTime += unZigZag(readVarint(in));
+            game.moves.add(new SavedMove(MoveCodec.fromRow(code), MoveCodec.fromCol(code), MoveCodec.toRow(code),
+                    MoveCodec.toCol(code), whiteTime, blackTime, MoveCodec.promoteTo(code)));
+        }
+        return game;
+    }
+
+    /** Advances past one encoded game without building it. */
+    static void skipGame(ByteBuffer in, short version) {
+        for (int i = version >= 2 ? 7 : 5; i > 0; i--) {
+            readVarint(in);
+        }
+        int count = readVarint(in);
+        for (int i = 0; i < count; i++) {
+            in.position(in.position() + 2);
+            readVarint(in);
+            readVarint(in);
+        }
+    }
+
+    static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static int readVarint(ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
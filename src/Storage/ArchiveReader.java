@@ -0,0 +1,191 @@
+package Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/// Reads games from an archive written by [ArchiveWriter].
+///
+/// Opening an archive only reads its footer. [#read(int)] finds the block
+/// holding a game through the footer index and inflates just that block, so any
+/// game can be fetched without scanning the file; iterating streams the blocks
+/// in order, holding one inflated block in memory at a time.
+public class ArchiveReader implements Closeable, Iterable<SavedGame> {
+    private final FileChannel channel;
+    private final short version;
+    private final String[] strings;
+    private final long[] blockOffsets;
+    private final int[] blockFirstGames;
+    private final int[] blockGameCounts;
+    private final int gameCount;
+    private final Inflater inflater = new Inflater();
+
+    private int cachedBlock = -1;
+    private ByteBuffer cachedData;
+
+    /**
+     * Opens an archive and reads its footer.
+     *
+     * @param path Location of the archive
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public ArchiveReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        ByteBuffer header = readFully(0, ArchiveFormat.HEADER_SIZE);
+        version = header.getShort(4);
+        if (size < ArchiveFormat.HEADER_SIZE + ArchiveFormat.TRAILER_SIZE || header.getInt() != ArchiveFormat.MAGIC
+                || version < ArchiveFormat.MIN_VERSION || version > ArchiveFormat.VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a game archive");
+        }
+        ByteBuffer trailer = readFully(size - ArchiveFormat.TRAILER_SIZE, ArchiveFormat.TRAILER_SIZE);
+        long footerOffset = trailer.getLong();
+        if (trailer.getInt() != ArchiveFormat.MAGIC) {
+            channel.close();
+            throw new IOException(path + " is truncated");
+        }
+        ByteBuffer footer = readFully(footerOffset, (int) (size - ArchiveFormat.TRAILER_SIZE - footerOffset));
+        strings = new String[ArchiveFormat.readVarint(footer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = ArchiveFormat.readString(footer);
+        }
+        int blocks = ArchiveFormat.readVarint(footer);
+        blockOffsets = new long[blocks];
+        blockFirstGames = new int[blocks];
+        blockGameCounts = new int[blocks];
+        int total = 0;
+        for (int i = 0; i < blocks; i++) {
+            blockOffsets[i] = ArchiveFormat.readVarLong(footer);
+            blockFirstGames[i] = ArchiveFormat.readVarint(footer);
+            blockGameCounts[i] = ArchiveFormat.readVarint(footer);
+            total += blockGameCounts[i];
+        }
+        gameCount = total;
+    }
+
+    /**
+     * Returns the number of games in the archive.
+     *
+     * @return Number of games
+     */
+    public int size() {
+        return gameCount;
+    }
+
+    /**
+     * Reads one game by its position in the archive.
+     *
+     * @param index Zero-based index of the game
+     * @return The game
+     * @throws IOException if the block holding the game cannot be read
+     */
+    public SavedGame read(int index) throws IOException {
+        if (index < 0 || index >= gameCount) {
+            throw new IndexOutOfBoundsException("Game " + index + " of " + gameCount);
+        }
+        int lo = 0;
+        int hi = blockFirstGames.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockFirstGames[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        ByteBuffer data = block(lo);
+        for (int i = blockFirstGames[lo]; i < index; i++) {
+            ArchiveFormat.skipGame(data, version);
+        }
+        return ArchiveFormat.readGame(data, strings, version);
+    }
+
+    /**
+     * Streams every game in archive order.
+     *
+     * @return Iterator over the games
+     */
+    @Override
+    public Iterator<SavedGame> iterator() {
+        return new Iterator<>() {
+            private int blockIndex = 0;
+            private int remaining = 0;
+            private ByteBuffer data;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && blockIndex < blockOffsets.length) {
+                    try {
+                        data = block(blockIndex);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    remaining = blockGameCounts[blockIndex++];
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public SavedGame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return ArchiveFormat.readGame(data, strings, version);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    /** Inflates a block, returning a fresh view positioned at its first game. */
+    private synchronized ByteBuffer block(int index) throws IOException {
+        if (index != cachedBlock) {
+            ByteBuffer header = readFully(blockOffsets[index], 12);
+            int rawLength = header.getInt();
+            int compressedLength = header.getInt();
+            byte[] input = readFully(blockOffsets[index] + 12, compressedLength).array();
+            byte[] raw = new byte[rawLength];
+            inflater.reset();
+            inflater.setInput(input);
+            try {
+                int length = 0;
+                while (length < rawLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(raw, length, rawLength - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated block " + index);
+                    }
+                    length += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block " + index, e);
+            }
+            cachedData = ByteBuffer.wrap(raw);
+            cachedBlock = index;
+        }
+        return cachedData.duplicate();
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,133 @@
+package Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+
+/// Streams games into a compact binary archive.
+///
+/// Games are encoded into an in-memory block; once a block reaches
+/// `ArchiveFormat.BLOCK_SIZE` it is deflated and written out, so memory use
+/// does not grow with the number of games. Header strings are collected into a
+/// string table and, together with the block index that gives random access to
+/// any game, written to the footer when the archive is closed.
+public class ArchiveWriter implements Closeable {
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(ArchiveFormat.BLOCK_SIZE + 4096);
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final ArrayList<String> strings = new ArrayList<>();
+    private final ArrayList<long[]> blockIndex = new ArrayList<>();
+    private byte[] compressed = new byte[ArchiveFormat.BLOCK_SIZE];
+    private long position;
+    private int gameCount;
+    private int blockGames;
+
+    /**
+     * Creates an archive at the given path, replacing any existing file.
+     *
+     * @param path Location of the archive
+     * @throws IOException if the file cannot be created
+     */
+    public ArchiveWriter(Path path) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_SIZE);
+        header.putInt(ArchiveFormat.MAGIC).putShort(ArchiveFormat.VERSION);
+        write(header.array(), header.position());
+    }
+
+    /**
+     * Appends one game to the archive.
+     *
+     * @param game The game to append
+     * @throws IOException if a full block cannot be written
+     */
+    public void write(SavedGame game) throws IOException {
+        ArchiveFormat.writeGame(block, game, this::intern);
+        blockGames++;
+        gameCount++;
+        if (block.size() >= ArchiveFormat.BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Returns the number of games written so far.
+     *
+     * @return Number of games
+     */
+    public int size() {
+        return gameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBlock();
+        long footerOffset = position;
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        ArchiveFormat.writeVarint(footer, strings.size());
+        for (String value : strings) {
+            ArchiveFormat.writeString(footer, value);
+        }
+        ArchiveFormat.writeVarint(footer, blockIndex.size());
+        for (long[] entry : blockIndex) {
+            ArchiveFormat.writeVarint(footer, entry[0]);
+            ArchiveFormat.writeVarint(footer, entry[1]);
+            ArchiveFormat.writeVarint(footer, entry[2]);
+        }
+        write(footer.toByteArray(), footer.size());
+        ByteBuffer trailer = ByteBuffer.allocate(ArchiveFormat.TRAILER_SIZE);
+        trailer.putLong(footerOffset).putInt(ArchiveFormat.MAGIC);
+        write(trailer.array(), trailer.position());
+        out.close();
+        deflater.end();
+    }
+
+    private int intern(String value) {
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockGames == 0) {
+            return;
+        }
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        blockIndex.add(new long[] { position, gameCount - blockGames, blockGames });
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(raw.length).putInt(length).putInt(blockGames);
+        write(header.array(), header.position());
+        write(compressed, length);
+        block.reset();
+        blockGames = 0;
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+        out.write(bytes, 0, length);
+        position += length;
+    }
+}
@@ -0,0 +1,128 @@
+package Storage;
+
+import java.io.Closeable;
+
+/// Append-only journal for a single game, backed by a shared [GameStore].
+///
+/// Every move and every undo is appended as one checksummed record instead of
+/// rewriting the whole history; the store batches the records of all games into
+/// group-committed writes. The journal keeps the state it describes so that,
+/// every [#SNAPSHOT_INTERVAL] records, it can replace the game's records with a
+/// single snapshot. Restoring reads the latest snapshot plus its tail.
+public class GameJournal implements Closeable {
+    /** Number of records appended after a snapshot before a new snapshot is written. */
+    public static final int SNAPSHOT_INTERVAL = 256;
+
+    private final GameStore store;
+    private final String gameId;
+
+    /** Mirror of what the journal currently describes; used to build snapshots. */
+    private final SavedGame state;
+    private boolean playersJournaled;
+
+    /**
+     * Opens the journal of one game. Use {@link GameStore#journal(String)}.
+     *
+     * @param store  Store the game is kept in
+     * @param gameId Id of the game
+     */
+    GameJournal(GameStore store, String gameId) {
+        this.store = store;
+        this.gameId = gameId;
+        SavedGame saved = store.load(gameId);
+        this.state = saved != null ? saved : new SavedGame();
+        this.playersJournaled = saved != null;
+    }
+
+    /**
+     * Returns the id this journal stores its game under.
+     *
+     * @return The game id
+     */
+    public String getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Checks whether the journal holds a game that can be restored.
+     *
+     * @return true if the store holds the game
+     */
+    public boolean exists() {
+        return store.contains(gameId);
+    }
+
+    /**
+     * Reads the latest snapshot plus its tail.
+     *
+     * @return The recovered game, or an empty game if nothing was saved
+     */
+    public synchronized SavedGame recover() {
+        return state.copy();
+    }
+
+    /**
+     * Appends the player header if it differs from the one already journaled.
+     *
+     * @param players Game holding the player header to record
+     */
+    public synchronized void appendPlayers(SavedGame players) {
+        if (playersJournaled && state.samePlayers(players)) {
+            return;
+        }
+        state.copyPlayers(players);
+        playersJournaled = true;
+        store.appendPlayers(gameId, players);
+        snapshotIfDue();
+    }
+
+    /**
+     * Appends one move record.
+     *
+     * @param move The move that was played
+     */
+    public synchronized void appendMove(SavedMove move) {
+        state.moves.add(move);
+        store.appendMove(gameId, move);
+        snapshotIfDue();
+    }
+
+    /**
+     * Appends one undo record, retracting the most recent move.
+     */
+    public synchronized void appendUndo() {
+        if (state.moves.isEmpty()) {
+            return;
+        }
+        state.moves.removeLast();
+        store.appendUndo(gameId);
+        snapshotIfDue();
+    }
+
+    /**
+     * Blocks until every record appended so far has been forced to disk.
+     */
+    public void flush() {
+        store.flush();
+    }
+
+    /**
+     * Discards the journaled game.
+     */
+    public synchronized void delete() {
+        store.delete(gameId);
+        state.moves.clear();
+        playersJournaled = false;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void snapshotIfDue() {
+        if (store.tailLength(gameId) >= SNAPSHOT_INTERVAL) {
+            store.snapshot(gameId, state);
+        }
+    }
+}
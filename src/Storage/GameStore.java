@@ -0,0 +1,773 @@
+package Storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/// Embedded, log-structured store for many games keyed by game id.
+///
+/// All games share a sequence of append-only segment files in one directory.
+/// An in-memory index maps each game id to the locations of its live records
+/// (its latest snapshot followed by the moves, undos and header changes
+/// appended since), so a point lookup reads only that game's records. Index
+/// entries hold locations, not contents; decoded games are kept in a small
+/// LRU cache of [#MAX_CACHED_GAMES] entries, so memory stays bounded however
+/// many games are stored.
+///
+/// Writes from every game are batched: appends go to an in-memory buffer and a
+/// single writer thread writes and forces them together (group commit). A
+/// background compactor rewrites the live games of the oldest segment as
+/// snapshots at the head of the log once less than half of that segment is
+/// live, then deletes it.
+///
+/// One process at a time owns a store: opening it takes an exclusive lock on a
+/// `store.lock` file in its directory. [#openReadOnly(Path)] opens a store for
+/// reading only, alongside other readers but not a writer, without starting
+/// the writer or compactor and without repairing a torn tail.
+///
+/// If a write or force fails, the store stops: later appends throw, and anyone
+/// waiting for the lost records to become durable gets the error.
+public class GameStore implements Closeable {
+    /** Name of the file in the store directory that owners lock. */
+    private static final String LOCK_FILE = "store.lock";
+
+    /** Size at which the active segment is sealed and a new one is started. */
+    public static final long SEGMENT_SIZE = 8L << 20;
+
+    /** Number of decoded games kept in memory for fast lookups. */
+    public static final int MAX_CACHED_GAMES = 256;
+
+    /** Fraction of live bytes below which a sealed segment is compacted. */
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    /** Longest wait, in milliseconds, before retrying a compaction that did not finish. */
+    private static final long MAX_COMPACTION_BACKOFF = 60_000;
+
+    private static GameStore defaultStore;
+
+    /** A segment file together with its size and how much of it is still live. */
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+
+        Segment(int id, Path path, boolean readOnly) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = readOnly ? FileChannel.open(path, StandardOpenOption.READ)
+                    : FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+    }
+
+    /** Locations and sizes of one game's live records, in replay order. */
+    private static final class GameIndex {
+        long[] locations = new long[8];
+        int[] sizes = new int[8];
+        int count;
+        long version;
+
+        void add(long location, int size) {
+            if (count == locations.length) {
+                locations = Arrays.copyOf(locations, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            locations[count] = location;
+            sizes[count] = size;
+            count++;
+        }
+
+        boolean references(int segmentId) {
+            for (int i = 0; i < count; i++) {
+                if (segmentOf(locations[i]) == segmentId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Bytes waiting to be written to one segment, starting at a given offset. */
+    private static final class Chunk {
+        final Segment segment;
+        final long offset;
+        ByteBuffer data = ByteBuffer.allocate(4096);
+
+        Chunk(Segment segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private final Path directory;
+    private final boolean readOnly;
+    private final FileChannel lockChannel;
+    private final Object lock = new Object();
+    private final HashMap<String, GameIndex> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final LinkedHashMap<String, SavedGame> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SavedGame> eldest) {
+            return size() > MAX_CACHED_GAMES;
+        }
+    };
+
+    private Segment active;
+    private ArrayList<Chunk> pending = new ArrayList<>();
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private boolean closed = false;
+    /** The write error that stopped the store, if any. */
+    private IOException failure;
+
+    /** Group-commit writer and compactor, started once the store is built; null if read-only. */
+    private Thread writer;
+    private Thread compactor;
+
+    /**
+     * Opens the store in the given directory, rebuilding the index from the
+     * segments found there, and starts its writer and compactor.
+     *
+     * @param directory Directory holding the segment files
+     * @return The store
+     * @throws IOException if the directory or a segment cannot be opened, or
+     *                     another process has the store open
+     */
+    public static GameStore open(Path directory) throws IOException {
+        GameStore store = new GameStore(directory, false);
+        store.start();
+        return store;
+    }
+
+    private GameStore(Path directory, boolean readOnly) throws IOException {
+        this.directory = directory;
+        this.readOnly = readOnly;
+        if (!readOnly) {
+            Files.createDirectories(directory);
+        }
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock owner;
+            try {
+                owner = lockChannel.tryLock(0, Long.MAX_VALUE, readOnly);
+            } catch (OverlappingFileLockException e) {
+                owner = null;
+            }
+            if (owner == null) {
+                throw new IOException("Game store " + directory + " is in use");
+            }
+            recover();
+        } catch (IOException e) {
+            closeSegments();
+            throw e;
+        }
+    }
+
+    /** Starts the writer and compactor threads of a fully built store. */
+    private void start() {
+        writer = new Thread(this::writeLoop, "game-store-writer");
+        writer.setDaemon(true);
+        writer.start();
+        compactor = new Thread(this::compactLoop, "game-store-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Opens an existing store for reading only. No segment is changed, even one
+     * with a torn tail, and no threads are started; appends are refused. Only
+     * the lock file is created if the store does not have one yet. Other readers
+     * may have the store open at the same time, but no writer.
+     *
+     * @param directory Directory holding the segment files
+     * @return The store
+     * @throws IOException if the directory or a segment cannot be opened, or
+     *                     a writer has the store open
+     */
+    public static GameStore openReadOnly(Path directory) throws IOException {
+        return new GameStore(directory, true);
+    }
+
+    /**
+     * Returns the store shared by every game in this process, kept in the
+     * {@code saves} directory of the working directory.
+     *
+     * @return The default store
+     */
+    public static synchronized GameStore defaultStore() {
+        if (defaultStore == null) {
+            try {
+                defaultStore = open(Paths.get("saves"));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return defaultStore;
+    }
+
+    /**
+     * Opens a journal that saves and restores one game through this store.
+     *
+     * @param gameId Id of the game
+     * @return The game's journal
+     */
+    public GameJournal journal(String gameId) {
+        return new GameJournal(this, gameId);
+    }
+
+    /**
+     * Checks whether a game is stored.
+     *
+     * @param gameId Id of the game
+     * @return true if the store holds records for the game
+     */
+    public boolean contains(String gameId) {
+        synchronized (lock) {
+            return index.containsKey(gameId);
+        }
+    }
+
+    /**
+     * Returns the number of stored games.
+     *
+     * @return Number of games in the index
+     */
+    public int size() {
+        synchronized (lock) {
+            return index.size();
+        }
+    }
+
+    /**
+     * Returns the ids of every stored game.
+     *
+     * @return Snapshot of the stored game ids
+     */
+    public ArrayList<String> gameIds() {
+        synchronized (lock) {
+            return new ArrayList<>(index.keySet());
+        }
+    }
+
+    /**
+     * Returns the number of records written for a game since its last snapshot.
+     *
+     * @param gameId Id of the game
+     * @return Number of live records, or 0 if the game is not stored
+     */
+    public int tailLength(String gameId) {
+        synchronized (lock) {
+            GameIndex entry = index.get(gameId);
+            return entry == null ? 0 : entry.count;
+        }
+    }
+
+    /**
+     * Looks up a game.
+     *
+     * @param gameId Id of the game
+     * @return A copy of the stored game, or null if it is not stored
+     */
+    public SavedGame load(String gameId) {
+        for (int attempt = 0;; attempt++) {
+            long[] locations;
+            int[] sizes;
+            int count;
+            long version;
+            long seq;
+            synchronized (lock) {
+                SavedGame cached = cache.get(gameId);
+                if (cached != null) {
+                    return cached.copy();
+                }
+                GameIndex entry = index.get(gameId);
+                if (entry == null) {
+                    return null;
+                }
+                locations = entry.locations.clone();
+                sizes = entry.sizes.clone();
+                count = entry.count;
+                version = entry.version;
+                seq = appendedSeq;
+            }
+            awaitDurable(seq);
+            try {
+                SavedGame game = new SavedGame();
+                for (int i = 0; i < count; i++) {
+                    RecordCodec.apply(read(locations[i], sizes[i]), game);
+                }
+                synchronized (lock) {
+                    GameIndex entry = index.get(gameId);
+                    if (entry != null && entry.version == version) {
+                        cache.put(gameId, game);
+                    }
+                }
+                return game.copy();
+            } catch (IOException e) {
+                // A segment was compacted away while reading; the index now points elsewhere
+                if (attempt >= 3) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a player header record for a game.
+     *
+     * @param gameId  Id of the game
+     * @param players Game holding the header
+     */
+    public void appendPlayers(String gameId, SavedGame players) {
+        append(gameId, RecordCodec.PLAYERS, RecordCodec.playersPayload(players));
+    }
+
+    /**
+     * Appends a move record for a game.
+     *
+     * @param gameId Id of the game
+     * @param move   The move that was played
+     */
+    public void appendMove(String gameId, SavedMove move) {
+        append(gameId, RecordCodec.MOVE, RecordCodec.movePayload(move));
+    }
+
+    /**
+     * Appends an undo record for a game, retracting its most recent move.
+     *
+     * @param gameId Id of the game
+     */
+    public void appendUndo(String gameId) {
+        append(gameId, RecordCodec.UNDO, ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Replaces a game's records with a single snapshot of its full state.
+     *
+     * @param gameId Id of the game
+     * @param game   Full state of the game
+     */
+    public void snapshot(String gameId, SavedGame game) {
+        append(gameId, RecordCodec.SNAPSHOT, RecordCodec.snapshotPayload(game));
+    }
+
+    /**
+     * Removes a game from the store.
+     *
+     * @param gameId Id of the game
+     */
+    public void delete(String gameId) {
+        synchronized (lock) {
+            if (!index.containsKey(gameId)) {
+                return;
+            }
+        }
+        append(gameId, RecordCodec.DELETE, ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Blocks until every record appended so far has been forced to disk.
+     *
+     * @throws RuntimeException if a write failed and the records were lost
+     */
+    public void flush() {
+        long seq;
+        synchronized (lock) {
+            seq = appendedSeq;
+        }
+        awaitDurable(seq);
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // The writer already reported the failure; the segments still need closing
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+            closeSegments();
+        }
+    }
+
+    /** Closes every segment and the lock file, which releases the store. */
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(String gameId, byte type, ByteBuffer payload) {
+        if (readOnly) {
+            throw new IllegalStateException("Game store " + directory + " is open read-only");
+        }
+        byte[] record = RecordCodec.frame(gameId, type, payload);
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IllegalStateException("Game store " + directory + " stopped after a write failed", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Game store " + directory + " is closed");
+            }
+            if (active.size > 0 && active.size + record.length > SEGMENT_SIZE) {
+                roll();
+            }
+            Chunk chunk = pending.isEmpty() ? null : pending.getLast();
+            if (chunk == null || chunk.segment != active) {
+                chunk = new Chunk(active, active.size);
+                pending.add(chunk);
+            }
+            if (chunk.data.remaining() < record.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(chunk.data.capacity() * 2,
+                        chunk.data.position() + record.length));
+                grown.put(chunk.data.flip());
+                chunk.data = grown;
+            }
+            chunk.data.put(record);
+            long offset = active.size;
+            active.size += record.length;
+            indexRecord(gameId, type, active, offset, record.length);
+
+            SavedGame cached = cache.get(gameId);
+            if (cached != null) {
+                RecordCodec.apply(RecordCodec.decode(ByteBuffer.wrap(record)), cached);
+            }
+            appendedSeq++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Adds a record to the index and keeps the per-segment live byte counts
+     * current. Must be called while holding the lock.
+     */
+    private void indexRecord(String gameId, byte type, Segment segment, long offset, int size) {
+        GameIndex entry = index.get(gameId);
+        if (type == RecordCodec.SNAPSHOT || type == RecordCodec.DELETE) {
+            if (entry != null) {
+                release(entry);
+                entry.count = 0;
+            }
+            if (type == RecordCodec.DELETE) {
+                index.remove(gameId);
+                cache.remove(gameId);
+                return;
+            }
+        }
+        if (entry == null) {
+            entry = new GameIndex();
+            index.put(gameId, entry);
+        }
+        entry.add(location(segment.id, offset), size);
+        entry.version++;
+        segment.liveBytes += size;
+    }
+
+    private void release(GameIndex entry) {
+        for (int i = 0; i < entry.count; i++) {
+            Segment segment = segments.get(segmentOf(entry.locations[i]));
+            if (segment != null) {
+                segment.liveBytes -= entry.sizes[i];
+            }
+        }
+        entry.version++;
+    }
+
+    private void roll() {
+        try {
+            Segment next = openSegment(active.id + 1);
+            segments.put(next.id, next);
+            active = next;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        return new Segment(id, directory.resolve(String.format("segment-%06d.log", id)), readOnly);
+    }
+
+    private RecordCodec.Record read(long location, int size) throws IOException {
+        Segment segment;
+        synchronized (lock) {
+            segment = segments.get(segmentOf(location));
+        }
+        if (segment == null) {
+            throw new IOException("Segment " + segmentOf(location) + " no longer exists");
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        long position = offsetOf(location);
+        while (data.hasRemaining()) {
+            if (segment.channel.read(data, position + data.position()) < 0) {
+                throw new IOException("Unexpected end of segment " + segment.id);
+            }
+        }
+        RecordCodec.Record record = RecordCodec.decode(data.flip());
+        if (record == null) {
+            throw new IOException("Corrupt record in segment " + segment.id);
+        }
+        return record;
+    }
+
+    private void awaitDurable(long seq) {
+        synchronized (lock) {
+            while (durableSeq < seq && failure == null && writer != null && writer.isAlive()) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (durableSeq < seq && failure != null) {
+                throw new RuntimeException("Game store write failed", failure);
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ArrayList<Chunk> batch;
+            long seq;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                seq = appendedSeq;
+            }
+
+            HashSet<FileChannel> touched = new HashSet<>();
+            try {
+                for (Chunk chunk : batch) {
+                    ByteBuffer data = chunk.data.flip();
+                    while (data.hasRemaining()) {
+                        chunk.segment.channel.write(data, chunk.offset + data.position());
+                    }
+                    touched.add(chunk.segment.channel);
+                }
+                for (FileChannel channel : touched) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                synchronized (lock) {
+                    failure = e;
+                    closed = true;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableSeq = seq;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void compactLoop() {
+        long backoff = 0;
+        while (true) {
+            Segment victim = null;
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                Segment oldest = segments.firstEntry().getValue();
+                if (oldest != active && (oldest.liveBytes == 0 || oldest.liveBytes < oldest.size * COMPACTION_THRESHOLD)) {
+                    victim = oldest;
+                } else {
+                    try {
+                        lock.wait(1000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            if (victim == null) {
+                continue;
+            }
+            boolean finished = false;
+            try {
+                finished = compact(victim);
+            } catch (RuntimeException e) {
+                // Report the first failure only; retries that fail the same way are quiet
+                synchronized (lock) {
+                    if (closed) {
+                        return; // Closing refuses the compactor's snapshots
+                    }
+                }
+                if (backoff == 0) {
+                    e.printStackTrace();
+                }
+            }
+            if (finished) {
+                backoff = 0;
+                continue;
+            }
+            // The segment is still referenced or could not be read; retry later rather than spin on it
+            backoff = Math.min(MAX_COMPACTION_BACKOFF, Math.max(1000, backoff * 2));
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    lock.wait(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites every game that still has records in the given segment as a
+     * snapshot at the head of the log, then deletes the segment. Only the oldest
+     * segment is ever compacted, so no older record can outlive a dropped
+     * delete marker.
+     *
+     * @return true if the segment was deleted, false if a game still refers to it
+     */
+    private boolean compact(Segment victim) {
+        ArrayList<String> live = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<String, GameIndex> entry : index.entrySet()) {
+                if (entry.getValue().references(victim.id)) {
+                    live.add(entry.getKey());
+                }
+            }
+        }
+        for (String gameId : live) {
+            while (true) {
+                long version;
+                synchronized (lock) {
+                    GameIndex entry = index.get(gameId);
+                    if (entry == null || !entry.references(victim.id)) {
+                        break;
+                    }
+                    version = entry.version;
+                }
+                SavedGame game = load(gameId);
+                synchronized (lock) {
+                    GameIndex entry = index.get(gameId);
+                    if (game != null && entry != null && entry.version == version) {
+                        snapshot(gameId, game);
+                        break;
+                    }
+                }
+            }
+        }
+        flush();
+        synchronized (lock) {
+            for (GameIndex entry : index.values()) {
+                if (entry.references(victim.id)) {
+                    return false;
+                }
+            }
+            segments.remove(victim.id);
+            try {
+                victim.channel.close();
+                Files.deleteIfExists(victim.path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Rebuilds the index by replaying every segment in order. A torn record at
+     * the end of the newest segment is truncated, unless the store is read-only;
+     * a corrupt record in an older segment ends that segment.
+     */
+    private void recover() throws IOException {
+        ArrayList<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                ids.add(Integer.parseInt(name.substring(8, name.length() - 4)));
+            }
+        }
+        ids.sort(null);
+        for (int id : ids) {
+            Segment segment = openSegment(id);
+            segments.put(id, segment);
+            ByteBuffer data = ByteBuffer.allocate((int) segment.size);
+            while (data.hasRemaining() && segment.channel.read(data, data.position()) >= 0) {
+                // Keep reading until the whole segment is loaded
+            }
+            data.flip();
+            RecordCodec.Record record;
+            long offset = 0;
+            while ((record = RecordCodec.decode(data)) != null) {
+                indexRecord(record.gameId, record.type, segment, offset, record.size);
+                offset += record.size;
+            }
+            if (offset < segment.size && id == ids.getLast() && !readOnly) {
+                segment.channel.truncate(offset);
+                segment.channel.force(false);
+            }
+            segment.size = offset;
+        }
+        if (segments.isEmpty()) {
+            if (readOnly) {
+                return;
+            }
+            Segment segment = openSegment(1);
+            segments.put(segment.id, segment);
+        }
+        active = segments.lastEntry().getValue();
+    }
+
+    private static long location(int segmentId, long offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static long offsetOf(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,242 @@
+package Storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/// Binary layout shared by the game store's segment files.
+///
+/// Record layout: `int length | int crc32 | byte type | short idLength | id |
+/// payload`, where length and crc cover everything after the crc. A record
+/// whose length or checksum does not check out marks the end of the valid data
+/// in a segment.
+///
+/// The increment and delay of the time control are written last in players and
+/// snapshot payloads; payloads from before they existed simply end earlier.
+final class RecordCodec {
+    static final byte PLAYERS = 1;
+    static final byte MOVE = 2;
+    static final byte UNDO = 3;
+    static final byte SNAPSHOT = 4;
+    static final byte DELETE = 5;
+
+    static final int HEADER_SIZE = 8;
+    static final int MAX_RECORD_SIZE = 1 << 24;
+
+    /** A decoded record: the game it belongs to, its type and its payload. */
+    static final class Record {
+        final String gameId;
+        final byte type;
+        final ByteBuffer payload;
+        final int size;
+
+        Record(String gameId, byte type, ByteBuffer payload, int size) {
+            this.gameId = gameId;
+            this.type = type;
+            this.payload = payload;
+            this.size = size;
+        }
+    }
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Frames a payload into a complete, checksummed record.
+     *
+     * @param gameId  Game the record belongs to
+     * @param type    Record type
+     * @param payload Payload bytes, from position to limit
+     * @return The encoded record
+     */
+    static byte[] frame(String gameId, byte type, ByteBuffer payload) {
+        byte[] id = gameId.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + id.length + payload.remaining();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + length);
+        out.position(HEADER_SIZE);
+        out.put(type);
+        out.putShort((short) id.length);
+        out.put(id);
+        out.put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), HEADER_SIZE, length);
+        out.putInt(0, length);
+        out.putInt(4, (int) crc.getValue());
+        return out.array();
+    }
+
+    /**
+     * Decodes the record at the buffer's position and advances past it.
+     *
+     * @param data Buffer positioned at the start of a record
+     * @return The record, or null if the data is truncated or corrupt, in which
+     *         case the position is left unchanged
+     */
+    static Record decode(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < HEADER_SIZE + 3) {
+            return null;
+        }
+        int length = data.getInt(start);
+        int checksum = data.getInt(start + 4);
+        if (length < 3 || length > MAX_RECORD_SIZE || length > data.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.slice(start + HEADER_SIZE, length));
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        ByteBuffer body = data.slice(start + HEADER_SIZE, length);
+        byte type = body.get();
+        byte[] id = new byte[body.getShort() & 0xFFFF];
+        body.get(id);
+        data.position(start + HEADER_SIZE + length);
+        return new Record(new String(id, StandardCharsets.UTF_8), type, body.slice(), HEADER_SIZE + length);
+    }
+
+    /**
+     * Applies a decoded record to a game.
+     *
+     * @param record The record to apply
+     * @param game   Game the record is applied to
+     */
+    static void apply(Record record, SavedGame game) {
+        ByteBuffer in = record.payload.duplicate();
+        switch (record.type) {
+            case PLAYERS -> {
+                readPlayers(in, game);
+                readTimeControl(in, game);
+            }
+            case MOVE -> game.moves.add(readMove(in));
+            case UNDO -> {
+                if (!game.moves.isEmpty()) {
+                    game.moves.removeLast();
+                }
+            }
+            case SNAPSHOT -> {
+                readPlayers(in, game);
+                game.moves.clear();
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    game.moves.add(readMove(in));
+                }
+                readTimeControl(in, game);
+            }
+            case DELETE -> game.moves.clear();
+            default -> {
+                // Unknown record types from newer versions are skipped
+            }
+        }
+    }
+
+    static ByteBuffer playersPayload(SavedGame game) {
+        ByteBuffer out = ByteBuffer.allocate(playersSize(game) + 8);
+        writePlayers(out, game);
+        writeTimeControl(out, game);
+        return out.flip();
+    }
+
+    static ByteBuffer movePayload(SavedMove move) {
+        ByteBuffer out = ByteBuffer.allocate(13);
+        writeMove(out, move);
+        return out.flip();
+    }
+
+    static ByteBuffer snapshotPayload(SavedGame game) {
+        ByteBuffer out = ByteBuffer.allocate(playersSize(game) + 4 + game.moves.size() * 13 + 8);
+        writePlayers(out, game);
+        out.putInt(game.moves.size());
+        for (SavedMove move : game.moves) {
+            writeMove(out, move);
+        }
+        writeTimeControl(out, game);
+        return out.flip();
+    }
+
+    private static int playersSize(SavedGame game) {
+        return 4 + 8 + utf8(game.player1Name).length + utf8(game.player1Color).length
+                + utf8(game.player2Name).length + utf8(game.player2Color).length;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writePlayers(ByteBuffer out, SavedGame game) {
+        for (String field : new String[] { game.player1Name, game.player1Color, game.player2Name,
+                game.player2Color }) {
+            byte[] bytes = utf8(field);
+            out.putShort((short) bytes.length);
+            out.put(bytes);
+        }
+        out.putInt(game.timerDuration);
+    }
+
+    private static void readPlayers(ByteBuffer in, SavedGame game) {
+        game.player1Name = readString(in);
+        game.player1Color = readString(in);
+        game.player2Name = readString(in);
+        game.player2Color = readString(in);
+        game.timerDuration = in.getInt();
+    }
+
+    private static void writeTimeControl(ByteBuffer out, SavedGame game) {
+        out.putInt(game.incrementSeconds);
+        out.putInt(game.delaySeconds);
+    }
+
+    private static void readTimeControl(ByteBuffer in, SavedGame game) {
+        if (in.remaining() >= 8) {
+            game.incrementSeconds = in.getInt();
+            game.delaySeconds = in.getInt();
+        } else {
+            game.incrementSeconds = 0;
+            game.delaySeconds = 0;
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeMove(ByteBuffer out, SavedMove move) {
+        out.put((byte) move.fromRow);
+        out.put((byte) move.fromCol);
+        out.put((byte) move.toRow);
+        out.put((byte) move.toCol);
+        out.putInt(move.whiteTime);
+        out.putInt(move.blackTime);
+        out.put(promotionCode(move.promoteTo));
+    }
+
+    private static SavedMove readMove(ByteBuffer in) {
+        return new SavedMove(in.get(), in.get(), in.get(), in.get(), in.getInt(), in.getInt(),
+                promotionName(in.get()));
+    }
+
+    static byte promotionCode(String promoteTo) {
+        if (promoteTo == null) {
+            return 0;
+        }
+        return switch (promoteTo) {
+            case "Queen" -> 1;
+            case "Rook" -> 2;
+            case "Bishop" -> 3;
+            case "Knight" -> 4;
+            default -> 0;
+        };
+    }
+
+    static String promotionName(int code) {
+        return switch (code) {
+            case 1 -> "Queen";
+            case 2 -> "Rook";
+            case 3 -> "Bishop";
+            case 4 -> "Knight";
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,91 @@
+package Storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/// Converts saved games into a binary archive.
+///
+/// Accepts the text saves written by earlier versions (a `lastSave.txt` move
+/// list with comma-separated coordinates and timers, plus the `players.txt`
+/// header next to it) and game store directories, whose games are all copied.
+///
+/// Usage: `convert <archive> <lastSave.txt | store directory>...`
+public class SaveConverter {
+    private SaveConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: convert <archive> <lastSave.txt | store directory>...");
+            return;
+        }
+        try (ArchiveWriter writer = new ArchiveWriter(Paths.get(args[0]))) {
+            for (int i = 1; i < args.length; i++) {
+                Path input = Paths.get(args[i]);
+                if (Files.isDirectory(input)) {
+                    convertStore(input, writer);
+                } else {
+                    writer.write(readTextSave(input, input.resolveSibling("players.txt")));
+                }
+            }
+            System.out.println("Wrote " + writer.size() + " games to " + args[0]);
+        }
+    }
+
+    /**
+     * Copies every game of a game store into an archive. The store is opened
+     * read-only, so it is left as found and cannot be converted while a game
+     * is writing to it.
+     *
+     * @param directory Directory of the store
+     * @param writer    Archive to append to
+     * @throws IOException if the store cannot be opened or a block cannot be written
+     */
+    public static void convertStore(Path directory, ArchiveWriter writer) throws IOException {
+        try (GameStore store = GameStore.openReadOnly(directory)) {
+            List<String> ids = store.gameIds();
+            ids.sort(null);
+            for (String id : ids) {
+                SavedGame game = store.load(id);
+                if (game != null) {
+                    writer.write(game);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a game saved in the original text format.
+     *
+     * @param movesFile   The move list, one {@code fromRow,fromCol,toRow,toCol,whiteTime,blackTime[,promotion]} per line
+     * @param playersFile The player header, or a missing file for defaults
+     * @return The parsed game
+     * @throws IOException if the move list cannot be read
+     */
+    public static SavedGame readTextSave(Path movesFile, Path playersFile) throws IOException {
+        SavedGame game = new SavedGame();
+        if (Files.exists(playersFile)) {
+            List<String> lines = Files.readAllLines(playersFile);
+            String[] parts = lines.getFirst().split(",");
+            game.player1Name = parts[0].trim();
+            game.player1Color = parts[1].trim();
+            game.timerDuration = Integer.parseInt(parts[2].trim());
+            parts = lines.get(1).split(",");
+            game.player2Name = parts[0].trim();
+            game.player2Color = parts[1].trim();
+        }
+        for (String line : Files.readAllLines(movesFile)) {
+            String[] parts = line.split(",");
+            if (parts.length < 6)
+                continue;
+            game.moves.add(new SavedMove(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()),
+                    Integer.parseInt(parts[4].trim()), Integer.parseInt(parts[5].trim()),
+                    parts.length > 6 ? parts[6].trim() : null));
+        }
+        return game;
+    }
+}
@@ -0,0 +1,65 @@
+package Storage;
+
+import java.util.ArrayList;
+
+/**
+ * Everything needed to resume a game: both players, the time control and the
+ * move history in the order the moves were played.
+ */
+public class SavedGame {
+    public String player1Name = "Player 1";
+    public String player1Color = "White";
+    public String player2Name = "Player 2";
+    public String player2Color = "Black";
+
+    /** Timer duration in minutes. */
+    public int timerDuration = 10;
+
+    /** Fischer increment added after each move, in seconds. */
+    public int incrementSeconds = 0;
+
+    /** Bronstein delay per move, in seconds. */
+    public int delaySeconds = 0;
+
+    public final ArrayList<SavedMove> moves = new ArrayList<>();
+
+    /**
+     * Copies the player header (names, colors and time control) from another game.
+     *
+     * @param other The game to copy the header from
+     */
+    public void copyPlayers(SavedGame other) {
+        player1Name = other.player1Name;
+        player1Color = other.player1Color;
+        player2Name = other.player2Name;
+        player2Color = other.player2Color;
+        timerDuration = other.timerDuration;
+        incrementSeconds = other.incrementSeconds;
+        delaySeconds = other.delaySeconds;
+    }
+
+    /**
+     * Checks whether two games have the same player header.
+     *
+     * @param other The game to compare against
+     * @return true if names, colors and time control all match
+     */
+    public boolean samePlayers(SavedGame other) {
+        return player1Name.equals(other.player1Name) && player1Color.equals(other.player1Color)
+                && player2Name.equals(other.player2Name) && player2Color.equals(other.player2Color)
+                && timerDuration == other.timerDuration && incrementSeconds == other.incrementSeconds
+                && delaySeconds == other.delaySeconds;
+    }
+
+    /**
+     * Creates an independent copy of this game.
+     *
+     * @return A game with the same header and moves
+     */
+    public SavedGame copy() {
+        SavedGame game = new SavedGame();
+        game.copyPlayers(this);
+        game.moves.addAll(moves);
+        return game;
+    }
+}
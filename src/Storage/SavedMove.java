@@ -0,0 +1,53 @@
+package Storage;
+
+import Utilities.Move;
+
+/**
+ * The persisted form of a single move: coordinates, clock readings and the
+ * promotion choice. Unlike {@link Move} it carries no piece references, so it
+ * can be written and read without a board.
+ */
+public class SavedMove {
+    /** Row index of the piece's starting position. */
+    public final int fromRow;
+
+    /** Column index of the piece's starting position. */
+    public final int fromCol;
+
+    /** Row index of the piece's destination position. */
+    public final int toRow;
+
+    /** Column index of the piece's destination position. */
+    public final int toCol;
+
+    /** White's remaining time in deciseconds when the move was made. */
+    public final int whiteTime;
+
+    /** Black's remaining time in deciseconds when the move was made. */
+    public final int blackTime;
+
+    /** Name of the piece a pawn was promoted to, or null. */
+    public final String promoteTo;
+
+    public SavedMove(int fromRow, int fromCol, int toRow, int toCol, int whiteTime, int blackTime,
+            String promoteTo) {
+        this.fromRow = fromRow;
+        this.fromCol = fromCol;
+        this.toRow = toRow;
+        this.toCol = toCol;
+        this.whiteTime = whiteTime;
+        this.blackTime = blackTime;
+        this.promoteTo = promoteTo;
+    }
+
+    /**
+     * Captures the persisted fields of a board move.
+     *
+     * @param move The move to convert
+     * @return The saved form of the move
+     */
+    public static SavedMove of(Move move) {
+        return new SavedMove(move.fromRow, move.fromCol, move.toRow, move.toCol, move.timers[0], move.timers[1],
+                move.promoteTo);
+    }
+}
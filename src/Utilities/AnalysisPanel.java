@@ -0,0 +1,66 @@
+package Utilities;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Shows the engine's analysis of the current position: a header line with the
+/// depth and search speed, then one line per principal variation.
+///
+/// The text is painted in the panel's foreground color, so it follows the right
+/// panel's colors as the turn changes. Only a change of text repaints.
+public class AnalysisPanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private static final Font HEADER_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font LINE_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final int ROWS = 4;
+    private static final int PADDING = 4;
+
+    private String header = "";
+    private final ArrayList<String> lines = new ArrayList<>();
+
+    /** Sized for the header and the lines, unless a size was set. */
+    @Override
+    public Dimension getPreferredSize() {
+        return isPreferredSizeSet() ? super.getPreferredSize() : new Dimension(230, ROWS * 18 + 2 * PADDING);
+    }
+
+    /**
+     * Shows new analysis.
+     *
+     * @param header Summary line, such as the depth reached
+     * @param lines  Principal variations, best first
+     */
+    public void show(String header, List<String> lines) {
+        if (header.equals(this.header) && lines.equals(this.lines)) {
+            return;
+        }
+        this.header = header;
+        this.lines.clear();
+        this.lines.addAll(lines);
+        repaint();
+    }
+
+    /** Removes the shown analysis. */
+    public void clear() {
+        show("", List.of());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setColor(getForeground());
+        int rowHeight = (getHeight() - 2 * PADDING) / ROWS;
+        int y = PADDING + rowHeight - 4;
+        g2.setFont(HEADER_FONT);
+        g2.drawString(header, PADDING, y);
+        g2.setFont(LINE_FONT);
+        for (int i = 0; i < lines.size() && i < ROWS - 1; i++) {
+            y += rowHeight;
+            g2.drawString(lines.get(i), PADDING, y);
+        }
+    }
+}
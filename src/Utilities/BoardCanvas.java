@@ -0,0 +1,294 @@
+package Utilities;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.Objects;
+
+/// Paints the 8x8 board as a single component.
+///
+/// Squares, highlights, move dots and pieces are drawn from plain arrays into a
+/// `VolatileImage` back buffer. Changing a square marks only that square dirty
+/// and repaints its bounds; painting redraws the dirty squares into the buffer
+/// and copies the clipped area to the screen. No child components are created,
+/// so updating the board never triggers a layout pass.
+///
+/// A piece being dragged is drawn on top of the buffer at the pointer, so moving
+/// it only repaints the area it leaves and enters.
+///
+/// The board is the largest square that fits the component, centered, with the
+/// rank and file names painted along its edges, so it scales with the window.
+/// Pieces are drawn from [SpriteCache] at the current square size; resizing
+/// repaints everything once at the new size.
+class BoardCanvas extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SIZE = 8;
+
+    /** Diameter of a move dot relative to the square size. */
+    private static final double DOT_RATIO = 0.53;
+
+    /** Size of a piece relative to the square size. */
+    private static final double PIECE_RATIO = 0.8;
+
+    private final Color lightColor = Color.WHITE;
+    private final Color darkColor;
+
+    /** Piece index on each square, -1 if empty. */
+    private final int[] pieces = new int[SIZE * SIZE];
+    private final Color[] highlights = new Color[SIZE * SIZE];
+    private final Color[] dots = new Color[SIZE * SIZE];
+    private int hiddenSquare = -1;
+
+    private int dragPiece = -1;
+    private Point dragPoint;
+
+    private transient VolatileImage buffer;
+
+    /** Font of the rank and file names, made for {@link #labelFontSize}. */
+    private transient Font labelFont;
+    private int labelFontSize;
+
+    /** Squares whose pixels in {@link #buffer} are out of date, bit {@code row * 8 + col}. */
+    private long dirty = -1L;
+
+    /**
+     * Creates a board with the given dark square color.
+     *
+     * @param darkColor Color of the dark squares
+     * @param size      Preferred width and height in pixels
+     */
+    BoardCanvas(Color darkColor, int size) {
+        this.darkColor = darkColor;
+        setPreferredSize(new Dimension(size, size));
+        setOpaque(true);
+        Arrays.fill(pieces, -1);
+    }
+
+    /**
+     * Sets the piece shown on a square.
+     *
+     * @param row   Row of the square
+     * @param col   Column of the square
+     * @param piece Piece index from {@link Zobrist#pieceIndex}, or -1 to clear
+     */
+    void setPiece(int row, int col, int piece) {
+        int square = row * SIZE + col;
+        if (pieces[square] != piece) {
+            pieces[square] = piece;
+            invalidateSquare(square);
+        }
+    }
+
+    void setHighlight(int row, int col, Color color) {
+        int square = row * SIZE + col;
+        if (!Objects.equals(highlights[square], color)) {
+            highlights[square] = color;
+            invalidateSquare(square);
+        }
+    }
+
+    void setDot(int row, int col, Color color) {
+        int square = row * SIZE + col;
+        if (!Objects.equals(dots[square], color)) {
+            dots[square] = color;
+            invalidateSquare(square);
+        }
+    }
+
+    /**
+     * Starts drawing a piece at the pointer instead of on its square.
+     *
+     * @param row   Row of the dragged piece
+     * @param col   Column of the dragged piece
+     * @param point Pointer position in component coordinates
+     * @return true if the square holds a piece to drag
+     */
+    boolean startDrag(int row, int col, Point point) {
+        int square = row * SIZE + col;
+        if (pieces[square] < 0) {
+            return false;
+        }
+        hiddenSquare = square;
+        invalidateSquare(square);
+        dragPiece = pieces[square];
+        dragPoint = point;
+        repaint(dragBounds());
+        return true;
+    }
+
+    void moveDrag(Point point) {
+        if (dragPiece >= 0) {
+            Rectangle before = dragBounds();
+            dragPoint = point;
+            repaint(before.union(dragBounds()));
+        }
+    }
+
+    void endDrag() {
+        if (dragPiece >= 0) {
+            repaint(dragBounds());
+            dragPiece = -1;
+            dragPoint = null;
+        }
+        if (hiddenSquare >= 0) {
+            invalidateSquare(hiddenSquare);
+            hiddenSquare = -1;
+        }
+    }
+
+    /**
+     * Returns the square under a point.
+     *
+     * @param point Point in component coordinates
+     * @return Index {@code row * 8 + col}, or -1 if the point is off the board
+     */
+    int squareAt(Point point) {
+        int side = boardSide();
+        int x = point.x - originX();
+        int y = point.y - originY();
+        if (x < 0 || y < 0 || x >= side || y >= side) {
+            return -1;
+        }
+        return (y * SIZE / side) * SIZE + x * SIZE / side;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        do {
+            if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height) {
+                createBuffer(width, height);
+                if (buffer == null) {
+                    return; // Not displayable yet
+                }
+            }
+            int status = buffer.validate(configuration);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                createBuffer(width, height);
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                dirty = -1L;
+            }
+            if (dirty != 0) {
+                Graphics2D bg = buffer.createGraphics();
+                try {
+                    if (dirty == -1L) {
+                        bg.setColor(getBackground());
+                        bg.fillRect(0, 0, width, height);
+                    }
+                    bg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    bg.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                            RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                    bg.setFont(labelFont(Math.max(9, boardSide() / SIZE / 6)));
+                    for (long rest = dirty; rest != 0; rest &= rest - 1) {
+                        drawSquare(bg, Long.numberOfTrailingZeros(rest));
+                    }
+                } finally {
+                    bg.dispose();
+                }
+                dirty = 0;
+            }
+            g.drawImage(buffer, 0, 0, null);
+        } while (buffer.contentsLost());
+
+        if (dragPiece >= 0) {
+            Rectangle bounds = dragBounds();
+            g.drawImage(SpriteCache.get(dragPiece, bounds.width), bounds.x, bounds.y, null);
+        }
+    }
+
+    /** Returns the label font at a size, making it only when the size changes. */
+    private Font labelFont(int size) {
+        if (labelFont == null || labelFontSize != size) {
+            labelFont = new Font("Arial", Font.BOLD, size);
+            labelFontSize = size;
+        }
+        return labelFont;
+    }
+
+    private void createBuffer(int width, int height) {
+        if (buffer != null) {
+            buffer.flush();
+        }
+        buffer = createVolatileImage(width, height);
+        dirty = -1L;
+    }
+
+    private void drawSquare(Graphics2D g, int square) {
+        Rectangle r = squareBounds(square);
+        int row = square / SIZE;
+        int col = square % SIZE;
+        g.setColor((row + col) % 2 == 0 ? lightColor : darkColor);
+        g.fillRect(r.x, r.y, r.width, r.height);
+        if (highlights[square] != null) {
+            g.setColor(highlights[square]);
+            g.fillRect(r.x, r.y, r.width, r.height);
+        }
+        if (dots[square] != null) {
+            int diameter = (int) (Math.min(r.width, r.height) * DOT_RATIO);
+            g.setColor(dots[square]);
+            g.fillOval(r.x + (r.width - diameter) / 2, r.y + (r.height - diameter) / 2, diameter, diameter);
+        }
+        if (col == 0 || row == SIZE - 1) {
+            // Rank and file names in the color of the opposite squares
+            g.setColor((row + col) % 2 == 0 ? darkColor : lightColor);
+            FontMetrics metrics = g.getFontMetrics();
+            int pad = Math.max(2, r.width / 20);
+            if (col == 0) {
+                g.drawString(String.valueOf(SIZE - row), r.x + pad, r.y + pad + metrics.getAscent());
+            }
+            if (row == SIZE - 1) {
+                String file = String.valueOf((char) ('a' + col));
+                g.drawString(file, r.x + r.width - pad - metrics.stringWidth(file),
+                        r.y + r.height - pad - metrics.getDescent());
+            }
+        }
+        if (pieces[square] >= 0 && square != hiddenSquare) {
+            int size = pieceSize();
+            g.drawImage(SpriteCache.get(pieces[square], size), r.x + (r.width - size) / 2,
+                    r.y + (r.height - size) / 2, null);
+        }
+    }
+
+    private void invalidateSquare(int square) {
+        dirty |= 1L << square;
+        repaint(squareBounds(square));
+    }
+
+    /** Bounds of a square; squares split the board exactly, leaving no gaps. */
+    private Rectangle squareBounds(int square) {
+        int side = boardSide();
+        int row = square / SIZE;
+        int col = square % SIZE;
+        int x = col * side / SIZE;
+        int y = row * side / SIZE;
+        return new Rectangle(originX() + x, originY() + y, (col + 1) * side / SIZE - x, (row + 1) * side / SIZE - y);
+    }
+
+    private int boardSide() {
+        return Math.min(getWidth(), getHeight());
+    }
+
+    private int originX() {
+        return (getWidth() - boardSide()) / 2;
+    }
+
+    private int originY() {
+        return (getHeight() - boardSide()) / 2;
+    }
+
+    private int pieceSize() {
+        return (int) (boardSide() / SIZE * PIECE_RATIO);
+    }
+
+    private Rectangle dragBounds() {
+        int size = pieceSize();
+        return new Rectangle(dragPoint.x - size / 2, dragPoint.y - size / 2, size, size);
+    }
+}
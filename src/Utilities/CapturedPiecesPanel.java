@@ -0,0 +1,75 @@
+package Utilities;
+
+import Pieces.Piece;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Shows the pieces a player has captured, two rows of eight.
+///
+/// The panel paints cached sprites instead of holding a label per piece.
+/// [#update(List)] compares the new list with the one shown and repaints only
+/// the cells that changed, which after a move or an undo is at most one.
+public class CapturedPiecesPanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private static final int COLUMNS = 8;
+    private static final int ROWS = 2;
+
+    /** Size of a captured piece in pixels. */
+    private static final int SPRITE_SIZE = 20;
+
+    private final ArrayList<Integer> shown = new ArrayList<>();
+
+    /** Sized to hold two full rows of sprites, unless a size was set. */
+    @Override
+    public Dimension getPreferredSize() {
+        return isPreferredSizeSet() ? super.getPreferredSize()
+                : new Dimension(COLUMNS * SPRITE_SIZE, ROWS * SPRITE_SIZE);
+    }
+
+    /**
+     * Shows the given captured pieces.
+     *
+     * @param captured Pieces in the order they were captured
+     */
+    public void update(List<Piece> captured) {
+        int common = 0;
+        while (common < shown.size() && common < captured.size()
+                && shown.get(common) == Zobrist.pieceIndex(captured.get(common))) {
+            common++;
+        }
+        int end = Math.max(shown.size(), captured.size());
+        while (shown.size() > common) {
+            shown.removeLast();
+        }
+        for (int i = common; i < captured.size(); i++) {
+            shown.add(Zobrist.pieceIndex(captured.get(i)));
+        }
+        for (int i = common; i < end; i++) {
+            repaint(cellBounds(i));
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        for (int i = 0; i < shown.size(); i++) {
+            Rectangle cell = cellBounds(i);
+            if (clip == null || clip.intersects(cell)) {
+                g.drawImage(SpriteCache.get(shown.get(i), SPRITE_SIZE), cell.x + (cell.width - SPRITE_SIZE) / 2,
+                        cell.y + (cell.height - SPRITE_SIZE) / 2, null);
+            }
+        }
+    }
+
+    private Rectangle cellBounds(int index) {
+        int row = index / COLUMNS;
+        int col = index % COLUMNS;
+        int width = Math.max(SPRITE_SIZE, getWidth() / COLUMNS);
+        int height = Math.max(SPRITE_SIZE, getHeight() / ROWS);
+        return new Rectangle(col * width, row * height, width, height);
+    }
+}
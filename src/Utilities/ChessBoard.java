@@ -4,8 +4,11 @@ import Pieces.Piece;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 
 /// A graphical chess board implementation using Java Swing that manages the
 /// visual board, player timers, and game state.
@@ -13,9 +16,10 @@ import java.awt.event.MouseEvent;
 /// This class provides a comprehensive chess board interface with features
 /// including:
 ///
-/// - 8x8 grid representation of the chess board
+/// - 8x8 board painted by a single component that scales with the window, see
+/// [BoardCanvas]
 ///
-/// - Player time tracking with countdown timers
+/// - Player time tracking with a [GameClock], supporting increment and delay
 ///
 /// - Captured pieces display
 ///
@@ -33,57 +37,65 @@ public class ChessBoard extends JFrame {
         void onDragEnd();
     }
 
+    /** Receives clicks on board squares. */
+    public interface SquareListener {
+        void onSquareClicked(int row, int col);
+    }
+
     /**
      * Panel for displaying right-side game components like timers and captured
      * pieces.
      * Uses a GridBagLayout to organize components vertically with proper spacing.
      */
     public JPanel rightPanel = new JPanel(new GridBagLayout());
-    public JPanel buttonPanel = new JPanel(new GridLayout(1, 2, 10, 0)); // Add gap between buttons
+    public JPanel buttonPanel = new JPanel(new GridLayout(1, 4, 10, 0)); // Add gap between buttons
     public JButton undoButton = new JButton("Undo");
     public JButton restartButton = new JButton("Restart");
+    public JToggleButton analyzeButton = new JToggleButton("Analyze");
+    public JButton mateButton = new JButton("Mate?");
+
+    /** What the engine is thinking while it searches its move. */
+    public JLabel engineStatusLabel = new JLabel(" ", SwingConstants.CENTER);
+
+    /** Engine lines for the current position, shown while analysis is on. */
+    public final AnalysisPanel analysisPanel = new AnalysisPanel();
     public JLabel player1Label = new JLabel("Player 1", SwingConstants.CENTER);
     public JLabel player2Label = new JLabel("Player 2", SwingConstants.CENTER);
     private Point lastMoveStart;
     private Point lastMoveEnd;
     private static final Color LAST_MOVE_START_COLOR = new Color(255, 255, 0, 100);
     private static final Color LAST_MOVE_END_COLOR = new Color(255, 165, 0, 100);
+    private final ArrayList<ActionListener> timeoutListeners = new ArrayList<>();
 
     /**
-     * Tracks the remaining time for the White player in deciseconds.
-     * One decisecond represents 0.1 seconds, allowing precise time tracking.
+     * The players' clock. Remaining time is computed from the monotonic system
+     * timer whenever it is read, so it stays exact however busy the UI is.
      */
-    public int whiteTimeRemaining;
+    public final transient GameClock clock;
 
     /**
-     * Tracks the remaining time for the Black player in deciseconds.
-     * One decisecond represents 0.1 seconds, allowing precise time tracking.
+     * One-shot timer that fires when the running clock's display next changes,
+     * or when its flag falls.
      */
-    public int blackTimeRemaining;
+    private final Timer clockTimer;
 
-    /**
-     * Swing Timer for tracking and updating the White player's remaining time.
-     * Updates every decisecond and handles time-out scenarios.
-     */
-    public Timer whiteTimer;
+    /** Deciseconds currently shown on each timer label, White then Black. */
+    private final int[] shownTime = { -1, -1 };
 
-    /**
-     * Swing Timer for tracking and updating the Black player's remaining time.
-     * Updates every decisecond and handles time-out scenarios.
-     */
-    public Timer blackTimer;
+    private static final Font ACTIVE_TIMER_FONT = new Font("Arial", Font.BOLD, 20);
+    private static final Font IDLE_TIMER_FONT = new Font("Arial", Font.BOLD, 10);
 
     /**
-     * Panel for displaying pieces captured by the White player.
-     * Uses a 2x8 GridLayout to represent captured pieces.
+     * Panel for displaying pieces captured by the White player, two rows of
+     * eight.
      */
-    public JPanel whiteCapturedPanel = new JPanel(new GridLayout(2, 8));
+    public CapturedPiecesPanel whiteCapturedPanel = new CapturedPiecesPanel();
 
     /**
-     * Panel for displaying pieces captured by the Black player.
-     * Uses a 2x8 GridLayout to represent captured pieces.
+     * Panel for displaying pieces captured by the Black player, two rows of
+     * eight.
      */
-    public JPanel blackCapturedPanel = new JPanel(new GridLayout(2, 8));
+    public CapturedPiecesPanel blackCapturedPanel = new CapturedPiecesPanel();
 
     /** Label displaying White player's remaining time. */
     private final JLabel whiteTimerLabel = new JLabel("30:00.0", SwingConstants.CENTER);
@@ -94,11 +106,10 @@ public class ChessBoard extends JFrame {
     /** Standard chess board size (8x8). */
     private static final int BOARD_SIZE = 8;
 
-    /** 2D array representing the chess board squares. */
-    private final JPanel[][] squares = new JPanel[BOARD_SIZE][BOARD_SIZE];
+    /** Component that paints the squares, pieces, highlights and move dots. */
+    private final BoardCanvas canvas;
 
-    /** Background color of the board squares. */
-    private final Color color;
+    private final ArrayList<SquareListener> squareListeners = new ArrayList<>();
 
     /** Dimensions of the board. */
     private final int[] dims;
@@ -111,65 +122,43 @@ public class ChessBoard extends JFrame {
      * @param minutes Total game time allocated for each player in minutes
      */
     public ChessBoard(int[] dims, Color color, int minutes) {
-        this.color = color;
+        this(dims, color, new TimeControl(minutes, 0, 0));
+    }
+
+    /**
+     * Constructs a new ChessBoard with custom configuration. The clock starts
+     * stopped; see {@link #startClock(String)}.
+     *
+     * @param dims    Array containing board width and height in pixels
+     * @param color   Background color for alternating board squares
+     * @param control Time control of the game
+     */
+    public ChessBoard(int[] dims, Color color, TimeControl control) {
         this.dims = dims;
-        this.whiteTimeRemaining = minutes * 600;
-        this.blackTimeRemaining = minutes * 600;
-        updateTimerLabel(whiteTimerLabel, whiteTimeRemaining);
-        updateTimerLabel(blackTimerLabel, blackTimeRemaining);
+        this.canvas = new BoardCanvas(color, dims[0]);
+        this.clock = new GameClock(control);
 
         setTitle("Chess Board");
+        clockTimer = new Timer(0, e -> onClockTick());
+        clockTimer.setRepeats(false);
+        updateClockLabels();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setResizable(false);
+        setResizable(true);
 
-        JPanel boardPanel = new JPanel(new GridLayout(BOARD_SIZE, BOARD_SIZE));
-        boardPanel.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-
-        // Add row labels on the west
-        JPanel rowLabels = new JPanel(new GridLayout(BOARD_SIZE, 1));
-        for (int i = BOARD_SIZE - 1; i >= 0; i--) {
-            JLabel label = new JLabel(String.valueOf(i + 1), SwingConstants.CENTER);
-            label.setFont(new Font("Arial", Font.BOLD, 16));
-            rowLabels.add(label);
-        }
-
-        // Add column labels on the bottom
-        JPanel colLabels = new JPanel(new GridLayout(1, BOARD_SIZE));
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            JLabel label = new JLabel(String.valueOf((char) ('A' + i)), SwingConstants.CENTER);
-            label.setFont(new Font("Arial", Font.BOLD, 16));
-            colLabels.add(label);
-        }
-
-        // Initialize the grid with pieces
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                JPanel square = setSquare(i, j);
-
-                squares[i][j] = square;
-                boardPanel.add(square);
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int square = canvas.squareAt(e.getPoint());
+                if (square >= 0) {
+                    for (SquareListener listener : squareListeners) {
+                        listener.onSquareClicked(square / BOARD_SIZE, square % BOARD_SIZE);
+                    }
+                }
             }
-        }
-
-        JPanel board = new JPanel();
-        JPanel space = new JPanel();
-        JPanel downIndexes = new JPanel();
-        board.setLayout(new BorderLayout());
-        downIndexes.setLayout(new BoxLayout(downIndexes, BoxLayout.X_AXIS));
-
-        // Force board panel to be square
-        boardPanel.setPreferredSize(new Dimension(dims[0], dims[0]));
-
-        board.setPreferredSize(new Dimension(dims[0] + dims[0] / 40, dims[0] + dims[0] / 40));
-        rowLabels.setPreferredSize(new Dimension(dims[0] / 40, dims[0]));
-        colLabels.setPreferredSize(new Dimension(dims[0], dims[0] / 40));
-        space.setPreferredSize(new Dimension(dims[0] / 40, dims[0] / 40));
-
-        downIndexes.add(space);
-        downIndexes.add(colLabels);
+        });
 
-        blackTimerLabel.setFont(new Font("Arial", Font.BOLD, 10));
-        whiteTimerLabel.setFont(new Font("Arial", Font.BOLD, 20));
+        blackTimerLabel.setFont(IDLE_TIMER_FONT);
+        whiteTimerLabel.setFont(ACTIVE_TIMER_FONT);
 
         // Configure right panel layout
         rightPanel.setPreferredSize(new Dimension(250, dims[0])); // Match board height, wider panel
@@ -207,6 +196,19 @@ public class ChessBoard extends JFrame {
         gbc.insets = new Insets(10, 10, 10, 10);
         rightPanel.add(buttonPanel, gbc);
 
+        // Engine search progress
+        gbc.gridy++;
+        gbc.insets = new Insets(0, 10, 5, 10);
+        engineStatusLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        rightPanel.add(engineStatusLabel, gbc);
+
+        // Analysis, hidden until turned on
+        gbc.gridy++;
+        gbc.insets = new Insets(0, 10, 10, 10);
+        analysisPanel.setToolTipText("Engine analysis of the current position");
+        analysisPanel.setVisible(false);
+        rightPanel.add(analysisPanel, gbc);
+
         // Spacer
         gbc.gridy++;
         gbc.weighty = 1.0;
@@ -233,57 +235,69 @@ public class ChessBoard extends JFrame {
 
         buttonPanel.add(undoButton);
         buttonPanel.add(restartButton);
+        buttonPanel.add(analyzeButton);
+        buttonPanel.add(mateButton);
 
         // Make buttons smaller
         undoButton.setPreferredSize(new Dimension(80, 40));
         restartButton.setPreferredSize(new Dimension(80, 40));
+        analyzeButton.setPreferredSize(new Dimension(80, 40));
+        analyzeButton.setMargin(new Insets(2, 2, 2, 2));
+        mateButton.setPreferredSize(new Dimension(80, 40));
+        mateButton.setMargin(new Insets(2, 2, 2, 2));
+        mateButton.setToolTipText("Look for a forced mate by the side to move");
 
-        // Initialize timers
-        initTimers();
-        board.add(boardPanel, BorderLayout.CENTER);
-        board.add(rowLabels, BorderLayout.WEST);
-        board.add(downIndexes, BorderLayout.SOUTH);
-        add(board, BorderLayout.CENTER);
+        add(canvas, BorderLayout.CENTER);
         add(rightPanel, BorderLayout.EAST);
 
         pack();
         setLocationRelativeTo(null);
     }
 
-    /// Initializes game timers for both players with countdown and time-out logic.
-    /// The White player's timer starts first by default. Timer behavior: - Countdown
-    /// occurs every decisecond - Displays a message when a player runs out of time -
-    /// Stops the corresponding player's timer upon time exhaustion
-    private void initTimers() {
-        whiteTimer = new Timer(100, e -> {
-            if (whiteTimeRemaining > 0) {
-                whiteTimeRemaining--;
-                updateTimerLabel(whiteTimerLabel, whiteTimeRemaining);
-            } else {
-                ((Timer) e.getSource()).stop(); // Stop the timer when time runs out
-            }
-        });
-
-        blackTimer = new Timer(100, e -> {
-            if (blackTimeRemaining > 0) {
-                blackTimeRemaining--;
-                updateTimerLabel(blackTimerLabel, blackTimeRemaining);
-            } else {
-                ((Timer) e.getSource()).stop(); // Stop the timer when time runs out
-            }
-        });
+    /**
+     * Refreshes the timer labels, reformatting a label only when the time it
+     * shows has changed, then schedules the next tick for the moment the running
+     * clock's display changes again. A clock that reaches zero stops and
+     * notifies the timeout listeners.
+     */
+    private void onClockTick() {
+        updateClockLabels();
+        String side = clock.running();
+        if (side == null) {
+            return;
+        }
+        long left = clock.remainingNanos(side);
+        if (left <= 0) {
+            clock.stop();
+            fireTimeout(side);
+            return;
+        }
+        long untilChange = left % 100_000_000L;
+        if (untilChange == 0) {
+            untilChange = 100_000_000L;
+        }
+        clockTimer.setInitialDelay((int) Math.max(1, (untilChange + 999_999) / 1_000_000));
+        clockTimer.restart();
+    }
 
-        whiteTimer.start(); // White player starts first
+    private void updateClockLabels() {
+        updateTimerLabel(whiteTimerLabel, 0, clock.remainingDeciseconds("White"));
+        updateTimerLabel(blackTimerLabel, 1, clock.remainingDeciseconds("Black"));
     }
 
     /**
-     * Updates a timer label with a formatted time display.
+     * Updates a timer label with a formatted time display if the time changed.
      * Converts deciseconds into a minutes:seconds.tenths format.
      *
      * @param label         JLabel to be updated with the current time
+     * @param index         0 for White, 1 for Black
      * @param timeInSeconds Remaining time in deciseconds
      */
-    private void updateTimerLabel(JLabel label, int timeInSeconds) {
+    private void updateTimerLabel(JLabel label, int index, int timeInSeconds) {
+        if (shownTime[index] == timeInSeconds) {
+            return;
+        }
+        shownTime[index] = timeInSeconds;
         int minutes = timeInSeconds / 600;
         int seconds = (timeInSeconds % 600) / 10;
         int hundredths = timeInSeconds % 10;
@@ -291,47 +305,70 @@ public class ChessBoard extends JFrame {
         label.setText(String.format("%02d:%02d.%d", minutes, seconds, hundredths));
     }
 
+    /**
+     * Returns White's remaining time in deciseconds.
+     *
+     * @return Remaining deciseconds
+     */
+    public int getWhiteTimeRemaining() {
+        return clock.remainingDeciseconds("White");
+    }
+
+    /**
+     * Returns Black's remaining time in deciseconds.
+     *
+     * @return Remaining deciseconds
+     */
+    public int getBlackTimeRemaining() {
+        return clock.remainingDeciseconds("Black");
+    }
+
     public void updateWhiteTimer(int timeRemaining) {
-        whiteTimeRemaining = timeRemaining;
-        updateTimerLabel(whiteTimerLabel, whiteTimeRemaining);
+        clock.set("White", timeRemaining);
+        onClockTick();
     }
 
     public void updateBlackTimer(int timeRemaining) {
-        blackTimeRemaining = timeRemaining;
-        updateTimerLabel(blackTimerLabel, blackTimeRemaining);
+        clock.set("Black", timeRemaining);
+        onClockTick();
     }
 
     /**
-     * Creates a chess board square with alternating colors.
-     * Squares are colored white or the specified custom color based on their
-     * position.
+     * Starts a player's clock without applying the time control, as at the start
+     * of a game or after an undo.
      *
-     * @param i Row index of the square
-     * @param j Column index of the square
-     * @return A JPanel representing a chess board square with appropriate
-     *         background
+     * @param color Color of the player to move
      */
-    private JPanel setSquare(int i, int j) {
-        JPanel square = new JPanel(new BorderLayout());
-        square.setBackground((i + j) % 2 == 0 ? Color.WHITE : this.color);
+    public void startClock(String color) {
+        clock.start(color);
+        showTurn(color);
+        onClockTick();
+    }
 
-        return square;
+    /** Stops both clocks. */
+    public void stopClock() {
+        clock.stop();
+        clockTimer.stop();
+        updateClockLabels();
+    }
+
+    @Override
+    public void dispose() {
+        stopClock();
+        super.dispose();
     }
 
     /**
-     * Retrieves a specific square from the chess board grid.
+     * Registers a listener notified when a square is clicked.
      *
-     * @param i Row index of the desired square
-     * @param j Column index of the desired square
-     * @return JPanel representing the requested board square
-     * @throws IndexOutOfBoundsException if indices are outside the board's range
+     * @param listener Listener to notify
      */
-    public JPanel getSquare(int i, int j) {
-        return squares[i][j];
+    public void addSquareListener(SquareListener listener) {
+        squareListeners.add(listener);
     }
 
     /**
-     * Adds a dot marker to a specified board square.
+     * Shows a dot marker on a specified board square.
      * Useful for highlighting possible moves or indicating special squares.
      *
      * @param row   Row index of the target square
@@ -339,35 +376,29 @@ public class ChessBoard extends JFrame {
      * @param color Color of the dot to be displayed
      */
     public void addDot(int row, int col, Color color) {
-        squares[row][col].setLayout(new BorderLayout());
-        Dot dot = new Dot((dims[0] - 20) / 8 - 20, (dims[1] - 20) / 8 - 20, color);
-
-        // Add the dot to the center of the square
-        squares[row][col].add(dot);
+        canvas.setDot(row, col, color);
     }
 
     /**
-     * Removes a dot from a square and optionally replaces it with a piece.
+     * Removes a dot from a square and shows the given piece on it.
      *
      * @param row   Row index of the square
      * @param col   Column index of the square
-     * @param piece Piece to be placed after dot removal (can be null)
+     * @param piece Piece to be shown after dot removal (can be null)
      */
     public void removeDot(int row, int col, Piece piece) {
-        removeSquare(row, col);
-        if (piece != null) {
-            addSquare(row, col, piece.getIcon());
-        }
+        canvas.setDot(row, col, null);
+        canvas.setPiece(row, col, piece != null ? Zobrist.pieceIndex(piece) : -1);
     }
 
     /**
-     * Removes all components from a specific square.
+     * Clears the piece shown on a square.
      *
      * @param row Row index of the square
      * @param col Column index of the square
      */
     public void removeSquare(int row, int col) {
-        squares[row][col].removeAll();
+        canvas.setPiece(row, col, -1);
     }
 
     /**
@@ -379,11 +410,10 @@ public class ChessBoard extends JFrame {
      * @param fromCol Source square's column index
      * @param toRow   Destination square's row index
      * @param toCol   Destination square's column index
-     * @param icon    ImageIcon representing the piece being moved
+     * @param piece   The piece being moved
      */
-    public void moveSquare(int fromRow, int fromCol, int toRow, int toCol, ImageIcon icon) {
-        removeSquare(toRow, toCol);
-        addSquare(toRow, toCol, icon);
+    public void moveSquare(int fromRow, int fromCol, int toRow, int toCol, Piece piece) {
+        addSquare(toRow, toCol, piece);
         removeSquare(fromRow, fromCol);
     }
 
@@ -392,13 +422,10 @@ public class ChessBoard extends JFrame {
      *
      * @param row  Row index of the square
      * @param col  Column index of the square
-     * @param icon Piece's icon to be displayed
+     * @param piece Piece to be displayed
      */
-    public void addSquare(int row, int col, ImageIcon icon) {
-        JLabel pieceLabel = new JLabel(icon);
-        pieceLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        squares[row][col].add(pieceLabel);
-        squares[row][col].setBackground((row + col) % 2 == 0 ? Color.WHITE : this.color);
+    public void addSquare(int row, int col, Piece piece) {
+        canvas.setPiece(row, col, Zobrist.pieceIndex(piece));
     }
 
     /**
@@ -409,7 +436,7 @@ public class ChessBoard extends JFrame {
      * @param color Highlight color
      */
     public void highlightSquare(int row, int col, Color color) {
-        squares[row][col].setBackground(color);
+        canvas.setHighlight(row, col, color);
     }
 
     /**
@@ -418,7 +445,7 @@ public class ChessBoard extends JFrame {
     public void clearHighlights() {
         for (int i = 0; i < BOARD_SIZE; i++) {
             for (int j = 0; j < BOARD_SIZE; j++) {
-                squares[i][j].setBackground((i + j) % 2 == 0 ? Color.WHITE : this.color);
+                canvas.setHighlight(i, j, null);
             }
         }
         if (lastMoveStart != null && lastMoveEnd != null) {
@@ -432,43 +459,89 @@ public class ChessBoard extends JFrame {
         lastMoveEnd = new Point(r2, c2);
     }
 
-    public void addUndoListener(java.awt.event.ActionListener l) {
+    public void addUndoListener(ActionListener l) {
         undoButton.addActionListener(l);
     }
 
-    public void addRestartListener(java.awt.event.ActionListener l) {
+    public void addRestartListener(ActionListener l) {
         restartButton.addActionListener(l);
     }
 
+    /**
+     * Registers a listener notified when analysis is turned on or off, and
+     * shows or hides the analysis panel accordingly.
+     *
+     * @param l Listener; {@link #isAnalyzing()} gives the new state
+     */
+    public void addAnalyzeListener(ActionListener l) {
+        analyzeButton.addActionListener(e -> {
+            analysisPanel.clear();
+            analysisPanel.setVisible(analyzeButton.isSelected());
+            rightPanel.revalidate();
+            l.actionPerformed(e);
+        });
+    }
+
+    /**
+     * Registers a listener notified when the mate button is pressed.
+     *
+     * @param l Listener
+     */
+    public void addMateListener(ActionListener l) {
+        mateButton.addActionListener(l);
+    }
+
+    /**
+     * Shows the engine's search progress under the buttons.
+     *
+     * @param text Progress to show, or null to clear it
+     */
+    public void showEngineStatus(String text) {
+        engineStatusLabel.setText(text == null || text.isEmpty() ? " " : text);
+    }
+
+    /**
+     * Checks whether analysis is turned on.
+     *
+     * @return true while the analyze button is selected
+     */
+    public boolean isAnalyzing() {
+        return analyzeButton.isSelected();
+    }
+
+    /**
+     * Registers a listener notified when a player's time runs out. The event's
+     * action command is the color of that player.
+     *
+     * @param l Listener to notify
+     */
+    public void addTimeoutListener(ActionListener l) {
+        timeoutListeners.add(l);
+    }
+
+    private void fireTimeout(String color) {
+        ActionEvent event = new ActionEvent(this, ActionEvent.ACTION_PERFORMED, color);
+        for (ActionListener l : timeoutListeners) {
+            l.actionPerformed(event);
+        }
+    }
+
     public void enableDragAndDrop(MoveListener listener) {
         MouseAdapter dragAdapter = new MouseAdapter() {
-            private JLabel dragLabel;
-            private JLabel sourceLabel;
             private int dragStartRow = -1;
             private int dragStartCol = -1;
+            private boolean dragging = false;
 
             @Override
             public void mousePressed(MouseEvent e) {
-                JPanel square = (JPanel) e.getSource();
-                for (int i = 0; i < BOARD_SIZE; i++) {
-                    for (int j = 0; j < BOARD_SIZE; j++) {
-                        if (squares[i][j] == square) {
-                            dragStartRow = i;
-                            dragStartCol = j;
-                            break;
-                        }
-                    }
+                int square = canvas.squareAt(e.getPoint());
+                if (square < 0) {
+                    return;
                 }
-                if (square.getComponentCount() > 0 && square.getComponent(0) instanceof JLabel) {
-                    sourceLabel = (JLabel) square.getComponent(0);
-                    sourceLabel.setVisible(false); // Hide original
-
-                    dragLabel = new JLabel(sourceLabel.getIcon());
-                    dragLabel.setSize(square.getSize());
-                    Point p = SwingUtilities.convertPoint(square, e.getPoint(), getLayeredPane());
-                    dragLabel.setLocation(p.x - dragLabel.getWidth() / 2, p.y - dragLabel.getHeight() / 2);
-                    getLayeredPane().add(dragLabel, JLayeredPane.DRAG_LAYER);
-
+                dragStartRow = square / BOARD_SIZE;
+                dragStartCol = square % BOARD_SIZE;
+                dragging = canvas.startDrag(dragStartRow, dragStartCol, e.getPoint());
+                if (dragging) {
                     // Notify listener that drag has started
                     listener.onDragStart(dragStartRow, dragStartCol);
                 }
@@ -476,87 +549,59 @@ public class ChessBoard extends JFrame {
 
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (dragLabel != null) {
-                    Point p = SwingUtilities.convertPoint((Component) e.getSource(), e.getPoint(), getLayeredPane());
-                    dragLabel.setLocation(p.x - dragLabel.getWidth() / 2, p.y - dragLabel.getHeight() / 2);
-                    repaint();
+                if (dragging) {
+                    canvas.moveDrag(e.getPoint());
                 }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
-                if (sourceLabel != null) {
-                    sourceLabel.setVisible(true); // Show original (will be removed if move valid)
-                    sourceLabel = null;
+                if (!dragging) {
+                    return;
                 }
+                dragging = false;
+                canvas.endDrag();
 
-                if (dragLabel != null) {
-                    getLayeredPane().remove(dragLabel);
-                    dragLabel = null;
-
-                    // Notify listener that drag has ended
-                    listener.onDragEnd();
-
-                    repaint();
-
-                    Point p = SwingUtilities.convertPoint((Component) e.getSource(), e.getPoint(), getContentPane());
-                    Component c = getContentPane().findComponentAt(p);
+                // Notify listener that drag has ended
+                listener.onDragEnd();
 
-                    // findComponentAt might return the labels inside the square, so we need to find
-                    // the square panel
-                    if (c instanceof JLabel) {
-                        c = c.getParent();
-                    }
-
-                    if (c instanceof JPanel) {
-                        for (int i = 0; i < BOARD_SIZE; i++) {
-                            for (int j = 0; j < BOARD_SIZE; j++) {
-                                if (squares[i][j] == c) {
-                                    if (i != dragStartRow || j != dragStartCol) {
-                                        listener.onMove(dragStartRow, dragStartCol, i, j);
-                                    }
-                                    return;
-                                }
-                            }
-                        }
-                    }
+                int square = canvas.squareAt(e.getPoint());
+                if (square >= 0 && (square / BOARD_SIZE != dragStartRow || square % BOARD_SIZE != dragStartCol)) {
+                    listener.onMove(dragStartRow, dragStartCol, square / BOARD_SIZE, square % BOARD_SIZE);
                 }
             }
         };
 
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                squares[i][j].addMouseListener(dragAdapter);
-                squares[i][j].addMouseMotionListener(dragAdapter);
-            }
-        }
+        canvas.addMouseListener(dragAdapter);
+        canvas.addMouseMotionListener(dragAdapter);
     }
 
     /**
-     * Switches active timers between White and Black players.
+     * Presses the clock for the player who just moved, applying the increment or
+     * delay and starting the opponent's clock.
      * Also updates the visual representation to indicate the current player's turn.
      *
      * @param color Color of the player whose turn is ending
      */
     public void switchTimers(String color) {
-        if (color.equals("White")) {
-            whiteTimer.stop();
-            blackTimer.start();
-            rightPanel.setBackground(Color.BLACK);
-            blackTimerLabel.setFont(new Font("Arial", Font.BOLD, 20));
-            whiteTimerLabel.setFont(new Font("Arial", Font.BOLD, 10));
-            for (int i = 0; i < rightPanel.getComponentCount(); i++) {
-                rightPanel.getComponent(i).setForeground(Color.WHITE);
-            }
-        } else {
-            blackTimer.stop();
-            whiteTimer.start();
-            rightPanel.setBackground(Color.WHITE);
-            blackTimerLabel.setFont(new Font("Arial", Font.BOLD, 10));
-            whiteTimerLabel.setFont(new Font("Arial", Font.BOLD, 20));
-            for (int i = 0; i < rightPanel.getComponentCount(); i++) {
-                rightPanel.getComponent(i).setForeground(Color.BLACK);
-            }
+        clock.press(color);
+        showTurn(color.equals("White") ? "Black" : "White");
+        onClockTick();
+    }
+
+    /**
+     * Shows whose turn it is: the right panel takes that player's color and their
+     * timer is enlarged.
+     *
+     * @param color Color of the player to move
+     */
+    private void showTurn(String color) {
+        boolean black = color.equals("Black");
+        rightPanel.setBackground(black ? Color.BLACK : Color.WHITE);
+        blackTimerLabel.setFont(black ? ACTIVE_TIMER_FONT : IDLE_TIMER_FONT);
+        whiteTimerLabel.setFont(black ? IDLE_TIMER_FONT : ACTIVE_TIMER_FONT);
+        for (int i = 0; i < rightPanel.getComponentCount(); i++) {
+            rightPanel.getComponent(i).setForeground(black ? Color.WHITE : Color.BLACK);
         }
     }
 
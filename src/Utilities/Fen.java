@@ -0,0 +1,186 @@
+package Utilities;
+
+import Pieces.*;
+
+/**
+ * A position read from, or written as, Forsyth-Edwards Notation, such as
+ * {@code rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1}.
+ *
+ * The board is in the game's layout: row 0 is the eighth rank and White's
+ * pieces start on rows 6 and 7. Castling rights and the en passant square are
+ * carried the way the rest of the game carries them: pieces that have lost
+ * their castling rights are marked as moved, and a capturable pawn is
+ * described by the double step that made it capturable. EPD lines are
+ * accepted too; their move counters are missing and their operations are
+ * ignored.
+ */
+public final class Fen {
+    /** The pieces, indexed by row and then column. */
+    public final Piece[][] board;
+
+    /** true if White is to move. */
+    public final boolean whiteToMove;
+
+    /** The double pawn step that allows en passant, or null. */
+    public final Move lastMove;
+
+    /** Half-moves since the last capture or pawn move. */
+    public final int halfMoveClock;
+
+    private Fen(Piece[][] board, boolean whiteToMove, Move lastMove, int halfMoveClock) {
+        this.board = board;
+        this.whiteToMove = whiteToMove;
+        this.lastMove = lastMove;
+        this.halfMoveClock = halfMoveClock;
+    }
+
+    /**
+     * Reads a position.
+     *
+     * @param text The position in FEN or EPD
+     * @return The position
+     * @throws IllegalArgumentException if the text is not a valid position
+     */
+    public static Fen parse(String text) {
+        String[] fields = text.trim().split("\\s+");
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Not a FEN position: " + text);
+        }
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("Expected 8 ranks: " + text);
+        }
+        Piece[][] board = new Piece[8][8];
+        for (int row = 0; row < 8; row++) {
+            int col = 0;
+            for (char c : ranks[row].toCharArray()) {
+                if (Character.isDigit(c)) {
+                    col += c - '0';
+                } else if (col < 8) {
+                    board[row][col++] = piece(c, row, col - 1);
+                } else {
+                    col++;
+                }
+            }
+            if (col != 8) {
+                throw new IllegalArgumentException("Rank " + (8 - row) + " is not 8 squares: " + text);
+            }
+        }
+
+        String castling = fields[2];
+        keepCastlingRight(board, castling.indexOf('K') >= 0, 7, 7);
+        keepCastlingRight(board, castling.indexOf('Q') >= 0, 7, 0);
+        keepCastlingRight(board, castling.indexOf('k') >= 0, 0, 7);
+        keepCastlingRight(board, castling.indexOf('q') >= 0, 0, 0);
+
+        boolean whiteToMove = !fields[1].equals("b");
+        Move lastMove = null;
+        if (fields[3].length() == 2 && !fields[3].equals("-")) {
+            int col = fields[3].charAt(0) - 'a';
+            // The pawn that just stepped past the en passant square
+            int fromRow = whiteToMove ? 1 : 6;
+            int toRow = whiteToMove ? 3 : 4;
+            if (col >= 0 && col < 8 && board[toRow][col] != null && board[toRow][col].name.equals("Pawn")) {
+                lastMove = new Move(fromRow, col, toRow, col, board[toRow][col], null, 0, 0);
+            }
+        }
+        int halfMoveClock = fields.length > 4 && fields[4].matches("\\d+") ? Integer.parseInt(fields[4]) : 0;
+        return new Fen(board, whiteToMove, lastMove, halfMoveClock);
+    }
+
+    /**
+     * Writes a position.
+     *
+     * @param board          The pieces, in the game's layout
+     * @param whiteToMove    true if White is to move
+     * @param lastMove       The move that led to the position, or null
+     * @param halfMoveClock  Half-moves since the last capture or pawn move
+     * @param fullMoveNumber Number of the move about to be played
+     * @return The position in FEN
+     */
+    public static String write(Piece[][] board, boolean whiteToMove, Move lastMove, int halfMoveClock,
+            int fullMoveNumber) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board[row][col];
+                if (piece == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    text.append(empty);
+                    empty = 0;
+                }
+                char letter = piece.name.equals("Knight") ? 'n' : Character.toLowerCase(piece.name.charAt(0));
+                text.append(piece.color.equals("White") ? Character.toUpperCase(letter) : letter);
+            }
+            if (empty > 0) {
+                text.append(empty);
+            }
+            if (row < 7) {
+                text.append('/');
+            }
+        }
+        text.append(whiteToMove ? " w " : " b ");
+        int rights = text.length();
+        if (mayCastle(board, 7, 7)) text.append('K');
+        if (mayCastle(board, 7, 0)) text.append('Q');
+        if (mayCastle(board, 0, 7)) text.append('k');
+        if (mayCastle(board, 0, 0)) text.append('q');
+        if (text.length() == rights) {
+            text.append('-');
+        }
+        boolean doubleStep = lastMove != null && lastMove.piece != null && lastMove.piece.name.equals("Pawn")
+                && Math.abs(lastMove.toRow - lastMove.fromRow) == 2;
+        text.append(' ').append(doubleStep
+                ? "" + (char) ('a' + lastMove.toCol) + (8 - (lastMove.fromRow + lastMove.toRow) / 2)
+                : "-");
+        return text.append(' ').append(halfMoveClock).append(' ').append(fullMoveNumber).toString();
+    }
+
+    /** Tells whether an unmoved king and rook still stand on their squares. */
+    private static boolean mayCastle(Piece[][] board, int row, int rookCol) {
+        Piece rook = board[row][rookCol];
+        Piece king = board[row][4];
+        return rook != null && rook.name.equals("Rook") && !rook.haveMove && king != null
+                && king.name.equals("King") && !king.haveMove && rook.color.equals(king.color);
+    }
+
+    /**
+     * Creates the piece for a FEN letter, marking it as moved unless it stands
+     * where it started. Castling rights are settled afterwards.
+     */
+    private static Piece piece(char letter, int row, int col) {
+        String color = Character.isUpperCase(letter) ? "White" : "Black";
+        int homeRow = color.equals("White") ? 7 : 0;
+        Piece piece = switch (Character.toLowerCase(letter)) {
+            case 'p' -> new Pawn(color);
+            case 'n' -> new Knight(color);
+            case 'b' -> new Bishop(color);
+            case 'r' -> new Rook(color);
+            case 'q' -> new Queen(color);
+            case 'k' -> new King(color);
+            default -> throw new IllegalArgumentException("Unknown piece " + letter);
+        };
+        piece.haveMove = switch (piece.name) {
+            case "Pawn" -> row != (color.equals("White") ? 6 : 1);
+            case "Queen" -> row != homeRow || col != 3;
+            case "King", "Rook" -> true;
+            default -> false;
+        };
+        return piece;
+    }
+
+    /** Marks a rook and its king as unmoved if they still may castle. */
+    private static void keepCastlingRight(Piece[][] board, boolean right, int row, int rookCol) {
+        Piece rook = board[row][rookCol];
+        Piece king = board[row][4];
+        if (right && rook != null && rook.name.equals("Rook") && king != null && king.name.equals("King")
+                && rook.color.equals(king.color)) {
+            rook.haveMove = false;
+            king.haveMove = false;
+        }
+    }
+}
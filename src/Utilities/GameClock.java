@@ -0,0 +1,147 @@
+package Utilities;
+
+import java.util.concurrent.TimeUnit;
+
+/// A two-player chess clock measured with `System.nanoTime`.
+///
+/// The clock stores each player's remaining time at the start of their turn and
+/// the instant the running side's turn began; remaining time is computed from
+/// those on every read, so it never drifts however late the caller polls.
+/// Pressing the clock charges the mover for the time used, then applies the
+/// time control: a Fischer increment is added, or with a Bronstein delay the
+/// time used is given back up to the delay. A player's flag falls as soon as
+/// their remaining time reaches zero.
+///
+/// Methods are synchronized so the engine can read remaining time from its own
+/// thread.
+public class GameClock {
+    private static final int WHITE = 0;
+    private static final int BLACK = 1;
+
+    private final long incrementNanos;
+    private final long delayNanos;
+
+    /** Remaining time of each player, as of the start of the running turn. */
+    private final long[] remaining = new long[2];
+
+    /** Side whose clock is running, or -1 if stopped. */
+    private int running = -1;
+    private long turnStart;
+
+    /**
+     * Creates a stopped clock with both players at the control's base time.
+     *
+     * @param control The time control
+     */
+    public GameClock(TimeControl control) {
+        this.incrementNanos = TimeUnit.SECONDS.toNanos(control.incrementSeconds);
+        this.delayNanos = TimeUnit.SECONDS.toNanos(control.delaySeconds);
+        remaining[WHITE] = TimeUnit.MINUTES.toNanos(control.minutes);
+        remaining[BLACK] = remaining[WHITE];
+    }
+
+    /**
+     * Starts a player's clock, stopping the other one without applying the time
+     * control.
+     *
+     * @param color Color of the player whose clock starts
+     */
+    public synchronized void start(String color) {
+        long now = System.nanoTime();
+        settle(now);
+        running = side(color);
+        turnStart = now;
+    }
+
+    /** Stops both clocks. */
+    public synchronized void stop() {
+        settle(System.nanoTime());
+        running = -1;
+    }
+
+    /**
+     * Ends a player's turn: charges the time used, applies the increment or
+     * delay, and starts the opponent's clock. No time control is applied once
+     * the player's flag has fallen. If the opponent's clock was the one running,
+     * the time it ran is charged to the opponent before it restarts.
+     *
+     * @param color Color of the player who just moved
+     */
+    public synchronized void press(String color) {
+        long now = System.nanoTime();
+        int side = side(color);
+        if (running == side) {
+            long used = now - turnStart;
+            remaining[side] -= used;
+            if (remaining[side] > 0) {
+                remaining[side] += incrementNanos + Math.min(used, delayNanos);
+            }
+        } else {
+            settle(now);
+        }
+        running = 1 - side;
+        turnStart = now;
+    }
+
+    /**
+     * Returns a player's remaining time at this instant.
+     *
+     * @param color Color of the player
+     * @return Remaining time in nanoseconds, never negative
+     */
+    public synchronized long remainingNanos(String color) {
+        int side = side(color);
+        long left = remaining[side];
+        if (running == side) {
+            left -= System.nanoTime() - turnStart;
+        }
+        return Math.max(0, left);
+    }
+
+    /**
+     * Returns a player's remaining time in deciseconds, rounded down, the unit
+     * saved with each move.
+     *
+     * @param color Color of the player
+     * @return Remaining deciseconds
+     */
+    public int remainingDeciseconds(String color) {
+        return (int) (remainingNanos(color) / 100_000_000L);
+    }
+
+    /**
+     * Sets a player's remaining time, as when restoring a game or undoing a move.
+     * A running clock keeps running from now.
+     *
+     * @param color       Color of the player
+     * @param deciseconds Remaining time in deciseconds
+     */
+    public synchronized void set(String color, int deciseconds) {
+        int side = side(color);
+        remaining[side] = deciseconds * 100_000_000L;
+        if (running == side) {
+            turnStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the color of the player whose clock is running.
+     *
+     * @return "White", "Black", or null if the clock is stopped
+     */
+    public synchronized String running() {
+        return running < 0 ? null : running == WHITE ? "White" : "Black";
+    }
+
+    /** Folds the running turn's elapsed time into its player's remaining time. */
+    private void settle(long now) {
+        if (running >= 0) {
+            remaining[running] -= now - turnStart;
+            turnStart = now;
+        }
+    }
+
+    private static int side(String color) {
+        return color.equals("White") ? WHITE : BLACK;
+    }
+}
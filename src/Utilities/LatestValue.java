@@ -0,0 +1,33 @@
+package Utilities;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/// A single-slot channel that holds only the most recent value published to it.
+///
+/// A producer publishes as often as it likes without waiting: each value simply
+/// replaces the one before. A consumer polling at its own pace takes whatever
+/// is newest and never sees a backlog, so a fast producer cannot flood a slow
+/// consumer. Both sides are lock-free.
+///
+/// @param <T> Type of the values
+public class LatestValue<T> {
+    private final AtomicReference<T> slot = new AtomicReference<>();
+
+    /**
+     * Replaces the held value.
+     *
+     * @param value The new value, not null
+     */
+    public void publish(T value) {
+        slot.set(value);
+    }
+
+    /**
+     * Removes and returns the held value.
+     *
+     * @return The newest value published since the last take, or null if none
+     */
+    public T take() {
+        return slot.getAndSet(null);
+    }
+}
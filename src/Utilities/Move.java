@@ -87,6 +87,21 @@ public class Move {
         return result;
     }
 
+    /**
+     * Writes the move in coordinate notation, e.g. {@code e2e4}, with the
+     * promotion piece appended for a promotion. A promotion without a chosen
+     * piece is written as a queen promotion.
+     *
+     * @return The move in coordinate notation
+     */
+    public String toCoordinates() {
+        String text = "" + (char) ('a' + fromCol) + (8 - fromRow) + (char) ('a' + toCol) + (8 - toRow);
+        if (piece != null && piece.name.equals("Pawn") && (toRow == 0 || toRow == 7)) {
+            text += promoteTo == null ? "q" : promoteTo.equals("Knight") ? "n" : promoteTo.substring(0, 1).toLowerCase();
+        }
+        return text;
+    }
+
     /**
      * Checks if this move is equal to another move.
      * Compares start and end positions, piece name, and piece color.
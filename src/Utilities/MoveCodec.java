@@ -0,0 +1,76 @@
+package Utilities;
+
+/**
+ * Packs a move into 15 bits: 6 bits for the origin square, 6 bits for the
+ * destination square and 3 bits for the promotion piece. Squares are numbered
+ * {@code row * 8 + col} in board coordinates.
+ */
+public final class MoveCodec {
+    /** Value that never encodes a real move, since origin and destination differ. */
+    public static final short NONE = 0;
+
+    private static final String[] PROMOTIONS = { null, "Queen", "Rook", "Bishop", "Knight" };
+
+    private MoveCodec() {
+    }
+
+    /**
+     * Encodes a move.
+     *
+     * @param fromRow   Row index of the starting position
+     * @param fromCol   Column index of the starting position
+     * @param toRow     Row index of the destination position
+     * @param toCol     Column index of the destination position
+     * @param promoteTo Name of the promotion piece, or null
+     * @return The packed move
+     */
+    public static short encode(int fromRow, int fromCol, int toRow, int toCol, String promoteTo) {
+        return (short) ((fromRow * 8 + fromCol) | (toRow * 8 + toCol) << 6 | promotionCode(promoteTo) << 12);
+    }
+
+    /**
+     * Encodes a board move.
+     *
+     * @param move The move to encode
+     * @return The packed move
+     */
+    public static short encode(Move move) {
+        return encode(move.fromRow, move.fromCol, move.toRow, move.toCol, move.promoteTo);
+    }
+
+    public static int fromRow(short code) {
+        return (code & 0x3F) >> 3;
+    }
+
+    public static int fromCol(short code) {
+        return code & 0x7;
+    }
+
+    public static int toRow(short code) {
+        return (code >> 6 & 0x3F) >> 3;
+    }
+
+    public static int toCol(short code) {
+        return code >> 6 & 0x7;
+    }
+
+    /**
+     * Returns the promotion piece of a packed move.
+     *
+     * @param code The packed move
+     * @return Name of the promotion piece, or null
+     */
+    public static String promoteTo(short code) {
+        int promotion = code >> 12 & 0x7;
+        return promotion < PROMOTIONS.length ? PROMOTIONS[promotion] : null;
+    }
+
+    private static int promotionCode(String promoteTo) {
+        for (int i = 1; i < PROMOTIONS.length; i++) {
+            if (PROMOTIONS[i].equals(promoteTo)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,134 @@
+package Utilities;
+
+import Pieces.Piece;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/// Piece images pre-rendered at the sizes they are drawn at.
+///
+/// Each PNG in `assets/` is decoded once. Asking for a piece at a size renders
+/// all twelve pieces at that size into images compatible with the screen, so
+/// drawing them is a plain copy with no scaling. The few most recently used
+/// sizes are kept (board squares, captured pieces, and the previous board size
+/// while a window is being resized); a size that is no longer used is evicted.
+///
+/// Pieces are identified by their [Zobrist#pieceIndex(Piece)] index.
+public final class SpriteCache {
+    private static final String ASSETS = "assets" + File.separator;
+    private static final String[] NAMES = { "Pawn", "Knight", "Bishop", "Rook", "Queen", "King" };
+
+    /** Number of sizes kept at once. */
+    private static final int MAX_SIZES = 4;
+
+    private static final BufferedImage[] sources = new BufferedImage[12];
+
+    private static final Map<Integer, BufferedImage[]> sprites = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage[]> eldest) {
+            return size() > MAX_SIZES;
+        }
+    };
+
+    private SpriteCache() {
+    }
+
+    /**
+     * Returns a piece's image scaled to a square of the given size.
+     *
+     * @param piece The piece
+     * @param size  Width and height in pixels
+     * @return The cached image
+     */
+    public static BufferedImage get(Piece piece, int size) {
+        return get(Zobrist.pieceIndex(piece), size);
+    }
+
+    /**
+     * Returns a piece's image scaled to a square of the given size.
+     *
+     * @param piece Piece index, 0-11
+     * @param size  Width and height in pixels
+     * @return The cached image
+     */
+    public static synchronized BufferedImage get(int piece, int size) {
+        size = Math.max(1, size);
+        BufferedImage[] images = sprites.get(size);
+        if (images == null) {
+            images = new BufferedImage[12];
+            for (int i = 0; i < images.length; i++) {
+                images[i] = render(source(i), size);
+            }
+            sprites.put(size, images);
+        }
+        return images[piece];
+    }
+
+    /**
+     * Returns the file name of a piece's image in {@code assets/}.
+     *
+     * @param piece Piece index, 0-11
+     * @return Path of the image
+     */
+    public static String path(int piece) {
+        return ASSETS + (piece < 6 ? 'W' : 'B') + NAMES[piece % 6] + ".png";
+    }
+
+    private static BufferedImage source(int piece) {
+        if (sources[piece] == null) {
+            try {
+                sources[piece] = ImageIO.read(new File(path(piece)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (sources[piece] == null) {
+                sources[piece] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            }
+        }
+        return sources[piece];
+    }
+
+    /**
+     * Scales an image down by halving steps, then once to the exact size. A single
+     * bilinear pass from a much larger image skips source pixels and looks
+     * jagged.
+     */
+    private static BufferedImage render(BufferedImage source, int size) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        while (width / 2 >= size && height / 2 >= size) {
+            width /= 2;
+            height /= 2;
+            current = scale(current, width, height, false);
+        }
+        return scale(current, size, size, true);
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height, boolean compatible) {
+        BufferedImage scaled = compatible ? createCompatible(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private static BufferedImage createCompatible(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+                .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+}
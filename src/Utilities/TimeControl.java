@@ -0,0 +1,59 @@
+package Utilities;
+
+/// A time control: base time per player plus either a Fischer increment or a
+/// Bronstein delay per move.
+///
+/// Written as `minutes`, `minutes+increment` or `minutesdDelay`, with the
+/// increment and delay in seconds, e.g. `10`, `3+2` or `5d3`.
+public class TimeControl {
+    public final int minutes;
+    public final int incrementSeconds;
+    public final int delaySeconds;
+
+    public TimeControl(int minutes, int incrementSeconds, int delaySeconds) {
+        this.minutes = minutes;
+        this.incrementSeconds = incrementSeconds;
+        this.delaySeconds = delaySeconds;
+    }
+
+    /**
+     * Parses a time control.
+     *
+     * @param text Time control such as {@code 10}, {@code 3+2} or {@code 5d3}
+     * @return The time control
+     * @throws NumberFormatException if the text is not a valid time control
+     */
+    public static TimeControl parse(String text) {
+        if (text == null) {
+            throw new NumberFormatException("No time control");
+        }
+        String value = text.trim().toLowerCase();
+        int increment = 0;
+        int delay = 0;
+        int plus = value.indexOf('+');
+        int d = value.indexOf('d');
+        if (plus >= 0) {
+            increment = Integer.parseInt(value.substring(plus + 1).trim());
+            value = value.substring(0, plus).trim();
+        } else if (d >= 0) {
+            delay = Integer.parseInt(value.substring(d + 1).trim());
+            value = value.substring(0, d).trim();
+        }
+        int minutes = Integer.parseInt(value);
+        if (minutes <= 0 || minutes > 60 || increment < 0 || increment > 60 || delay < 0 || delay > 60) {
+            throw new NumberFormatException("Time control out of range: " + text);
+        }
+        return new TimeControl(minutes, increment, delay);
+    }
+
+    @Override
+    public String toString() {
+        if (incrementSeconds > 0) {
+            return minutes + "+" + incrementSeconds;
+        }
+        if (delaySeconds > 0) {
+            return minutes + "d" + delaySeconds;
+        }
+        return String.valueOf(minutes);
+    }
+}
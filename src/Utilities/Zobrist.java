@@ -0,0 +1,118 @@
+package Utilities;
+
+import Pieces.Piece;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist hashing of chess positions. A position's key is the XOR of a random
+ * 64-bit value for every piece on its square, for the side to move, for each
+ * castling right still held and for a capturable en passant file. Equal
+ * positions get equal keys, so repetitions can be found by comparing longs.
+ * The keys come from a fixed seed and are stable across runs.
+ */
+public final class Zobrist {
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] CASTLING_KEYS = new long[4];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_C0FFEEL);
+        for (long[] keys : PIECE_KEYS) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextLong();
+            }
+        }
+        for (int i = 0; i < CASTLING_KEYS.length; i++) {
+            CASTLING_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT_KEYS.length; i++) {
+            EN_PASSANT_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Computes the key of a position.
+     *
+     * @param board      The board
+     * @param sideToMove Color of the player to move
+     * @param lastMove   The move that led to the position, or null
+     * @return The position key
+     */
+    public static long hash(Piece[][] board, String sideToMove, Move lastMove) {
+        long key = sideToMove.equals("Black") ? BLACK_TO_MOVE : 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                Piece piece = board[row][col];
+                if (piece != null) {
+                    key ^= PIECE_KEYS[pieceIndex(piece)][row * 8 + col];
+                }
+            }
+        }
+        if (canCastle(board, 7, 7)) key ^= CASTLING_KEYS[0];
+        if (canCastle(board, 7, 0)) key ^= CASTLING_KEYS[1];
+        if (canCastle(board, 0, 7)) key ^= CASTLING_KEYS[2];
+        if (canCastle(board, 0, 0)) key ^= CASTLING_KEYS[3];
+        int file = enPassantFile(board, lastMove);
+        if (file >= 0) {
+            key ^= EN_PASSANT_KEYS[file];
+        }
+        return key;
+    }
+
+    /**
+     * Returns the 0-11 index of a piece: Pawn, Knight, Bishop, Rook, Queen, King
+     * for White, then the same for Black.
+     *
+     * @param piece The piece
+     * @return The piece index
+     */
+    public static int pieceIndex(Piece piece) {
+        int type = switch (piece.name) {
+            case "Pawn" -> 0;
+            case "Knight" -> 1;
+            case "Bishop" -> 2;
+            case "Rook" -> 3;
+            case "Queen" -> 4;
+            default -> 5;
+        };
+        return piece.color.equals("White") ? type : type + 6;
+    }
+
+    private static boolean canCastle(Piece[][] board, int row, int rookCol) {
+        Piece king = board[row][4];
+        Piece rook = board[row][rookCol];
+        return king != null && king.name.equals("King") && !king.haveMove
+                && rook != null && rook.name.equals("Rook") && !rook.haveMove && rook.color.equals(king.color);
+    }
+
+    /**
+     * Returns the file on which an en passant capture is possible, counting it
+     * only when an enemy pawn stands next to the pawn that just advanced two
+     * squares, so positions that differ only by an unusable right hash alike.
+     */
+    private static int enPassantFile(Piece[][] board, Move lastMove) {
+        if (lastMove == null || Math.abs(lastMove.toRow - lastMove.fromRow) != 2) {
+            return -1;
+        }
+        Piece pawn = board[lastMove.toRow][lastMove.toCol];
+        if (pawn == null || !pawn.name.equals("Pawn")) {
+            return -1;
+        }
+        for (int col = lastMove.toCol - 1; col <= lastMove.toCol + 1; col += 2) {
+            if (col < 0 || col > 7) {
+                continue;
+            }
+            Piece neighbour = board[lastMove.toRow][col];
+            if (neighbour != null && neighbour.name.equals("Pawn") && !neighbour.color.equals(pawn.color)) {
+                return lastMove.toCol;
+            }
+        }
+        return -1;
+    }
+}